@@ -0,0 +1,63 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+
+/**
+ * Gives the benchmarks access to the checked in fixture pages (src/test/resources/pages, packaged
+ * under /corpus) and a writer that throws the csv away.
+ *
+ */
+final class Corpus {
+	static final String LIST_PAGE_SMALL = "ProbateCaseList_PD05_01.html";
+	static final String LIST_PAGE_FULL = "ProbateCaseList_PD05_02.html";
+	static final String[] DETAIL_PAGES = {"ProbateCaseDetails_PD05-14-00123.html", "ProbateCaseDetails_PD05-14-00124.html", 
+		"ProbateCaseDetails_PD05-14-00126.html"};
+
+	private Corpus() {
+	}
+
+	static String read(String name) throws IOException {
+		InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+		if (in == null) {
+			throw new IOException("Missing corpus page " + name);
+		}
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 * 1024);
+			byte[] buffer = new byte[8 * 1024];
+			int read;
+			while ((read = in.read(buffer)) != -1) {
+				bytes.write(buffer, 0, read);
+			}
+			return bytes.toString("UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	static Elements resultsSection(String html) {
+		return Jsoup.parse(html, PageParserProbateList.BASE_URI).select("section#search-results-container");
+	}
+
+	static Elements caseTable(String html) {
+		return Jsoup.parse(html, PageParserProbateList.BASE_URI).select("body div table");
+	}
+
+	static CsvWriter nullOutput() {
+		return new CsvWriter(new Writer() {
+			public void write(char[] cbuf, int off, int len) {
+			}
+
+			public void flush() {
+			}
+
+			public void close() {
+			}
+		});
+	}
+}
@@ -0,0 +1,72 @@
+package com.ect.probatescraper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of turning grouped fiduciary rows into {@link Fiduciary} objects, both the group based
+ * {@link Fiduciary} methods and the single pass {@link FiduciaryRowParser}.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class FiduciaryBenchmark {
+
+	private final List<String> addressGroup = Arrays.asList("PATRICK O'BRIEN represented by ATTY SUSAN MILLER", 
+			"MILLER & ROSS  LLC", "100 MAIN STREET", "HARTFORD  CT 06103");
+	private final List<String> shortAddressGroup = Arrays.asList("KATHLEEN O'BRIEN WALSH", "22 ELM ROAD", "WEST HARTFORD  CT 06107");
+	private final List<String> phoneFaxGroup = Arrays.asList("Phone:(860) 555-1212", "Fax:(860) 555-1313");
+	private final List<String> caseRows = Arrays.asList("PATRICK O'BRIEN represented by ATTY SUSAN MILLER", 
+			"MILLER & ROSS  LLC", "100 MAIN STREET", "HARTFORD  CT 06103", "", "Phone:(860) 555-1212", "Fax:(860) 555-1313", "", 
+			"KATHLEEN O'BRIEN WALSH", "22 ELM ROAD", "WEST HARTFORD  CT 06107");
+
+	@Benchmark
+	public Fiduciary groupInfo() {
+		Fiduciary fiduciary = new Fiduciary(addressGroup);
+		if (Fiduciary.isPhoneFaxGroup(phoneFaxGroup)) {
+			fiduciary.setPhoneFaxGroupInfo(phoneFaxGroup);
+		}
+		return fiduciary;
+	}
+
+	@Benchmark
+	public Fiduciary setAddressGroupInfo() {
+		Fiduciary fiduciary = new Fiduciary();
+		fiduciary.setAddressGroupInfo(shortAddressGroup);
+		return fiduciary;
+	}
+
+	@Benchmark
+	public void rowParser(final Blackhole blackhole) {
+		FiduciaryRowParser parser = new FiduciaryRowParser(new FiduciaryRowParser.FiduciaryHandler() {
+			public void fiduciary(Fiduciary fiduciary) {
+				blackhole.consume(fiduciary);
+			}
+		});
+		for (String row : caseRows) {
+			parser.row(row);
+		}
+		parser.finish();
+	}
+
+	@Benchmark
+	public boolean isPhoneFaxGroup() {
+		return Fiduciary.isPhoneFaxGroup(phoneFaxGroup) && !Fiduciary.isPhoneFaxGroup(addressGroup);
+	}
+}
@@ -0,0 +1,102 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of the page extraction hot paths of {@link PageParserProbateList}. The extract* 
+ * benchmarks work on documents parsed during setup, the parse* benchmarks include reading the html.
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+
+	private String listHtml;
+	private String[] detailHtml;
+	private Elements resultsSection;
+	private Elements[] caseTables;
+	private String[] csvFieldInput;
+	private CsvWriter output;
+	private StreamingCaseListExtractor streamingExtractor;
+
+	@Setup
+	public void setUp() throws IOException {
+		listHtml = Corpus.read(Corpus.LIST_PAGE_FULL);
+		resultsSection = Corpus.resultsSection(listHtml);
+
+		detailHtml = new String[Corpus.DETAIL_PAGES.length];
+		caseTables = new Elements[Corpus.DETAIL_PAGES.length];
+		for (int i = 0; i < Corpus.DETAIL_PAGES.length; i++) {
+			detailHtml[i] = Corpus.read(Corpus.DETAIL_PAGES[i]);
+			caseTables[i] = Corpus.caseTable(detailHtml[i]);
+		}
+
+		csvFieldInput = new String[] {"O'BRIEN", "SMITH, JR.", "JOHN \"JACK\"", "MILLER & ROSS, LLC", 
+				"100 MAIN STREET", "HARTFORD, CT 06103", "PATRICK O'BRIEN represented by ATTY SUSAN MILLER"};
+		output = Corpus.nullOutput();
+		streamingExtractor = new StreamingCaseListExtractor();
+	}
+
+	@Benchmark
+	public int extractCaseListing() throws IOException {
+		return PageParserProbateList.extractCaseListing(resultsSection, output);
+	}
+
+	@Benchmark
+	public void extractCaseDetails() throws IOException {
+		for (Elements caseTable : caseTables) {
+			PageParserProbateList.extractCaseDetails(caseTable, output, output);
+		}
+	}
+
+	@Benchmark
+	public Map<Integer, String> extractPageLinks() {
+		return PageParserProbateList.extractPageLinks(resultsSection);
+	}
+
+	@Benchmark
+	public void csvFields() throws IOException {
+		for (String text : csvFieldInput) {
+			output.field(text);
+		}
+		output.endRow();
+	}
+
+	@Benchmark
+	public CaseListPage parseCaseListJsoup() {
+		return PageParserProbateList.extractCaseListPage(Jsoup.parse(listHtml, PageParserProbateList.BASE_URI)
+				.select("section#search-results-container"));
+	}
+
+	@Benchmark
+	public CaseListPage parseCaseListStreaming() throws IOException {
+		return streamingExtractor.extract(new StringReader(listHtml), PageParserProbateList.BASE_URI);
+	}
+
+	@Benchmark
+	public void parseCaseDetails() throws IOException {
+		for (String html : detailHtml) {
+			PageParserProbateList.extractCaseDetails(Corpus.caseTable(html), output, output);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.ect.probatescraper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides how far apart requests to each host are spaced, from how the host has been answering.
+ * Response times are smoothed into a moving average: while it stays well under the target latency the
+ * interval shrinks a little with every response, once it goes over the target the interval grows, and
+ * every failed request doubles it. The interval always stays between the configured slowest and
+ * fastest request rates.
+ *
+ */
+public class AdaptiveRateController {
+    private static final Logger LOG = Logger.getLogger(AdaptiveRateController.class);
+    static final double LATENCY_WEIGHT = 0.3;
+    static final double SPEED_UP = 0.9;
+    static final double SLOW_DOWN = 1.5;
+    static final double BACK_OFF = 2.0;
+
+    private final long initialIntervalNanos;
+    private final long minIntervalNanos;
+    private final long maxIntervalNanos;
+    private final long targetLatencyNanos;
+    private final Map<String, HostState> hosts = new HashMap<String, HostState>();
+
+    private static class HostState {
+    	private long intervalNanos;
+    	private double latencyNanos;
+    }
+
+    /**
+     * @param requestsPerMinute
+     *            rate every host starts at
+     * @param minRequestsPerMinute
+     *            slowest rate backing off can go down to
+     * @param maxRequestsPerMinute
+     *            fastest rate speeding up can reach
+     * @param targetLatencyMillis
+     *            response time above which the host is considered to be struggling
+     */
+    public AdaptiveRateController(double requestsPerMinute, double minRequestsPerMinute, double maxRequestsPerMinute,
+    		long targetLatencyMillis) {
+    	if (minRequestsPerMinute <= 0 || minRequestsPerMinute > maxRequestsPerMinute) {
+    		throw new IllegalArgumentException("Invalid request rate limits " + minRequestsPerMinute + " - " + maxRequestsPerMinute);
+    	}
+    	this.minIntervalNanos = intervalNanos(maxRequestsPerMinute);
+    	this.maxIntervalNanos = intervalNanos(minRequestsPerMinute);
+    	this.initialIntervalNanos = clamp(intervalNanos(requestsPerMinute));
+    	this.targetLatencyNanos = targetLatencyMillis * 1000000;
+    }
+
+    /**
+     * A controller that never adapts, every host gets requestsPerMinute.
+     */
+    public static AdaptiveRateController fixed(double requestsPerMinute) {
+    	return new AdaptiveRateController(requestsPerMinute, requestsPerMinute, requestsPerMinute, Long.MAX_VALUE / 1000000);
+    }
+
+    public synchronized long getIntervalNanos(String host) {
+    	HostState state = hosts.get(host);
+    	return state == null ? initialIntervalNanos : state.intervalNanos;
+    }
+
+    /**
+     * Records a response from the host and how long the server took to start answering.
+     */
+    public synchronized void success(String host, long latencyNanos) {
+    	HostState state = state(host);
+    	state.latencyNanos = (state.latencyNanos == 0) ? latencyNanos
+    			: (1 - LATENCY_WEIGHT) * state.latencyNanos + LATENCY_WEIGHT * latencyNanos;
+    	if (state.latencyNanos > targetLatencyNanos) {
+    		adjust(host, state, SLOW_DOWN);
+    	}
+    	else if (state.latencyNanos < targetLatencyNanos / 2) {
+    		adjust(host, state, SPEED_UP);
+    	}
+    }
+
+    /**
+     * Records a failed request (connection error, timeout, unexpected status) to the host.
+     */
+    public synchronized void failure(String host) {
+    	adjust(host, state(host), BACK_OFF);
+    }
+
+    private HostState state(String host) {
+    	HostState state = hosts.get(host);
+    	if (state == null) {
+    		state = new HostState();
+    		state.intervalNanos = initialIntervalNanos;
+    		hosts.put(host, state);
+    	}
+    	return state;
+    }
+
+    private void adjust(String host, HostState state, double factor) {
+    	long interval = clamp((long) (state.intervalNanos * factor));
+    	if (interval != state.intervalNanos) {
+    		state.intervalNanos = interval;
+    		LOG.debug(String.format("AdaptiveRateController...%s now one request every %d ms (latency %.0f ms)",
+    				host, interval / 1000000, state.latencyNanos / 1000000));
+    	}
+    }
+
+    private long clamp(long interval) {
+    	return Math.max(minIntervalNanos, Math.min(maxIntervalNanos, interval));
+    }
+
+    private static long intervalNanos(double requestsPerMinute) {
+    	if (requestsPerMinute <= 0) {
+    		throw new IllegalArgumentException("requestsPerMinute must be positive: " + requestsPerMinute);
+    	}
+    	return (long) (60000000000.0 / requestsPerMinute);
+    }
+}
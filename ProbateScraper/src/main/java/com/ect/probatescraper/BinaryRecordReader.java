@@ -0,0 +1,140 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the files written by {@link BinaryRecordWriter}. Call {@link #next()} to move to a record,
+ * then read its fields in the order they were written; fields left unread are skipped.
+ *
+ */
+public class BinaryRecordReader implements Closeable {
+
+    private final DataInputStream in;
+    private final String recordType;
+    private final List<List<String>> dictionaries;
+    private byte[] record = new byte[512];
+    private int length;
+    private int position;
+
+    public BinaryRecordReader(InputStream in) throws IOException {
+    	this.in = new DataInputStream(in);
+    	if (this.in.readInt() != BinaryRecordWriter.MAGIC) {
+    		throw new IOException("Not a binary record file");
+    	}
+    	int version = this.in.readUnsignedByte();
+    	if (version != BinaryRecordWriter.VERSION) {
+    		throw new IOException("Unsupported binary record version " + version);
+    	}
+    	this.recordType = this.in.readUTF();
+    	int dictionaryCount = readVarInt(this.in);
+    	this.dictionaries = new ArrayList<List<String>>(dictionaryCount);
+    	for (int i = 0; i < dictionaryCount; i++) {
+    		dictionaries.add(new ArrayList<String>());
+    	}
+    }
+
+    public String getRecordType() {
+    	return recordType;
+    }
+
+    /**
+     * @return false at the end of the file
+     */
+    public boolean next() throws IOException {
+    	while (true) {
+    		int frame = in.read();
+    		if (frame < 0) {
+    			return false;
+    		}
+
+    		if (frame == BinaryRecordWriter.FRAME_DICTIONARY) {
+    			int dictionary = readVarInt(in);
+    			byte[] bytes = new byte[readVarInt(in)];
+    			in.readFully(bytes);
+    			if (dictionary >= dictionaries.size()) {
+    				throw new IOException("Unknown dictionary " + dictionary);
+    			}
+    			dictionaries.get(dictionary).add(new String(bytes, BinaryRecordWriter.UTF8));
+    		}
+    		else if (frame == BinaryRecordWriter.FRAME_RECORD) {
+    			length = readVarInt(in);
+    			if (record.length < length) {
+    				record = new byte[Math.max(length, record.length * 2)];
+    			}
+    			in.readFully(record, 0, length);
+    			position = 0;
+    			return true;
+    		}
+    		else {
+    			throw new IOException("Unknown frame " + frame);
+    		}
+    	}
+    }
+
+    public String readString() throws IOException {
+    	int size = readVarInt();
+    	if (size == 0) {
+    		return null;
+    	}
+    	size--;
+    	if (position + size > length) {
+    		throw new EOFException("String runs past the end of the record");
+    	}
+    	String value = new String(record, position, size, BinaryRecordWriter.UTF8);
+    	position += size;
+    	return value;
+    }
+
+    public String readDictionary(int dictionary) throws IOException {
+    	int id = readVarInt();
+    	if (id == 0) {
+    		return null;
+    	}
+    	List<String> values = dictionaries.get(dictionary);
+    	if (id > values.size()) {
+    		throw new IOException("Undefined id " + id + " in dictionary " + dictionary);
+    	}
+    	return values.get(id - 1);
+    }
+
+    public int readCount() throws IOException {
+    	return readVarInt();
+    }
+
+    public void close() throws IOException {
+    	in.close();
+    }
+
+    private int readVarInt() throws IOException {
+    	int value = 0;
+    	for (int shift = 0; shift < 35; shift += 7) {
+    		if (position >= length) {
+    			throw new EOFException("Field runs past the end of the record");
+    		}
+    		int b = record[position++];
+    		value |= (b & 0x7F) << shift;
+    		if ((b & 0x80) == 0) {
+    			return value;
+    		}
+    	}
+    	throw new IOException("Malformed varint");
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+    	int value = 0;
+    	for (int shift = 0; shift < 35; shift += 7) {
+    		int b = in.readUnsignedByte();
+    		value |= (b & 0x7F) << shift;
+    		if ((b & 0x80) == 0) {
+    			return value;
+    		}
+    	}
+    	throw new IOException("Malformed varint");
+    }
+}
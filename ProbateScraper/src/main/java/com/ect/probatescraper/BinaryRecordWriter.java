@@ -0,0 +1,125 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes records in a compact, lossless binary form that loaders can read back with
+ * {@link BinaryRecordReader} without any text parsing.
+ * <p>
+ * The file starts with a header (magic, version, record type, number of dictionaries) followed by
+ * frames. A record frame is the record's length followed by its fields: strings are a varint of
+ * their UTF-8 length plus one (0 is null) and the bytes, counts are varints and dictionary values
+ * are a varint id (0 is null). The first time a dictionary value is seen a dictionary frame
+ * defining its id is written ahead of the record using it, so every record can be skipped whole.
+ *
+ */
+public class BinaryRecordWriter implements Closeable {
+    public static final String BINARY_FILENAME_SUFFIX = ".bin";
+    static final int MAGIC = 0x50534252;
+    static final int VERSION = 1;
+    static final int FRAME_RECORD = 1;
+    static final int FRAME_DICTIONARY = 2;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final DataOutputStream out;
+    private final List<Map<String, Integer>> dictionaries;
+    private final ByteArrayOutputStream record = new ByteArrayOutputStream(512);
+    private int recordCount;
+
+    public BinaryRecordWriter(OutputStream out, String recordType, int dictionaryCount) throws IOException {
+    	this.out = new DataOutputStream(out);
+    	this.dictionaries = new ArrayList<Map<String, Integer>>(dictionaryCount);
+    	for (int i = 0; i < dictionaryCount; i++) {
+    		dictionaries.add(new HashMap<String, Integer>());
+    	}
+    	this.out.writeInt(MAGIC);
+    	this.out.writeByte(VERSION);
+    	this.out.writeUTF(recordType);
+    	writeVarInt(this.out, dictionaryCount);
+    }
+
+    public void writeString(String value) {
+    	if (value == null) {
+    		writeVarInt(record, 0);
+    		return;
+    	}
+    	byte[] bytes = value.getBytes(UTF8);
+    	writeVarInt(record, bytes.length + 1);
+    	record.write(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes a value that repeats across records (case type, district, attorney) as an id into the
+     * given dictionary.
+     */
+    public void writeDictionary(int dictionary, String value) throws IOException {
+    	if (value == null) {
+    		writeVarInt(record, 0);
+    		return;
+    	}
+    	Map<String, Integer> ids = dictionaries.get(dictionary);
+    	Integer id = ids.get(value);
+    	if (id == null) {
+    		id = Integer.valueOf(ids.size() + 1);
+    		ids.put(value, id);
+    		byte[] bytes = value.getBytes(UTF8);
+    		out.writeByte(FRAME_DICTIONARY);
+    		writeVarInt(out, dictionary);
+    		writeVarInt(out, bytes.length);
+    		out.write(bytes);
+    	}
+    	writeVarInt(record, id.intValue());
+    }
+
+    public void writeCount(int count) {
+    	writeVarInt(record, count);
+    }
+
+    /**
+     * Appends the fields written since the last record as one record.
+     */
+    public void endRecord() throws IOException {
+    	out.writeByte(FRAME_RECORD);
+    	writeVarInt(out, record.size());
+    	record.writeTo(out);
+    	record.reset();
+    	recordCount++;
+    }
+
+    public int getRecordCount() {
+    	return recordCount;
+    }
+
+    public void flush() throws IOException {
+    	out.flush();
+    }
+
+    public void close() throws IOException {
+    	out.close();
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+    	while ((value & ~0x7F) != 0) {
+    		out.write((value & 0x7F) | 0x80);
+    		value >>>= 7;
+    	}
+    	out.write(value);
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    	while ((value & ~0x7F) != 0) {
+    		out.writeByte((value & 0x7F) | 0x80);
+    		value >>>= 7;
+    	}
+    	out.writeByte(value);
+    }
+}
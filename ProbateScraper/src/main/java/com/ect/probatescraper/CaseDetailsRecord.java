@@ -0,0 +1,103 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The fields of a case details page, as they appear on the page, with its fiduciaries in page order.
+ *
+ */
+public class CaseDetailsRecord {
+
+	public static final String RECORD_TYPE = "CaseDetailsRecord";
+	static final int DICTIONARY_CASE_TYPE = 0;
+	static final int DICTIONARY_ATTORNEY = 1;
+	static final int DICTIONARY_COUNT = 2;
+
+	private final String decedent;
+	private final String caseNumber;
+	private final String caseType;
+	private final String dateFiled;
+	private final List<Fiduciary> fiduciaries;
+
+	public CaseDetailsRecord(String decedent, String caseNumber, String caseType, String dateFiled,
+			List<Fiduciary> fiduciaries) {
+		this.decedent = decedent;
+		this.caseNumber = caseNumber;
+		this.caseType = caseType;
+		this.dateFiled = dateFiled;
+		this.fiduciaries = (fiduciaries == null ? new ArrayList<Fiduciary>(0) : fiduciaries);
+	}
+
+	public String getDecedent() {
+		return decedent;
+	}
+
+	public String getCaseNumber() {
+		return caseNumber;
+	}
+
+	public String getCaseType() {
+		return caseType;
+	}
+
+	public String getDateFiled() {
+		return dateFiled;
+	}
+
+	public List<Fiduciary> getFiduciaries() {
+		return fiduciaries;
+	}
+
+	public void writeTo(BinaryRecordWriter writer) throws IOException {
+		writer.writeString(decedent);
+		writer.writeString(caseNumber);
+		writer.writeDictionary(DICTIONARY_CASE_TYPE, caseType);
+		writer.writeString(dateFiled);
+		writer.writeCount(fiduciaries.size());
+		for (Fiduciary fiduciary : fiduciaries) {
+			writer.writeString(fiduciary.getName());
+			writer.writeDictionary(DICTIONARY_ATTORNEY, fiduciary.getRepresentedBy());
+			writer.writeString(fiduciary.getAddrLn1());
+			writer.writeString(fiduciary.getAddrLn2());
+			writer.writeString(fiduciary.getCityStateZip());
+			writer.writeString(fiduciary.getPhone());
+			writer.writeString(fiduciary.getFax());
+		}
+		writer.endRecord();
+	}
+
+	/**
+	 * Reads the record the reader was just moved to.
+	 */
+	public static CaseDetailsRecord readFrom(BinaryRecordReader reader) throws IOException {
+		String decedent = reader.readString();
+		String caseNumber = reader.readString();
+		String caseType = reader.readDictionary(DICTIONARY_CASE_TYPE);
+		String dateFiled = reader.readString();
+		int count = reader.readCount();
+		List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>(count);
+		for (int i = 0; i < count; i++) {
+			Fiduciary fiduciary = new Fiduciary(reader.readString());
+			fiduciary.setRepresentedBy(reader.readDictionary(DICTIONARY_ATTORNEY));
+			fiduciary.setAddrLn1(reader.readString());
+			fiduciary.setAddrLn2(reader.readString());
+			fiduciary.setCityStateZip(reader.readString());
+			fiduciary.setPhone(reader.readString());
+			fiduciary.setFax(reader.readString());
+			fiduciaries.add(fiduciary);
+		}
+		return new CaseDetailsRecord(decedent, caseNumber, caseType, dateFiled, fiduciaries);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder text = new StringBuilder();
+		text.append(decedent).append("|").append(caseNumber).append("|").append(caseType).append("|").append(dateFiled);
+		for (Fiduciary fiduciary : fiduciaries) {
+			text.append("|").append(fiduciary);
+		}
+		return text.toString();
+	}
+}
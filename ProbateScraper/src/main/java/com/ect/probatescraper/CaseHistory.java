@@ -0,0 +1,211 @@
+package com.ect.probatescraper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent fetch history of every case whose details were fetched: when it was filed, when it was
+ * last fetched, how many times it was fetched and how many of those fetches found its details
+ * changed. Changes are told apart by a hash of the fields written to the case details and fiduciary
+ * csv rows, so a page that only differs in its layout or a timestamp does not count as changed. The
+ * {@link RecrawlScheduler} ranks the cases by it.
+ * <p>
+ * Like the {@link KnownCaseIndex} every change is appended to a {@link RecordLog} holding the whole
+ * state of the case.
+ *
+ */
+public class CaseHistory {
+    private static final Logger LOG = Logger.getLogger(CaseHistory.class);
+    public static final String HISTORY_FILENAME = "CaseHistory.idx";
+
+    private static final int RECORD_SIZE = 8 + 8 + 8 + 4 + 4 + 4;
+    private static final int COMPACT_SLACK = 1024;
+
+    /**
+     * What is known of one case.
+     */
+    public static class Entry {
+    	private final long contentHash;
+    	private final long fetchedMillis;
+    	private final int dateFiled;
+    	private final int fetches;
+    	private final int changes;
+
+    	Entry(long contentHash, long fetchedMillis, int dateFiled, int fetches, int changes) {
+    		this.contentHash = contentHash;
+    		this.fetchedMillis = fetchedMillis;
+    		this.dateFiled = dateFiled;
+    		this.fetches = fetches;
+    		this.changes = changes;
+    	}
+
+		/**
+		 * @return hash of the details last extracted, 0 when they could not be extracted
+		 */
+		public long getContentHash() {
+			return contentHash;
+		}
+
+		public long getFetchedMillis() {
+			return fetchedMillis;
+		}
+
+		/**
+		 * @return date filed as yyyymmdd, 0 when unknown
+		 */
+		public int getDateFiled() {
+			return dateFiled;
+		}
+
+		public int getFetches() {
+			return fetches;
+		}
+
+		/**
+		 * @return how many fetches after the first found the details changed
+		 */
+		public int getChanges() {
+			return changes;
+		}
+    }
+
+    private final RecordLog log;
+    private final Map<Long, Entry> entries = new HashMap<Long, Entry>();
+
+    private CaseHistory(File logFile) {
+    	this.log = new RecordLog(logFile, RECORD_SIZE);
+    }
+
+    /**
+     * Replays the record log (if any) and opens it for appending.
+     */
+    public static CaseHistory open(File logFile) throws IOException {
+    	final CaseHistory history = new CaseHistory(logFile);
+    	history.log.replay(new RecordLog.RecordReader() {
+    		public void read(DataInputStream in) throws IOException {
+    			long key = in.readLong();
+    			history.entries.put(Long.valueOf(key), new Entry(in.readLong(), in.readLong(), in.readInt(), in.readInt(), in.readInt()));
+    		}
+    	});
+    	if (history.log.needsCompaction(history.entries.size(), COMPACT_SLACK)) {
+    		history.compact();
+    	}
+    	history.log.openForAppend();
+    	LOG.info("CaseHistory..." + history.entries.size() + " cases with history from " + logFile.getAbsolutePath());
+    	return history;
+    }
+
+    /**
+     * @return the history of the case, or null when it was never fetched
+     */
+    public synchronized Entry get(String caseNumber) {
+    	return entries.get(Long.valueOf(KnownCaseIndex.encode(caseNumber)));
+    }
+
+    /**
+     * Records a fetch of the case's details.
+     *
+     * @param details
+     *            what was extracted from the page, null when nothing could be
+     * @return true when the details differ from the ones of the previous fetch
+     */
+    public synchronized boolean fetched(String caseNumber, CaseDetailsRecord details, long millis) throws IOException {
+    	Long key = Long.valueOf(KnownCaseIndex.encode(caseNumber));
+    	Entry previous = entries.get(key);
+    	long contentHash = (details == null ? 0 : contentHash(details));
+    	int dateFiled = (details == null ? 0 : dateFiled(details));
+    	boolean changed = previous != null && contentHash != 0 && previous.contentHash != 0 && contentHash != previous.contentHash;
+    	final Entry entry;
+    	if (previous == null) {
+    		entry = new Entry(contentHash, millis, dateFiled, 1, 0);
+    	}
+    	else {
+    		entry = new Entry(contentHash == 0 ? previous.contentHash : contentHash, millis, dateFiled == 0 ? previous.dateFiled : dateFiled,
+    				previous.fetches + 1, previous.changes + (changed ? 1 : 0));
+    	}
+    	entries.put(key, entry);
+    	final long logKey = key.longValue();
+    	log.append(new RecordLog.RecordWriter() {
+    		public void write(DataOutputStream out) throws IOException {
+    			writeRecord(out, logKey, entry);
+    		}
+    	});
+    	return changed;
+    }
+
+    public synchronized int size() {
+    	return entries.size();
+    }
+
+    public synchronized void close() throws IOException {
+    	log.close();
+    }
+
+    /**
+     * 64 bit FNV-1a of the fields of the case's details and fiduciary csv rows, never 0.
+     */
+    static long contentHash(CaseDetailsRecord details) {
+    	long hash = KnownCaseIndex.FNV_OFFSET_BASIS;
+    	hash = field(hash, details.getDecedent());
+    	hash = field(hash, details.getCaseNumber());
+    	hash = field(hash, details.getCaseType());
+    	hash = field(hash, details.getDateFiled());
+    	for (Fiduciary fiduciary : details.getFiduciaries()) {
+    		hash = field(hash, fiduciary.getName());
+    		hash = field(hash, fiduciary.getRepresentedBy());
+    		hash = field(hash, fiduciary.getAddrLn1());
+    		hash = field(hash, fiduciary.getAddrLn2());
+    		hash = field(hash, fiduciary.getCityStateZip());
+    		hash = field(hash, fiduciary.getPhone());
+    		hash = field(hash, fiduciary.getFax());
+    	}
+    	return hash == 0 ? 1 : hash;
+    }
+
+    /**
+     * Hashes a field and a separator after it, so text moving between neighbouring fields is a change.
+     * A null field is written empty and hashes like one.
+     */
+    private static long field(long hash, String value) {
+    	return KnownCaseIndex.fnv1a(KnownCaseIndex.fnv1a(hash, value == null ? "" : value), "\t");
+    }
+
+    private static int dateFiled(CaseDetailsRecord details) {
+    	if (details.getDateFiled() == null) {
+    		return 0;
+    	}
+    	try {
+    		return CaseIndex.parseDate(details.getDateFiled());
+    	} catch (IllegalArgumentException e) {
+    		return 0;
+    	}
+    }
+
+    /**
+     * Rewrites the log with one record per case.
+     */
+    private void compact() throws IOException {
+    	log.compact(new RecordLog.RecordWriter() {
+    		public void write(DataOutputStream out) throws IOException {
+    			for (Map.Entry<Long, Entry> entry : entries.entrySet()) {
+    				writeRecord(out, entry.getKey().longValue(), entry.getValue());
+    			}
+    		}
+    	}, entries.size());
+    }
+
+    private static void writeRecord(DataOutputStream out, long key, Entry entry) throws IOException {
+    	out.writeLong(key);
+    	out.writeLong(entry.contentHash);
+    	out.writeLong(entry.fetchedMillis);
+    	out.writeInt(entry.dateFiled);
+    	out.writeInt(entry.fetches);
+    	out.writeInt(entry.changes);
+    }
+}
@@ -0,0 +1,304 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Every parsed case in memory, joined by case number from its case list row and its details page,
+ * with bitmap indexes on case type, district, attorney, zip code and date filed. A query ANDs the
+ * bitmaps of its filters, so it costs a few bitmap operations however many cases are indexed.
+ * <p>
+ * The case list names a case type by its code (DR) and the details page by its name (Decedent Estate),
+ * each is indexed on its own so replacing one half of a case never touches the other's bits; a case
+ * type filter matches either.
+ * <p>
+ * Cases are added by the parser's writer thread while the http endpoint reads, a read write lock
+ * keeps the two apart.
+ *
+ */
+public class CaseIndex {
+	private static final Pattern ZIP = Pattern.compile("(\\d{5})(-\\d{4})?\\s*$");
+	private static final Pattern US_DATE = Pattern.compile("(\\d{1,2})/(\\d{1,2})/(\\d{4})");
+	private static final Pattern ISO_DATE = Pattern.compile("(\\d{4})-(\\d{1,2})-(\\d{1,2})");
+
+	/**
+	 * What is known of a single case, either half may still be missing.
+	 */
+	public static class IndexedCase {
+		private final CaseListRecord listing;
+		private final CaseDetailsRecord details;
+
+		IndexedCase(CaseListRecord listing, CaseDetailsRecord details) {
+			this.listing = listing;
+			this.details = details;
+		}
+
+		/**
+		 * @return the case list row, or null when only the details page was parsed
+		 */
+		public CaseListRecord getListing() {
+			return listing;
+		}
+
+		/**
+		 * @return the details page, or null when only the case list row was parsed
+		 */
+		public CaseDetailsRecord getDetails() {
+			return details;
+		}
+
+		public String getCaseNumber() {
+			return listing != null ? listing.getCaseNumber() : details.getCaseNumber();
+		}
+	}
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Map<String, Integer> docs = new HashMap<String, Integer>();
+	private final List<IndexedCase> cases = new ArrayList<IndexedCase>();
+	private final Map<String, BitSet> byListingCaseType = new HashMap<String, BitSet>();
+	private final Map<String, BitSet> byDetailsCaseType = new HashMap<String, BitSet>();
+	private final Map<String, BitSet> byDistrict = new HashMap<String, BitSet>();
+	private final Map<String, BitSet> byAttorney = new HashMap<String, BitSet>();
+	private final NavigableMap<String, BitSet> byZip = new TreeMap<String, BitSet>();
+	private final NavigableMap<Integer, BitSet> byDateFiled = new TreeMap<Integer, BitSet>();
+
+	public void add(CaseListRecord listing) {
+		lock.writeLock().lock();
+		try {
+			int doc = doc(listing.getCaseNumber());
+			IndexedCase previous = cases.get(doc);
+			if (previous.listing != null) {
+				unindexListing(doc, previous.listing);
+			}
+			cases.set(doc, new IndexedCase(listing, previous.details));
+			index(byListingCaseType, key(listing.getCaseType()), doc);
+			index(byDistrict, key(listing.getDistrict()), doc);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void add(CaseDetailsRecord details) {
+		lock.writeLock().lock();
+		try {
+			int doc = doc(details.getCaseNumber());
+			IndexedCase previous = cases.get(doc);
+			if (previous.details != null) {
+				unindexDetails(doc, previous.details);
+			}
+			cases.set(doc, new IndexedCase(previous.listing, details));
+			index(byDetailsCaseType, key(details.getCaseType()), doc);
+			int dateFiled = parseDateOrZero(details.getDateFiled());
+			if (dateFiled != 0) {
+				index(byDateFiled, Integer.valueOf(dateFiled), doc);
+			}
+			for (String attorney : attorneys(details)) {
+				index(byAttorney, attorney, doc);
+			}
+			for (String zip : zips(details)) {
+				index(byZip, zip, doc);
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the matching cases in the order they were first indexed, at most the query's limit
+	 */
+	public List<IndexedCase> query(CaseQuery query) {
+		lock.readLock().lock();
+		try {
+			BitSet matches = new BitSet(cases.size());
+			matches.set(0, cases.size());
+			if (query.getCaseType() != null) {
+				BitSet ofType = (BitSet) lookup(byListingCaseType, key(query.getCaseType())).clone();
+				ofType.or(lookup(byDetailsCaseType, key(query.getCaseType())));
+				matches.and(ofType);
+			}
+			if (query.getDistrict() != null) {
+				matches.and(lookup(byDistrict, key(query.getDistrict())));
+			}
+			if (query.getAttorney() != null) {
+				matches.and(lookup(byAttorney, attorneyKey(query.getAttorney())));
+			}
+			if (query.getZipPrefix() != null) {
+				matches.and(union(byZip.subMap(query.getZipPrefix(), true, query.getZipPrefix() + Character.MAX_VALUE, false)));
+			}
+			if (query.getFiledFrom() != 0 || query.getFiledTo() != 0) {
+				Integer from = Integer.valueOf(query.getFiledFrom());
+				Integer to = Integer.valueOf(query.getFiledTo() == 0 ? Integer.MAX_VALUE : query.getFiledTo());
+				matches.and(from.compareTo(to) > 0 ? new BitSet() : union(byDateFiled.subMap(from, true, to, true)));
+			}
+
+			List<IndexedCase> found = new ArrayList<IndexedCase>(Math.min(matches.cardinality(), query.getLimit()));
+			for (int doc = matches.nextSetBit(0); doc >= 0 && found.size() < query.getLimit(); doc = matches.nextSetBit(doc + 1)) {
+				found.add(cases.get(doc));
+			}
+			return found;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return cases.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @return the distinct attorneys (represented by) of the case's fiduciaries, normalized for lookup
+	 */
+	static Set<String> attorneys(CaseDetailsRecord details) {
+		Set<String> attorneys = new LinkedHashSet<String>();
+		for (Fiduciary fiduciary : details.getFiduciaries()) {
+			String attorney = attorneyKey(fiduciary.getRepresentedBy());
+			if (attorney.length() > 0) {
+				attorneys.add(attorney);
+			}
+		}
+		return attorneys;
+	}
+
+	/**
+	 * @return the distinct five digit zip codes of the case's fiduciaries
+	 */
+	static Set<String> zips(CaseDetailsRecord details) {
+		Set<String> zips = new LinkedHashSet<String>();
+		for (Fiduciary fiduciary : details.getFiduciaries()) {
+			String cityStateZip = fiduciary.getCityStateZip();
+			if (cityStateZip != null) {
+				Matcher matcher = ZIP.matcher(cityStateZip);
+				if (matcher.find()) {
+					zips.add(matcher.group(1));
+				}
+			}
+		}
+		return zips;
+	}
+
+	/**
+	 * Upper case, single spaced and without the ATTY title, so "Atty  Susan Miller" finds
+	 * "ATTY SUSAN MILLER".
+	 */
+	static String attorneyKey(String attorney) {
+		if (attorney == null) {
+			return "";
+		}
+		String key = key(attorney).replaceAll("\\s+", " ");
+		if (key.startsWith("ATTY ")) {
+			key = key.substring("ATTY ".length());
+		}
+		else if (key.startsWith("ATTORNEY ")) {
+			key = key.substring("ATTORNEY ".length());
+		}
+		return key;
+	}
+
+	/**
+	 * @param date
+	 *            as on the details page (01/15/2014) or ISO (2014-01-15)
+	 * @return the date as yyyymmdd
+	 * @throws IllegalArgumentException
+	 *             when it is neither
+	 */
+	static int parseDate(String date) {
+		Matcher us = US_DATE.matcher(date.trim());
+		if (us.matches()) {
+			return Integer.parseInt(us.group(3)) * 10000 + Integer.parseInt(us.group(1)) * 100 + Integer.parseInt(us.group(2));
+		}
+		Matcher iso = ISO_DATE.matcher(date.trim());
+		if (iso.matches()) {
+			return Integer.parseInt(iso.group(1)) * 10000 + Integer.parseInt(iso.group(2)) * 100 + Integer.parseInt(iso.group(3));
+		}
+		throw new IllegalArgumentException("Not a date: " + date);
+	}
+
+	private static int parseDateOrZero(String date) {
+		if (date == null) {
+			return 0;
+		}
+		try {
+			return parseDate(date);
+		} catch (IllegalArgumentException e) {
+			return 0;
+		}
+	}
+
+	private int doc(String caseNumber) {
+		Integer doc = docs.get(caseNumber);
+		if (doc == null) {
+			doc = Integer.valueOf(cases.size());
+			docs.put(caseNumber, doc);
+			cases.add(new IndexedCase(null, null));
+		}
+		return doc.intValue();
+	}
+
+	private void unindexListing(int doc, CaseListRecord listing) {
+		unindex(byListingCaseType, key(listing.getCaseType()), doc);
+		unindex(byDistrict, key(listing.getDistrict()), doc);
+	}
+
+	private void unindexDetails(int doc, CaseDetailsRecord details) {
+		unindex(byDetailsCaseType, key(details.getCaseType()), doc);
+		int dateFiled = parseDateOrZero(details.getDateFiled());
+		if (dateFiled != 0) {
+			unindex(byDateFiled, Integer.valueOf(dateFiled), doc);
+		}
+		for (String attorney : attorneys(details)) {
+			unindex(byAttorney, attorney, doc);
+		}
+		for (String zip : zips(details)) {
+			unindex(byZip, zip, doc);
+		}
+	}
+
+	private static <K> void index(Map<K, BitSet> index, K key, int doc) {
+		BitSet docs = index.get(key);
+		if (docs == null) {
+			docs = new BitSet();
+			index.put(key, docs);
+		}
+		docs.set(doc);
+	}
+
+	private static <K> void unindex(Map<K, BitSet> index, K key, int doc) {
+		BitSet docs = index.get(key);
+		if (docs != null) {
+			docs.clear(doc);
+		}
+	}
+
+	private static BitSet lookup(Map<String, BitSet> index, String key) {
+		BitSet docs = index.get(key);
+		return docs == null ? new BitSet() : docs;
+	}
+
+	private static BitSet union(Map<?, BitSet> range) {
+		BitSet docs = new BitSet();
+		for (BitSet rangeDocs : range.values()) {
+			docs.or(rangeDocs);
+		}
+		return docs;
+	}
+
+	private static String key(String value) {
+		return value == null ? "" : value.trim().toUpperCase();
+	}
+}
@@ -0,0 +1,89 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Everything the collector and the parser take from a case list page: the column headers, the case
+ * rows and the links to the other pages of the list.
+ *
+ */
+public class CaseListPage {
+
+	private final List<String> headers = new ArrayList<String>(8);
+	private final List<CaseListRecord> records = new ArrayList<CaseListRecord>(64);
+	private final Map<Integer, String> pageLinks = new TreeMap<Integer, String>();
+
+	public List<String> getHeaders() {
+		return headers;
+	}
+
+	public List<CaseListRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * @return page number to link for every page of the list except the current one
+	 */
+	public Map<Integer, String> getPageLinks() {
+		return pageLinks;
+	}
+
+	/**
+	 * @return case number and link of the records of the given case type
+	 */
+	public List<String[]> getDetailsLinks(String caseTypeTarget) {
+		if (caseTypeTarget == null) {
+			return new ArrayList<String[]>();
+		}
+		return getDetailsLinks(Collections.singletonList(caseTypeTarget.toUpperCase())).get(caseTypeTarget.toUpperCase());
+	}
+
+	/**
+	 * Sorts the records of every wanted case type in a single pass over the page.
+	 *
+	 * @param caseTypes
+	 *            upper case codes, e.g. DR and TR
+	 * @return for each case type, in the order given, case number and link of its records
+	 */
+	public Map<String, List<String[]>> getDetailsLinks(Collection<String> caseTypes) {
+		Map<String, List<String[]>> detailsLinks = new LinkedHashMap<String, List<String[]>>();
+		for (String caseType : caseTypes) {
+			detailsLinks.put(caseType, new ArrayList<String[]>());
+		}
+		for (CaseListRecord record : records) {
+			List<String[]> typeLinks = (record.getCaseType() == null ? null : detailsLinks.get(record.getCaseType().toUpperCase()));
+			if (typeLinks != null) {
+				typeLinks.add(new String[] {record.getCaseNumber(), record.getLink()});
+			}
+		}
+		return detailsLinks;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CaseListPage)) {
+			return false;
+		}
+		CaseListPage other = (CaseListPage) obj;
+		return headers.equals(other.headers) && records.equals(other.records) && pageLinks.equals(other.pageLinks);
+	}
+
+	@Override
+	public int hashCode() {
+		return records.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "headers=" + headers + ", records=" + records + ", pageLinks=" + pageLinks;
+	}
+}
@@ -0,0 +1,105 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+
+/**
+ * One row (.data-row) of a case list page.
+ *
+ */
+public class CaseListRecord {
+
+	public static final String RECORD_TYPE = "CaseListRecord";
+	static final int DICTIONARY_CASE_TYPE = 0;
+	static final int DICTIONARY_DISTRICT = 1;
+	static final int DICTIONARY_COUNT = 2;
+
+	private final String caseNumber;
+	private final String lastName;
+	private final String firstName;
+	private final String middleInitial;
+	private final String caseType;
+	private final String district;
+	private final String link;
+
+	public CaseListRecord(String caseNumber, String lastName, String firstName, String middleInitial, 
+			String caseType, String district, String link) {
+		this.caseNumber = caseNumber;
+		this.lastName = lastName;
+		this.firstName = firstName;
+		this.middleInitial = middleInitial;
+		this.caseType = caseType;
+		this.district = district;
+		this.link = link;
+	}
+
+	public String getCaseNumber() {
+		return caseNumber;
+	}
+
+	public String getLastName() {
+		return lastName;
+	}
+
+	public String getFirstName() {
+		return firstName;
+	}
+
+	public String getMiddleInitial() {
+		return middleInitial;
+	}
+
+	public String getCaseType() {
+		return caseType;
+	}
+
+	public String getDistrict() {
+		return district;
+	}
+
+	public String getLink() {
+		return link;
+	}
+
+	public void writeTo(BinaryRecordWriter writer) throws IOException {
+		writer.writeString(caseNumber);
+		writer.writeString(lastName);
+		writer.writeString(firstName);
+		writer.writeString(middleInitial);
+		writer.writeDictionary(DICTIONARY_CASE_TYPE, caseType);
+		writer.writeDictionary(DICTIONARY_DISTRICT, district);
+		writer.writeString(link);
+		writer.endRecord();
+	}
+
+	/**
+	 * Reads the record the reader was just moved to.
+	 */
+	public static CaseListRecord readFrom(BinaryRecordReader reader) throws IOException {
+		return new CaseListRecord(reader.readString(), reader.readString(), reader.readString(), reader.readString(),
+				reader.readDictionary(DICTIONARY_CASE_TYPE), reader.readDictionary(DICTIONARY_DISTRICT), reader.readString());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CaseListRecord)) {
+			return false;
+		}
+		CaseListRecord other = (CaseListRecord) obj;
+		return caseNumber.equals(other.caseNumber) && lastName.equals(other.lastName) && firstName.equals(other.firstName)
+				&& middleInitial.equals(other.middleInitial) && caseType.equals(other.caseType) 
+				&& district.equals(other.district) && link.equals(other.link);
+	}
+
+	@Override
+	public int hashCode() {
+		return caseNumber.hashCode() * 31 + link.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return caseNumber + "|" + lastName + "|" + firstName + "|" + middleInitial + "|" + caseType + "|" + district + "|" + link;
+	}
+}
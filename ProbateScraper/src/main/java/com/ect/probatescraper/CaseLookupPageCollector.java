@@ -1,25 +1,35 @@
 package com.ect.probatescraper;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.URL;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Random;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
 /**
  * Traverses the open cases present on apps.ctprobate.gov by district to pull the individual 
- * case details and put locally.
+ * case details and put locally. Districts are supplied on the command line (or "ALL") and are 
+ * collected side by side by the {@link CrawlEngine}.
  *
  */
 public class CaseLookupPageCollector {
@@ -30,180 +40,862 @@ public class CaseLookupPageCollector {
     public static final String CSV_FILENAME_SUFFIX = PageParserProbateList.CSV_FILENAME_SUFFIX;
     public static final String DATA_DIR = PageParserProbateList.DATA_DIR;
 
-    static PrintWriter output;
-    static Random random;
-	static int sleepMin = 2;
-	static int sleepMax = 20;
-	static boolean useLocalListFiles = false;
+    public static final String CASE_LOOKUP_URL = "http://apps.ctprobate.gov/caselookup?CaseType=0&District=%s&CaseStatusOption=Open";
+    public static final String DEFAULT_DISTRICT = "PD05";
+    public static final String ALL_DISTRICTS = "ALL";
+    public static final int DISTRICT_COUNT = 54;
+    static final long TRANSFER_CHUNK = 64 * 1024;
+    static final String PART_FILENAME_SUFFIX = ".part";
+
+	static CrawlSettings settings;
+	static boolean resumeCrawl = Boolean.parseBoolean(System.getProperty("probate.crawl.resume", "true"));
+	static int checkpointEvery = Integer.getInteger("probate.crawl.checkpointEvery", 1000).intValue();
+	static CrawlFrontier frontier;
+	static int crawlWorkers = Integer.getInteger("probate.crawl.workers", 4).intValue();
+	static long targetLatencyMillis = Long.getLong("probate.crawl.targetLatencyMillis", 2000).longValue();
+	static AdaptiveRateController rateController;
+	static boolean useHttpCache = Boolean.parseBoolean(System.getProperty("probate.http.cache", "true"));
+	static HttpCache httpCache;
+	static boolean useKnownCases = Boolean.parseBoolean(System.getProperty("probate.cases.skipKnown", "true"));
+	static long caseMaxAgeMillis = Long.getLong("probate.cases.maxAgeHours", 7 * 24).longValue() * 60 * 60 * 1000;
+	static KnownCaseIndex knownCases;
+	static int recrawlBudget = Integer.getInteger("probate.recrawl.budget", 0).intValue();
+	static double recrawlFiledHalfLifeDays = Double.parseDouble(System.getProperty("probate.recrawl.filedHalfLifeDays", "30"));
+	static CaseHistory caseHistory;
+	static RecrawlScheduler recrawlScheduler;
+	static RetryPolicy retryPolicy = new RetryPolicy(Integer.getInteger("probate.fetch.maxAttempts", 4).intValue(),
+			Long.getLong("probate.fetch.retryBaseMillis", 1000).longValue(), Long.getLong("probate.fetch.retryMaxMillis", 60000).longValue());
+	static CircuitBreaker circuitBreaker = new CircuitBreaker(Integer.getInteger("probate.fetch.breakerFailures", 5).intValue(),
+			Long.getLong("probate.fetch.breakerOpenSeconds", 60).longValue() * 1000);
+	static boolean useRetryQueue = Boolean.parseBoolean(System.getProperty("probate.fetch.retryQueue", "true"));
+	static RetryQueue retryQueue;
+	static String fetchClient = System.getProperty("probate.fetch.client", "httpclient");
+	static int connectTimeoutMillis = Integer.getInteger("probate.fetch.connectTimeoutMillis", 10000).intValue();
+	static int readTimeoutMillis = Integer.getInteger("probate.fetch.readTimeoutMillis", 60000).intValue();
+	static boolean useHttp2 = Boolean.parseBoolean(System.getProperty("probate.fetch.http2", "true"));
+	static PageFetcher fetcher;
+	static boolean asyncDetails = Boolean.parseBoolean(System.getProperty("probate.fetch.async", "false"));
+	static int maxInFlight = Integer.getInteger("probate.fetch.maxInFlight", 16).intValue();
+	static List<String> caseTypes = PageParserProbateList.parseCaseTypes(System.getProperty("probate.crawl.caseTypes", 
+			PageParserProbateList.CASE_TYPE_DECEDENT_ESTATE_REGULAR));
+	static Map<String, DetailFetchPool> detailFetchPools;
+	static boolean pipelined = Boolean.parseBoolean(System.getProperty("probate.crawl.pipeline", "false"));
+	static boolean archivePages = Boolean.parseBoolean(System.getProperty("probate.crawl.archive", "true"));
+	static int pipelineCapacity = Integer.getInteger("probate.crawl.pipelineQueue", 256).intValue();
+	static CrawlPipeline pipeline;
+	static MemoryPageStore memoryStore;
+	static PageStore pageStore;
+	static String shardDirectory = System.getProperty("probate.shard.dir", "");
+	static String shardWorkerId = System.getProperty("probate.shard.workerId", ManagementFactory.getRuntimeMXBean().getName());
+	static long shardLeaseMillis = Long.getLong("probate.shard.leaseSeconds", 60).longValue() * 1000;
+	static int shardPagesPerUnit = Integer.getInteger("probate.shard.pagesPerUnit", 5).intValue();
+	static long shardPollMillis = 1000;
 
     public static void main( String[] args ) {
         LOG.info("CaseLookupPageCollector...");
-    	random = new Random();
 
+        boolean success = collect(parseDistricts(args), new File(System.getProperty("probate.dataDir", DATA_DIR)), 
+        		CrawlSettings.fromProperties());
+        closeFetcher();
+        if (!success) {
+			LOG.info("CaseLookupPageCollector...Failed to collect one or more districts");
+			return;
+        }
+
+        LOG.info("CaseLookupPageCollector...Complete");
+    }
+
+    /**
+     * Crawls the districts into the data directory with the given settings and the configured
+     * ones for the rest, everything opened for the crawl is closed again before returning; the
+     * fetcher is left open for the next crawl.
+     *
+     * @return true when every district was collected, nothing left in the retry queue
+     */
+    static boolean collect(List<String> districts, File dataDirectory, CrawlSettings crawlSettings) {
+        settings = crawlSettings;
+        rateController = new AdaptiveRateController(settings.getRequestsPerMinute(), settings.getMinRequestsPerMinute(), 
+        		settings.getMaxRequestsPerMinute(), targetLatencyMillis);
+        PolitenessScheduler scheduler = new PolitenessScheduler(rateController);
+        LOG.info("CaseLookupPageCollector...Districts " + districts + ", " + settings.getRequestsPerMinute() 
+        		+ " requests per minute per host, adapting between " + settings.getMinRequestsPerMinute() + " and " 
+        		+ settings.getMaxRequestsPerMinute());
+
+        boolean archive = archivePages;
+        if (!archive && !pipelined) {
+        	LOG.warn("CaseLookupPageCollector...Pages are only left unarchived by the pipeline, archiving them");
+        	archive = true;
+        }
+        try {
+        	return collect(districts, dataDirectory, scheduler, archive);
+        } finally {
+        	closeCrawl();
+        }
+    }
+
+    private static boolean collect(List<String> districts, File dataDirectory, PolitenessScheduler scheduler, boolean archive) {
+        if (useHttpCache && archive) {
+        	try {
+				httpCache = HttpCache.open(new File(dataDirectory, HttpCache.CACHE_FILENAME));
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open http cache, every page will be downloaded", e);
+			}
+        }
+
+        if (useKnownCases) {
+        	try {
+        		knownCases = KnownCaseIndex.open(new File(dataDirectory, KnownCaseIndex.INDEX_FILENAME));
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open known case index, every case will be fetched", e);
+			}
+        }
+
+        if (recrawlBudget > 0) {
+        	try {
+        		caseHistory = CaseHistory.open(new File(dataDirectory, CaseHistory.HISTORY_FILENAME));
+        		recrawlScheduler = new RecrawlScheduler(caseHistory, recrawlBudget, recrawlFiledHalfLifeDays, System.currentTimeMillis());
+        		LOG.info("CaseLookupPageCollector...Fetching the " + recrawlBudget + " case details most likely to have changed");
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open case history, cases will be fetched in page order", e);
+			}
+        }
+
+        if (useRetryQueue) {
+        	try {
+        		retryQueue = RetryQueue.open(new File(dataDirectory, RetryQueue.QUEUE_FILENAME));
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open retry queue, failed requests will not be kept", e);
+			}
+        }
+
+        if (archive) {
+        	try {
+        		pageStore = PageParserProbateList.openPageStore(dataDirectory, PageParserProbateList.getJulianWithMillis());
+        	} catch (IOException e) {
+        		LOG.error("CaseLookupPageCollector...Failed to open page store", e);
+        		return false;
+        	}
+        }
+        else {
+        	memoryStore = new MemoryPageStore();
+        	pageStore = memoryStore;
+        }
+
+        if (pipelined) {
+        	try {
+				pipeline = CrawlPipeline.open(dataDirectory, pipelineCapacity);
+				LOG.info("CaseLookupPageCollector...Writing the csv files as pages arrive" + (archive ? "" : ", html not archived"));
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open the pipeline outputs", e);
+				return false;
+			}
+        }
+
+        if (resumeCrawl) {
+        	try {
+        		frontier = CrawlFrontier.open(dataDirectory, checkpointEvery);
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to open crawl frontier, the crawl cannot be resumed", e);
+			}
+        }
+
+        //each case type's details are fetched through their own queue, so a slow type does not hold up the others;
+        //the types share the in flight limit
+        if (asyncDetails) {
+        	int maxInFlightPerType = Math.max(1, maxInFlight / caseTypes.size());
+        	detailFetchPools = new LinkedHashMap<String, DetailFetchPool>();
+        	for (String caseType : caseTypes) {
+        		detailFetchPools.put(caseType, new DetailFetchPool(maxInFlightPerType, "detail-fetch-" + caseType));
+        	}
+        	LOG.info("CaseLookupPageCollector...Case details fetched in the background, up to " + maxInFlightPerType 
+        			+ " at a time for each of " + caseTypes.size() + " case types");
+        }
+        LOG.info("CaseLookupPageCollector...Collecting the details of case types " + caseTypes);
+
+        Metrics.start();
+        boolean success = false;
+        try {
+            if (shardDirectory.length() > 0) {
+            	//a share of a crawl split over several collectors, the units come from the shared directory
+            	try {
+            		LeaseCoordinator coordinator = LeaseCoordinator.open(new File(shardDirectory), shardWorkerId, shardLeaseMillis);
+            		LOG.info("CaseLookupPageCollector...Sharing the crawl through " + shardDirectory + " as " + coordinator.getWorkerId());
+            		success = new ShardedCrawl(coordinator, districts, crawlWorkers, scheduler, shardPagesPerUnit, shardPollMillis).run();
+            	} catch (IOException e) {
+            		LOG.error("CaseLookupPageCollector...Failed to open the shard directory " + shardDirectory, e);
+            		success = false;
+            	}
+            }
+            else {
+            	CrawlEngine engine = new CrawlEngine(districts, crawlWorkers, scheduler);
+            	success = engine.run();
+            }
+            if (recrawlScheduler != null) {
+            	fetchScheduledCases(scheduler);
+            }
+            awaitDetails();
+            if (retryQueue != null) {
+            	success &= drainRetryQueue(scheduler);
+            }
+            if (pipeline != null) {
+            	try {
+            		success &= pipeline.close();
+            		pipeline = null;
+            	} catch (InterruptedException e) {
+            		Thread.currentThread().interrupt();
+            	}
+            }
+        } finally {
+        	//the metrics server and bean go away however the crawl ended
+        	Metrics.stop();
+        }
+        if (frontier != null) {
+        	//the crawl got to the end and whatever failed is in the retry queue, otherwise the next run
+        	//picks up from the frontier
+        	if (Thread.currentThread().isInterrupted() || (!success && retryQueue == null)) {
+        		frontier.close();
+        	}
+        	else {
+        		frontier.finish();
+        	}
+        }
+        return success;
+    }
+
+    /**
+     * Closes whatever the crawl opened, however far it got, and forgets the crawl's settings.
+     */
+    private static void closeCrawl() {
+        if (frontier != null) {
+        	frontier.close();
+        }
+        if (detailFetchPools != null) {
+        	for (DetailFetchPool detailFetchPool : detailFetchPools.values()) {
+        		try {
+        			detailFetchPool.close();
+        		} catch (InterruptedException e) {
+        			Thread.currentThread().interrupt();
+        		}
+        	}
+        }
+        closeQuietly(pageStore);
+        if (httpCache != null) {
+        	httpCache.close();
+        }
+        if (knownCases != null) {
+        	try {
+				knownCases.close();
+			} catch (IOException e) {
+				LOG.error("CaseLookupPageCollector...Failed to close known case index", e);
+			}
+        }
+        if (caseHistory != null) {
+        	try {
+        		caseHistory.close();
+        	} catch (IOException e) {
+        		LOG.error("CaseLookupPageCollector...Failed to close case history", e);
+        	}
+        }
+        if (retryQueue != null) {
+        	retryQueue.close();
+        }
+        if (pipeline != null) {
+        	//left open by a crawl that stopped short, whatever was written so far is kept
+        	try {
+        		pipeline.close();
+        	} catch (InterruptedException e) {
+        		Thread.currentThread().interrupt();
+        	}
+        }
+        pageStore = null;
+        memoryStore = null;
+        httpCache = null;
+        knownCases = null;
+        caseHistory = null;
+        recrawlScheduler = null;
+        retryQueue = null;
+        pipeline = null;
+        frontier = null;
+        detailFetchPools = null;
+        settings = null;
+    }
+
+    /**
+     * Districts come from the command line, "ALL" expands to every Connecticut probate district
+     * (PD01 - PD54). Without arguments only the original development district is collected.
+     */
+    static List<String> parseDistricts(String[] args) {
+    	Set<String> districts = new LinkedHashSet<String>();
+    	if (args != null) {
+    		for (String arg : args) {
+    			for (String district : arg.split(",")) {
+    				district = district.trim().toUpperCase();
+    				if (district.length() == 0) {
+    					continue;
+    				}
+    				if (district.equals(ALL_DISTRICTS)) {
+    					for (int districtNo = 1; districtNo <= DISTRICT_COUNT; districtNo++) {
+    						districts.add("PD" + (districtNo < 10 ? "0" + districtNo : "" + districtNo));
+    					}
+    				}
+    				else {
+    					districts.add(district);
+    				}
+    			}
+    		}
+    	}
+
+    	if (districts.isEmpty()) {
+    		districts.add(DEFAULT_DISTRICT);
+    	}
+    	return new ArrayList<String>(districts);
+    }
+
+    /**
+     * Walks every list page of a single district and pulls the case details found on them. 
+     * Each request waits on the shared scheduler rather than sleeping on its own.
+     *
+     * @return true when the district was walked to the end
+     */
+    static boolean collectDistrict(String district, PolitenessScheduler scheduler) throws InterruptedException {
+        LOG.info("CaseLookupPageCollector...District " + district);
+
+        Map<Integer, String> pageLinks = collectFirstListPage(district, scheduler);
+        if (pageLinks == null) {
+        	return false;
+        }
+        if (!collectListPages(district, pageLinks, settings.getStartAtPage(), Math.min(settings.getEndAtPage(), 999), scheduler)) {
+        	LOG.info("CaseLookupPageCollector...District " + district + " walked, failed pages queued for retry");
+        	return false;
+        }
+        LOG.info("CaseLookupPageCollector...District " + district + " complete");
+        return true;
+    }
+
+    /**
+     * Collects page 1 of a district and the case details on it.
+     *
+     * @return page number to link for the other list pages of the district, or null when page 1
+     *         could not be collected
+     */
+    static Map<Integer, String> collectFirstListPage(String district, PolitenessScheduler scheduler) throws InterruptedException {
         //Obtain main or first page of the lookup, it provides a portion of the list and 
         //links to all of the other pages in the list
-        String pageLink = "http://apps.ctprobate.gov/caselookup?CaseType=0&District=PD05&CaseStatusOption=Open";
+        String pageLink = String.format(settings.getLookupUrl(), district);
         LOG.info("Going after page: " + pageLink);
-        String fileNameSuffix = PageParserProbateList.getJulianWithMillis();  
         
         //Remember the first page, since it contains links to all other pages 
-        File mainCaseListPageFile;
-        if (useLocalListFiles) {
-            //read file from the local
-            mainCaseListPageFile = new File(DATA_DIR, PageParserProbateList.FILENAME_PREFIX_CASE_LIST + "01.html");
-        }
-        else {
-            String mainCaseFilename = PageParserProbateList.createCaseListFile(1, fileNameSuffix);
-            mainCaseListPageFile = dumpPage(pageLink, new File(DATA_DIR, mainCaseFilename));
+        StoredPage mainCaseListPage;
+        String mainCaseListKey = PageParserProbateList.caseListKey(district, 1);
+        mainCaseListPage = retrieveListPage(pageLink, mainCaseListKey, scheduler);
+        if (mainCaseListPage == null) {
+			LOG.info("CaseLookupPageCollector...Failed to retrieve page 1 of " + district);
+			queueFailure(RetryQueue.Kind.DISTRICT, pageLink, mainCaseListKey, district);
+			return null;
         }
+        dequeue(pageLink);
+        
+        //Parse it once for both the cases on it and the links to the other pages
+        CaseListPage mainCaseList = readListPage(mainCaseListPage);
         
         //Extract case details by case type
-        if (!retrieveDetails(mainCaseListPageFile, fileNameSuffix)) {
-			LOG.info("CaseLookupPageCollector...Failed to retrieveDetails for page 1");
-			return;
+        if (!retrieveDetails(mainCaseList, scheduler)) {
+			LOG.info("CaseLookupPageCollector...Failed to retrieveDetails for page 1 of " + district);
+			return null;
         }
         
-        //Extract all remaining pages from the list
-        Map<Integer, String> pageLinks = PageParserProbateList.extractPageLinks (mainCaseListPageFile);
-        //During development, I'm trying no to go after pages more than once. The server is painfully slow
-        File currentCaseListFile;
-        int startAtPage = 2;
-        int endAtPage = 27;
-        for (int pageNumber = startAtPage; pageNumber < 1000; pageNumber++) {
-        	pageLink = pageLinks.get(new Integer(pageNumber));
+        Map<Integer, String> pageLinks = (mainCaseList == null ? new HashMap<Integer, String>() : mainCaseList.getPageLinks());
+        LOG.info("CaseLookupPageCollector...Page links " + pageLinks);
+        return pageLinks;
+    }
+
+    /**
+     * Walks list pages fromPage through toPage of a district, stopping early at the first page
+     * without a link, and pulls the case details found on them. A page that keeps failing is queued
+     * and the walk goes on.
+     *
+     * @return true when every page was collected
+     */
+    static boolean collectListPages(String district, Map<Integer, String> pageLinks, int fromPage, int toPage, 
+    		PolitenessScheduler scheduler) throws InterruptedException {
+        String pageLink;
+        StoredPage currentCaseListPage;
+        boolean complete = true;
+        for (int pageNumber = fromPage; pageNumber <= toPage; pageNumber++) {
+        	pageLink = pageLinks.get(Integer.valueOf(pageNumber));
         	if (pageLink == null) {
         		break;
         	}
 
-        	LOG.info("Going after page " + pageNumber + ": " + pageLink);
-        	String currentCaseListFilename;
-            if (useLocalListFiles) {
-                //read file from the local
-            	currentCaseListFilename = PageParserProbateList.createCaseListFile(pageNumber, null);
-            	currentCaseListFile = new File(DATA_DIR, currentCaseListFilename);
+        	LOG.info("Going after page " + pageNumber + " of " + district + ": " + pageLink);
+        	String currentCaseListKey = PageParserProbateList.caseListKey(district, pageNumber);
+            currentCaseListPage = retrieveListPage(pageLink, currentCaseListKey, scheduler);
+            if (currentCaseListPage == null) {
+    			LOG.info("CaseLookupPageCollector...Failed to retrieve page " + pageNumber + " of " + district);
+    			queueFailure(RetryQueue.Kind.LIST, pageLink, currentCaseListKey, district);
+    			complete = false;
             }
-            else {
-            	//retrieve file and write it to local
-            	currentCaseListFilename = PageParserProbateList.createCaseListFile(pageNumber, fileNameSuffix);
-            	currentCaseListFile = dumpPage(pageLink, new File(DATA_DIR, currentCaseListFilename));
-            }
-
             //Extract case details by case type
-            if (!retrieveDetails(currentCaseListFile, fileNameSuffix)) {
-    			LOG.info("CaseLookupPageCollector...Failed to retrieveDetails for page " + pageNumber);
-    			return;
+            else if (!retrieveDetails(readListPage(currentCaseListPage), scheduler)) {
+    			LOG.info("CaseLookupPageCollector...Failed to retrieveDetails for page " + pageNumber + " of " + district);
+    			return false;
             }
-        	
-        	//should we stop now?
-        	if (pageNumber >= endAtPage) {
-        		break;
-        	}
-        	
-        	//Avoid hammering the server, it is painfully slow already
-        	//Use random sleep to see if special sleep time makes a difference
-            int sleepTime = random.nextInt((sleepMax - sleepMin) + 1) + sleepMin;
-            LOG.info("Next request in " + sleepTime + " seconds...");
-        	try {
-				Thread.sleep(sleepTime * 1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-				LOG.info("CaseLookupPageCollector...Failed trying to sleep inbetween calls");
-				return;
-			}
 		}
-
-        LOG.info("CaseLookupPageCollector...Complete");
+        return complete;
     }
 
-	private static boolean retrieveDetails(File mainCaseListPageFile, String fileNameSuffix) {
-		List<String[]> detailsPageLinks = PageParserProbateList.extractDetailsLinks(mainCaseListPageFile, PageParserProbateList.CASE_TYPE_DECEDENT_ESTATE_REGULAR);
-        for (String[] detailsPageLink : detailsPageLinks) {
-        	LOG.info("Going after case number " + detailsPageLink[0] + ": " +  detailsPageLink[1]);
-        	String fileName = PageParserProbateList.createCaseDetailFile(detailsPageLink[0], fileNameSuffix);
-            dumpPage(detailsPageLink[1], new File(DATA_DIR, fileName));
-        	
-            //Avoid hammering the server, it is painfully slow already
-        	//Use random sleep to see if special sleep time makes a difference
-            int sleepTime = random.nextInt((sleepMax - sleepMin) + 1) + sleepMin;
-            LOG.info("Next request in " + sleepTime + " seconds...");
-        	try {
-				Thread.sleep(sleepTime * 1000);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-				LOG.info("CaseLookupPageCollector...Failed trying to sleep inbetween calls");
-				return false;
+	/**
+	 * Parses a case list page, handing its rows to the pipeline when there is one.
+	 *
+	 * @return the page, or null when it could not be read or has no results
+	 */
+	private static CaseListPage readListPage(StoredPage caseListPage) throws InterruptedException {
+		CaseListPage page = PageParserProbateList.readCaseListPage(caseListPage);
+		if (page != null && pipeline != null) {
+			pipeline.caseList(page);
+		}
+		return page;
+	}
+
+	private static boolean retrieveDetails(CaseListPage caseListPage, final PolitenessScheduler scheduler) throws InterruptedException {
+		if (caseListPage == null) {
+			return true;
+		}
+		//one pass over the page sorts out the links of every case type collected
+		Map<String, List<String[]>> detailsPageLinks = caseListPage.getDetailsLinks(caseTypes);
+		for (Map.Entry<String, List<String[]>> typeLinks : detailsPageLinks.entrySet()) {
+			final String caseType = typeLinks.getKey();
+			for (String[] detailsPageLink : typeLinks.getValue()) {
+				String pageKey = PageParserProbateList.caseDetailsKey(caseType, detailsPageLink[0]);
+				if (frontier != null && frontier.isCompleted(pageKey)) {
+					LOG.debug("Case number " + detailsPageLink[0] + " already fetched by this crawl");
+					continue;
+				}
+				if (recrawlScheduler != null) {
+					//fetched once the walk is done, if it ranks within the budget
+					recrawlScheduler.offer(caseType, detailsPageLink[0], detailsPageLink[1]);
+					continue;
+				}
+				if (knownCases != null && !knownCases.needsFetch(detailsPageLink[0], System.currentTimeMillis(), caseMaxAgeMillis)) {
+					LOG.debug("Already have case number " + detailsPageLink[0]);
+					continue;
+				}
+
+				fetchDetails(caseType, detailsPageLink[0], detailsPageLink[1], scheduler);
 			}
-        }
+		}
         
         return true;
 	}
+
+	/**
+	 * Fetches the details of the cases the {@link RecrawlScheduler} picked from those offered by the
+	 * walk, highest priority first. Cases turned up after the selection, by list pages recovered from
+	 * the {@link RetryQueue}, are fetched right away like failed requests, on top of the budget.
+	 */
+	static void fetchScheduledCases(PolitenessScheduler scheduler) {
+		RecrawlScheduler selecting = recrawlScheduler;
+		recrawlScheduler = null;
+		try {
+			for (RecrawlScheduler.Candidate candidate : selecting.select()) {
+				fetchDetails(candidate.getCaseType(), candidate.getCaseNumber(), candidate.getLink(), scheduler);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void fetchDetails(final String caseType, final String caseNumber, final String link, 
+			final PolitenessScheduler scheduler) throws InterruptedException {
+		LOG.info("Going after " + caseType + " case number " + caseNumber + ": " +  link);
+		DetailFetchPool detailFetchPool = (detailFetchPools == null ? null : detailFetchPools.get(caseType));
+		if (detailFetchPool != null) {
+			detailFetchPool.submit(new DetailFetchPool.FetchTask() {
+				public void fetch() throws InterruptedException {
+					retrieveCase(caseType, caseNumber, link, scheduler);
+				}
+			});
+		}
+		else {
+			retrieveCase(caseType, caseNumber, link, scheduler);
+		}
+	}
+
+	private static boolean retrieveCase(String caseType, String caseNumber, String link, PolitenessScheduler scheduler) throws InterruptedException {
+		String pageKey = PageParserProbateList.caseDetailsKey(caseType, caseNumber);
+		StoredPage detailsPage = dumpPage(link, pageKey, scheduler);
+		recordCase(caseNumber, detailsPage != null);
+		if (detailsPage == null) {
+			queueFailure(RetryQueue.Kind.DETAILS, link, pageKey, caseNumber);
+			return false;
+		}
+		dequeue(link);
+		if (frontier != null) {
+			frontier.completed(pageKey);
+		}
+		if (caseHistory != null) {
+			recordHistory(caseType, caseNumber, detailsPage);
+		}
+		if (pipeline != null && !pipeline.caseDetails(detailsPage)) {
+			//fetched and kept, but no rows; counted against the run when the pipeline closes
+			LOG.error("CaseLookupPageCollector...Failed to parse the details of case number " + caseNumber + " from " + detailsPage);
+			return false;
+		}
+		return true;
+	}
+
+	private static void recordHistory(String caseType, String caseNumber, StoredPage detailsPage) {
+		try {
+			if (caseHistory.fetched(caseNumber, PageParserProbateList.detailsParser(caseType).parse(detailsPage), System.currentTimeMillis())) {
+				LOG.info("CaseLookupPageCollector...Case number " + caseNumber + " changed since its last fetch");
+			}
+		} catch (IOException e) {
+			LOG.error("CaseLookupPageCollector...Failed to record the history of case number " + caseNumber, e);
+		}
+	}
+
+	/**
+	 * Reads a list page from the local store when asked to, or when this crawl already fetched it
+	 * before being stopped; otherwise fetches it and keeps it locally.
+	 */
+	private static StoredPage retrieveListPage(String link, String pageKey, PolitenessScheduler scheduler) throws InterruptedException {
+		if (settings.isLocalListPages()) {
+			return pageStore.latest(pageKey);
+		}
+		if (frontier != null && frontier.isCompleted(pageKey)) {
+			StoredPage page = pageStore.latest(pageKey);
+			if (page != null) {
+				LOG.info("Already fetched by this crawl, reading " + page);
+				return page;
+			}
+		}
+		StoredPage page = dumpPage(link, pageKey, scheduler);
+		if (page != null && frontier != null) {
+			frontier.completed(pageKey);
+		}
+		return page;
+	}
+
+	/**
+	 * Goes once more after every request in the {@link RetryQueue}, oldest first. A host whose circuit
+	 * is open is waited for; whatever fails again stays queued for the next run.
+	 *
+	 * @return true when the queue was emptied
+	 */
+	static boolean drainRetryQueue(PolitenessScheduler scheduler) {
+		List<RetryQueue.Entry> pending = retryQueue.pending();
+		if (pending.isEmpty()) {
+			return true;
+		}
+		LOG.info("CaseLookupPageCollector...Retrying " + pending.size() + " failed requests");
+		try {
+			for (RetryQueue.Entry entry : pending) {
+				//a district retried earlier in the drain may have taken care of this one already
+				if (!retryQueue.contains(entry.getLink())) {
+					continue;
+				}
+				long waitMillis = circuitBreaker.retryAfterMillis(PolitenessScheduler.hostOf(entry.getLink()));
+				if (waitMillis > 0) {
+					LOG.info("CaseLookupPageCollector...Waiting " + waitMillis + " ms for " + entry.getLink());
+					Thread.sleep(waitMillis);
+				}
+
+				switch (entry.getKind()) {
+					case DISTRICT:
+						collectDistrict(entry.getSubject(), scheduler);
+						break;
+					case LIST:
+						StoredPage caseListPage = retrieveListPage(entry.getLink(), entry.getPageKey(), scheduler);
+						if (caseListPage == null) {
+							queueFailure(RetryQueue.Kind.LIST, entry.getLink(), entry.getPageKey(), entry.getSubject());
+						}
+						else {
+							dequeue(entry.getLink());
+							retrieveDetails(readListPage(caseListPage), scheduler);
+						}
+						break;
+					case DETAILS:
+						if (knownCases != null && !knownCases.needsFetch(entry.getSubject(), System.currentTimeMillis(), caseMaxAgeMillis)) {
+							dequeue(entry.getLink());
+						}
+						else {
+							retrieveCase(PageParserProbateList.caseTypeOfDetailsKey(entry.getPageKey()), entry.getSubject(), entry.getLink(), scheduler);
+						}
+						break;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		awaitDetails();
+
+		int left = retryQueue.size();
+		LOG.info("CaseLookupPageCollector..." + (pending.size() - left) + " failed requests recovered, " + left + " left for the next run");
+		return left == 0;
+	}
+
+	/**
+	 * Waits for the case details still being fetched in the background, if any.
+	 */
+	private static void awaitDetails() {
+		if (detailFetchPools == null) {
+			return;
+		}
+		try {
+			for (DetailFetchPool detailFetchPool : detailFetchPools.values()) {
+				detailFetchPool.awaitIdle();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void queueFailure(RetryQueue.Kind kind, String link, String pageKey, String subject) {
+		if (retryQueue != null) {
+			retryQueue.add(kind, link, pageKey, subject);
+		}
+	}
+
+	private static void dequeue(String link) {
+		if (retryQueue != null) {
+			retryQueue.remove(link);
+		}
+	}
+
+	private static void recordCase(String caseNumber, boolean fetched) {
+		if (knownCases == null) {
+			return;
+		}
+		try {
+			knownCases.record(caseNumber, (fetched ? KnownCaseIndex.STATUS_FETCHED : KnownCaseIndex.STATUS_FAILED), System.currentTimeMillis());
+		} catch (IOException e) {
+			LOG.error("CaseLookupPageCollector...Failed to record case number " + caseNumber, e);
+		}
+	}
     
-    static final File dumpPage(String link, File outputFile) {
+    /**
+     * Fetches a page, waiting on the scheduler before every attempt. A failed attempt is tried again
+     * after an exponential backoff with jitter, up to the attempts of the {@link RetryPolicy}; while the
+     * {@link CircuitBreaker} holds the host open no request is sent at all.
+     *
+     * @return the stored page, or null when every attempt failed
+     */
+    static final StoredPage dumpPage(String link, String pageKey, PolitenessScheduler scheduler) throws InterruptedException {
         LOG.info("Page Dump...");
         LOG.info("Going after URL: " + link);
-        output = openOutput(outputFile);
-        if (output == null){
-        	return null;
+
+        String host = PolitenessScheduler.hostOf(link);
+        for (int attempt = 0; attempt < retryPolicy.getMaxAttempts(); attempt++) {
+        	if (!circuitBreaker.allowRequest(host)) {
+        		LOG.warn("Circuit open for " + host + ", skipping " + link);
+        		return null;
+        	}
+        	if (attempt > 0) {
+        		LOG.info("Trying again...");
+        		Metrics.METRICS.retries.incrementAndGet();
+        	}
+        	boolean recorded = false;
+        	try {
+        		scheduler.acquire(link);
+        		StoredPage page = downloadPage(link, pageKey);
+        		circuitBreaker.success(host);
+        		recorded = true;
+        		LOG.info("Response available in " + page);
+        		LOG.info("Page Dump...Complete");
+        		return page;
+        	} catch (IOException e) {
+        		circuitBreaker.failure(host);
+        		recorded = true;
+        		if (attempt + 1 < retryPolicy.getMaxAttempts()) {
+        			long delayMillis = retryPolicy.delayMillis(attempt);
+        			LOG.error("Problem communicating with site, trying again in " + delayMillis + " ms...", e);
+        			Thread.sleep(delayMillis);
+        		}
+        		else {
+        			LOG.error("Problem communicating with site, giving up after " + (attempt + 1) + " attempts", e);
+        		}
+        	} finally {
+        		if (!recorded) {
+        			//interrupted waiting for the scheduler or failed unexpectedly, a held trial must not block the host
+        			circuitBreaker.release(host);
+        		}
+        	}
         }
-        
-        URL url;
-		InputStream urlIn = null;
-		BufferedReader urlBuffReader = null;
+        return null;
+    }
 
+    /**
+     * Streams the response body straight into a part file of the page store through the
+     * {@link PageFetcher}. A compressed body is inflated on the way, otherwise the bytes are written
+     * exactly as the server sent them so the page keeps its original encoding. The timing covers
+     * connecting through the last byte stored. The part file is removed on failure.
+     * <p>
+     * When the {@link HttpCache} already knows the url the request is made conditional, and on a 
+     * 304 or a body identical to the stored copy that copy is returned and nothing is written.
+     *
+     * @return the stored page, either the new copy or the cached one
+     */
+    static final StoredPage downloadPage(String link, String pageKey) throws IOException {
+		long sendRequest = System.nanoTime();
+		HttpCache.Entry cacheEntry = (httpCache == null ? null : httpCache.lookup(link));
+		StoredPage cached = (cacheEntry == null ? null : pageStore.resolve(cacheEntry.getLocation()));
+		long bytes = 0;
+		FetchResponse response = null;
+		InputStream urlIn = null;
+		FileOutputStream fos = null;
+		//pages that are not archived are read straight into memory
+		File partFile = (memoryStore == null ? pageStore.createPartFile(pageKey) : null);
 		try {
-			url = new URL(link);
-			long sendRequest = System.nanoTime();
-			urlIn = url.openStream();
-			long receiveResponse = System.nanoTime();
-			LOG.info(String.format("Request time  : %3.6f Seconds", ((receiveResponse - sendRequest) / 1000000000.0)));
-		} catch (IOException e) {
-        	//Avoid hammering the server, it is painfully slow already
-        	//Use random sleep to see if special sleep time makes a difference
-            int sleepTime = random.nextInt((sleepMax - sleepMin) + 1) + sleepMin;
-			LOG.error("Problem communicating with site, trying again in " + sleepTime + " seconds...");        	
-			try {
-				Thread.sleep(sleepTime * 1000);
-			} catch (InterruptedException e1) {
-				e.printStackTrace();
-			}
-			//trying again
-			try {
-				LOG.info("Trying again...");
-				url = new URL(link);
-				long sendRequest = System.nanoTime();
-				urlIn = url.openStream();
-				long receiveResponse = System.nanoTime();
-				LOG.info(String.format("Second request time  : %3.6f Seconds", ((receiveResponse - sendRequest) / 1000000000.0)));
-			} catch (IOException e2) {
-				LOG.error("Problem communicating with site, skipping..." );        	
-				e.printStackTrace();
-			} 
-		} 
-		
-		// chain the InputStream to a Reader
-		StringBuffer result = null;
-		try {
-			urlBuffReader = new BufferedReader(new InputStreamReader(
-					new BufferedInputStream(urlIn)));
-			int c = 0;
-			result = new StringBuffer();
-			while ((c = urlBuffReader.read()) != -1) {
-				result.append("" + (char) c);
+			Map<String, String> requestHeaders = new HashMap<String, String>();
+			if (cached != null) {
+				if (cacheEntry.getEtag().length() > 0) {
+					requestHeaders.put("If-None-Match", cacheEntry.getEtag());
+				}
+				if (cacheEntry.getLastModified().length() > 0) {
+					requestHeaders.put("If-Modified-Since", cacheEntry.getLastModified());
+				}
+			}
+			response = fetcher().fetch(link, requestHeaders);
+			int status = response.getStatus();
+			Metrics.METRICS.firstByte.recordSince(sendRequest);
+			if (rateController != null && (status == HttpURLConnection.HTTP_OK || status == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+				rateController.success(PolitenessScheduler.hostOf(link), System.nanoTime() - sendRequest);
+			}
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+				Metrics.METRICS.pagesNotModified.incrementAndGet();
+				partFile.delete();
+				LOG.info(String.format("Not modified  : %3.6f Seconds, reusing %s", secondsSince(sendRequest), cached));
+				return cached;
+			}
+			if (status != HttpURLConnection.HTTP_OK) {
+				throw new IOException("Unexpected HTTP status " + status + " for " + link);
+			}
+
+			MessageDigest digest = HttpCache.newDigest();
+			urlIn = new DigestInputStream(response.getBody(), digest);
+			byte[] body = null;
+			if (partFile == null) {
+				body = readFully(urlIn);
+				bytes = body.length;
 			}
+			else {
+				fos = new FileOutputStream(partFile);
+				bytes = transfer(urlIn, fos.getChannel());
+				fos.close();
+				fos = null;
+			}
+			//what the server sent, a compressed body counts at its compressed size
+			Metrics.METRICS.bytesFetched.addAndGet(response.getWireBytes());
+
+			String contentHash = HttpCache.toHex(digest.digest());
+			StoredPage page;
+			if (cached != null && contentHash.equals(cacheEntry.getContentHash())) {
+				partFile.delete();
+				page = cached;
+				LOG.info("Content unchanged, reusing " + page);
+			}
+			else if (body != null) {
+				page = memoryStore.store(pageKey, System.currentTimeMillis(), body);
+			}
+			else {
+				page = pageStore.store(pageKey, System.currentTimeMillis(), partFile);
+			}
+
+			if (httpCache != null) {
+				httpCache.store(new HttpCache.Entry(link, response.getHeader("ETag"), response.getHeader("Last-Modified"), 
+						contentHash, page.getLocation(), System.currentTimeMillis()));
+			}
+
+			Metrics.METRICS.download.recordSince(sendRequest);
+			Metrics.METRICS.pagesFetched.incrementAndGet();
+			double seconds = secondsSince(sendRequest);
+			LOG.info(String.format("Download time : %3.6f Seconds, %d bytes, %.0f bytes/second", seconds, bytes, (bytes / seconds)));
+			return page;
 		} catch (IOException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
+			Metrics.METRICS.fetchFailures.incrementAndGet();
+			if (rateController != null) {
+				rateController.failure(PolitenessScheduler.hostOf(link));
+			}
+			closeQuietly(fos);
+			if (partFile != null) {
+				partFile.delete();
+			}
+			throw e;
+		} finally {
+			closeQuietly(urlIn);
+			closeQuietly(response);
 		}
+    }
 
-		LOG.info("Response written to " + outputFile.getAbsolutePath());
-		output.print(result);
+    /**
+     * @return the shared fetcher, opened on first use
+     */
+    static final synchronized PageFetcher fetcher() {
+    	if (fetcher == null) {
+    		fetcher = openFetcher();
+    	}
+    	return fetcher;
+    }
 
-		closeOutput(output);
-		LOG.info("Page Dump...Complete");
-		
-        return outputFile;
+    /**
+     * Closes the shared fetcher, the next request opens a new one.
+     */
+    static final synchronized void closeFetcher() {
+    	closeQuietly(fetcher);
+    	fetcher = null;
+    }
+
+    /**
+     * The {@link PageFetcher} picked by probate.fetch.client: "httpclient" (the default, pooled and
+     * HTTP/2 capable) or "urlconnection".
+     */
+    static final PageFetcher openFetcher() {
+    	if (fetchClient.equalsIgnoreCase("urlconnection")) {
+    		return new UrlConnectionFetcher(connectTimeoutMillis, readTimeoutMillis);
+    	}
+    	if (!fetchClient.equalsIgnoreCase("httpclient")) {
+    		LOG.warn("CaseLookupPageCollector...Unknown fetch client " + fetchClient + ", using httpclient");
+    	}
+    	return new HttpClientFetcher(connectTimeoutMillis, readTimeoutMillis, useHttp2);
+    }
+
+    private static double secondsSince(long startNanos) {
+    	return (System.nanoTime() - startNanos) / 1000000000.0;
+    }
+
+    /**
+     * Lets the file channel pull from the response stream, nothing is decoded or buffered on the 
+     * heap beyond the channel's own transfer buffer.
+     */
+    static final long transfer(InputStream in, FileChannel out) throws IOException {
+    	ReadableByteChannel source = Channels.newChannel(in);
+    	long position = 0;
+    	long count;
+    	while ((count = out.transferFrom(source, position, TRANSFER_CHUNK)) > 0) {
+    		position += count;
+    	}
+    	return position;
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+    	ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+    	byte[] buffer = new byte[16 * 1024];
+    	int count;
+    	while ((count = in.read(buffer)) > 0) {
+    		out.write(buffer, 0, count);
+    	}
+    	return out.toByteArray();
+    }
+
+    static final void closeQuietly(Closeable closeable) {
+    	if (closeable != null) {
+    		try {
+				closeable.close();
+			} catch (IOException e) {
+				LOG.debug("Problem closing stream", e);
+			}
+    	}
     }
-    
     
     static final PrintWriter openOutput (File outputFile) {
         FileOutputStream fos;
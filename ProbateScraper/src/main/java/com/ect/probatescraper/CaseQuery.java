@@ -0,0 +1,151 @@
+package com.ect.probatescraper;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+
+/**
+ * The filters of a {@link CaseIndex} query, every filter given must match. Built from the query
+ * string of the http endpoint, e.g. caseType=DR&amp;filedFrom=2014-01-13&amp;zip=06xxx or
+ * attorney=Susan+Miller.
+ *
+ */
+public class CaseQuery {
+	public static final int DEFAULT_LIMIT = 1000;
+
+	private String caseType;
+	private String district;
+	private String attorney;
+	private String zipPrefix;
+	private int filedFrom;
+	private int filedTo;
+	private int limit = DEFAULT_LIMIT;
+
+	/**
+	 * @throws IllegalArgumentException
+	 *             on an unknown parameter or a value that does not parse
+	 */
+	public static CaseQuery parse(String queryString) {
+		CaseQuery query = new CaseQuery();
+		if (queryString == null || queryString.length() == 0) {
+			return query;
+		}
+		for (String parameter : queryString.split("&")) {
+			if (parameter.length() == 0) {
+				continue;
+			}
+			int equals = parameter.indexOf('=');
+			String name = decode(equals < 0 ? parameter : parameter.substring(0, equals));
+			String value = decode(equals < 0 ? "" : parameter.substring(equals + 1)).trim();
+			if (name.equals("caseType")) {
+				query.setCaseType(value);
+			}
+			else if (name.equals("district")) {
+				query.setDistrict(value);
+			}
+			else if (name.equals("attorney")) {
+				query.setAttorney(value);
+			}
+			else if (name.equals("zip")) {
+				query.setZipPrefix(value);
+			}
+			else if (name.equals("filedFrom")) {
+				query.setFiledFrom(CaseIndex.parseDate(value));
+			}
+			else if (name.equals("filedTo")) {
+				query.setFiledTo(CaseIndex.parseDate(value));
+			}
+			else if (name.equals("limit")) {
+				query.setLimit(Integer.parseInt(value));
+			}
+			else {
+				throw new IllegalArgumentException("Unknown parameter " + name);
+			}
+		}
+		return query;
+	}
+
+	private static String decode(String text) {
+		try {
+			return URLDecoder.decode(text, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public String getCaseType() {
+		return caseType;
+	}
+
+	/**
+	 * @param caseType
+	 *            code from the case list (DR) or the name from the details page (Decedent Estate)
+	 */
+	public void setCaseType(String caseType) {
+		this.caseType = caseType;
+	}
+
+	public String getDistrict() {
+		return district;
+	}
+
+	public void setDistrict(String district) {
+		this.district = district;
+	}
+
+	public String getAttorney() {
+		return attorney;
+	}
+
+	public void setAttorney(String attorney) {
+		this.attorney = attorney;
+	}
+
+	public String getZipPrefix() {
+		return zipPrefix;
+	}
+
+	/**
+	 * @param zipPrefix
+	 *            leading digits of the zip code, trailing x's are ignored (06xxx is the same as 06)
+	 */
+	public void setZipPrefix(String zipPrefix) {
+		int end = zipPrefix.length();
+		while (end > 0 && Character.toLowerCase(zipPrefix.charAt(end - 1)) == 'x') {
+			end--;
+		}
+		this.zipPrefix = zipPrefix.substring(0, end);
+	}
+
+	/**
+	 * @return first filing date (yyyymmdd) included, 0 when open
+	 */
+	public int getFiledFrom() {
+		return filedFrom;
+	}
+
+	public void setFiledFrom(int filedFrom) {
+		this.filedFrom = filedFrom;
+	}
+
+	/**
+	 * @return last filing date (yyyymmdd) included, 0 when open
+	 */
+	public int getFiledTo() {
+		return filedTo;
+	}
+
+	public void setFiledTo(int filedTo) {
+		this.filedTo = filedTo;
+	}
+
+	public int getLimit() {
+		return limit;
+	}
+
+	public void setLimit(int limit) {
+		if (limit < 0) {
+			throw new IllegalArgumentException("Negative limit " + limit);
+		}
+		this.limit = limit;
+	}
+}
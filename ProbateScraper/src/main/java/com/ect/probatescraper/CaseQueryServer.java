@@ -0,0 +1,114 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Answers {@link CaseQuery} queries against a {@link CaseIndex} as csv on the loopback interface,
+ * e.g. http://localhost:9405/cases?caseType=DR&amp;filedFrom=2014-01-13&amp;zip=06xxx. The number of
+ * matches returned is in the X-Result-Count header.
+ *
+ */
+public class CaseQueryServer {
+    private static final Logger LOG = Logger.getLogger(CaseQueryServer.class);
+    public static final String PATH = "/cases";
+    static final String CONTENT_TYPE = "text/csv; charset=utf-8";
+    static final CsvSchema RESULT_SCHEMA = CsvSchema.of("Case Number", "Decedent", "Last Name", "First Name", "MI", 
+    		"Case Type", "District", "Date Filed", "Represented By", "Zip", "Case Link");
+
+    private final HttpServer server;
+
+    private CaseQueryServer(HttpServer server) {
+    	this.server = server;
+    }
+
+    public static CaseQueryServer start(int port, final CaseIndex index) throws IOException {
+    	HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    	server.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				try {
+					CaseQuery query;
+					try {
+						query = CaseQuery.parse(exchange.getRequestURI().getRawQuery());
+					} catch (IllegalArgumentException e) {
+						sendError(exchange, 400, e.getMessage());
+						return;
+					}
+
+					List<CaseIndex.IndexedCase> found = index.query(query);
+					exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+					exchange.getResponseHeaders().set("X-Result-Count", Integer.toString(found.size()));
+					exchange.sendResponseHeaders(200, 0);
+					CsvWriter output = new CsvWriter(new OutputStreamWriter(exchange.getResponseBody(), BinaryRecordWriter.UTF8));
+					output.writeHeader(RESULT_SCHEMA);
+					for (CaseIndex.IndexedCase indexed : found) {
+						writeCase(indexed, output);
+					}
+					output.flush();
+				} catch (RuntimeException e) {
+					LOG.error("CaseQueryServer...Failed to answer " + exchange.getRequestURI(), e);
+					//too late once the csv has started
+					if (exchange.getResponseCode() == -1) {
+						sendError(exchange, 500, "Internal error");
+					}
+				} finally {
+					exchange.close();
+				}
+			}
+		});
+    	server.start();
+    	return new CaseQueryServer(server);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+    	byte[] body = (message + "\n").getBytes(BinaryRecordWriter.UTF8);
+    	exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+    	exchange.sendResponseHeaders(status, body.length);
+    	exchange.getResponseBody().write(body);
+    }
+
+    private static void writeCase(CaseIndex.IndexedCase indexed, CsvWriter output) throws IOException {
+    	CaseListRecord listing = indexed.getListing();
+    	CaseDetailsRecord details = indexed.getDetails();
+    	output.field(indexed.getCaseNumber());
+    	output.field(details == null ? null : details.getDecedent());
+    	output.field(listing == null ? null : listing.getLastName());
+    	output.field(listing == null ? null : listing.getFirstName());
+    	output.field(listing == null ? null : listing.getMiddleInitial());
+    	output.field(listing != null ? listing.getCaseType() : details.getCaseType());
+    	output.field(listing == null ? null : listing.getDistrict());
+    	output.field(details == null ? null : details.getDateFiled());
+    	output.field(details == null ? null : join(CaseIndex.attorneys(details)));
+    	output.field(details == null ? null : join(CaseIndex.zips(details)));
+    	output.field(listing == null ? null : listing.getLink());
+    	output.endRow();
+    }
+
+    private static String join(Iterable<String> values) {
+    	StringBuilder joined = new StringBuilder();
+    	for (String value : values) {
+    		if (joined.length() > 0) {
+    			joined.append("; ");
+    		}
+    		joined.append(value);
+    	}
+    	return joined.toString();
+    }
+
+    public int getPort() {
+    	return server.getAddress().getPort();
+    }
+
+    public void stop() {
+    	server.stop(0);
+    }
+}
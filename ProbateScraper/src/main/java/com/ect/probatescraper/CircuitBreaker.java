@@ -0,0 +1,123 @@
+package com.ect.probatescraper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Stops sending requests to a host that keeps failing. After failureThreshold failures in a row the
+ * host's circuit opens and every request is refused for openMillis; after that one trial request is
+ * let through, its success closes the circuit again and its failure reopens it.
+ *
+ */
+public class CircuitBreaker {
+    private static final Logger LOG = Logger.getLogger(CircuitBreaker.class);
+
+    public enum State {
+    	CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openMillis;
+    private final Map<String, HostState> hosts = new HashMap<String, HostState>();
+
+    private static class HostState {
+    	private State state = State.CLOSED;
+    	private int consecutiveFailures;
+    	private long openedMillis;
+    	private boolean trialInFlight;
+    }
+
+    public CircuitBreaker(int failureThreshold, long openMillis) {
+    	this.failureThreshold = Math.max(1, failureThreshold);
+    	this.openMillis = openMillis;
+    }
+
+    /**
+     * @return true when a request to the host may be sent now
+     */
+    public synchronized boolean allowRequest(String host) {
+    	HostState state = state(host);
+    	switch (state.state) {
+    		case OPEN:
+    			if (now() - state.openedMillis < openMillis) {
+    				return false;
+    			}
+    			state.state = State.HALF_OPEN;
+    			LOG.info("CircuitBreaker..." + host + " half open, sending a trial request");
+    			state.trialInFlight = true;
+    			return true;
+    		case HALF_OPEN:
+    			//only the one trial request until it comes back
+    			if (state.trialInFlight) {
+    				return false;
+    			}
+    			state.trialInFlight = true;
+    			return true;
+    		default:
+    			return true;
+    	}
+    }
+
+    public synchronized void success(String host) {
+    	HostState state = state(host);
+    	if (state.state != State.CLOSED) {
+			LOG.info("CircuitBreaker..." + host + " closed");
+    	}
+    	state.state = State.CLOSED;
+    	state.consecutiveFailures = 0;
+    	state.trialInFlight = false;
+    }
+
+    public synchronized void failure(String host) {
+    	HostState state = state(host);
+    	state.consecutiveFailures++;
+    	state.trialInFlight = false;
+    	if (state.state == State.HALF_OPEN || state.consecutiveFailures >= failureThreshold) {
+    		if (state.state != State.OPEN) {
+    			LOG.warn("CircuitBreaker..." + host + " open after " + state.consecutiveFailures + " failures, pausing for " 
+    					+ openMillis + " ms");
+    		}
+    		state.state = State.OPEN;
+    		state.openedMillis = now();
+    	}
+    }
+
+    /**
+     * Gives back a request allowed by {@link #allowRequest(String)} that was never sent, so a trial
+     * held for it does not keep the host blocked; the next request is let through as the trial.
+     */
+    public synchronized void release(String host) {
+    	state(host).trialInFlight = false;
+    }
+
+    /**
+     * @return milliseconds until an open circuit lets a trial request through, 0 when a request may
+     *         be sent now
+     */
+    public synchronized long retryAfterMillis(String host) {
+    	HostState state = state(host);
+    	if (state.state != State.OPEN) {
+    		return 0;
+    	}
+    	return Math.max(0, openMillis - (now() - state.openedMillis));
+    }
+
+    public synchronized State getState(String host) {
+    	return state(host).state;
+    }
+
+    long now() {
+    	return System.currentTimeMillis();
+    }
+
+    private HostState state(String host) {
+    	HostState state = hosts.get(host);
+    	if (state == null) {
+    		state = new HostState();
+    		hosts.put(host, state);
+    	}
+    	return state;
+    }
+}
@@ -0,0 +1,83 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the collection of several probate districts at the same time on a fixed pool of workers.
+ * Every worker shares the same {@link PolitenessScheduler}, so adding districts adds parallel work
+ * without raising the request rate any single host sees.
+ *
+ */
+public class CrawlEngine {
+    private static final Logger LOG = Logger.getLogger(CrawlEngine.class);
+
+    private final List<String> districts;
+    private final int workers;
+    private final PolitenessScheduler scheduler;
+
+    public CrawlEngine(Collection<String> districts, int workers, PolitenessScheduler scheduler) {
+    	this.districts = new ArrayList<String>(districts);
+    	this.workers = Math.max(1, Math.min(workers, this.districts.size()));
+    	this.scheduler = scheduler;
+    }
+
+    /**
+     * Collects every district and waits for all of them to finish.
+     *
+     * @return true when every district was collected without failure
+     */
+    public boolean run() {
+        LOG.info("CrawlEngine...Crawling " + districts.size() + " districts on " + workers + " workers");
+
+    	ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+    		private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "crawl-worker-" + count.incrementAndGet());
+			}
+		});
+
+    	Map<String, Future<Boolean>> results = new LinkedHashMap<String, Future<Boolean>>();
+    	for (final String district : districts) {
+    		results.put(district, pool.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					return Boolean.valueOf(CaseLookupPageCollector.collectDistrict(district, scheduler));
+				}
+			}));
+    	}
+    	pool.shutdown();
+
+    	boolean success = true;
+    	for (Map.Entry<String, Future<Boolean>> result : results.entrySet()) {
+    		try {
+				if (!result.getValue().get().booleanValue()) {
+					LOG.error("CrawlEngine...District " + result.getKey() + " did not complete");
+					success = false;
+				}
+			} catch (InterruptedException e) {
+				LOG.error("CrawlEngine...Interrupted waiting for district " + result.getKey());
+				pool.shutdownNow();
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException e) {
+				LOG.error("CrawlEngine...District " + result.getKey() + " failed", e.getCause());
+				success = false;
+			}
+    	}
+
+        LOG.info("CrawlEngine...Complete");
+    	return success;
+    }
+}
@@ -0,0 +1,157 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Where the current crawl stands: the list pages and case details already fetched. A collector that
+ * is killed part way through reopens the frontier and walks the districts again, completed pages are
+ * read back from the {@link PageStore} instead of being fetched again, and the walk finds the pages
+ * still to fetch on its own. Once a crawl runs to the end the frontier is cleared so the next crawl
+ * starts fresh.
+ * <p>
+ * Every completed page is appended to a {@link TabSeparatedJournal}. Every checkpointEvery pages the whole
+ * frontier is written to a checkpoint file (to a temporary file first, then moved over the old one)
+ * and the journal starts over, so reopening reads the checkpoint and replays a short journal.
+ *
+ */
+public class CrawlFrontier {
+    private static final Logger LOG = Logger.getLogger(CrawlFrontier.class);
+    public static final String JOURNAL_FILENAME = "CrawlFrontier.log";
+    public static final String CHECKPOINT_FILENAME = "CrawlFrontier.ckpt";
+    private static final String COMPLETED = "C";
+
+    private final File journalFile;
+    private final File checkpointFile;
+    private final int checkpointEvery;
+    private final Set<String> completed = new HashSet<String>();
+    private TabSeparatedJournal journal;
+    private int journalRecords;
+
+    private CrawlFrontier(File directory, int checkpointEvery) {
+    	this.journalFile = new File(directory, JOURNAL_FILENAME);
+    	this.checkpointFile = new File(directory, CHECKPOINT_FILENAME);
+    	this.checkpointEvery = Math.max(1, checkpointEvery);
+    }
+
+    /**
+     * Reads back the checkpoint and journal left in the directory (if any) and opens the journal for
+     * appending.
+     */
+    public static CrawlFrontier open(File directory, int checkpointEvery) throws IOException {
+    	CrawlFrontier frontier = new CrawlFrontier(directory, checkpointEvery);
+    	frontier.load(frontier.checkpointFile);
+    	boolean journalLeft = frontier.journalFile.length() > 0;
+    	frontier.journalRecords = frontier.load(frontier.journalFile);
+    	frontier.journal = TabSeparatedJournal.append(frontier.journalFile);
+    	if (journalLeft) {
+    		//also leaves a journal cut short mid line behind, resumed or not, so appending starts on a fresh line
+    		frontier.checkpoint();
+    	}
+    	if (frontier.isResumed()) {
+    		LOG.info("CrawlFrontier...Resuming crawl, " + frontier.completed.size() + " pages done from " + directory.getAbsolutePath());
+    	}
+    	return frontier;
+    }
+
+    private int load(File file) throws IOException {
+    	return TabSeparatedJournal.read(file, new TabSeparatedJournal.RecordHandler() {
+    		public void record(String[] fields, String line) {
+    			if (fields.length != 2 || !fields[0].equals(COMPLETED)) {
+    				LOG.warn("CrawlFrontier...Skipping damaged entry: " + line);
+    				return;
+    			}
+    			completed.add(fields[1]);
+    		}
+    	});
+    }
+
+    /**
+     * @return true when the frontier was left behind by a crawl that did not finish
+     */
+    public synchronized boolean isResumed() {
+    	return !completed.isEmpty();
+    }
+
+    /**
+     * Notes a page as fetched and stored, it is not fetched again until the crawl finishes.
+     */
+    public synchronized void completed(String pageKey) {
+    	if (!completed.add(pageKey)) {
+    		return;
+    	}
+    	if (journal != null) {
+    		append(journal, pageKey);
+    		recorded();
+    	}
+    }
+
+    public synchronized boolean isCompleted(String pageKey) {
+    	return completed.contains(pageKey);
+    }
+
+    public synchronized int getCompletedCount() {
+    	return completed.size();
+    }
+
+    /**
+     * Writes the whole frontier to the checkpoint file and starts the journal over.
+     */
+    public synchronized void checkpoint() throws IOException {
+    	TabSeparatedJournal out = TabSeparatedJournal.rewrite(checkpointFile);
+    	try {
+    		for (String pageKey : completed) {
+    			append(out, pageKey);
+    		}
+    		out.commit();
+    	} finally {
+    		out.close();
+    	}
+
+    	//a crash before the journal is emptied only means replaying records the checkpoint already holds
+    	if (journal != null) {
+    		journal.close();
+    		journalFile.delete();
+    		journal = TabSeparatedJournal.append(journalFile);
+    	}
+    	journalRecords = 0;
+    	LOG.debug("CrawlFrontier...Checkpoint, " + completed.size() + " done");
+    }
+
+    /**
+     * The crawl ran to the end, forgets the frontier so the next crawl starts fresh.
+     */
+    public synchronized void finish() {
+    	close();
+    	journalFile.delete();
+    	checkpointFile.delete();
+    	completed.clear();
+    }
+
+    public synchronized void close() {
+    	if (journal != null) {
+    		journal.close();
+    		journal = null;
+    	}
+    }
+
+    private void recorded() {
+    	journal.flush();
+    	if (++journalRecords >= checkpointEvery) {
+    		try {
+				checkpoint();
+			} catch (IOException e) {
+				//the journal keeps growing and still holds everything
+				LOG.error("CrawlFrontier...Checkpoint failed", e);
+			}
+    	}
+    }
+
+    private static void append(TabSeparatedJournal out, String pageKey) {
+    	out.write(COMPLETED, pageKey);
+    }
+}
@@ -0,0 +1,96 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a whole crawl against a {@link MockProbateServer} and reports how fast it went, to tune the
+ * crawl concurrency and retry settings offline. The collector runs exactly as configured by its
+ * usual -Dprobate.* properties, except that it points at the mock server, writes into a temporary
+ * data directory and its request rate is pinned to probate.load.requestsPerMinute (default 60000) so
+ * the politeness limit does not hide what is being measured.
+ * <p>
+ * Besides the mock server properties (see {@link MockProbateServer#main(String[])}) the districts
+ * crawled are set with probate.load.districts (default PD01,PD02,PD03,PD04), e.g.
+ * "java -Dprobate.mock.errorRate=0.05 -Dprobate.crawl.workers=8 com.ect.probatescraper.CrawlLoadHarness".
+ *
+ */
+public class CrawlLoadHarness {
+    private static final Logger LOG = Logger.getLogger(CrawlLoadHarness.class);
+    private static final String NEWLINE = CaseLookupPageCollector.NEWLINE;
+
+    public static void main(String[] args) throws IOException {
+    	List<String> districts = CaseLookupPageCollector.parseDistricts(
+    			new String[] {System.getProperty("probate.load.districts", "PD01,PD02,PD03,PD04")});
+    	double requestsPerMinute = Double.parseDouble(System.getProperty("probate.load.requestsPerMinute", "60000"));
+
+    	MockProbateServer server = MockProbateServer.fromProperties(0);
+    	File dataDirectory = Files.createTempDirectory("probate-load").toFile();
+    	server.start();
+    	try {
+    		Metrics before = Metrics.METRICS.snapshot();
+    		long startNanos = System.nanoTime();
+    		boolean complete = crawl(server, districts, requestsPerMinute, dataDirectory);
+    		double seconds = (System.nanoTime() - startNanos) / 1000000000.0;
+    		LOG.info("CrawlLoadHarness...Report" + NEWLINE + report(server, districts, seconds, complete, Metrics.METRICS.since(before)));
+    	} finally {
+    		CaseLookupPageCollector.closeFetcher();
+    		server.stop();
+    		delete(dataDirectory);
+    	}
+    }
+
+    /**
+     * Crawls the districts from the mock server into the data directory.
+     *
+     * @return true when every district was collected
+     */
+    static boolean crawl(MockProbateServer server, List<String> districts, double requestsPerMinute, File dataDirectory) {
+    	CrawlSettings settings = CrawlSettings.fromProperties();
+    	settings.setLookupUrl(server.getLookupUrl());
+    	settings.setEndAtPage(Integer.MAX_VALUE);
+    	settings.setLocalListPages(false);
+    	settings.setRequestsPerMinute(requestsPerMinute, requestsPerMinute, requestsPerMinute);
+    	LOG.info("CrawlLoadHarness...Crawling " + districts + " from " + server.getLookupUrl() + " into " + dataDirectory);
+    	return CaseLookupPageCollector.collect(districts, dataDirectory, settings);
+    }
+
+    /**
+     * @param metrics
+     *            recorded by the crawl alone, see {@link Metrics#since(Metrics)}
+     */
+    static String report(MockProbateServer server, List<String> districts, double seconds, boolean complete, Metrics metrics) {
+    	long pages = metrics.pagesFetched.get();
+    	long cases = server.getDetailsPagesServed();
+    	StringBuilder out = new StringBuilder();
+    	out.append(String.format("Crawl of %d districts %s in %.2f s%n", districts.size(), (complete ? "complete" : "INCOMPLETE"), seconds));
+    	out.append(String.format("  pages      %8d  %10.1f pages/s%n", pages, pages / seconds));
+    	out.append(String.format("  cases      %8d  %10.1f cases/s (of %d expected)%n", cases, cases / seconds,
+    			server.getCasesPerDistrict(CaseLookupPageCollector.caseTypes) * districts.size()));
+    	out.append(String.format("  bytes      %8d  %10.1f kB/s%n", metrics.bytesFetched.get(), metrics.bytesFetched.get() / 1024.0 / seconds));
+    	out.append(String.format("  errors     %8d served, %d retries, %d failed requests%n", server.getErrorsServed(),
+    			metrics.retries.get(), metrics.fetchFailures.get()));
+    	out.append(String.format("  latency ms  mean %.1f, p50 %s, p95 %s, p99 %s (bucket upper bounds)", metrics.download.getMeanMillis(),
+    			percentile(metrics.download, 0.5), percentile(metrics.download, 0.95), percentile(metrics.download, 0.99)));
+    	return out.toString();
+    }
+
+    private static String percentile(LatencyHistogram histogram, double quantile) {
+    	long millis = histogram.getPercentileMillis(quantile);
+    	return millis < 0 ? ">" + LatencyHistogram.BUCKET_MILLIS[LatencyHistogram.BUCKET_MILLIS.length - 1] : Long.toString(millis);
+    }
+
+    private static void delete(File file) {
+    	File[] children = file.listFiles();
+    	if (children != null) {
+    		for (File child : children) {
+    			delete(child);
+    		}
+    	}
+    	file.delete();
+    }
+}
@@ -0,0 +1,162 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Writes the csv files while the crawl runs, so nothing has to be parsed again once it is over.
+ * The collector hands in each case list page it already parsed to walk the list, and each case
+ * details page right after fetching it, parsed on the fetching thread. The records travel through a
+ * bounded queue to a single writer thread, which owns the {@link PageParserProbateList} outputs;
+ * a full queue holds the crawl back rather than piling up records.
+ * <p>
+ * Rows come out in the order the pages were fetched.
+ *
+ */
+public class CrawlPipeline {
+    private static final Logger LOG = Logger.getLogger(CrawlPipeline.class);
+    private static final Object END_OF_PAGES = new Object();
+
+    private final BlockingQueue<Object> queue;
+    private final Thread writer;
+    private volatile boolean failed;
+    private final AtomicInteger unparsedPages = new AtomicInteger();
+
+    /**
+     * The rows of a details page and the case type whose files they go to.
+     */
+    private static class ParsedDetails {
+    	private final String caseType;
+    	private final CaseDetailsRecord details;
+
+    	ParsedDetails(String caseType, CaseDetailsRecord details) {
+    		this.caseType = caseType;
+    		this.details = details;
+    	}
+    }
+
+    private CrawlPipeline(int capacity) {
+    	this.queue = new ArrayBlockingQueue<Object>(Math.max(1, capacity));
+    	this.writer = new Thread(new Runnable() {
+			public void run() {
+				write();
+			}
+		}, "pipeline-writer");
+    }
+
+    /**
+     * Opens a new set of csv (and binary, when enabled) outputs in the data directory and starts
+     * the writer.
+     */
+    public static CrawlPipeline open(File dataDirectory, int capacity) throws IOException {
+    	if (!PageParserProbateList.openOutputFiles(dataDirectory)) {
+    		PageParserProbateList.closeOutputFiles();
+    		throw new IOException("Failed to open the output files in " + dataDirectory.getAbsolutePath());
+    	}
+    	CrawlPipeline pipeline = new CrawlPipeline(capacity);
+    	pipeline.writer.start();
+    	return pipeline;
+    }
+
+    /**
+     * Queues the rows of a case list page already parsed by the collector.
+     */
+    public void caseList(CaseListPage page) throws InterruptedException {
+    	if (!failed) {
+    		queue.put(page);
+    	}
+    }
+
+    /**
+     * Parses a case details page on the calling thread, with the extractor of the case type in its
+     * key, and queues its rows.
+     *
+     * @return false when the page could not be parsed, which also fails the pipeline on close
+     */
+    public boolean caseDetails(StoredPage page) throws InterruptedException {
+    	String caseType = PageParserProbateList.caseTypeOfDetailsKey(page.getKey());
+    	CaseDetailsRecord details = PageParserProbateList.detailsParser(caseType).parse(page);
+    	if (details == null) {
+    		unparsedPages.incrementAndGet();
+    		return false;
+    	}
+    	if (!failed) {
+    		queue.put(new ParsedDetails(caseType, details));
+    	}
+    	return true;
+    }
+
+    /**
+     * Waits for the queued rows to be written and closes the outputs.
+     *
+     * @return false when writing failed along the way or a details page could not be parsed
+     */
+    public boolean close() throws InterruptedException {
+    	queue.put(END_OF_PAGES);
+    	writer.join();
+    	PageParserProbateList.closeOutputFiles();
+    	if (unparsedPages.get() > 0) {
+    		LOG.error("CrawlPipeline..." + unparsedPages.get() + " case details pages could not be parsed, their rows are missing");
+    	}
+    	return !failed && unparsedPages.get() == 0;
+    }
+
+    private void write() {
+    	boolean firstList = true;
+    	try {
+    		while (true) {
+    			Object parsed = queue.poll();
+    			if (parsed == null) {
+    				//caught up with the crawl, let readers of the csv files see what is there so far
+    				if (!failed) {
+    					PageParserProbateList.flushOutputFiles();
+    				}
+    				parsed = queue.take();
+    			}
+    			if (parsed == END_OF_PAGES) {
+    				return;
+    			}
+    			if (failed) {
+    				continue;
+    			}
+    			if (parsed instanceof CaseListPage) {
+    				PageParserProbateList.CASE_LIST_WRITER.write((CaseListPage) parsed, firstList);
+    				firstList = false;
+    			}
+    			else {
+    				ParsedDetails details = (ParsedDetails) parsed;
+    				PageParserProbateList.detailsWriter(details.caseType).write(details.details, false);
+    			}
+    		}
+    	} catch (IOException e) {
+    		LOG.error("CrawlPipeline...Failed to write, no further rows will be written", e);
+    		failed = true;
+    		drain();
+    	} catch (RuntimeException e) {
+    		//a row the outputs choke on must not leave the crawl blocked on a full queue
+    		LOG.error("CrawlPipeline...Failed to write, no further rows will be written", e);
+    		failed = true;
+    		drain();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+
+    /**
+     * Keeps taking records after a failure so the crawl is not held back, until the end arrives.
+     */
+    private void drain() {
+    	try {
+    		while (queue.take() != END_OF_PAGES) {
+    			//discarded
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	}
+    }
+}
@@ -0,0 +1,92 @@
+package com.ect.probatescraper;
+
+/**
+ * Where one crawl goes and how fast: the lookup url, the list pages walked and the request rate.
+ * The collector reads them from its -Dprobate.crawl.* properties, the {@link CrawlLoadHarness} points
+ * a copy at the mock server instead, so neither touches the other's settings.
+ *
+ */
+public class CrawlSettings {
+	private String lookupUrl = CaseLookupPageCollector.CASE_LOOKUP_URL;
+	private boolean localListPages;
+	private int startAtPage = 2;
+	private int endAtPage = 27;
+	private double requestsPerMinute = 6;
+	private double minRequestsPerMinute = 1;
+	private double maxRequestsPerMinute = 30;
+
+	/**
+	 * @return the settings given by the probate.crawl.* properties, defaults for the ones not set
+	 */
+	public static CrawlSettings fromProperties() {
+		CrawlSettings settings = new CrawlSettings();
+		settings.lookupUrl = System.getProperty("probate.crawl.lookupUrl", settings.lookupUrl);
+		settings.localListPages = Boolean.parseBoolean(System.getProperty("probate.crawl.localListPages", "false"));
+		//During development, I'm trying no to go after pages more than once. The server is painfully slow
+		settings.startAtPage = Integer.getInteger("probate.crawl.startAtPage", settings.startAtPage).intValue();
+		settings.endAtPage = Integer.getInteger("probate.crawl.endAtPage", settings.endAtPage).intValue();
+		settings.requestsPerMinute = Double.parseDouble(System.getProperty("probate.crawl.requestsPerMinute", "6"));
+		settings.minRequestsPerMinute = Double.parseDouble(System.getProperty("probate.crawl.minRequestsPerMinute", "1"));
+		settings.maxRequestsPerMinute = Double.parseDouble(System.getProperty("probate.crawl.maxRequestsPerMinute", "30"));
+		return settings;
+	}
+
+	/**
+	 * @return format of the case lookup url, %s is the district
+	 */
+	public String getLookupUrl() {
+		return lookupUrl;
+	}
+
+	public void setLookupUrl(String lookupUrl) {
+		this.lookupUrl = lookupUrl;
+	}
+
+	/**
+	 * @return true to read the list pages already stored instead of fetching them
+	 */
+	public boolean isLocalListPages() {
+		return localListPages;
+	}
+
+	public void setLocalListPages(boolean localListPages) {
+		this.localListPages = localListPages;
+	}
+
+	public int getStartAtPage() {
+		return startAtPage;
+	}
+
+	public void setStartAtPage(int startAtPage) {
+		this.startAtPage = startAtPage;
+	}
+
+	public int getEndAtPage() {
+		return endAtPage;
+	}
+
+	public void setEndAtPage(int endAtPage) {
+		this.endAtPage = endAtPage;
+	}
+
+	public double getRequestsPerMinute() {
+		return requestsPerMinute;
+	}
+
+	public double getMinRequestsPerMinute() {
+		return minRequestsPerMinute;
+	}
+
+	public double getMaxRequestsPerMinute() {
+		return maxRequestsPerMinute;
+	}
+
+	/**
+	 * Sets the starting request rate and the range the rate controller adapts it within.
+	 */
+	public void setRequestsPerMinute(double requestsPerMinute, double minRequestsPerMinute, double maxRequestsPerMinute) {
+		this.requestsPerMinute = requestsPerMinute;
+		this.minRequestsPerMinute = minRequestsPerMinute;
+		this.maxRequestsPerMinute = maxRequestsPerMinute;
+	}
+}
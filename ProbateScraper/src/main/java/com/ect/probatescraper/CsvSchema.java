@@ -0,0 +1,32 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The fixed list of columns of a csv file. A {@link CsvWriter} with a schema pads short rows and
+ * refuses long ones, so every row of the file has exactly the columns named in the header.
+ *
+ */
+public class CsvSchema {
+
+	private final List<String> columns;
+
+	public CsvSchema(List<String> columns) {
+		this.columns = Collections.unmodifiableList(new ArrayList<String>(columns));
+	}
+
+	public static CsvSchema of(String... columns) {
+		return new CsvSchema(Arrays.asList(columns));
+	}
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public int size() {
+		return columns.size();
+	}
+}
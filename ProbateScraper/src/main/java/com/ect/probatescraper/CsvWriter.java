@@ -0,0 +1,148 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes RFC 4180 csv. Each field is copied once into a reusable buffer, quoted (with embedded
+ * quotes doubled) only when it holds a comma, quote or line break, so no intermediate Strings are
+ * made. Rows end with CRLF. Not thread safe, give every output its own writer.
+ *
+ */
+public class CsvWriter implements Closeable, Flushable {
+    static final int BUFFER_SIZE = 16 * 1024;
+
+    private final Writer out;
+    private char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private CsvSchema schema;
+    private int fieldsInRow;
+    private int rowCount;
+
+    public CsvWriter(Writer out) {
+    	this.out = out;
+    }
+
+    /**
+     * Sets the schema every following row must fit and writes its column names as the header row.
+     */
+    public void writeHeader(CsvSchema schema) throws IOException {
+    	if (fieldsInRow != 0) {
+    		throw new IllegalStateException("Header written in the middle of a row");
+    	}
+    	this.schema = schema;
+    	for (String column : schema.getColumns()) {
+    		field(column);
+    	}
+    	endRow();
+    	rowCount--;
+    }
+
+    public CsvSchema getSchema() {
+    	return schema;
+    }
+
+    /**
+     * Appends a field to the current row, null is written as an empty field.
+     */
+    public CsvWriter field(String value) throws IOException {
+    	if (schema != null && fieldsInRow == schema.size()) {
+    		throw new IllegalStateException("Row has more than the " + schema.size() + " columns of the schema");
+    	}
+    	int length = (value == null ? 0 : value.length());
+    	//worst case every character is a quote, plus separator and enclosing quotes
+    	ensureCapacity(2 * length + 3);
+    	if (fieldsInRow++ > 0) {
+    		buffer[position++] = ',';
+    	}
+    	if (length == 0) {
+    		return this;
+    	}
+
+    	boolean quote = false;
+    	for (int i = 0; i < length; i++) {
+    		char c = value.charAt(i);
+    		if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+    			quote = true;
+    			break;
+    		}
+    	}
+
+    	if (!quote) {
+    		value.getChars(0, length, buffer, position);
+    		position += length;
+    		return this;
+    	}
+
+    	buffer[position++] = '"';
+    	for (int i = 0; i < length; i++) {
+    		char c = value.charAt(i);
+    		if (c == '"') {
+    			buffer[position++] = '"';
+    		}
+    		buffer[position++] = c;
+    	}
+    	buffer[position++] = '"';
+    	return this;
+    }
+
+    /**
+     * Ends the current row, padding it with empty fields up to the width of the schema.
+     */
+    public void endRow() throws IOException {
+    	if (schema != null) {
+    		ensureCapacity(schema.size() - fieldsInRow + 2);
+    		while (fieldsInRow < schema.size()) {
+    			if (fieldsInRow++ > 0) {
+    				buffer[position++] = ',';
+    			}
+    		}
+    	}
+    	else {
+    		ensureCapacity(2);
+    	}
+    	buffer[position++] = '\r';
+    	buffer[position++] = '\n';
+    	fieldsInRow = 0;
+    	rowCount++;
+    }
+
+    /**
+     * @return number of rows ended so far, not counting the header
+     */
+    public int getRowCount() {
+    	return rowCount;
+    }
+
+    public void flush() throws IOException {
+    	flushBuffer();
+    	out.flush();
+    }
+
+    public void close() throws IOException {
+    	try {
+    		flushBuffer();
+    	} finally {
+    		out.close();
+    	}
+    }
+
+    private void flushBuffer() throws IOException {
+    	if (position > 0) {
+    		out.write(buffer, 0, position);
+    		position = 0;
+    	}
+    }
+
+    private void ensureCapacity(int needed) throws IOException {
+    	if (position + needed <= buffer.length) {
+    		return;
+    	}
+    	flushBuffer();
+    	if (needed > buffer.length) {
+    		buffer = new char[needed];
+    	}
+    }
+}
@@ -0,0 +1,101 @@
+package com.ect.probatescraper;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs case detail fetches in the background so the crawl workers can keep walking list pages while
+ * slow detail requests are outstanding. At most maxInFlight fetches run at once; a worker handing in
+ * one more waits for a slot, which keeps the backlog (and memory) bounded. The
+ * {@link PolitenessScheduler} still spaces out the requests each host sees, the pool only lets slow
+ * responses overlap instead of queueing behind one another.
+ *
+ */
+public class DetailFetchPool {
+    private static final Logger LOG = Logger.getLogger(DetailFetchPool.class);
+
+    /**
+     * A single fetch, run on one of the pool's threads.
+     */
+    public interface FetchTask {
+    	void fetch() throws InterruptedException;
+    }
+
+    private final int maxInFlight;
+    private final Semaphore slots;
+    private final ExecutorService pool;
+
+    public DetailFetchPool(int maxInFlight) {
+    	this(maxInFlight, "detail-fetch");
+    }
+
+    /**
+     * @param name
+     *            the pool's threads are named name-1, name-2, ...
+     */
+    public DetailFetchPool(int maxInFlight, final String name) {
+    	this.maxInFlight = Math.max(1, maxInFlight);
+    	this.slots = new Semaphore(this.maxInFlight);
+    	this.pool = Executors.newFixedThreadPool(this.maxInFlight, new ThreadFactory() {
+    		private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+    }
+
+    /**
+     * Hands the fetch to the pool, waiting first while maxInFlight fetches are already running.
+     */
+    public void submit(final FetchTask task) throws InterruptedException {
+    	slots.acquire();
+    	try {
+    		pool.execute(new Runnable() {
+    			public void run() {
+    				try {
+    					task.fetch();
+    				} catch (InterruptedException e) {
+    					Thread.currentThread().interrupt();
+    				} catch (RuntimeException e) {
+    					LOG.error("DetailFetchPool...Fetch failed", e);
+    				} finally {
+    					slots.release();
+    				}
+    			}
+    		});
+    	} catch (RuntimeException e) {
+    		slots.release();
+    		throw e;
+    	}
+    }
+
+    /**
+     * @return number of fetches running right now
+     */
+    public int getInFlight() {
+    	return maxInFlight - slots.availablePermits();
+    }
+
+    /**
+     * Waits until every fetch handed in so far has finished.
+     */
+    public void awaitIdle() throws InterruptedException {
+    	slots.acquire(maxInFlight);
+    	slots.release(maxInFlight);
+    }
+
+    /**
+     * Waits for the running fetches and stops the threads.
+     */
+    public void close() throws InterruptedException {
+    	awaitIdle();
+    	pool.shutdown();
+    }
+}
@@ -0,0 +1,48 @@
+package com.ect.probatescraper;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps the fiduciary fields that repeat across a crawl (the attorney or law firm a fiduciary is
+ * represented by, and city state zip lines) to small integer ids, so the fiduciary csv carries a
+ * number for each and the text is written once to the entity table. Ids are handed out in the order
+ * values are first seen, id 0 is the empty string and {@link #NULL_ID} stands for null.
+ * <p>
+ * One dictionary belongs to one set of output files and is used only by the writer that fills them,
+ * which sees the records in their final order, so the same pages always get the same ids. Every value
+ * is remembered as long as the output set is open, a value never gets a second id.
+ *
+ */
+public class EntityDictionary {
+	public static final int NULL_ID = -1;
+	public static final int EMPTY_ID = 0;
+
+	private final Map<String, Integer> ids = new HashMap<String, Integer>();
+	private int nextId = EMPTY_ID + 1;
+
+	/**
+	 * @return the id of the value, a new one (raising {@link #size()}) when the value is not known
+	 */
+	public int id(String value) {
+		if (value == null) {
+			return NULL_ID;
+		}
+		if (value.length() == 0) {
+			return EMPTY_ID;
+		}
+		Integer id = ids.get(value);
+		if (id == null) {
+			id = Integer.valueOf(nextId++);
+			ids.put(value, id);
+		}
+		return id.intValue();
+	}
+
+	/**
+	 * @return number of ids handed out, the empty string included; the next new value gets this id
+	 */
+	public int size() {
+		return nextId;
+	}
+}
@@ -0,0 +1,129 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Status, headers and decompressed body of a response from a {@link PageFetcher}. Closing it hands
+ * the connection back for reuse.
+ *
+ */
+public class FetchResponse implements Closeable {
+	public static final String ACCEPT_ENCODING = "gzip, deflate";
+
+	private final int status;
+	private final Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+	private final CountingInputStream wire;
+	private InputStream body;
+	private boolean decoded;
+
+	/**
+	 * Counts the bytes read through it, i.e. the body as it came off the wire.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if (read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+
+	/**
+	 * @param headers
+	 *            response headers as sent, the first value of each is kept
+	 * @param body
+	 *            body as it came off the wire, decompressed on first use according to its Content-Encoding
+	 */
+	public FetchResponse(int status, Map<String, List<String>> headers, InputStream body) {
+		this.status = status;
+		for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+			if (header.getKey() != null && !header.getValue().isEmpty()) {
+				this.headers.put(header.getKey(), header.getValue().get(0));
+			}
+		}
+		this.wire = (body == null ? null : new CountingInputStream(body));
+		this.body = wire;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return the header value, or null when the server did not send it
+	 */
+	public String getHeader(String name) {
+		return headers.get(name);
+	}
+
+	/**
+	 * @return the decompressed body, null when the response has none
+	 */
+	public InputStream getBody() throws IOException {
+		if (!decoded && body != null) {
+			//not before, an empty 304 body has no gzip header to read
+			body = decode(body, getHeader("Content-Encoding"));
+		}
+		decoded = true;
+		return body;
+	}
+
+	/**
+	 * @return body bytes read so far as they came off the wire, before decompression
+	 */
+	public long getWireBytes() {
+		return wire == null ? 0 : wire.count;
+	}
+
+	public void close() throws IOException {
+		if (body != null) {
+			body.close();
+		}
+	}
+
+	static InputStream decode(InputStream body, String contentEncoding) throws IOException {
+		if (contentEncoding == null) {
+			return body;
+		}
+		String encoding = contentEncoding.trim().toLowerCase();
+		if (encoding.equals("gzip") || encoding.equals("x-gzip")) {
+			return new GZIPInputStream(body, 8192);
+		}
+		if (encoding.equals("deflate")) {
+			return new InflaterInputStream(body);
+		}
+		return body;
+	}
+}
@@ -1,12 +1,17 @@
 package com.ect.probatescraper;
 
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class Fiduciary {
 
 	public static final String REPRESENTED_BY = "represented by";
 	public static final String PHONE = "phone:";
 	public static final String FAX = "fax:";
+	//attorneys and city state zip lines repeat across thousands of cases, each is kept once
+	private static final int MAX_CANONICAL_VALUES = 100000;
+	private static final ConcurrentMap<String, String> CANONICAL_VALUES = new ConcurrentHashMap<String, String>();
 
 	private String name;
 	private String representedBy;
@@ -65,7 +70,7 @@ public class Fiduciary {
 			int pos = name.toLowerCase().indexOf(REPRESENTED_BY);
 			if (pos > -1) {
 				this.name = name.substring(0, pos);
-				this.representedBy = name.substring((pos + REPRESENTED_BY.length()));
+				this.representedBy = canonical(name.substring((pos + REPRESENTED_BY.length())));
 			}
 			else {
 				this.name = name;
@@ -78,10 +83,10 @@ public class Fiduciary {
 			if (groupedInfo.size() > 2) {
 				if (groupedInfo.size() > 3) {
 					this.addrLn2 = groupedInfo.get(2);
-					this.cityStateZip = groupedInfo.get(3);
+					this.cityStateZip = canonical(groupedInfo.get(3));
 				}
 				else {
-					this.cityStateZip = groupedInfo.get(2);
+					this.cityStateZip = canonical(groupedInfo.get(2));
 				}
 			}
 		}
@@ -96,7 +101,7 @@ public class Fiduciary {
 		int pos = name.toLowerCase().indexOf(REPRESENTED_BY);
 		if (pos > -1) {
 			this.name = name.substring(0, pos);
-			this.representedBy = name.substring((pos + REPRESENTED_BY.length()));
+			this.representedBy = canonical(name.substring((pos + REPRESENTED_BY.length())));
 		}
 		else {
 			this.name = name;
@@ -108,7 +113,7 @@ public class Fiduciary {
 	}
 
 	public void setRepresentedBy(String representedBy) {
-		this.representedBy = representedBy;
+		this.representedBy = canonical(representedBy);
 	}
 
 	public String getAddrLn1() {
@@ -132,7 +137,7 @@ public class Fiduciary {
 	}
 
 	public void setCityStateZip(String cityStateZip) {
-		this.cityStateZip = cityStateZip;
+		this.cityStateZip = canonical(cityStateZip);
 	}
 
 	public String getPhone() {
@@ -151,6 +156,30 @@ public class Fiduciary {
 		this.fax = fax;
 	}
 	
+	@Override
+	public String toString() {
+		return "[" + name + "|" + representedBy + "|" + addrLn1 + "|" + addrLn2 + "|" + cityStateZip + "|" + phone + "|" + fax + "]";
+	}
+
+	/**
+	 * @return the one instance kept of a value equal to the given one, the same whichever thread or
+	 *         page saw it first; the values are let go in one sweep once there are too many, the next
+	 *         ones seen are kept instead
+	 */
+	static String canonical(String value) {
+		if (value == null || value.length() == 0) {
+			return value;
+		}
+		String kept = CANONICAL_VALUES.putIfAbsent(value, value);
+		if (kept != null) {
+			return kept;
+		}
+		if (CANONICAL_VALUES.size() > MAX_CANONICAL_VALUES) {
+			CANONICAL_VALUES.clear();
+		}
+		return value;
+	}
+
 	public static final boolean isPhoneFaxGroup(List<String> groupedInfo) {
 		if (groupedInfo != null && !groupedInfo.isEmpty()) {
 			String firstRow = groupedInfo.get(0); 
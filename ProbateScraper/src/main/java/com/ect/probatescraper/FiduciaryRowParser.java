@@ -0,0 +1,111 @@
+package com.ect.probatescraper;
+
+/**
+ * Single pass state machine over the fiduciary rows of a case details page. Blank rows separate
+ * groups; a group starting with a phone or fax line belongs to the fiduciary before it, any other
+ * group starts a new fiduciary (name, address line 1, optional address line 2, city state zip);
+ * the last line of a group is its city state zip, any lines between it and address line 1 are joined
+ * into address line 2.
+ * Each fiduciary is handed on as soon as it can no longer change, so only the current one is held
+ * however many a case has.
+ *
+ */
+public class FiduciaryRowParser {
+
+	/**
+	 * Receives the fiduciaries in page order.
+	 */
+	public interface FiduciaryHandler {
+		void fiduciary(Fiduciary fiduciary);
+	}
+
+	private enum State {
+		BETWEEN_GROUPS, ADDRESS, PHONE_FAX
+	}
+
+	private final FiduciaryHandler handler;
+	private State state = State.BETWEEN_GROUPS;
+	private Fiduciary current;
+	private int addressLines;
+
+	public FiduciaryRowParser(FiduciaryHandler handler) {
+		this.handler = handler;
+	}
+
+	public void row(String text) {
+		if (text.length() == 0) {
+			state = State.BETWEEN_GROUPS;
+			return;
+		}
+
+		switch (state) {
+			case BETWEEN_GROUPS:
+				if (isPhoneFax(text)) {
+					state = State.PHONE_FAX;
+					phoneFax(text);
+				}
+				else {
+					emit();
+					current = new Fiduciary();
+					current.setName(text);
+					addressLines = 1;
+					state = State.ADDRESS;
+				}
+				break;
+			case ADDRESS:
+				addressLines++;
+				if (addressLines == 2) {
+					current.setAddrLn1(text);
+				}
+				else if (addressLines == 3) {
+					//city state zip unless a fourth line turns out to follow
+					current.setCityStateZip(text);
+				}
+				else {
+					//the last line is always city state zip, the ones between join address line 2
+					String addrLn2 = current.getAddrLn2();
+					current.setAddrLn2(addrLn2 == null || addrLn2.length() == 0 ? current.getCityStateZip() 
+							: addrLn2 + ", " + current.getCityStateZip());
+					current.setCityStateZip(text);
+				}
+				break;
+			case PHONE_FAX:
+				phoneFax(text);
+				break;
+		}
+	}
+
+	/**
+	 * Hands on the last fiduciary, call once the rows of the case are done.
+	 */
+	public void finish() {
+		emit();
+		state = State.BETWEEN_GROUPS;
+	}
+
+	private void phoneFax(String text) {
+		//no fiduciary to attach to, nothing to keep
+		if (current == null) {
+			return;
+		}
+		String lower = text.toLowerCase();
+		if (lower.startsWith(Fiduciary.PHONE)) {
+			current.setPhone(text.substring(Fiduciary.PHONE.length()).trim());
+		}
+		else if (lower.startsWith(Fiduciary.FAX)) {
+			current.setFax(text.substring(Fiduciary.FAX.length()).trim());
+		}
+	}
+
+	private void emit() {
+		if (current != null) {
+			handler.fiduciary(current);
+			current = null;
+		}
+	}
+
+	private static boolean isPhoneFax(String text) {
+		String lower = text.toLowerCase();
+		return lower.startsWith(Fiduciary.PHONE) || lower.startsWith(Fiduciary.FAX);
+	}
+}
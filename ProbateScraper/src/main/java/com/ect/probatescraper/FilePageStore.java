@@ -0,0 +1,139 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The original layout, one html file per fetched page in the data directory. When a page is already
+ * on disk a copy is written next to it named with the run's suffix (key_suffix.html).
+ *
+ */
+public class FilePageStore implements PageStore {
+
+	private final File directory;
+	private final String copySuffix;
+
+	/**
+	 * @param copySuffix
+	 *            added to the file name when the page is already on disk, null overwrites instead
+	 */
+	public FilePageStore(File directory, String copySuffix) {
+		this.directory = directory;
+		this.copySuffix = copySuffix;
+	}
+
+	public StoredPage store(String key, long fetchMillis, File partFile) throws IOException {
+		File pageFile = new File(directory, key + PageParserProbateList.HTML_FILENAME_SUFFIX);
+		if (pageFile.exists() && copySuffix != null) {
+			pageFile = new File(directory, key + "_" + copySuffix + PageParserProbateList.HTML_FILENAME_SUFFIX);
+		}
+
+		if (!partFile.renameTo(pageFile)) {
+			pageFile.delete();
+			if (!partFile.renameTo(pageFile)) {
+				partFile.delete();
+				throw new IOException("Unable to move " + partFile.getAbsolutePath() + " to " + pageFile.getName());
+			}
+		}
+		return new StoredPage(this, key, fetchMillis, pageFile.getAbsolutePath());
+	}
+
+	/**
+	 * A copy is only written once key.html exists, so the newest copy is the one with the highest run
+	 * suffix and key.html the oldest.
+	 */
+	public StoredPage latest(String key) {
+		final String copyPrefix = key + "_";
+		File[] copies = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return name.startsWith(copyPrefix) && name.endsWith(PageParserProbateList.HTML_FILENAME_SUFFIX)
+						&& isRunSuffix(name.substring(copyPrefix.length(), name.length() - PageParserProbateList.HTML_FILENAME_SUFFIX.length()));
+			}
+		});
+		File pageFile = null;
+		if (copies != null) {
+			for (File copy : copies) {
+				if (pageFile == null || newerSuffix(copy.getName(), pageFile.getName())) {
+					pageFile = copy;
+				}
+			}
+		}
+		if (pageFile == null) {
+			pageFile = new File(directory, key + PageParserProbateList.HTML_FILENAME_SUFFIX);
+		}
+		if (!pageFile.isFile()) {
+			return null;
+		}
+		return new StoredPage(this, key, pageFile.lastModified(), pageFile.getAbsolutePath());
+	}
+
+	/**
+	 * @return true for the digits of a run's date stamp, as added to a copy
+	 */
+	private static boolean isRunSuffix(String suffix) {
+		if (suffix.length() == 0) {
+			return false;
+		}
+		for (int i = 0; i < suffix.length(); i++) {
+			if (!Character.isDigit(suffix.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compares copies of the same key, a longer stamp being a later one.
+	 */
+	private static boolean newerSuffix(String name, String than) {
+		return name.length() != than.length() ? name.length() > than.length() : name.compareTo(than) > 0;
+	}
+
+	public List<StoredPage> list(final String keyPrefix) {
+        File[] pageFiles = directory.listFiles(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+	            return name.startsWith(keyPrefix) && name.endsWith(PageParserProbateList.HTML_FILENAME_SUFFIX);
+			}
+        });
+        if (pageFiles == null) {
+        	return new ArrayList<StoredPage>(0);
+        }
+
+        Arrays.sort(pageFiles);
+        List<StoredPage> pages = new ArrayList<StoredPage>(pageFiles.length);
+        for (File pageFile : pageFiles) {
+        	String name = pageFile.getName();
+        	pages.add(new StoredPage(this, name.substring(0, name.length() - PageParserProbateList.HTML_FILENAME_SUFFIX.length()), 
+        			pageFile.lastModified(), pageFile.getAbsolutePath()));
+        }
+		return pages;
+	}
+
+	public StoredPage resolve(String location) {
+		File pageFile = new File(location);
+		if (!pageFile.isFile()) {
+			return null;
+		}
+    	String name = pageFile.getName();
+    	String key = name.endsWith(PageParserProbateList.HTML_FILENAME_SUFFIX) 
+    			? name.substring(0, name.length() - PageParserProbateList.HTML_FILENAME_SUFFIX.length()) : name;
+		return new StoredPage(this, key, pageFile.lastModified(), location);
+	}
+
+	public InputStream open(StoredPage page) throws IOException {
+		return new FileInputStream(page.getLocation());
+	}
+
+	public File createPartFile(String key) throws IOException {
+		return File.createTempFile(key + "_", CaseLookupPageCollector.PART_FILENAME_SUFFIX, directory);
+	}
+
+	public void close() {
+	}
+}
@@ -0,0 +1,159 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Remembers the validators (ETag, Last-Modified and a hash of the body) of every page written by
+ * the collector along with where the {@link PageStore} keeps it. The collector uses them to send conditional
+ * requests and to keep using the local copy when the server says, or the body shows, that nothing
+ * changed.
+ * <p>
+ * Entries are appended to a {@link TabSeparatedJournal} in the data directory, the last line for a url
+ * wins when the journal is read back.
+ *
+ */
+public class HttpCache {
+    private static final Logger LOG = Logger.getLogger(HttpCache.class);
+    public static final String CACHE_FILENAME = "HttpCache.idx";
+    static final String HASH_ALGORITHM = "SHA-1";
+
+    private final File journalFile;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+    private TabSeparatedJournal journal;
+
+    /**
+     * The validators and local copy known for a single url.
+     */
+    public static class Entry {
+    	private final String url;
+    	private final String etag;
+    	private final String lastModified;
+    	private final String contentHash;
+    	private final String location;
+    	private final long fetchedMillis;
+
+    	public Entry(String url, String etag, String lastModified, String contentHash, String location, long fetchedMillis) {
+    		this.url = url;
+    		this.etag = nullToEmpty(etag);
+    		this.lastModified = nullToEmpty(lastModified);
+    		this.contentHash = nullToEmpty(contentHash);
+    		this.location = location;
+    		this.fetchedMillis = fetchedMillis;
+    	}
+
+		public String getUrl() {
+			return url;
+		}
+
+		public String getEtag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		public String getContentHash() {
+			return contentHash;
+		}
+
+		/**
+		 * @return where the {@link PageStore} keeps the copy of the page
+		 */
+		public String getLocation() {
+			return location;
+		}
+
+		public long getFetchedMillis() {
+			return fetchedMillis;
+		}
+    }
+
+    private HttpCache(File journalFile) {
+    	this.journalFile = journalFile;
+    }
+
+    /**
+     * Reads back an existing journal (if any) and opens it for appending.
+     */
+    public static HttpCache open(File journalFile) throws IOException {
+    	HttpCache cache = new HttpCache(journalFile);
+    	cache.load();
+    	cache.journal = TabSeparatedJournal.append(journalFile);
+    	LOG.info("HttpCache..." + cache.entries.size() + " pages known from " + journalFile.getAbsolutePath());
+    	return cache;
+    }
+
+    private void load() throws IOException {
+    	TabSeparatedJournal.read(journalFile, new TabSeparatedJournal.RecordHandler() {
+    		public void record(String[] fields, String line) {
+    			if (fields.length < 6) {
+    				LOG.warn("HttpCache...Skipping damaged entry: " + line);
+    				return;
+    			}
+    			try {
+    				entries.put(fields[0], new Entry(fields[0], fields[1], fields[2], fields[3], fields[4], Long.parseLong(fields[5])));
+    			} catch (NumberFormatException e) {
+    				LOG.warn("HttpCache...Skipping damaged entry: " + line);
+    			}
+    		}
+    	});
+    }
+
+    /**
+     * @return the entry for the url, or null when the url is unknown
+     */
+    public Entry lookup(String url) {
+    	return entries.get(url);
+    }
+
+    public void store(Entry entry) {
+    	entries.put(entry.getUrl(), entry);
+    	synchronized (this) {
+    		if (journal != null) {
+    			journal.write(entry.getUrl(), entry.getEtag(), entry.getLastModified(), entry.getContentHash(), entry.getLocation(),
+    					Long.valueOf(entry.getFetchedMillis()));
+    			journal.flush();
+    		}
+    	}
+    }
+
+    public int size() {
+    	return entries.size();
+    }
+
+    public synchronized void close() {
+    	if (journal != null) {
+    		journal.close();
+    		journal = null;
+    	}
+    }
+
+    static final MessageDigest newDigest() {
+    	try {
+			return MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(HASH_ALGORITHM + " is not available", e);
+		}
+    }
+
+    static final String toHex(byte[] hash) {
+    	StringBuilder sb = new StringBuilder(hash.length * 2);
+    	for (byte b : hash) {
+    		sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+    		sb.append(Character.forDigit(b & 0xf, 16));
+    	}
+    	return sb.toString();
+    }
+
+    private static String nullToEmpty(String value) {
+    	return value == null ? "" : value;
+    }
+}
@@ -0,0 +1,158 @@
+package com.ect.probatescraper;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@link PageFetcher} on java.net.http. A single client holds a pool of persistent connections
+ * shared by every crawl worker and talks HTTP/2 to servers that offer it, falling back to
+ * HTTP/1.1 otherwise. Links that are not http or https go to a {@link UrlConnectionFetcher}.
+ * <p>
+ * The client's own request timeout only covers the wait for the response headers, so each response
+ * gets a deadline of the read timeout from sending the request: a body still being read then is
+ * closed and the read fails instead of hanging on a server that stopped sending.
+ *
+ */
+public class HttpClientFetcher implements PageFetcher {
+
+	private final HttpClient client;
+	private final long readTimeoutMillis;
+	private final UrlConnectionFetcher otherSchemes;
+	private final ScheduledThreadPoolExecutor deadlines;
+
+	/**
+	 * Body of a response that is closed when its deadline passes, a read cut short by that fails.
+	 */
+	private static class DeadlineInputStream extends FilterInputStream {
+		private final String link;
+		private ScheduledFuture<?> deadline;
+		private volatile boolean expired;
+
+		DeadlineInputStream(InputStream in, String link) {
+			super(in);
+			this.link = link;
+		}
+
+		void expire() {
+			expired = true;
+			try {
+				in.close();
+			} catch (IOException e) {
+				//the reader fails on expired either way
+			}
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			checkExpired();
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			checkExpired();
+			return read;
+		}
+
+		@Override
+		public void close() throws IOException {
+			deadline.cancel(false);
+			super.close();
+		}
+
+		private void checkExpired() throws IOException {
+			if (expired) {
+				throw new HttpTimeoutException("Timed out reading the body of " + link);
+			}
+		}
+	}
+
+	/**
+	 * @param readTimeoutMillis
+	 *            how long the whole response may take, headers and body
+	 */
+	public HttpClientFetcher(int connectTimeoutMillis, int readTimeoutMillis, boolean http2) {
+		this.client = HttpClient.newBuilder()
+				.version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+				.connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+				.followRedirects(HttpClient.Redirect.NORMAL)
+				.build();
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.otherSchemes = new UrlConnectionFetcher(connectTimeoutMillis, readTimeoutMillis);
+		this.deadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "fetch-deadlines");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.deadlines.setRemoveOnCancelPolicy(true);
+	}
+
+	public FetchResponse fetch(String link, Map<String, String> requestHeaders) throws IOException {
+		URI uri = URI.create(link);
+		if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+			return otherSchemes.fetch(link, requestHeaders);
+		}
+
+		long sendRequest = System.nanoTime();
+		HttpRequest.Builder request = HttpRequest.newBuilder(uri)
+				.timeout(Duration.ofMillis(readTimeoutMillis))
+				.header("Accept-Encoding", FetchResponse.ACCEPT_ENCODING)
+				.GET();
+		for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+			request.header(header.getKey(), header.getValue());
+		}
+
+		CompletableFuture<HttpResponse<InputStream>> sent = client.sendAsync(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+		HttpResponse<InputStream> response;
+		try {
+			response = sent.get(readTimeoutMillis, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			sent.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted waiting for " + link, e);
+		} catch (TimeoutException e) {
+			sent.cancel(true);
+			throw new HttpTimeoutException("Timed out waiting for the response to " + link);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to fetch " + link, e.getCause());
+		}
+		//the client does not tell connecting apart from waiting on the server, so no connect latency is
+		//recorded; the time to the headers is the first byte latency the collector records
+
+		final DeadlineInputStream body = new DeadlineInputStream(response.body(), link);
+		long remainingMillis = readTimeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - sendRequest);
+		body.deadline = deadlines.schedule(new Runnable() {
+			public void run() {
+				body.expire();
+			}
+		}, Math.max(0, remainingMillis), TimeUnit.MILLISECONDS);
+		return new FetchResponse(response.statusCode(), response.headers().map(), body);
+	}
+
+	public void close() {
+		//the client's connections close with its selector thread once it is unreachable
+		deadlines.shutdownNow();
+	}
+}
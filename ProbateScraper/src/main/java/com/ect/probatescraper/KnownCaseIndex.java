@@ -0,0 +1,235 @@
+package com.ect.probatescraper;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Persistent index of the case numbers whose detail page has already been fetched, with the time
+ * of the last fetch and how it went. The collector consults it before queuing a detail request so a
+ * warm re-crawl only goes after new or stale cases.
+ * <p>
+ * Case numbers are packed into a long (or hashed when they fit no packing) and kept in a primitive open
+ * addressing table, so a lookup is a few array reads even with hundreds of thousands of cases. Every
+ * change is appended to a small fixed size {@link RecordLog} which is replayed, and compacted when it
+ * has grown well past the number of cases, on open.
+ *
+ */
+public class KnownCaseIndex {
+    private static final Logger LOG = Logger.getLogger(KnownCaseIndex.class);
+    public static final String INDEX_FILENAME = "KnownCases.idx";
+
+    public static final byte STATUS_FETCHED = 1;
+    public static final byte STATUS_FAILED = 2;
+
+    static final String PACKED_ALPHABET = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ-/";
+    static final int PACKED_BASE = PACKED_ALPHABET.length() + 1;
+    static final int PACKED_MAX_LENGTH = 11;
+    /** District, year and serial of a probate case number, e.g. PD05-14-00123 */
+    static final Pattern PROBATE_CASE_NUMBER = Pattern.compile("([A-Z])([A-Z])(\\d{2})-(\\d{2})-(\\d{5})");
+    private static final long PROBATE_CASE_FLAG = 1L << 62;
+    static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int RECORD_SIZE = 8 + 8 + 1;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final RecordLog log;
+    private long[] keys;
+    private long[] fetchedMillis;
+    private byte[] statuses;
+    private int size;
+
+    private KnownCaseIndex(File logFile) {
+    	this.log = new RecordLog(logFile, RECORD_SIZE);
+    	allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Replays the record log (if any) and opens it for appending.
+     */
+    public static KnownCaseIndex open(File logFile) throws IOException {
+    	final KnownCaseIndex index = new KnownCaseIndex(logFile);
+    	index.log.replay(new RecordLog.RecordReader() {
+    		public void read(DataInputStream in) throws IOException {
+    			index.put(in.readLong(), in.readLong(), in.readByte());
+    		}
+    	});
+    	if (index.log.needsCompaction(index.size, INITIAL_CAPACITY)) {
+    		index.compact();
+    	}
+    	index.log.openForAppend();
+    	LOG.info("KnownCaseIndex..." + index.size + " cases known from " + logFile.getAbsolutePath());
+    	return index;
+    }
+
+    /**
+     * @return true when the case has never been fetched, its last fetch failed or it is older than maxAgeMillis
+     */
+    public synchronized boolean needsFetch(String caseNumber, long nowMillis, long maxAgeMillis) {
+    	int slot = find(encode(caseNumber));
+    	if (keys[slot] == 0) {
+    		return true;
+    	}
+    	return statuses[slot] != STATUS_FETCHED || (nowMillis - fetchedMillis[slot]) > maxAgeMillis;
+    }
+
+    public synchronized boolean contains(String caseNumber) {
+    	return keys[find(encode(caseNumber))] != 0;
+    }
+
+    /**
+     * @return time of the last fetch of the case, or -1 when it is unknown
+     */
+    public synchronized long getFetchedMillis(String caseNumber) {
+    	int slot = find(encode(caseNumber));
+    	return keys[slot] == 0 ? -1 : fetchedMillis[slot];
+    }
+
+    /**
+     * @return status of the last fetch of the case, or 0 when it is unknown
+     */
+    public synchronized byte getStatus(String caseNumber) {
+    	int slot = find(encode(caseNumber));
+    	return keys[slot] == 0 ? 0 : statuses[slot];
+    }
+
+    public synchronized void record(String caseNumber, final byte status, final long millis) throws IOException {
+    	final long key = encode(caseNumber);
+    	put(key, millis, status);
+    	log.append(new RecordLog.RecordWriter() {
+    		public void write(DataOutputStream out) throws IOException {
+    			writeRecord(out, key, millis, status);
+    		}
+    	});
+    }
+
+    public synchronized int size() {
+    	return size;
+    }
+
+    public synchronized void close() throws IOException {
+    	log.close();
+    }
+
+    /**
+     * Packs probate case numbers (PD05-14-00123) field by field into 40 bits, marked by bit 62, and
+     * other short case numbers (up to 11 characters of digits, letters, '-' and '/') losslessly into a
+     * positive long below 2^59. Anything else is hashed with 64 bit FNV-1a and marked by the sign bit.
+     * Never 0, which marks an empty slot.
+     */
+    static final long encode(String caseNumber) {
+    	String normalized = caseNumber.trim().toUpperCase();
+    	Matcher probate = PROBATE_CASE_NUMBER.matcher(normalized);
+    	if (probate.matches()) {
+    		long packed = (probate.group(1).charAt(0) - 'A') * 26 + (probate.group(2).charAt(0) - 'A');
+    		packed = packed * 100 + Integer.parseInt(probate.group(3));
+    		packed = packed * 100 + Integer.parseInt(probate.group(4));
+    		packed = packed * 100000 + Integer.parseInt(probate.group(5));
+    		return packed | PROBATE_CASE_FLAG;
+    	}
+
+    	int length = normalized.length();
+    	if (length > 0 && length <= PACKED_MAX_LENGTH) {
+    		long packed = 0;
+    		int i = 0;
+    		for (; i < length; i++) {
+    			int digit = PACKED_ALPHABET.indexOf(normalized.charAt(i));
+    			if (digit < 0) {
+    				break;
+    			}
+    			packed = packed * PACKED_BASE + (digit + 1);
+    		}
+    		if (i == length) {
+    			return packed;
+    		}
+    	}
+
+    	return fnv1a(FNV_OFFSET_BASIS, normalized) | Long.MIN_VALUE;
+    }
+
+    /**
+     * 64 bit FNV-1a of the text, continuing from hash ({@link #FNV_OFFSET_BASIS} to start one).
+     */
+    static long fnv1a(long hash, String text) {
+    	for (int i = 0; i < text.length(); i++) {
+    		hash ^= text.charAt(i);
+    		hash *= FNV_PRIME;
+    	}
+    	return hash;
+    }
+
+    private void allocate(int capacity) {
+    	keys = new long[capacity];
+    	fetchedMillis = new long[capacity];
+    	statuses = new byte[capacity];
+    }
+
+    private int find(long key) {
+    	int mask = keys.length - 1;
+    	int slot = mix(key) & mask;
+    	while (keys[slot] != 0 && keys[slot] != key) {
+    		slot = (slot + 1) & mask;
+    	}
+    	return slot;
+    }
+
+    private void put(long key, long millis, byte status) {
+    	int slot = find(key);
+    	if (keys[slot] == 0) {
+    		if ((size + 1) * 2 > keys.length) {
+    			grow();
+    			slot = find(key);
+    		}
+    		keys[slot] = key;
+    		size++;
+    	}
+    	fetchedMillis[slot] = millis;
+    	statuses[slot] = status;
+    }
+
+    private void grow() {
+    	long[] oldKeys = keys;
+    	long[] oldFetchedMillis = fetchedMillis;
+    	byte[] oldStatuses = statuses;
+    	allocate(oldKeys.length * 2);
+    	for (int i = 0; i < oldKeys.length; i++) {
+    		if (oldKeys[i] != 0) {
+    			int slot = find(oldKeys[i]);
+    			keys[slot] = oldKeys[i];
+    			fetchedMillis[slot] = oldFetchedMillis[i];
+    			statuses[slot] = oldStatuses[i];
+    		}
+    	}
+    }
+
+    private static int mix(long key) {
+    	long h = key * 0x9e3779b97f4a7c15L;
+    	return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Rewrites the log with one record per known case.
+     */
+    private void compact() throws IOException {
+    	log.compact(new RecordLog.RecordWriter() {
+    		public void write(DataOutputStream out) throws IOException {
+    			for (int i = 0; i < keys.length; i++) {
+    				if (keys[i] != 0) {
+    					writeRecord(out, keys[i], fetchedMillis[i], statuses[i]);
+    				}
+    			}
+    		}
+    	}, size);
+    }
+
+    private static void writeRecord(DataOutputStream out, long key, long millis, byte status) throws IOException {
+    	out.writeLong(key);
+    	out.writeLong(millis);
+    	out.writeByte(status);
+    }
+}
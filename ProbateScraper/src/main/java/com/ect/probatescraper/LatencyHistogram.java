@@ -0,0 +1,118 @@
+package com.ect.probatescraper;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free latency histogram with fixed buckets, from 5 ms up to a minute. The buckets line up with
+ * a Prometheus histogram so it can be exported as is; percentiles are estimated as the upper bound of
+ * the bucket they fall in.
+ *
+ */
+public class LatencyHistogram {
+    static final long[] BUCKET_MILLIS = {5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000};
+
+    private final String name;
+    private final String help;
+    //one more than the bounds, the last bucket takes everything over a minute
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_MILLIS.length + 1);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    public LatencyHistogram(String name, String help) {
+    	this.name = name;
+    	this.help = help;
+    }
+
+    public void record(long nanos) {
+    	long millis = nanos / 1000000;
+    	int bucket = 0;
+    	while (bucket < BUCKET_MILLIS.length && millis > BUCKET_MILLIS[bucket]) {
+    		bucket++;
+    	}
+    	counts.incrementAndGet(bucket);
+    	sumNanos.addAndGet(nanos);
+    	count.incrementAndGet();
+    }
+
+    /**
+     * @return a histogram of what was recorded here after earlier, a {@link #copy()} of this one
+     */
+    public LatencyHistogram since(LatencyHistogram earlier) {
+    	LatencyHistogram difference = copy();
+    	for (int bucket = 0; bucket < counts.length(); bucket++) {
+    		difference.counts.addAndGet(bucket, -earlier.counts.get(bucket));
+    	}
+    	difference.count.addAndGet(-earlier.count.get());
+    	difference.sumNanos.addAndGet(-earlier.sumNanos.get());
+    	return difference;
+    }
+
+    /**
+     * @return a histogram holding what this one has recorded so far, left alone by later records
+     */
+    public LatencyHistogram copy() {
+    	LatencyHistogram copy = new LatencyHistogram(name, help);
+    	for (int bucket = 0; bucket < counts.length(); bucket++) {
+    		copy.counts.set(bucket, counts.get(bucket));
+    	}
+    	copy.count.set(count.get());
+    	copy.sumNanos.set(sumNanos.get());
+    	return copy;
+    }
+
+    /**
+     * Records the time since startNanos (from System.nanoTime()).
+     */
+    public void recordSince(long startNanos) {
+    	record(System.nanoTime() - startNanos);
+    }
+
+    public long getCount() {
+    	return count.get();
+    }
+
+    public double getMeanMillis() {
+    	long n = count.get();
+    	return n == 0 ? 0 : sumNanos.get() / 1000000.0 / n;
+    }
+
+    /**
+     * @param quantile
+     *            between 0 and 1, e.g. 0.95
+     * @return upper bound in milliseconds of the bucket holding the quantile, -1 when it falls in the
+     *         overflow bucket and 0 when nothing was recorded
+     */
+    public long getPercentileMillis(double quantile) {
+    	long n = count.get();
+    	if (n == 0) {
+    		return 0;
+    	}
+    	long rank = (long) Math.ceil(quantile * n);
+    	long seen = 0;
+    	for (int bucket = 0; bucket < BUCKET_MILLIS.length; bucket++) {
+    		seen += counts.get(bucket);
+    		if (seen >= rank) {
+    			return BUCKET_MILLIS[bucket];
+    		}
+    	}
+    	return -1;
+    }
+
+    /**
+     * Appends the histogram in the Prometheus text exposition format, in seconds.
+     */
+    public void writePrometheus(StringBuilder out) {
+    	out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    	out.append("# TYPE ").append(name).append(" histogram\n");
+    	long cumulative = 0;
+    	for (int bucket = 0; bucket < BUCKET_MILLIS.length; bucket++) {
+    		cumulative += counts.get(bucket);
+    		out.append(name).append("_bucket{le=\"").append(BUCKET_MILLIS[bucket] / 1000.0).append("\"} ").append(cumulative).append('\n');
+    	}
+    	cumulative += counts.get(BUCKET_MILLIS.length);
+    	out.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+    	out.append(name).append("_sum ").append(sumNanos.get() / 1000000000.0).append('\n');
+    	out.append(name).append("_count ").append(cumulative).append('\n');
+    }
+}
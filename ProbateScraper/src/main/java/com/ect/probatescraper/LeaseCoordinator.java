@@ -0,0 +1,520 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hands out the work units of a crawl spread over several collectors, through a directory they all
+ * share (a network share, or a local directory for several collectors on one box). Nothing runs
+ * besides the collectors themselves, every decision is made with atomic file operations:
+ * <ul>
+ * <li>units/ holds a file per unit, written to a temporary file and renamed into place</li>
+ * <li>leases/ holds the lease of every unit being worked on, naming the collector and when the lease
+ * runs out; it is created as a hard link to a complete temporary file, so only one collector gets it
+ * and nobody ever reads half a lease</li>
+ * <li>done/ holds an empty marker for every unit finished</li>
+ * <li>failed/ holds an empty marker for every failed attempt at a unit; a unit that failed
+ * {@link #MAX_ATTEMPTS} times is given up, its pages are left to the retry queues of the collectors
+ * that tried</li>
+ * </ul>
+ * A collector renews its leases while it works on them. When it dies its leases run out and the next
+ * collector looking for work takes the unit over, by renaming the expired lease away (only one rename
+ * can succeed) and creating its own. A lease is never overwritten: renewing and releasing rename it
+ * away too, check it is still their own and only then link the new lease in or drop it, so a renewal
+ * racing a takeover can lose the lease but never write over the new owner's. A collector that stalls
+ * past its lease may find its unit taken over and both finish it; that costs a few requests twice,
+ * pages are stored by key so nothing is duplicated. Leases are compared against each collector's own
+ * clock, keep the lease well above the clock skew between the machines.
+ *
+ */
+public class LeaseCoordinator {
+    private static final Logger LOG = Logger.getLogger(LeaseCoordinator.class);
+    static final String UNITS_DIR = "units";
+    static final String LEASES_DIR = "leases";
+    static final String DONE_DIR = "done";
+    static final String FAILED_DIR = "failed";
+    static final int MAX_ATTEMPTS = 3;
+    static final String UNIT_SUFFIX = ".unit";
+    static final String LEASE_SUFFIX = ".lease";
+    private static final String FIELD_SEPARATOR = "\t";
+    private static final String UNIT = "U";
+    private static final String LINK = "L";
+
+    /**
+     * Part of a crawl: list pages fromPage through toPage of a district, with the links to them. The
+     * first unit of a district is page 1 alone, whoever collects it learns the other pages and adds
+     * the units for them.
+     */
+    public static class WorkUnit {
+    	private final String district;
+    	private final int fromPage;
+    	private final int toPage;
+    	private final Map<Integer, String> pageLinks;
+
+    	public WorkUnit(String district, int fromPage, int toPage, Map<Integer, String> pageLinks) {
+    		this.district = district;
+    		this.fromPage = fromPage;
+    		this.toPage = toPage;
+    		this.pageLinks = new TreeMap<Integer, String>(pageLinks);
+    	}
+
+    	public String getId() {
+    		return isFirstPage() ? district : String.format("%s_%03d-%03d", district, fromPage, toPage);
+    	}
+
+		public String getDistrict() {
+			return district;
+		}
+
+		public int getFromPage() {
+			return fromPage;
+		}
+
+		public int getToPage() {
+			return toPage;
+		}
+
+		/**
+		 * @return page number to link, for the pages of the unit
+		 */
+		public Map<Integer, String> getPageLinks() {
+			return pageLinks;
+		}
+
+		public boolean isFirstPage() {
+			return fromPage == 1 && toPage == 1;
+		}
+
+		@Override
+		public String toString() {
+			return getId();
+		}
+    }
+
+    private final File unitsDir;
+    private final File leasesDir;
+    private final File doneDir;
+    private final File failedDir;
+    private final String workerId;
+    private final long leaseMillis;
+    private final Set<String> held = ConcurrentHashMap.newKeySet();
+    private Thread heartbeat;
+
+    LeaseCoordinator(File directory, String workerId, long leaseMillis) throws IOException {
+    	this.unitsDir = new File(directory, UNITS_DIR);
+    	this.leasesDir = new File(directory, LEASES_DIR);
+    	this.doneDir = new File(directory, DONE_DIR);
+    	this.failedDir = new File(directory, FAILED_DIR);
+    	this.workerId = workerId.replace('\t', ' ').replace('\n', ' ');
+    	this.leaseMillis = leaseMillis;
+    	Files.createDirectories(unitsDir.toPath());
+    	Files.createDirectories(leasesDir.toPath());
+    	Files.createDirectories(doneDir.toPath());
+    	Files.createDirectories(failedDir.toPath());
+    }
+
+    /**
+     * @param workerId
+     *            names this collector in the leases, unique among the collectors sharing the directory
+     */
+    public static LeaseCoordinator open(File directory, String workerId, long leaseMillis) throws IOException {
+    	return new LeaseCoordinator(directory, workerId, leaseMillis);
+    }
+
+    public String getWorkerId() {
+    	return workerId;
+    }
+
+    /**
+     * Adds a unit for the collectors to claim, a unit already there is left as it is.
+     */
+    public void publish(WorkUnit unit) throws IOException {
+    	File unitFile = new File(unitsDir, unit.getId() + UNIT_SUFFIX);
+    	if (unitFile.exists()) {
+    		return;
+    	}
+    	StringBuilder content = new StringBuilder();
+    	content.append(UNIT).append(FIELD_SEPARATOR).append(unit.getDistrict()).append(FIELD_SEPARATOR).append(unit.getFromPage())
+    			.append(FIELD_SEPARATOR).append(unit.getToPage()).append('\n');
+    	for (Map.Entry<Integer, String> pageLink : unit.getPageLinks().entrySet()) {
+    		content.append(LINK).append(FIELD_SEPARATOR).append(pageLink.getKey()).append(FIELD_SEPARATOR).append(pageLink.getValue()).append('\n');
+    	}
+    	//the same unit published twice has the same content, whichever rename comes last wins
+    	Path temp = writeTemp(unitsDir, unit.getId(), content.toString());
+    	Files.move(temp, unitFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Takes the lease of the first unit nobody is working on, or whose lease ran out.
+     *
+     * @return the unit now leased to this collector, or null when there is none right now
+     */
+    public WorkUnit claim() throws IOException {
+    	for (String unitId : unitIds()) {
+    		if (isSettled(unitId) || held.contains(unitId)) {
+    			continue;
+    		}
+    		if (tryLease(unitId)) {
+    			WorkUnit unit = readUnit(unitId);
+    			if (unit != null) {
+    				LOG.info("LeaseCoordinator..." + workerId + " claimed " + unitId);
+    				return unit;
+    			}
+    			release(unitId);
+    		}
+    	}
+    	return null;
+    }
+
+    /**
+     * Extends the lease of a unit this collector is working on.
+     *
+     * @return false when the lease was lost to another collector
+     */
+    public boolean renew(WorkUnit unit) throws IOException {
+    	return renew(unit.getId());
+    }
+
+    private boolean renew(String unitId) throws IOException {
+    	File leaseFile = leaseFile(unitId);
+    	//replacing the lease in place could write over a collector that took it over since it was read
+    	String[] lease = takeOwnLease(unitId, leaseFile);
+    	if (lease != null) {
+    		renewing(unitId);
+    	}
+    	if (lease == null || !linkLease(unitId, leaseFile, lease())) {
+    		held.remove(unitId);
+    		LOG.warn("LeaseCoordinator..." + workerId + " lost the lease of " + unitId);
+    		return false;
+    	}
+    	return true;
+    }
+
+    /**
+     * Marks the unit finished and gives up its lease.
+     */
+    public void complete(WorkUnit unit) throws IOException {
+    	try {
+    		Files.createFile(new File(doneDir, unit.getId()).toPath());
+    	} catch (FileAlreadyExistsException e) {
+    		//finished by a collector that took it over as well
+    	}
+    	release(unit.getId());
+    	LOG.info("LeaseCoordinator..." + workerId + " completed " + unit.getId());
+    }
+
+    /**
+     * Records a failed attempt at the unit and gives up its lease, so the unit goes to whichever
+     * collector looks for work next, this one included, until it has failed {@link #MAX_ATTEMPTS}
+     * times.
+     */
+    public void fail(WorkUnit unit) throws IOException {
+    	File.createTempFile(unit.getId() + ".", "", failedDir);
+    	release(unit.getId());
+    	int attempts = attempts(unit.getId());
+    	if (attempts >= MAX_ATTEMPTS) {
+    		LOG.error("LeaseCoordinator..." + workerId + " giving up " + unit.getId() + " after " + attempts + " failed attempts");
+    	}
+    	else {
+    		LOG.warn("LeaseCoordinator..." + workerId + " failed " + unit.getId() + ", attempt " + attempts + " of " + MAX_ATTEMPTS);
+    	}
+    }
+
+    /**
+     * @return true once every unit published is done or given up
+     */
+    public boolean isFinished() {
+    	List<String> unitIds = unitIds();
+    	for (String unitId : unitIds) {
+    		if (!isSettled(unitId)) {
+    			return false;
+    		}
+    	}
+    	return !unitIds.isEmpty();
+    }
+
+    /**
+     * @return how many units are published, how many of them are done and how many given up
+     */
+    public int[] progress() {
+    	int done = 0;
+    	int givenUp = 0;
+    	List<String> unitIds = unitIds();
+    	for (String unitId : unitIds) {
+    		if (isDone(unitId)) {
+    			done++;
+    		}
+    		else if (attempts(unitId) >= MAX_ATTEMPTS) {
+    			givenUp++;
+    		}
+    	}
+    	return new int[] {unitIds.size(), done, givenUp};
+    }
+
+    /**
+     * Renews the leases held every third of the lease time, on a daemon thread, until closed.
+     */
+    public synchronized void startHeartbeat() {
+    	if (heartbeat != null) {
+    		return;
+    	}
+    	heartbeat = new Thread(new Runnable() {
+			public void run() {
+				try {
+					while (!Thread.currentThread().isInterrupted()) {
+						Thread.sleep(Math.max(1, leaseMillis / 3));
+						for (String unitId : new ArrayList<String>(held)) {
+							try {
+								renew(unitId);
+							} catch (IOException e) {
+								LOG.error("LeaseCoordinator...Failed to renew the lease of " + unitId, e);
+							}
+						}
+					}
+				} catch (InterruptedException e) {
+					//closed
+				}
+			}
+		}, "lease-heartbeat");
+    	heartbeat.setDaemon(true);
+    	heartbeat.start();
+    }
+
+    /**
+     * Stops renewing and gives up the leases still held, their units go to the other collectors.
+     */
+    public void close() {
+    	synchronized (this) {
+    		if (heartbeat != null) {
+    			heartbeat.interrupt();
+    			heartbeat = null;
+    		}
+    	}
+    	for (String unitId : new ArrayList<String>(held)) {
+    		release(unitId);
+    	}
+    }
+
+    /**
+     * Clock the leases are measured against, overridden by tests.
+     */
+    long now() {
+    	return System.currentTimeMillis();
+    }
+
+    /**
+     * Called while a lease is renamed away for renewal, overridden by tests to race it.
+     */
+    void renewing(String unitId) {
+    }
+
+    private boolean tryLease(String unitId) throws IOException {
+    	File leaseFile = leaseFile(unitId);
+    	if (createLease(unitId, leaseFile)) {
+    		return true;
+    	}
+
+    	String[] lease = readLease(leaseFile);
+    	if (lease != null && Long.parseLong(lease[1]) > now()) {
+    		return false;
+    	}
+    	//expired (or unreadable, left by a collector that died writing it): only one collector can rename it away
+    	File expired = new File(leasesDir, unitId + LEASE_SUFFIX + "." + System.nanoTime() + ".expired");
+    	try {
+    		Files.move(leaseFile.toPath(), expired.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    	} catch (NoSuchFileException e) {
+    		return false;
+    	}
+    	String[] moved = readLease(expired);
+    	expired.delete();
+    	if (moved != null && Long.parseLong(moved[1]) > now()) {
+    		//renewed just before the rename, put it back
+    		linkLease(unitId, leaseFile, moved[0] + FIELD_SEPARATOR + moved[1]);
+    		return false;
+    	}
+    	LOG.warn("LeaseCoordinator..." + workerId + " taking over " + unitId + (moved == null ? "" : " from " + moved[0]));
+    	return createLease(unitId, leaseFile);
+    }
+
+    private boolean createLease(String unitId, File leaseFile) throws IOException {
+    	if (linkLease(unitId, leaseFile, lease())) {
+    		held.add(unitId);
+    		return true;
+    	}
+    	return false;
+    }
+
+    /**
+     * Puts a lease in place unless there is one already.
+     *
+     * @return false when somebody else got in first, they hold the unit now
+     */
+    private boolean linkLease(String unitId, File leaseFile, String lease) throws IOException {
+    	Path temp = writeTemp(leasesDir, unitId, lease);
+    	try {
+    		Files.createLink(leaseFile.toPath(), temp);
+    		return true;
+    	} catch (FileAlreadyExistsException e) {
+    		return false;
+    	} finally {
+    		Files.deleteIfExists(temp);
+    	}
+    }
+
+    /**
+     * Renames the lease away when it is this collector's, a lease of somebody else's that was renamed
+     * away meanwhile is put back. While it is away nobody holds the unit and another collector may
+     * claim it.
+     *
+     * @return this collector's lease, or null when it does not hold the unit any longer
+     */
+    private String[] takeOwnLease(String unitId, File leaseFile) throws IOException {
+    	File taken = new File(leasesDir, unitId + LEASE_SUFFIX + "." + System.nanoTime() + ".taken");
+    	try {
+    		Files.move(leaseFile.toPath(), taken.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    	} catch (NoSuchFileException e) {
+    		return null;
+    	}
+    	String[] lease = readLease(taken);
+    	try {
+    		if (lease != null && lease[0].equals(workerId)) {
+    			return lease;
+    		}
+    		if (lease != null) {
+    			linkLease(unitId, leaseFile, lease[0] + FIELD_SEPARATOR + lease[1]);
+    		}
+    		return null;
+    	} finally {
+    		taken.delete();
+    	}
+    }
+
+    private void release(String unitId) {
+    	held.remove(unitId);
+    	try {
+    		takeOwnLease(unitId, leaseFile(unitId));
+    	} catch (IOException e) {
+    		//it runs out
+    		LOG.warn("LeaseCoordinator..." + workerId + " failed to release " + unitId, e);
+    	}
+    }
+
+    private String lease() {
+    	return workerId + FIELD_SEPARATOR + (now() + leaseMillis);
+    }
+
+    /**
+     * @return worker id and expiry, or null when there is no lease or it cannot be read
+     */
+    private static String[] readLease(File leaseFile) {
+    	try {
+    		String[] fields = new String(Files.readAllBytes(leaseFile.toPath()), BinaryRecordWriter.UTF8).trim().split(FIELD_SEPARATOR);
+    		if (fields.length != 2) {
+    			return null;
+    		}
+    		Long.parseLong(fields[1]);
+    		return fields;
+    	} catch (IOException e) {
+    		return null;
+    	} catch (NumberFormatException e) {
+    		return null;
+    	}
+    }
+
+    private WorkUnit readUnit(String unitId) throws IOException {
+    	File unitFile = new File(unitsDir, unitId + UNIT_SUFFIX);
+    	String district = null;
+    	int fromPage = 0;
+    	int toPage = 0;
+    	Map<Integer, String> pageLinks = new LinkedHashMap<Integer, String>();
+    	for (String line : Files.readAllLines(unitFile.toPath(), BinaryRecordWriter.UTF8)) {
+    		String[] fields = line.split(FIELD_SEPARATOR, -1);
+    		try {
+    			if (fields.length == 4 && fields[0].equals(UNIT)) {
+    				district = fields[1];
+    				fromPage = Integer.parseInt(fields[2]);
+    				toPage = Integer.parseInt(fields[3]);
+    			}
+    			else if (fields.length == 3 && fields[0].equals(LINK)) {
+    				pageLinks.put(Integer.valueOf(fields[1]), fields[2]);
+    			}
+    			else {
+    				LOG.warn("LeaseCoordinator...Skipping damaged line in " + unitFile + ": " + line);
+    			}
+    		} catch (NumberFormatException e) {
+    			LOG.warn("LeaseCoordinator...Skipping damaged line in " + unitFile + ": " + line);
+    		}
+    	}
+    	if (district == null) {
+    		LOG.error("LeaseCoordinator...Damaged unit " + unitFile);
+    		return null;
+    	}
+    	return new WorkUnit(district, fromPage, toPage, pageLinks);
+    }
+
+    /**
+     * @return the published units, in name order so every collector works through them alike
+     */
+    private List<String> unitIds() {
+    	List<String> unitIds = new ArrayList<String>();
+    	String[] names = unitsDir.list();
+    	if (names != null) {
+    		Arrays.sort(names);
+    		for (String name : names) {
+    			if (name.endsWith(UNIT_SUFFIX)) {
+    				unitIds.add(name.substring(0, name.length() - UNIT_SUFFIX.length()));
+    			}
+    		}
+    	}
+    	return unitIds;
+    }
+
+    private boolean isDone(String unitId) {
+    	return new File(doneDir, unitId).exists();
+    }
+
+    private boolean isSettled(String unitId) {
+    	return isDone(unitId) || attempts(unitId) >= MAX_ATTEMPTS;
+    }
+
+    /**
+     * @return how many attempts at the unit failed, by any collector
+     */
+    private int attempts(String unitId) {
+    	String[] names = failedDir.list();
+    	int attempts = 0;
+    	if (names != null) {
+    		for (String name : names) {
+    			if (name.startsWith(unitId + ".")) {
+    				attempts++;
+    			}
+    		}
+    	}
+    	return attempts;
+    }
+
+    private File leaseFile(String unitId) {
+    	return new File(leasesDir, unitId + LEASE_SUFFIX);
+    }
+
+    private static Path writeTemp(File directory, String name, String content) throws IOException {
+    	Path temp = File.createTempFile(name + ".", ".tmp", directory).toPath();
+    	Files.write(temp, content.getBytes(BinaryRecordWriter.UTF8));
+    	return temp;
+    }
+}
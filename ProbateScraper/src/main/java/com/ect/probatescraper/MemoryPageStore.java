@@ -0,0 +1,68 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps nothing: every page lives only as long as the {@link StoredPage} handed out for it, for a
+ * pipelined crawl that parses each page as it arrives and does not archive the html.
+ *
+ */
+public class MemoryPageStore implements PageStore {
+	static final String LOCATION_PREFIX = "memory:";
+
+	private static class MemoryPage extends StoredPage {
+		private final byte[] body;
+
+		MemoryPage(PageStore store, String key, long fetchMillis, byte[] body) {
+			super(store, key, fetchMillis, LOCATION_PREFIX + key);
+			this.body = body;
+		}
+	}
+
+	/**
+	 * Wraps a body already in memory.
+	 */
+	public StoredPage store(String key, long fetchMillis, byte[] body) {
+		return new MemoryPage(this, key, fetchMillis, body);
+	}
+
+	public StoredPage store(String key, long fetchMillis, File partFile) throws IOException {
+		try {
+			return store(key, fetchMillis, Files.readAllBytes(partFile.toPath()));
+		} finally {
+			partFile.delete();
+		}
+	}
+
+	public StoredPage latest(String key) {
+		return null;
+	}
+
+	public List<StoredPage> list(String keyPrefix) {
+		return Collections.emptyList();
+	}
+
+	public StoredPage resolve(String location) {
+		return null;
+	}
+
+	public InputStream open(StoredPage page) throws IOException {
+		if (!(page instanceof MemoryPage)) {
+			throw new IOException("Not a page of this store: " + page);
+		}
+		return new ByteArrayInputStream(((MemoryPage) page).body);
+	}
+
+	public File createPartFile(String key) throws IOException {
+		return File.createTempFile(key, CaseLookupPageCollector.PART_FILENAME_SUFFIX);
+	}
+
+	public void close() {
+	}
+}
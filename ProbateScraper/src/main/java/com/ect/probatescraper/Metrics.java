@@ -0,0 +1,217 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Crawl and parse metrics shared by the collector and the parser: latency histograms for connecting,
+ * the first byte of the response and the whole download, plus counters for bytes, retries, failures
+ * and pages and cases parsed. Everything is lock free so the crawl and parse threads can record
+ * without contending.
+ * <p>
+ * {@link #start()} publishes them over JMX and, when -Dprobate.metrics.port is set, as Prometheus
+ * text on http://localhost:port/metrics.
+ *
+ */
+public class Metrics implements MetricsMBean {
+    private static final Logger LOG = Logger.getLogger(Metrics.class);
+    public static final String OBJECT_NAME = "com.ect.probatescraper:type=Metrics";
+
+    public static final Metrics METRICS = new Metrics();
+
+    static int metricsPort = Integer.getInteger("probate.metrics.port", 0).intValue();
+    private static MetricsServer server;
+
+    final LatencyHistogram connect;
+    final LatencyHistogram firstByte;
+    final LatencyHistogram download;
+    final AtomicLong pagesFetched = new AtomicLong();
+    final AtomicLong pagesNotModified = new AtomicLong();
+    final AtomicLong bytesFetched = new AtomicLong();
+    final AtomicLong retries = new AtomicLong();
+    final AtomicLong fetchFailures = new AtomicLong();
+    final AtomicLong pagesParsed = new AtomicLong();
+    final AtomicLong casesParsed = new AtomicLong();
+    private volatile long startMillis = System.currentTimeMillis();
+
+    Metrics() {
+    	this(new LatencyHistogram("probate_fetch_connect_seconds", "Time to open the connection to the server."),
+    			new LatencyHistogram("probate_fetch_first_byte_seconds", "Time from sending the request to the response headers."),
+    			new LatencyHistogram("probate_fetch_download_seconds", "Time from sending the request to the last byte stored."));
+    }
+
+    private Metrics(LatencyHistogram connect, LatencyHistogram firstByte, LatencyHistogram download) {
+    	this.connect = connect;
+    	this.firstByte = firstByte;
+    	this.download = download;
+    }
+
+    /**
+     * Registers the MBean and starts the Prometheus endpoint if a port is configured. Failing to do
+     * either is logged, it never stops a crawl.
+     */
+    public static synchronized void start() {
+    	METRICS.startMillis = System.currentTimeMillis();
+    	try {
+    		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+    		ObjectName name = new ObjectName(OBJECT_NAME);
+    		if (!mbeans.isRegistered(name)) {
+    			mbeans.registerMBean(METRICS, name);
+    		}
+		} catch (JMException e) {
+			LOG.error("Metrics...Failed to register " + OBJECT_NAME, e);
+		}
+
+    	if (metricsPort > 0 && server == null) {
+    		try {
+				server = MetricsServer.start(metricsPort, METRICS);
+				LOG.info("Metrics...Prometheus metrics on http://localhost:" + metricsPort + MetricsServer.PATH);
+			} catch (IOException e) {
+				LOG.error("Metrics...Failed to start the metrics endpoint on port " + metricsPort, e);
+			}
+    	}
+    }
+
+    public static synchronized void stop() {
+    	if (server != null) {
+    		server.stop();
+    		server = null;
+    	}
+    	try {
+    		MBeanServer mbeans = ManagementFactory.getPlatformMBeanServer();
+    		ObjectName name = new ObjectName(OBJECT_NAME);
+    		if (mbeans.isRegistered(name)) {
+    			mbeans.unregisterMBean(name);
+    		}
+		} catch (JMException e) {
+			LOG.debug("Metrics...Failed to unregister " + OBJECT_NAME, e);
+		}
+    }
+
+    /**
+     * @return what has been recorded so far, left alone by later records
+     */
+    public Metrics snapshot() {
+    	return since(new Metrics());
+    }
+
+    /**
+     * The metrics are never reset, a crawl that wants its own numbers takes a {@link #snapshot()}
+     * before it starts.
+     *
+     * @return what has been recorded after the snapshot was taken
+     */
+    public Metrics since(Metrics snapshot) {
+    	Metrics difference = new Metrics(connect.since(snapshot.connect), firstByte.since(snapshot.firstByte), 
+    			download.since(snapshot.download));
+    	difference.pagesFetched.set(pagesFetched.get() - snapshot.pagesFetched.get());
+    	difference.pagesNotModified.set(pagesNotModified.get() - snapshot.pagesNotModified.get());
+    	difference.bytesFetched.set(bytesFetched.get() - snapshot.bytesFetched.get());
+    	difference.retries.set(retries.get() - snapshot.retries.get());
+    	difference.fetchFailures.set(fetchFailures.get() - snapshot.fetchFailures.get());
+    	difference.pagesParsed.set(pagesParsed.get() - snapshot.pagesParsed.get());
+    	difference.casesParsed.set(casesParsed.get() - snapshot.casesParsed.get());
+    	difference.startMillis = snapshot.startMillis;
+    	return difference;
+    }
+
+    /**
+     * @return every metric in the Prometheus text exposition format
+     */
+    public String toPrometheus() {
+    	StringBuilder out = new StringBuilder(4 * 1024);
+    	connect.writePrometheus(out);
+    	firstByte.writePrometheus(out);
+    	download.writePrometheus(out);
+    	counter(out, "probate_fetch_pages_total", "Pages downloaded.", pagesFetched.get());
+    	counter(out, "probate_fetch_not_modified_total", "Conditional requests answered 304 Not Modified.", pagesNotModified.get());
+    	counter(out, "probate_fetch_bytes_total", "Response body bytes downloaded.", bytesFetched.get());
+    	counter(out, "probate_fetch_retries_total", "Requests retried after a failure.", retries.get());
+    	counter(out, "probate_fetch_failures_total", "Requests that failed.", fetchFailures.get());
+    	counter(out, "probate_parse_pages_total", "Pages parsed.", pagesParsed.get());
+    	counter(out, "probate_parse_cases_total", "Case list rows written by the parser.", casesParsed.get());
+    	return out.toString();
+    }
+
+    private static void counter(StringBuilder out, String name, String help, long value) {
+    	out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+    	out.append("# TYPE ").append(name).append(" counter\n");
+    	out.append(name).append(' ').append(value).append('\n');
+    }
+
+    private double perSecond(AtomicLong counter) {
+    	long millis = System.currentTimeMillis() - startMillis;
+    	return millis <= 0 ? 0 : counter.get() * 1000.0 / millis;
+    }
+
+	public long getPagesFetched() {
+		return pagesFetched.get();
+	}
+
+	public long getPagesNotModified() {
+		return pagesNotModified.get();
+	}
+
+	public long getBytesFetched() {
+		return bytesFetched.get();
+	}
+
+	public long getRetries() {
+		return retries.get();
+	}
+
+	public long getFetchFailures() {
+		return fetchFailures.get();
+	}
+
+	public double getConnectMeanMillis() {
+		return connect.getMeanMillis();
+	}
+
+	public long getConnect95thPercentileMillis() {
+		return connect.getPercentileMillis(0.95);
+	}
+
+	public double getFirstByteMeanMillis() {
+		return firstByte.getMeanMillis();
+	}
+
+	public long getFirstByte95thPercentileMillis() {
+		return firstByte.getPercentileMillis(0.95);
+	}
+
+	public double getDownloadMeanMillis() {
+		return download.getMeanMillis();
+	}
+
+	public long getDownload95thPercentileMillis() {
+		return download.getPercentileMillis(0.95);
+	}
+
+	public double getPagesFetchedPerSecond() {
+		return perSecond(pagesFetched);
+	}
+
+	public long getPagesParsed() {
+		return pagesParsed.get();
+	}
+
+	public long getCasesParsed() {
+		return casesParsed.get();
+	}
+
+	public double getPagesParsedPerSecond() {
+		return perSecond(pagesParsed);
+	}
+
+	public double getCasesParsedPerSecond() {
+		return perSecond(casesParsed);
+	}
+}
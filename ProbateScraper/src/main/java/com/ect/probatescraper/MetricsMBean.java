@@ -0,0 +1,41 @@
+package com.ect.probatescraper;
+
+/**
+ * What {@link Metrics} shows over JMX (com.ect.probatescraper:type=Metrics). Latencies are in
+ * milliseconds, rates are averaged since the metrics were started.
+ *
+ */
+public interface MetricsMBean {
+
+	long getPagesFetched();
+
+	long getPagesNotModified();
+
+	long getBytesFetched();
+
+	long getRetries();
+
+	long getFetchFailures();
+
+	double getConnectMeanMillis();
+
+	long getConnect95thPercentileMillis();
+
+	double getFirstByteMeanMillis();
+
+	long getFirstByte95thPercentileMillis();
+
+	double getDownloadMeanMillis();
+
+	long getDownload95thPercentileMillis();
+
+	double getPagesFetchedPerSecond();
+
+	long getPagesParsed();
+
+	long getCasesParsed();
+
+	double getPagesParsedPerSecond();
+
+	double getCasesParsedPerSecond();
+}
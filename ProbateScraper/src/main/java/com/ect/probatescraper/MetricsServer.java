@@ -0,0 +1,53 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Serves {@link Metrics} as Prometheus text on the loopback interface only, using the JDK's built
+ * in http server so no extra dependency is needed.
+ *
+ */
+public class MetricsServer {
+    public static final String PATH = "/metrics";
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final HttpServer server;
+
+    private MetricsServer(HttpServer server) {
+    	this.server = server;
+    }
+
+    public static MetricsServer start(int port, final Metrics metrics) throws IOException {
+    	HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    	server.createContext(PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				byte[] body = metrics.toPrometheus().getBytes(BinaryRecordWriter.UTF8);
+				exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+				exchange.sendResponseHeaders(200, body.length);
+				OutputStream out = exchange.getResponseBody();
+				try {
+					out.write(body);
+				} finally {
+					out.close();
+				}
+			}
+		});
+    	server.start();
+    	return new MetricsServer(server);
+    }
+
+    public int getPort() {
+    	return server.getAddress().getPort();
+    }
+
+    public void stop() {
+    	server.stop(0);
+    }
+}
@@ -0,0 +1,348 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A stand in for the probate court site on the loopback interface, so the collector can be tuned and
+ * load tested without touching the real one. It serves made up caselookup list pages, with the
+ * paging-link footer, and case details tables shaped like the real ones. Every district has the same
+ * number of list pages; the cases on them are generated from the district, page and row so repeated
+ * requests get the same page back.
+ * <p>
+ * Each response is held back by the configured latency plus a random jitter, and the configured share
+ * of requests is answered 503 to exercise the retries.
+ *
+ */
+public class MockProbateServer {
+    private static final Logger LOG = Logger.getLogger(MockProbateServer.class);
+    public static final String LIST_PATH = "/caselookup";
+    public static final String DETAILS_PATH = "/caselookup/casedetails";
+    static final String CONTENT_TYPE = "text/html; charset=utf-8";
+    static final String[] CASE_TYPES = {"DR", "DR", "DR", "TR", "CO"};
+    private static final Map<String, String> CASE_TYPE_NAMES = new HashMap<String, String>();
+    //the people acting in a case are listed under a label of their own per case type
+    private static final Map<String, String> OFFICER_LABELS = new HashMap<String, String>();
+    static {
+    	CASE_TYPE_NAMES.put("DR", "Decedent Estate");
+    	CASE_TYPE_NAMES.put("TR", "Testamentary Trust");
+    	CASE_TYPE_NAMES.put("CO", "Conservatorship");
+    	OFFICER_LABELS.put("DR", "Fiduciaries:");
+    	OFFICER_LABELS.put("TR", "Trustees:");
+    	OFFICER_LABELS.put("CO", "Conservators:");
+    }
+    private static final String[] LAST_NAMES = {"SMITH", "O'BRIEN", "NGUYEN", "KOWALSKI", "GARCIA", "MILLER", "ROSS", "WALSH"};
+    private static final String[] FIRST_NAMES = {"MARY", "JOHN", "PATRICK", "THI", "LUIS", "STANLEY", "KATHLEEN", "SUSAN"};
+    private static final String[] ATTORNEYS = {"ATTY SUSAN MILLER", "ATTY ROBERT CHEN", "ATTY ANNE DUBOIS", ""};
+    private static final String[] TOWNS = {"HARTFORD, CT 06103", "WEST HARTFORD, CT 06107", "NEW HAVEN, CT 06510", "BOSTON, MA 02108"};
+
+    private final int pagesPerDistrict;
+    private final int casesPerPage;
+    private final long latencyMillis;
+    private final long jitterMillis;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String baseUrl;
+    private final AtomicLong listPagesServed = new AtomicLong();
+    private final AtomicLong detailsPagesServed = new AtomicLong();
+    private final AtomicLong errorsServed = new AtomicLong();
+    private final Set<String> failingOnce = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param port
+     *            0 picks a free port
+     * @param errorRate
+     *            share of requests answered 503, between 0 and 1
+     * @param threads
+     *            requests answered at the same time, a slow response holds one up for its latency
+     */
+    public MockProbateServer(int port, int pagesPerDistrict, int casesPerPage, long latencyMillis, long jitterMillis,
+    		double errorRate, int threads) throws IOException {
+    	if (pagesPerDistrict < 1 || casesPerPage < 1) {
+    		throw new IllegalArgumentException("Need at least one page and one case per page");
+    	}
+    	if (errorRate < 0 || errorRate > 1) {
+    		throw new IllegalArgumentException("Error rate must be between 0 and 1: " + errorRate);
+    	}
+    	this.pagesPerDistrict = pagesPerDistrict;
+    	this.casesPerPage = casesPerPage;
+    	this.latencyMillis = latencyMillis;
+    	this.jitterMillis = jitterMillis;
+    	this.errorRate = errorRate;
+    	this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    	this.executor = Executors.newFixedThreadPool(Math.max(1, threads));
+    	this.baseUrl = "http://" + server.getAddress().getAddress().getHostAddress() + ":" + server.getAddress().getPort();
+    	server.setExecutor(executor);
+    	server.createContext(LIST_PATH, new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+		});
+    }
+
+    public void start() {
+    	server.start();
+    	LOG.info("MockProbateServer...Serving " + pagesPerDistrict + " list pages of " + casesPerPage + " cases per district on "
+    			+ getLookupUrl());
+    }
+
+    public void stop() {
+    	server.stop(0);
+    	executor.shutdownNow();
+    }
+
+    /**
+     * @return the case lookup url with %s for the district, as the collector's probate.crawl.lookupUrl
+     */
+    public String getLookupUrl() {
+    	return baseUrl + LIST_PATH + "?CaseType=0&District=%s&CaseStatusOption=Open";
+    }
+
+    public int getPort() {
+    	return server.getAddress().getPort();
+    }
+
+    public long getListPagesServed() {
+    	return listPagesServed.get();
+    }
+
+    public long getDetailsPagesServed() {
+    	return detailsPagesServed.get();
+    }
+
+    public long getErrorsServed() {
+    	return errorsServed.get();
+    }
+
+    /**
+     * Answers the next request for a list page 503, whatever the error rate.
+     */
+    public void failOnce(String district, int page) {
+    	failingOnce.add(district + "&" + page);
+    }
+
+    /**
+     * @return case details links a crawl of one district goes after when collecting the case types
+     */
+    public int getCasesPerDistrict(Collection<String> caseTypes) {
+    	int count = 0;
+    	for (int page = 1; page <= pagesPerDistrict; page++) {
+    		for (int row = 0; row < casesPerPage; row++) {
+    			if (caseTypes.contains(caseType(page, row))) {
+    				count++;
+    			}
+    		}
+    	}
+    	return count;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+    	try {
+    		long delay = latencyMillis + (jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0);
+    		if (delay > 0) {
+    			Thread.sleep(delay);
+    		}
+    		if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+    			errorsServed.incrementAndGet();
+    			respond(exchange, 503, "<html><body>Service Unavailable</body></html>");
+    			return;
+    		}
+
+    		Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+    		String path = exchange.getRequestURI().getPath();
+    		if (path.equals(DETAILS_PATH) && parameters.containsKey("CaseNumber")) {
+    			detailsPagesServed.incrementAndGet();
+    			respond(exchange, 200, detailsPage(parameters.get("CaseNumber"), caseType(parameters.get("CaseNumber"))));
+    		}
+    		else if (path.equals(LIST_PATH) && parameters.containsKey("District")) {
+    			int page = parameters.containsKey("Page") ? Integer.parseInt(parameters.get("Page")) : 1;
+    			if (page < 1 || page > pagesPerDistrict) {
+    				respond(exchange, 404, "<html><body>Not Found</body></html>");
+    				return;
+    			}
+    			if (failingOnce.remove(parameters.get("District") + "&" + page)) {
+    				errorsServed.incrementAndGet();
+    				respond(exchange, 503, "<html><body>Service Unavailable</body></html>");
+    				return;
+    			}
+    			listPagesServed.incrementAndGet();
+    			respond(exchange, 200, listPage(parameters.get("District"), page));
+    		}
+    		else {
+    			respond(exchange, 404, "<html><body>Not Found</body></html>");
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    	} catch (RuntimeException e) {
+    		respond(exchange, 400, "<html><body>Bad Request</body></html>");
+    	} finally {
+    		exchange.close();
+    	}
+    }
+
+    private static void respond(HttpExchange exchange, int status, String html) throws IOException {
+    	byte[] body = html.getBytes(BinaryRecordWriter.UTF8);
+    	exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+    	exchange.sendResponseHeaders(status, body.length);
+    	OutputStream out = exchange.getResponseBody();
+    	out.write(body);
+    	out.flush();
+    }
+
+    private static Map<String, String> parameters(String query) throws IOException {
+    	Map<String, String> parameters = new HashMap<String, String>();
+    	if (query != null) {
+    		for (String parameter : query.split("&")) {
+    			int equals = parameter.indexOf('=');
+    			if (equals > 0) {
+    				parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+    						URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+    			}
+    		}
+    	}
+    	return parameters;
+    }
+
+    String caseNumber(String district, int page, int row) {
+    	return String.format("%s-14-%05d", district, (page - 1) * casesPerPage + row + 1);
+    }
+
+    private static String caseType(int page, int row) {
+    	return CASE_TYPES[(page * 7 + row) % CASE_TYPES.length];
+    }
+
+    /**
+     * The case type the case number was listed with, from its position in the district's list.
+     */
+    private String caseType(String caseNumber) {
+    	int index = Integer.parseInt(caseNumber.substring(caseNumber.lastIndexOf('-') + 1)) - 1;
+    	return caseType(index / casesPerPage + 1, index % casesPerPage);
+    }
+
+    private String listPage(String district, int page) {
+    	StringBuilder html = new StringBuilder(1024 + casesPerPage * 700);
+    	html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n    <meta charset=\"utf-8\" />\n");
+    	html.append("    <title>Case Lookup - Connecticut Probate Courts</title>\n</head>\n<body>\n    <div id=\"page-wrapper\">\n");
+    	html.append("        <section id=\"search-results-container\" class=\"search-results\">\n            <header>\n");
+    	header(html, "case-number", "Case Number");
+    	header(html, "last-name", "Last Name");
+    	header(html, "first-name", "First Name");
+    	header(html, "middle-initial", "MI");
+    	header(html, "casetype", "Case Type");
+    	header(html, "district", "District");
+    	html.append("            </header>\n");
+    	for (int row = 0; row < casesPerPage; row++) {
+    		String caseNumber = caseNumber(district, page, row);
+    		Random random = new Random(caseNumber.hashCode());
+    		html.append("            <article class=\"data-row ").append(row % 2 == 0 ? "odd" : "even").append("\">\n");
+    		html.append("                <span class=\"column-case-number\"><a href=\"").append(baseUrl).append(DETAILS_PATH)
+    				.append("?CaseNumber=").append(caseNumber).append("&amp;District=").append(escape(district)).append("\">")
+    				.append(caseNumber).append("</a></span>\n");
+    		column(html, "last-name", pick(random, LAST_NAMES));
+    		column(html, "first-name", pick(random, FIRST_NAMES));
+    		column(html, "middle-initial", String.valueOf((char) ('A' + random.nextInt(26))));
+    		column(html, "casetype", caseType(page, row));
+    		column(html, "district", district);
+    		html.append("            </article>\n");
+    	}
+    	html.append("            <footer>\n                <span class=\"paging\">\n");
+    	for (int pageNo = 1; pageNo <= pagesPerDistrict; pageNo++) {
+    		html.append("                    <a class=\"paging-link").append(pageNo == page ? " current-page" : "").append("\" href=\"")
+    				.append(baseUrl).append(LIST_PATH).append("?CaseType=0&amp;District=").append(escape(district))
+    				.append("&amp;CaseStatusOption=Open&amp;Page=").append(pageNo).append("\">").append(pageNo).append("</a>\n");
+    	}
+    	html.append("                </span>\n            </footer>\n        </section>\n    </div>\n</body>\n</html>\n");
+    	return html.toString();
+    }
+
+    private static String detailsPage(String caseNumber, String caseType) {
+    	Random random = new Random(caseNumber.hashCode());
+    	String lastName = pick(random, LAST_NAMES);
+    	StringBuilder html = new StringBuilder(2048);
+    	html.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n    <meta charset=\"utf-8\" />\n");
+    	html.append("    <title>Case Details - Connecticut Probate Courts</title>\n</head>\n<body>\n    <div id=\"case-details\">\n");
+    	html.append("        <table class=\"case-details\">\n");
+    	html.append("            <tr><td>").append(escape(pick(random, FIRST_NAMES) + " " + lastName))
+    			.append("</td><td><span class=\"label\">Case Number:</span> <span>").append(escape(caseNumber)).append("</span></td></tr>\n");
+    	html.append("            <tr><td>").append(CASE_TYPE_NAMES.get(caseType)).append("</td><td><span class=\"label\">Date Filed:</span> <span>")
+    			.append(String.format("%02d/%02d/2014", 1 + random.nextInt(12), 1 + random.nextInt(28))).append("</span></td></tr>\n");
+    	html.append("            <tr><td>&nbsp;</td><td></td></tr>\n");
+    	html.append("            <tr><td>").append(OFFICER_LABELS.get(caseType)).append("</td></tr>\n");
+    	int fiduciaries = 1 + random.nextInt(2);
+    	for (int fiduciary = 0; fiduciary < fiduciaries; fiduciary++) {
+    		String attorney = pick(random, ATTORNEYS);
+    		row(html, escape(pick(random, FIRST_NAMES) + " " + lastName) + (attorney.length() > 0 ? " represented by " + attorney : ""));
+    		row(html, (10 + random.nextInt(990)) + " MAIN STREET");
+    		row(html, escape(pick(random, TOWNS)));
+    		row(html, "");
+    		html.append("            <tr><td><span class=\"label\">Phone:</span><span>(860) 555-")
+    				.append(String.format("%04d", random.nextInt(10000))).append("</span></td></tr>\n");
+    		row(html, "");
+    	}
+    	html.append("        </table>\n    </div>\n</body>\n</html>\n");
+    	return html.toString();
+    }
+
+    private static void header(StringBuilder html, String column, String title) {
+    	html.append("                <span class=\"column-header column-").append(column).append("\">").append(title).append("</span>\n");
+    }
+
+    private static void column(StringBuilder html, String column, String value) {
+    	html.append("                <span class=\"column-").append(column).append("\">").append(escape(value)).append("</span>\n");
+    }
+
+    private static void row(StringBuilder html, String cell) {
+    	html.append("            <tr><td>").append(cell).append("</td></tr>\n");
+    }
+
+    private static String pick(Random random, String[] values) {
+    	return values[random.nextInt(values.length)];
+    }
+
+    private static String escape(String text) {
+    	return text.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("'", "&#39;").replace("\"", "&quot;");
+    }
+
+    /**
+     * Serves until the process is stopped, e.g. "java com.ect.probatescraper.MockProbateServer" and
+     * then the collector with -Dprobate.crawl.lookupUrl set to the url logged. Set up with
+     * probate.mock.port (default 9406), probate.mock.pages (10), probate.mock.casesPerPage (50),
+     * probate.mock.latencyMillis (100), probate.mock.jitterMillis (100), probate.mock.errorRate (0.01)
+     * and probate.mock.threads (16).
+     */
+    public static void main(String[] args) throws IOException {
+    	MockProbateServer server = fromProperties(Integer.getInteger("probate.mock.port", 9406).intValue());
+    	server.start();
+    	LOG.info("MockProbateServer...Serving on " + server.getLookupUrl());
+    }
+
+    static MockProbateServer fromProperties(int port) throws IOException {
+    	return new MockProbateServer(port,
+    			Integer.getInteger("probate.mock.pages", 10).intValue(),
+    			Integer.getInteger("probate.mock.casesPerPage", 50).intValue(),
+    			Long.getLong("probate.mock.latencyMillis", 100).longValue(),
+    			Long.getLong("probate.mock.jitterMillis", 100).longValue(),
+    			Double.parseDouble(System.getProperty("probate.mock.errorRate", "0.01")),
+    			Integer.getInteger("probate.mock.threads", 16).intValue());
+    }
+}
@@ -0,0 +1,22 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Sends the GET requests of the collector. Implementations keep their connections open between
+ * requests, ask for compressed bodies and hand back the body already decompressed.
+ *
+ */
+public interface PageFetcher extends Closeable {
+
+	/**
+	 * Returns once the status and headers are in, the body is read from the response.
+	 *
+	 * @param requestHeaders
+	 *            extra headers to send, e.g. the validators of a conditional request
+	 * @return the response, which the caller must close
+	 */
+	FetchResponse fetch(String link, Map<String, String> requestHeaders) throws IOException;
+}
@@ -4,20 +4,28 @@ import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.PrintWriter;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
 import java.text.DateFormat;
 import java.text.NumberFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.regex.Pattern;
 
 import org.apache.log4j.Logger;
 import org.jsoup.Jsoup;
@@ -39,17 +47,62 @@ public class PageParserProbateList {
     public static final String FILENAME_PREFIX_CASE_LIST = "ProbateCaseList_";
     public static final String FILENAME_PREFIX_CASE_DETAILS = "ProbateCaseDetails_";
     public static final String FILENAME_PREFIX_CASE_FEDUCIARY = "ProbateCaseFiduciary_";
+    public static final String FILENAME_PREFIX_ENTITY = "ProbateEntity_";
 
     public static final String CASE_TYPE_DECEDENT_ESTATE_REGULAR = "DR";
+    public static final String BASE_URI = "http://apps.ctprobate.gov/";
 
-    static PrintWriter caseListOutput;
-    static PrintWriter caseDetailsOutput;
-    static PrintWriter caseFiduciaryOutput;
+    public static final String SEGMENT_DIR = "segments";
+    public static final String STORE_FILES = "files";
+    public static final String STORE_SEGMENTS = "segments";
+
+    public static final String EXTRACTOR_JSOUP = "jsoup";
+    public static final String EXTRACTOR_STREAMING = "streaming";
+    public static final String EXTRACTOR_VERIFY = "verify";
+
+    static final CsvSchema CASE_LIST_SCHEMA = CsvSchema.of("Case Number", "Last Name", "First Name", "MI", "Case Type", 
+    		"District", "Case Link");
+    static final CsvSchema ENTITY_SCHEMA = CsvSchema.of("Id", "Value");
+
+    static CsvWriter caseListOutput;
+    private static final Map<String, DetailsOutput> detailsOutputs = new LinkedHashMap<String, DetailsOutput>();
+    private static File outputDirectory;
+    private static String outputJulian;
+    static CsvWriter entityOutput;
+    static EntityDictionary entities;
+    static boolean entityIds = Boolean.parseBoolean(System.getProperty("probate.parse.entityIds", "false"));
+    static BinaryRecordWriter caseListBinary;
+    static BinaryRecordWriter caseDetailsBinary;
+    static boolean binaryExport = Boolean.parseBoolean(System.getProperty("probate.parse.binary", "false"));
+    static String listExtractor = System.getProperty("probate.parse.extractor", EXTRACTOR_JSOUP);
+    private static final ThreadLocal<StreamingCaseListExtractor> STREAMING_EXTRACTOR = new ThreadLocal<StreamingCaseListExtractor>() {
+    	protected StreamingCaseListExtractor initialValue() {
+    		return new StreamingCaseListExtractor();
+    	}
+    };
+    static String pageStoreType = System.getProperty("probate.store", STORE_FILES);
+    static long segmentBytes = Long.getLong("probate.store.segmentMegabytes", 256).longValue() * 1024 * 1024;
+    static int parseThreads = Integer.getInteger("probate.parse.threads", Runtime.getRuntime().availableProcessors()).intValue();
+    static boolean watchMode = Boolean.parseBoolean(System.getProperty("probate.parse.watch", "false"));
+    private static final Pattern CASE_TYPE_CODE = Pattern.compile("[A-Z]+");
+    private static final Map<String, ParallelPageParser.PageParser<CaseDetailsRecord>> DETAILS_PARSERS = 
+    		new ConcurrentHashMap<String, ParallelPageParser.PageParser<CaseDetailsRecord>>();
+    static final DetailsLayout DECEDENT_ESTATE_LAYOUT = new DetailsLayout("Decedent", "Fiduciary", "Fiduciaries");
+    private static final Map<String, DetailsLayout> DETAILS_LAYOUTS = new HashMap<String, DetailsLayout>();
+    static {
+    	DETAILS_LAYOUTS.put(CASE_TYPE_DECEDENT_ESTATE_REGULAR, DECEDENT_ESTATE_LAYOUT);
+    	DETAILS_LAYOUTS.put("TR", new DetailsLayout("Trust", "Trustee", "Trustees"));
+    	DETAILS_LAYOUTS.put("CO", new DetailsLayout("Conserved Person", "Conservator", "Conservators"));
+    	registerDetailsParser("TR", layoutParser(DETAILS_LAYOUTS.get("TR")));
+    	registerDetailsParser("CO", layoutParser(DETAILS_LAYOUTS.get("CO")));
+    }
+    static int queryPort = Integer.getInteger("probate.parse.queryPort", 0).intValue();
+    static CaseIndex caseIndex;
 
     public static void main( String[] args ) {
         LOG.info("PageParserProbateList...");
         
-        File dataDirectory = new File(DATA_DIR);
+        File dataDirectory = new File(System.getProperty("probate.dataDir", DATA_DIR));
         if (!dataDirectory.exists() || !dataDirectory.isDirectory()) {
 	        LOG.info("PageParserProbateList...Invalid data directory " + dataDirectory.getAbsolutePath());
         	boolean success = dataDirectory.mkdir();
@@ -66,125 +119,498 @@ public class PageParserProbateList {
         	return;
         }
         
-        //get a list of case list files
-        File[] htmlcaseListPages = dataDirectory.listFiles(new FilenameFilter() {
-			public boolean accept(File dir, String name) {
-	            return name.matches(FILENAME_PREFIX_CASE_LIST + "(.*)" + HTML_FILENAME_SUFFIX);
-			}
-        });
-
-        //parse case list into csv file
-        Arrays.sort(htmlcaseListPages);
-        boolean printedHeaders = false; 
-        for(File htmlCaseListPage : htmlcaseListPages) {
-	        LOG.info("PageParserProbateList...Parsing case list page " + htmlCaseListPage);
-            Document doc;
+        PageStore pageStore;
+        try {
+        	pageStore = openPageStoreForReading(dataDirectory);
+		} catch (IOException e) {
+	        LOG.error("PageParserProbateList...Failed to open page store", e);
+	        closeOutputFiles();
+			return;
+		}
+
+        //watch before listing, so a page arriving in between is not missed
+        PageWatcher watcher = null;
+        if (watchMode) {
+        	if (STORE_FILES.equals(pageStoreType)) {
+        		try {
+        			watcher = new PageWatcher(dataDirectory, pageStore, FILENAME_PREFIX_CASE_LIST, FILENAME_PREFIX_CASE_DETAILS);
+        		} catch (IOException e) {
+        			LOG.error("PageParserProbateList...Failed to watch " + dataDirectory.getAbsolutePath(), e);
+        		}
+        	}
+        	else {
+        		LOG.error("PageParserProbateList...Watching for new pages needs -Dprobate.store=" + STORE_FILES);
+        	}
+        }
+
+        //get the case list and case details pages, ordered by key so the csv comes out the same 
+        //on every run, however the pages are parsed
+        List<StoredPage> htmlcaseListPages = pageStore.list(FILENAME_PREFIX_CASE_LIST);
+        List<StoredPage> caseDetailsPages = pageStore.list(FILENAME_PREFIX_CASE_DETAILS);
+
+        if (queryPort > 0) {
+        	caseIndex = new CaseIndex();
+        }
+
+        Metrics.start();
+        try {
+            boolean parsed;
             try {
-    			doc = Jsoup.parse(htmlCaseListPage, "UTF-8", "http://apps.ctprobate.gov/");
-    		} catch (IOException e1) {
-    			e1.printStackTrace();
-    	        LOG.error("PageParserProbateList...Failed to parse page " + htmlCaseListPage);
-    			return;
-    		}        
-
-            //is there a results section?
-            Elements resultsSection = doc.select("section#search-results-container");
-            if (resultsSection.isEmpty()) {
-    	        LOG.info("PageParserProbateList...No results");
-            	return; 
+            	parsed = parseAll(htmlcaseListPages, caseDetailsPages);
+            } catch (IOException e) {
+    	        LOG.error("PageParserProbateList...Failed to open output files", e);
+    	        parsed = false;
             }
 
-            if (!printedHeaders) {
-            	extractCaseListHeader(resultsSection, caseListOutput);
-            	printedHeaders = true;
+            CaseQueryServer queryServer = null;
+            if (parsed && caseIndex != null) {
+            	try {
+            		queryServer = CaseQueryServer.start(queryPort, caseIndex);
+        	        LOG.info("PageParserProbateList..." + caseIndex.size() + " cases queryable on http://localhost:" 
+        	        		+ queryServer.getPort() + CaseQueryServer.PATH);
+            	} catch (IOException e) {
+        	        LOG.error("PageParserProbateList...Failed to start the query server on port " + queryPort, e);
+            	}
             }
-        	int count = extractCaseListing(resultsSection, caseListOutput);
-	        LOG.info("PageParserProbateList..." + count + " cases extracted");
+
+            if (watcher != null) {
+            	if (parsed) {
+            		watchForPages(watcher, htmlcaseListPages, caseDetailsPages);
+            	}
+            	CaseLookupPageCollector.closeQuietly(watcher);
+            }
+            else if (queryServer != null) {
+            	serveUntilStopped();
+            }
+            if (queryServer != null) {
+            	queryServer.stop();
+            }
+        } finally {
+        	Metrics.stop();
         }
+        closeOutputFiles();
+        try {
+			pageStore.close();
+		} catch (IOException e) {
+	        LOG.error("PageParserProbateList...Failed to close page store", e);
+		}
+        LOG.info("PageParserProbateList...Complete");
+    }
 
-        //get a list of case details files
-        File[] caseDetailsPages = dataDirectory.listFiles(new FilenameFilter() {
-			public boolean accept(File dir, String name) {
-	            return name.matches(FILENAME_PREFIX_CASE_DETAILS + "(.*)" + HTML_FILENAME_SUFFIX);
+    /**
+     * Parses the case list pages, then the details pages of each case type, each type through its
+     * own extractor into its own files.
+     *
+     * @return false when a page could not be parsed or written
+     */
+    private static boolean parseAll(List<StoredPage> caseListPages, List<StoredPage> caseDetailsPages) throws IOException {
+    	Map<String, List<StoredPage>> caseDetailsByType = byCaseType(caseDetailsPages);
+        if (parseThreads <= 1) {
+        	boolean parsed = parsePages(caseListPages, CASE_LIST_PARSER, CASE_LIST_WRITER);
+        	for (Map.Entry<String, List<StoredPage>> typePages : caseDetailsByType.entrySet()) {
+        		parsed = parsed && parsePages(typePages.getValue(), detailsParser(typePages.getKey()), detailsWriter(typePages.getKey()));
+        	}
+        	return parsed;
+        }
+
+        ParallelPageParser parallelParser = new ParallelPageParser(parseThreads, parseThreads * 4);
+        LOG.info("PageParserProbateList...Parsing on " + parseThreads + " threads");
+        int count = parallelParser.parse(caseListPages, CASE_LIST_PARSER, CASE_LIST_WRITER);
+        LOG.info("PageParserProbateList..." + count + " cases extracted");
+        for (Map.Entry<String, List<StoredPage>> typePages : caseDetailsByType.entrySet()) {
+        	if (count < 0) {
+        		break;
+        	}
+        	count = parallelParser.parse(typePages.getValue(), detailsParser(typePages.getKey()), detailsWriter(typePages.getKey()));
+        	LOG.info("PageParserProbateList..." + count + " " + typePages.getKey() + " cases details extracted");
+        }
+        return count >= 0;
+    }
+
+    /**
+     * Appends the rows of every page arriving after the batch parse to the same csv files, until the
+     * process is stopped. The rows are flushed each time the parser catches up with the collector.
+     */
+    private static void watchForPages(final PageWatcher watcher, List<StoredPage> caseListPages, List<StoredPage> caseDetailsPages) {
+    	Set<String> parsed = new HashSet<String>();
+    	for (StoredPage page : caseListPages) {
+    		parsed.add(page.getLocation());
+    	}
+    	for (StoredPage page : caseDetailsPages) {
+    		parsed.add(page.getLocation());
+    	}
+    	final boolean noCaseLists = caseListPages.isEmpty();
+
+    	//stopping the process stops the watch, the outputs are still closed properly
+    	final Thread watching = Thread.currentThread();
+    	Thread shutdownHook = new Thread(new Runnable() {
+			public void run() {
+				CaseLookupPageCollector.closeQuietly(watcher);
+				try {
+					watching.join(10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
 			}
-        });
+		}, "watch-shutdown");
+    	Runtime.getRuntime().addShutdownHook(shutdownHook);
 
-        printedHeaders = false; 
-        for(File caseDetailsPage : caseDetailsPages) {
-	        LOG.info("PageParserProbateList...Parsing case detail page " + caseDetailsPage);
-            Document doc;
-            try {
-    			doc = Jsoup.parse(caseDetailsPage, "UTF-8", "http://apps.ctprobate.gov/");
-    		} catch (IOException e1) {
-    			e1.printStackTrace();
-    	        LOG.error("PageParserProbateList...Failed to parse page " + caseDetailsPage);
-    			return;
-    		}        
-
-            //find the table of data, this is free form so far, so this will get complicated
-            Elements caseTable = doc.select("body div table");
-            if (!printedHeaders) {
-            	extractCaseDetailsHeader(caseTable, caseDetailsOutput);
-            	printedHeaders = true;
-            }
+    	try {
+    		flushOutputFiles();
+    		watcher.watch(new PageWatcher.PageHandler() {
+    			private boolean firstCaseList = noCaseLists;
 
-        	extractCaseDetails(caseTable, caseDetailsOutput);
+    			public void page(StoredPage page) throws IOException {
+    				if (page.getKey().startsWith(FILENAME_PREFIX_CASE_LIST)) {
+    					CaseListPage caseListPage = CASE_LIST_PARSER.parse(page);
+    					if (caseListPage != null) {
+    						CASE_LIST_WRITER.write(caseListPage, firstCaseList);
+    						firstCaseList = false;
+    					}
+    				}
+    				else {
+    					String caseType = caseTypeOfDetailsKey(page.getKey());
+    					CaseDetailsRecord details = detailsParser(caseType).parse(page);
+    					if (details != null) {
+    						detailsWriter(caseType).write(details, false);
+    					}
+    				}
+    			}
+
+    			public void caughtUp() throws IOException {
+    				flushOutputFiles();
+    			}
+    		}, parsed);
+		} catch (IOException e) {
+	        LOG.error("PageParserProbateList...Failed to write while watching", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+    	try {
+    		Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    	} catch (IllegalStateException e) {
+    		//already shutting down
+    	}
+        LOG.info("PageParserProbateList...Stopped watching");
+    }
+
+    /**
+     * Keeps the query server answering until the process is stopped.
+     */
+    private static void serveUntilStopped() {
+    	final CountDownLatch stopped = new CountDownLatch(1);
+    	final Thread serving = Thread.currentThread();
+    	Thread shutdownHook = new Thread(new Runnable() {
+			public void run() {
+				stopped.countDown();
+				try {
+					serving.join(10000);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, "query-shutdown");
+    	Runtime.getRuntime().addShutdownHook(shutdownHook);
+    	try {
+    		stopped.await();
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		try {
+    			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+    		} catch (IllegalStateException e1) {
+    			//already shutting down
+    		}
+    	}
+        LOG.info("PageParserProbateList...Stopped answering queries");
+    }
+
+    /**
+     * Single threaded parse of the pages in order, stops at the first page that fails.
+     */
+    private static <T> boolean parsePages(List<StoredPage> pages, ParallelPageParser.PageParser<T> parser, 
+    		ParallelPageParser.PageWriter<T> writer) {
+    	boolean first = true;
+    	for (StoredPage page : pages) {
+    		T parsed = parser.parse(page);
+    		if (parsed == null) {
+    			return false;
+    		}
+    		try {
+    			writer.write(parsed, first);
+			} catch (IOException e) {
+		        LOG.error("PageParserProbateList...Failed to write page " + page, e);
+				return false;
+			}
+    		first = false;
+    	}
+    	return true;
+    }
+
+    static final ParallelPageParser.PageParser<CaseListPage> CASE_LIST_PARSER = new ParallelPageParser.PageParser<CaseListPage>() {
+		public CaseListPage parse(StoredPage page) {
+	        LOG.info("PageParserProbateList...Parsing case list page " + page);
+	        CaseListPage caseListPage = readCaseListPage(page);
+	        if (caseListPage == null) {
+		        LOG.error("PageParserProbateList...Failed to parse page " + page);
+	        }
+	        return caseListPage;
+		}
+	};
+
+    static final ParallelPageParser.PageWriter<CaseListPage> CASE_LIST_WRITER = new ParallelPageParser.PageWriter<CaseListPage>() {
+		public int write(CaseListPage page, boolean first) throws IOException {
+	        if (first) {
+	        	caseListOutput.writeHeader(CASE_LIST_SCHEMA);
+	        }
+	    	int count = writeCaseListing(page.getRecords(), caseListOutput);
+	    	if (caseListBinary != null) {
+	    		for (CaseListRecord record : page.getRecords()) {
+	    			record.writeTo(caseListBinary);
+	    		}
+	    	}
+	    	if (caseIndex != null) {
+	    		for (CaseListRecord record : page.getRecords()) {
+	    			caseIndex.add(record);
+	    		}
+	    	}
+	        Metrics.METRICS.pagesParsed.incrementAndGet();
+	        Metrics.METRICS.casesParsed.addAndGet(count);
+	        LOG.info("PageParserProbateList..." + count + " cases extracted");
+	        return count;
+		}
+	};
+
+    static final ParallelPageParser.PageParser<CaseDetailsRecord> CASE_DETAILS_PARSER = layoutParser(DECEDENT_ESTATE_LAYOUT);
+
+    /**
+     * Extracts the details pages of one case type.
+     */
+    static ParallelPageParser.PageParser<CaseDetailsRecord> layoutParser(final DetailsLayout layout) {
+    	return new ParallelPageParser.PageParser<CaseDetailsRecord>() {
+    		public CaseDetailsRecord parse(StoredPage page) {
+    			LOG.info("PageParserProbateList...Parsing case detail page " + page);
+    			try {
+    				return readCaseDetails(parseDocument(page).select("body div table"), layout);
+    			} catch (IOException e1) {
+    				LOG.error("PageParserProbateList...Failed to parse page " + page, e1);
+    				return null;
+    			}        
+    		}
+    	};
+    }
+
+    /**
+     * How the details page of a case type names its people: the person the case is about (the
+     * decedent of an estate, a trust, a conserved person) heads the page and the people acting for
+     * them (fiduciaries, trustees, conservators) are listed under their own label. The csv columns
+     * take the same names.
+     */
+    static final class DetailsLayout {
+    	private final String officerLabel;
+    	private final String officersLabel;
+    	private final CsvSchema detailsSchema;
+    	private final CsvSchema fiduciarySchema;
+    	private final CsvSchema fiduciaryIdSchema;
+
+    	/**
+    	 * @param person
+    	 *            column of the name heading the page
+    	 * @param officer
+    	 *            label of a single person acting in the case, e.g. Fiduciary
+    	 * @param officers
+    	 *            label of several, e.g. Fiduciaries
+    	 */
+    	DetailsLayout(String person, String officer, String officers) {
+    		this.officerLabel = officer + ":";
+    		this.officersLabel = officers + ":";
+    		this.detailsSchema = CsvSchema.of(person, "Case Number", "Case Type", "Date Filed");
+    		this.fiduciarySchema = CsvSchema.of("Case Number", officer, "Name", "Represented By", 
+    				"Addr Ln 1", "Addr Ln 2", "City State Zip", "Phone", "Fax");
+    		this.fiduciaryIdSchema = CsvSchema.of("Case Number", officer, "Name", "Represented By Id", 
+    				"Addr Ln 1", "Addr Ln 2", "City State Zip Id", "Phone", "Fax");
+    	}
+
+    	boolean isOfficersLabel(String label) {
+    		return label.startsWith(officerLabel) || label.startsWith(officersLabel);
+    	}
+
+    	String getOfficersLabel() {
+    		return officersLabel;
+    	}
+
+    	CsvSchema getDetailsSchema() {
+    		return detailsSchema;
+    	}
+
+    	/**
+    	 * @param entityIds
+    	 *            true for the columns of a fiduciary file written with entity ids
+    	 */
+    	CsvSchema getFiduciarySchema(boolean entityIds) {
+    		return entityIds ? fiduciaryIdSchema : fiduciarySchema;
+    	}
+    }
+
+    /**
+     * @return the layout of the case type's details page, a decedent estate's when the type has none
+     */
+    static DetailsLayout detailsLayout(String caseType) {
+    	DetailsLayout layout = DETAILS_LAYOUTS.get(caseType);
+    	return layout == null ? DECEDENT_ESTATE_LAYOUT : layout;
+    }
+
+    /**
+     * The csv files the case details of one case type go to. Decedent estates (DR) keep the original
+     * ProbateCaseDetails_ and ProbateCaseFiduciary_ names, any other type has its code added, e.g.
+     * ProbateCaseDetails_TR_. Each file gets its header with the first case written to it.
+     */
+    static final class DetailsOutput implements ParallelPageParser.PageWriter<CaseDetailsRecord> {
+    	private final DetailsLayout layout;
+    	private final CsvWriter caseDetailsOutput;
+    	private final CsvWriter caseFiduciaryOutput;
+    	private final EntityDictionary entities;
+    	private final CsvWriter entityOutput;
+    	private boolean headerWritten;
+
+    	/**
+    	 * @param entities
+    	 *            dictionary of the output files, null to write the fiduciary fields as text
+    	 */
+    	private DetailsOutput(DetailsLayout layout, CsvWriter caseDetailsOutput, CsvWriter caseFiduciaryOutput, 
+    			EntityDictionary entities, CsvWriter entityOutput) {
+    		this.layout = layout;
+    		this.caseDetailsOutput = caseDetailsOutput;
+    		this.caseFiduciaryOutput = caseFiduciaryOutput;
+    		this.entities = entities;
+    		this.entityOutput = entityOutput;
+    	}
+
+		public int write(CaseDetailsRecord details, boolean first) throws IOException {
+	        if (!headerWritten) {
+	        	caseDetailsOutput.writeHeader(layout.getDetailsSchema());
+	        	caseFiduciaryOutput.writeHeader(layout.getFiduciarySchema(entities != null));
+	        	headerWritten = true;
+	        }
+	        writeCaseDetails(details, caseDetailsOutput);
+	        if (entities != null) {
+	        	writeFiduciaryIds(details, caseFiduciaryOutput, entities, entityOutput);
+	        }
+	        else {
+	        	writeFiduciaries(details, caseFiduciaryOutput);
+	        }
+	        if (caseDetailsBinary != null) {
+	        	details.writeTo(caseDetailsBinary);
+	        }
+	        if (caseIndex != null) {
+	        	caseIndex.add(details);
+	        }
+	        Metrics.METRICS.pagesParsed.incrementAndGet();
 	        LOG.info("PageParserProbateList...Cases details extracted");
+	        return 1;
+		}
+
+		private void flush() throws IOException {
+			caseDetailsOutput.flush();
+			caseFiduciaryOutput.flush();
+		}
+
+		private void close() {
+			closeOutput(caseFiduciaryOutput);
+			closeOutput(caseDetailsOutput);
+		}
+    }
+
+    /**
+     * @return the extractor registered for the case type, the decedent estate extractor when there is none
+     */
+    static ParallelPageParser.PageParser<CaseDetailsRecord> detailsParser(String caseType) {
+    	ParallelPageParser.PageParser<CaseDetailsRecord> parser = DETAILS_PARSERS.get(caseType);
+    	return parser == null ? CASE_DETAILS_PARSER : parser;
+    }
+
+    /**
+     * Gives a case type its own details extractor, for a type whose details page is laid out
+     * differently from a decedent estate's.
+     */
+    public static void registerDetailsParser(String caseType, ParallelPageParser.PageParser<CaseDetailsRecord> parser) {
+    	DETAILS_PARSERS.put(caseType.toUpperCase(), parser);
+    }
+
+    /**
+     * The outputs of a case type, opened next to the other output files the first time the type comes
+     * up. Only to be used by the thread writing the outputs.
+     */
+    static DetailsOutput detailsWriter(String caseType) throws IOException {
+    	DetailsOutput output = detailsOutputs.get(caseType);
+    	if (output != null) {
+    		return output;
+    	}
+    	if (outputDirectory == null) {
+    		throw new IOException("Output files not open");
+    	}
+    	String typeInfix = CASE_TYPE_DECEDENT_ESTATE_REGULAR.equals(caseType) ? "" : caseType + "_";
+        File caseDetailsFilename = new File(outputDirectory, FILENAME_PREFIX_CASE_DETAILS + typeInfix + outputJulian + CSV_FILENAME_SUFFIX);
+        CsvWriter caseDetailsOutput = openOutput(caseDetailsFilename);
+        if (caseDetailsOutput == null){
+			throw new IOException("Failed to open output file " + caseDetailsFilename.getAbsolutePath());
         }
-        
-        closeOutputFiles();
-        LOG.info("PageParserProbateList...Complete");
+        File caseFiduciaryFilename = new File(outputDirectory, FILENAME_PREFIX_CASE_FEDUCIARY + typeInfix + outputJulian + CSV_FILENAME_SUFFIX);
+        CsvWriter caseFiduciaryOutput = openOutput(caseFiduciaryFilename);
+        if (caseFiduciaryOutput == null){
+        	closeOutput(caseDetailsOutput);
+			throw new IOException("Failed to open output file " + caseFiduciaryFilename.getAbsolutePath());
+        }
+        output = new DetailsOutput(detailsLayout(caseType), caseDetailsOutput, caseFiduciaryOutput, entities, entityOutput);
+        detailsOutputs.put(caseType, output);
+        return output;
     }
 
-	private static void extractCaseDetailsHeader(Elements table, PrintWriter output) {
-        //extract all the headers fields
-    	output.print("Decedent");
-    	output.print(",");
-    	output.print("Case Number");
-    	output.print(",");
-    	output.print("Case Type");
-    	output.print(",");
-    	output.print("Date Filed");
-    	output.print(",");
-    	output.print("Fiduciary1 Name");
-    	output.print(",");
-    	output.print("Fiduciary1 Represented By");
-    	output.print(",");
-    	output.print("Fiduciary1 Addr Ln 1");
-    	output.print(",");
-    	output.print("Fiduciary1 Addr Ln 2");
-    	output.print(",");
-    	output.print("Fiduciary1 City State Zip");
-    	output.print(",");
-    	output.print("Fiduciary1 Phone");
-    	output.print(",");
-    	output.print("Fiduciary1 Fax");
-    	output.print(",");
-    	output.print("Fiduciary2 Name");
-    	output.print(",");
-    	output.print("Fiduciary2 Represented By");
-    	output.print(",");
-    	output.print("Fiduciary2 Addr Ln 1");
-    	output.print(",");
-    	output.print("Fiduciary2 Addr Ln 2");
-    	output.print(",");
-    	output.print("Fiduciary2 City State Zip");
-    	output.print(",");
-    	output.print("Fiduciary2 Phone");
-    	output.print(",");
-    	output.print("Fiduciary2 Fax");
-    	output.print(",");    	
-    	output.println("");
+    /**
+     * Splits the details pages by the case type in their key, keeping their order.
+     */
+    static Map<String, List<StoredPage>> byCaseType(List<StoredPage> caseDetailsPages) {
+    	Map<String, List<StoredPage>> byCaseType = new LinkedHashMap<String, List<StoredPage>>();
+    	byCaseType.put(CASE_TYPE_DECEDENT_ESTATE_REGULAR, new ArrayList<StoredPage>());
+    	for (StoredPage page : caseDetailsPages) {
+    		String caseType = caseTypeOfDetailsKey(page.getKey());
+    		List<StoredPage> pages = byCaseType.get(caseType);
+    		if (pages == null) {
+    			pages = new ArrayList<StoredPage>();
+    			byCaseType.put(caseType, pages);
+    		}
+    		pages.add(page);
+    	}
+    	return byCaseType;
+    }
+
+	static void extractCaseDetails(Elements caseTable, CsvWriter output, CsvWriter fiduciaryOutput) throws IOException {
+		CaseDetailsRecord details = readCaseDetails(caseTable);
+		writeCaseDetails(details, output);
+		writeFiduciaries(details, fiduciaryOutput);
 	}
-	
-	private static void extractCaseDetails(Elements caseTable, PrintWriter output) {
+
+	/**
+	 * Reads the fields of a case details table as they appear on the page, nothing is cleaned for csv.
+	 */
+	static CaseDetailsRecord readCaseDetails(Elements caseTable) {
+		return readCaseDetails(caseTable, DECEDENT_ESTATE_LAYOUT);
+	}
+
+	static CaseDetailsRecord readCaseDetails(Elements caseTable, DetailsLayout layout) {
         int rowCount = 0;
         String fullName = null; 
         String caseNumber = null; 
         String caseType = null; 
         String dateFiled = null;
         boolean hasFiduciaries = false;
-        List<String> fiduciaryRows = new ArrayList<String>();
+        String fiduciaryLabel = null;
+        final List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>();
+        FiduciaryRowParser fiduciaryRows = new FiduciaryRowParser(new FiduciaryRowParser.FiduciaryHandler() {
+			public void fiduciary(Fiduciary fiduciary) {
+				fiduciaries.add(fiduciary);
+			}
+		});
         
         //extract results
         for (Element row : caseTable.select("tr")) {
@@ -192,7 +618,7 @@ public class PageParserProbateList {
         	switch (rowCount) {
         		case 1:
         			Elements tds1 = row.select("td");
-                    fullName = cleanText(tds1.get(0).text()); 
+                    fullName = tds1.get(0).text(); 
                     caseNumber = tds1.get(1).select("span").get(1).text(); 
         			break;
         		case 2:
@@ -204,193 +630,212 @@ public class PageParserProbateList {
         			break;
         		case 4:
         			Elements tds4 = row.select("td");
-        			String fiduciaries = tds4.get(0).text().trim();
-        			if (fiduciaries.startsWith("Fiduciary:") || fiduciaries.startsWith("Fiduciaries:")) {
+        			fiduciaryLabel = tds4.get(0).text().trim();
+        			if (layout.isOfficersLabel(fiduciaryLabel)) {
         				hasFiduciaries = true;
         			}
         			break;
        			default:
+       				if (!hasFiduciaries) {
+       					break;
+       				}
        				Elements tdsRest = row.select("td");
        				String tester = tdsRest.get(0).text();
        				//hack to get rid a bogus character
        				if (tester.startsWith("Phone:")) {
-       					fiduciaryRows.add("Phone:" + tdsRest.get(0).select("span").get(1).text());
+       					fiduciaryRows.row("Phone:" + tdsRest.get(0).select("span").get(1).text());
        				}
        				else if (tester.startsWith("Fax:")) {
-       					fiduciaryRows.add("Fax:" + tdsRest.get(0).select("span").get(1).text());
+       					fiduciaryRows.row("Fax:" + tdsRest.get(0).select("span").get(1).text());
        				}
        				else {
-           				fiduciaryRows.add(cleanText(tdsRest.get(0).text().trim()));
+           				fiduciaryRows.row(tdsRest.get(0).text().trim());
        				}
         			break;
         	}
         }
     	
-        List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>(25);
-        if (hasFiduciaries && !fiduciaryRows.isEmpty()){
-        	//create group of info for processing
-        	Map<Integer, List<String>> fidGroups = new Hashtable<Integer, List<String>>(20);
-        	int groupCount = 0;
-        	for (String row : fiduciaryRows) {
-        		//is this a spacing row?
-        		if (row.length() == 0) {
-        			groupCount++;
-        			continue;
-        		}
-        		
-        		//get current group (make if necessary)
-        		List<String> group = fidGroups.get(new Integer(groupCount));
-        		if (group == null){
-        			group = new ArrayList<String>(25);
-        			fidGroups.put(new Integer(groupCount), group);
-        		}
-        		
-        		group.add(row);				
-			}
-
-        	//build feduciaries by group
-        	Fiduciary fiduciary = null;
-        	for (groupCount = 0; groupCount < fidGroups.size(); groupCount++){
-        		List<String> groupedInfo = fidGroups.get(new Integer(groupCount));
-        		if (groupedInfo.isEmpty()){
-        			continue;
-        		}
-        		
-        		if (Fiduciary.isPhoneFaxGroup(groupedInfo)) {
-        			if (fiduciary != null) {
-            			fiduciary.setPhoneFaxGroupInfo(groupedInfo);
-        			}
-        		}
-        		else {
-        			fiduciary = new Fiduciary(groupedInfo);
-        			fiduciaries.add(fiduciary);
-        		}
-        	}
+        fiduciaryRows.finish();
+        //a page saying there are none is fine, anything else is a layout the parser does not know
+        if (!hasFiduciaries && (fiduciaryLabel == null || !fiduciaryLabel.startsWith("No "))) {
+        	LOG.warn("PageParserProbateList...No " + layout.getOfficersLabel() + " section on the details page of case " 
+        			+ caseNumber + ", found " + (fiduciaryLabel == null ? "nothing" : "\"" + fiduciaryLabel + "\"") + " instead");
         }
-        
-        //dump results
-        output.print(fullName);
-    	output.print(",");
-    	output.print(caseNumber);
-    	output.print(",");
-    	output.print(caseType);
-    	output.print(",");
-    	output.print(dateFiled);
-    	output.print(",");
-    	
-    	for (Fiduciary fiduciary : fiduciaries) {
-            output.print(fiduciary.getName());
-        	output.print(",");
-        	output.print(fiduciary.getRepresentedBy());
-        	output.print(",");
-        	output.print(fiduciary.getAddrLn1());
-        	output.print(",");
-        	output.print(fiduciary.getAddrLn2());
-        	output.print(",");
-        	output.print(fiduciary.getCityStateZip());
-        	output.print(",");
-        	output.print(fiduciary.getPhone());
-        	output.print(",");
-        	output.print(fiduciary.getFax());
-        	output.print(",");
+        return new CaseDetailsRecord(fullName, caseNumber, caseType, dateFiled, fiduciaries);
+	}
+
+	private static void writeCaseDetails(CaseDetailsRecord details, CsvWriter output) throws IOException {
+		output.field(details.getDecedent()).field(details.getCaseNumber()).field(details.getCaseType()).field(details.getDateFiled());
+		output.endRow();
+	}
+
+	/**
+	 * One row per fiduciary, keyed by case number and the fiduciary's position on the page.
+	 */
+	private static void writeFiduciaries(CaseDetailsRecord details, CsvWriter output) throws IOException {
+		int number = 0;
+		for (Fiduciary fiduciary : details.getFiduciaries()) {
+			output.field(details.getCaseNumber()).field(Integer.toString(++number)).field(fiduciary.getName())
+					.field(fiduciary.getRepresentedBy()).field(fiduciary.getAddrLn1()).field(fiduciary.getAddrLn2())
+					.field(fiduciary.getCityStateZip()).field(fiduciary.getPhone()).field(fiduciary.getFax());
+			output.endRow();
 		}
-    	
-    	output.println("");
 	}
-	
-	private static void extractCaseListHeader(Elements resultsSection, PrintWriter output) {
-        //extract all the headers fields
-        Elements headers = resultsSection.select("header > span.column-header");
-        for (Element header : headers) {
-        	output.print(header.text());
-        	output.print(",");
-        }        
-    	output.println("Case Link");
+
+	/**
+	 * One row per fiduciary like {@link #writeFiduciaries(CaseDetailsRecord, CsvWriter)}, with the
+	 * {@link EntityDictionary} ids of the represented by and city state zip fields in place of their
+	 * text. A value seen for the first time is added to the entity table before the row using it.
+	 */
+	private static void writeFiduciaryIds(CaseDetailsRecord details, CsvWriter output, EntityDictionary entities, 
+			CsvWriter entityOutput) throws IOException {
+		int number = 0;
+		for (Fiduciary fiduciary : details.getFiduciaries()) {
+			int representedBy = entityId(fiduciary.getRepresentedBy(), entities, entityOutput);
+			int cityStateZip = entityId(fiduciary.getCityStateZip(), entities, entityOutput);
+			output.field(details.getCaseNumber()).field(Integer.toString(++number)).field(fiduciary.getName())
+					.field(Integer.toString(representedBy)).field(fiduciary.getAddrLn1()).field(fiduciary.getAddrLn2())
+					.field(Integer.toString(cityStateZip)).field(fiduciary.getPhone()).field(fiduciary.getFax());
+			output.endRow();
+		}
+	}
+
+	private static int entityId(String value, EntityDictionary entities, CsvWriter entityOutput) throws IOException {
+		int before = entities.size();
+		int id = entities.id(value);
+		if (entities.size() > before) {
+			entityOutput.field(Integer.toString(id)).field(value);
+			entityOutput.endRow();
+		}
+		return id;
+	}
+
+	static int extractCaseListing(Elements resultsSection, CsvWriter output) throws IOException {
+		return writeCaseListing(extractCaseRecords(resultsSection), output);
 	}
-	
-	private static int extractCaseListing(Elements resultsSection, PrintWriter output) {
+
+	private static int writeCaseListing(List<CaseListRecord> records, CsvWriter output) throws IOException {
 		int count = 0;
-		//extract all data results
-        Elements articles = resultsSection.select(".data-row");
-        for (Element artcle : articles) {
+        for (CaseListRecord record : records) {
         	count++;
-        	output.print(artcle.select(".column-case-number").text());
-        	output.print(",");
-        	output.print(cleanText(artcle.select(".column-last-name").text()));
-        	output.print(",");
-        	output.print(cleanText(artcle.select(".column-first-name").text()));
-        	output.print(",");
-        	output.print(cleanText(artcle.select(".column-middle-initial").text()));
-        	output.print(",");
-        	output.print(artcle.select(".column-casetype").text());
-        	output.print(",");
-        	output.print(artcle.select(".column-district").text());
-        	output.print(",");
-        	output.print(artcle.select(".column-case-number a").attr("abs:href"));
-        	output.println("");
+        	output.field(record.getCaseNumber()).field(record.getLastName()).field(record.getFirstName())
+        			.field(record.getMiddleInitial()).field(record.getCaseType()).field(record.getDistrict()).field(record.getLink());
+        	output.endRow();
         }
         
         return count;
 	}
 
-    public static List<String[]> extractDetailsLinks (File input, String caseTypeTarget) {
-    	Document doc = null;
-        try {
-        	doc = Jsoup.parse(input, "UTF-8", "http://apps.ctprobate.gov/");
+	/**
+	 * Reference (jsoup) extraction of a whole case list page.
+	 */
+	static CaseListPage extractCaseListPage(Elements resultsSection) {
+		CaseListPage page = new CaseListPage();
+        for (Element header : resultsSection.select("header > span.column-header")) {
+        	page.getHeaders().add(header.text());
+        }
+        page.getRecords().addAll(extractCaseRecords(resultsSection));
+        page.getPageLinks().putAll(extractPageLinks(resultsSection));
+		return page;
+	}
+
+	private static List<CaseListRecord> extractCaseRecords(Elements resultsSection) {
+		//extract all data results
+		List<CaseListRecord> records = new ArrayList<CaseListRecord>();
+        Elements articles = resultsSection.select(".data-row");
+        for (Element artcle : articles) {
+        	records.add(new CaseListRecord(artcle.select(".column-case-number").text(), 
+        			artcle.select(".column-last-name").text(), 
+        			artcle.select(".column-first-name").text(),
+        			artcle.select(".column-middle-initial").text(),
+        			artcle.select(".column-casetype").text(),
+        			artcle.select(".column-district").text(),
+        			artcle.select(".column-case-number a").attr("abs:href")));
+        }
+        return records;
+	}
+
+	/**
+	 * Reads a case list page with the configured extractor.
+	 *
+	 * @return the page, or null when it could not be read or has no results
+	 */
+    static CaseListPage readCaseListPage(StoredPage input) {
+    	CaseListPage page;
+    	try {
+    		if (EXTRACTOR_STREAMING.equals(listExtractor)) {
+    			page = readCaseListPageStreaming(input);
+    		}
+    		else {
+    			page = readCaseListPageJsoup(input);
+    			if (EXTRACTOR_VERIFY.equals(listExtractor)) {
+    				CaseListPage streamed = readCaseListPageStreaming(input);
+    				if (page == null ? streamed != null : !page.equals(streamed)) {
+    					LOG.warn("PageParserProbateList...Streaming extractor disagrees on " + input 
+    							+ NEWLINE + "jsoup:     " + page + NEWLINE + "streaming: " + streamed);
+    				}
+    			}
+    		}
 		} catch (IOException e1) {
-			e1.printStackTrace();
-	        LOG.info("PageParserProbateList...Failed to parse html " + input.getAbsolutePath());
-	        return new ArrayList<String[]>(0);
+	        LOG.error("PageParserProbateList...Failed to parse page " + input, e1);
+	        return null;
 		}        
 
+        if (page == null) {
+	        LOG.info("PageParserProbateList...No results");
+        }
+        return page;
+    }
+
+    static CaseListPage readCaseListPageJsoup(StoredPage input) throws IOException {
+    	Document doc = parseDocument(input);
         Elements resultsSection = doc.select("section#search-results-container");
         if (resultsSection.isEmpty()) {
-	        LOG.info("PageParserProbateList...No results");
-        	return new ArrayList<String[]>(0); 
+        	return null; 
         }
-        
-        return extractDetailsLinks (resultsSection, caseTypeTarget);
+        return extractCaseListPage(resultsSection);
     }
-        
-    private static List<String[]> extractDetailsLinks (Elements resultsSection, String caseTypeTarget) {
-    	List<String[]> pageLinks = new ArrayList<String[]>();
-    	if (caseTypeTarget != null){
-            Elements articles = resultsSection.select(".data-row");
-            for (Element artcle : articles) {
-            	String caseType = artcle.select(".column-casetype").text();
-            	if (caseTypeTarget.equalsIgnoreCase(caseType)){
-                	String[] caseDetail = new String[2];
-            		caseDetail[0] = artcle.select(".column-case-number").text();
-            		caseDetail[1] = artcle.select(".column-case-number a").attr("abs:href");
-                	pageLinks.add(caseDetail);
-            	}
-            }
+
+    private static CaseListPage readCaseListPageStreaming(StoredPage input) throws IOException {
+    	Reader reader = new InputStreamReader(input.open(), "UTF-8");
+    	try {
+    		return STREAMING_EXTRACTOR.get().extract(reader, BASE_URI);
+    	} finally {
+    		reader.close();
     	}
-    	
-        return pageLinks;
     }
-	
-    public static Map<Integer, String> extractPageLinks (File input) {
-    	Document doc = null;
-        try {
-        	doc = Jsoup.parse(input, "UTF-8", "http://apps.ctprobate.gov/");
-		} catch (IOException e1) {
-			e1.printStackTrace();
-	        LOG.info("PageParserProbateList...Failed to parse html " + input.getAbsolutePath());
-	        return new Hashtable<Integer, String>(0);
-		}        
 
-        Elements resultsSection = doc.select("section#search-results-container");
-        if (resultsSection.isEmpty()) {
-	        LOG.info("PageParserProbateList...No results");
+    static Document parseDocument(StoredPage input) throws IOException {
+    	InputStream in = input.open();
+    	try {
+    		return Jsoup.parse(in, "UTF-8", BASE_URI);
+    	} finally {
+    		in.close();
+    	}
+    }
+
+    public static List<String[]> extractDetailsLinks (StoredPage input, String caseTypeTarget) {
+    	CaseListPage page = readCaseListPage(input);
+    	if (page == null) {
+	        return new ArrayList<String[]>(0);
+    	}
+        return page.getDetailsLinks(caseTypeTarget);
+    }
+
+    public static Map<Integer, String> extractPageLinks (StoredPage input) {
+    	CaseListPage page = readCaseListPage(input);
+    	if (page == null) {
         	return new Hashtable<Integer, String>(0); 
-        }
-        
-        return extractPageLinks (resultsSection);
+    	}
+
+    	Map<Integer, String> pageLinks = new Hashtable<Integer, String>(page.getPageLinks());
+    	for (Map.Entry<Integer, String> pageLink : pageLinks.entrySet()) {
+        	LOG.info("Page " + pageLink.getKey() + ": " + pageLink.getValue());
+    	}
+        return pageLinks;
     }
     
-    
-    private static Map<Integer, String> extractPageLinks (Elements resultsSection) {
+    static Map<Integer, String> extractPageLinks (Elements resultsSection) {
     	Map<Integer, String> pageLinks = new Hashtable<Integer, String>();
         Elements pages = resultsSection.select("footer > span a.paging-link");
         for (Element pageLink : pages) {
@@ -406,7 +851,6 @@ public class PageParserProbateList {
         	if (includeLink) {
             	Integer pageNo = Integer.parseInt(pageLink.text());
             	String link = pageLink.attr("abs:href");
-            	LOG.info("Page " + pageNo + ": " + link);
             	pageLinks.put(pageNo, link);
         	}
         }
@@ -414,7 +858,7 @@ public class PageParserProbateList {
         return pageLinks;
     }
 
-    private static boolean openOutputFiles(File dataDirectory) {
+    static boolean openOutputFiles(File dataDirectory) {
         String fileJulian = getJulianWithMillis();
         File caseListFilename = new File(dataDirectory, FILENAME_PREFIX_CASE_LIST + fileJulian + CSV_FILENAME_SUFFIX);
         caseListOutput = openOutput(caseListFilename);
@@ -423,24 +867,54 @@ public class PageParserProbateList {
 			return false;
         }
 
-        File caseDetailsFilename = new File(dataDirectory, FILENAME_PREFIX_CASE_DETAILS + fileJulian + CSV_FILENAME_SUFFIX);
-        caseDetailsOutput = openOutput(caseDetailsFilename);
-        if (caseDetailsOutput == null){
-	        LOG.error("PageParserProbateList...Failed to open output file " + caseDetailsFilename.getAbsolutePath());
-			return false;
+        //before the case details outputs, which write to it
+        if (entityIds) {
+        	File entityFilename = new File(dataDirectory, FILENAME_PREFIX_ENTITY + fileJulian + CSV_FILENAME_SUFFIX);
+        	entityOutput = openOutput(entityFilename);
+        	if (entityOutput == null){
+        		LOG.error("PageParserProbateList...Failed to open output file " + entityFilename.getAbsolutePath());
+        		return false;
+        	}
+        	try {
+        		entityOutput.writeHeader(ENTITY_SCHEMA);
+        		entityOutput.field(Integer.toString(EntityDictionary.EMPTY_ID)).field("");
+        		entityOutput.endRow();
+        	} catch (IOException e) {
+        		LOG.error("PageParserProbateList...Failed to write " + entityFilename.getAbsolutePath(), e);
+        		return false;
+        	}
+        	entities = new EntityDictionary();
         }
 
-        File caseFiduciaryFilename = new File(dataDirectory, FILENAME_PREFIX_CASE_FEDUCIARY + fileJulian + CSV_FILENAME_SUFFIX);
-        caseFiduciaryOutput = openOutput(caseFiduciaryFilename);
-        if (caseFiduciaryOutput == null){
-	        LOG.info("PageParserProbateList...Failed to open output file " + caseFiduciaryFilename.getAbsolutePath());
+        //the decedent estate files are always there, other case types get theirs once they come up
+        outputDirectory = dataDirectory;
+        outputJulian = fileJulian;
+        detailsOutputs.clear();
+        try {
+        	detailsWriter(CASE_TYPE_DECEDENT_ESTATE_REGULAR);
+        } catch (IOException e) {
+	        LOG.error("PageParserProbateList...Failed to open case details output files", e);
 			return false;
         }
 
+        if (binaryExport) {
+        	File caseListBinaryFilename = new File(dataDirectory, FILENAME_PREFIX_CASE_LIST + fileJulian + BinaryRecordWriter.BINARY_FILENAME_SUFFIX);
+        	File caseDetailsBinaryFilename = new File(dataDirectory, FILENAME_PREFIX_CASE_DETAILS + fileJulian + BinaryRecordWriter.BINARY_FILENAME_SUFFIX);
+        	try {
+				caseListBinary = new BinaryRecordWriter(new BufferedOutputStream(new FileOutputStream(caseListBinaryFilename)), 
+						CaseListRecord.RECORD_TYPE, CaseListRecord.DICTIONARY_COUNT);
+				caseDetailsBinary = new BinaryRecordWriter(new BufferedOutputStream(new FileOutputStream(caseDetailsBinaryFilename)), 
+						CaseDetailsRecord.RECORD_TYPE, CaseDetailsRecord.DICTIONARY_COUNT);
+			} catch (IOException e) {
+		        LOG.error("PageParserProbateList...Failed to open binary output files", e);
+				return false;
+			}
+        }
+
         return true;
     }
 
-    static final PrintWriter openOutput (File outputFile) {
+    static final CsvWriter openOutput (File outputFile) {
         FileOutputStream fos;
 		try {
 			fos = new FileOutputStream(outputFile);
@@ -448,53 +922,131 @@ public class PageParserProbateList {
 			e.printStackTrace();
 			return null;
 		}
-        BufferedOutputStream outputBuffer = new BufferedOutputStream(fos);
-        return new PrintWriter(outputBuffer);
+        return new CsvWriter(new OutputStreamWriter(fos, BinaryRecordWriter.UTF8));
+    }
 
+    /**
+     * Pushes the rows written so far out to the files.
+     */
+    static void flushOutputFiles() throws IOException {
+    	caseListOutput.flush();
+    	for (DetailsOutput output : detailsOutputs.values()) {
+    		output.flush();
+    	}
+    	if (entityOutput != null) {
+    		entityOutput.flush();
+    	}
+    	if (caseListBinary != null) {
+    		caseListBinary.flush();
+    		caseDetailsBinary.flush();
+    	}
     }
 
-    private static void closeOutputFiles() {
-    	closeOutput (caseFiduciaryOutput);
-    	closeOutput (caseDetailsOutput);
+    static void closeOutputFiles() {
+    	CaseLookupPageCollector.closeQuietly(caseDetailsBinary);
+    	CaseLookupPageCollector.closeQuietly(caseListBinary);
+    	closeOutput (entityOutput);
+    	entityOutput = null;
+    	entities = null;
+    	for (DetailsOutput output : detailsOutputs.values()) {
+    		output.close();
+    	}
+    	detailsOutputs.clear();
+    	outputDirectory = null;
     	closeOutput (caseListOutput);
     }
 
-    static final void closeOutput (PrintWriter output) {
+    static final void closeOutput (CsvWriter output) {
         if (output != null) {
-        	output.close();
+        	try {
+				output.close();
+			} catch (IOException e) {
+		        LOG.error("PageParserProbateList...Failed to close output file", e);
+			}
         }
     }
     
-    private static String cleanText (String text) {
-    	if (text == null){
-    		return "";
+    public static String caseListKey(String district, int pageNumber) {
+    	String pageNo = (pageNumber < 10 ? ("0" + pageNumber) : ("" + pageNumber));
+    	if (district != null) {
+    		pageNo = district + "_" + pageNo;
     	}
-    	
-    	//remove commas 
-    	text = text.replace(',', ' ');
-    	//remove quotes 
-    	text = text.replace('"', ' ');
-    	
-    	return text;
+    	return FILENAME_PREFIX_CASE_LIST + pageNo;
     }
 
-    public static String createCaseListFile(int pageNumber, String makeCopySuffix) {
-    	String pageNo = (pageNumber < 10 ? ("0" + pageNumber) : ("" + pageNumber));
-    	String fileName = FILENAME_PREFIX_CASE_LIST + pageNo + HTML_FILENAME_SUFFIX;
-    	if ((new File(DATA_DIR, fileName)).exists() && makeCopySuffix != null) {
-    		fileName = FILENAME_PREFIX_CASE_LIST + pageNo  + "_" + makeCopySuffix + HTML_FILENAME_SUFFIX;
+    public static String caseDetailsKey(String caseNumber) {
+    	return FILENAME_PREFIX_CASE_DETAILS + caseNumber;
+    }
+
+    /**
+     * Decedent estates keep the key without a case type (ProbateCaseDetails_PD05-14-00123), any other
+     * type has its code in front of the case number (ProbateCaseDetails_TR_PD05-14-00123).
+     */
+    public static String caseDetailsKey(String caseType, String caseNumber) {
+    	if (CASE_TYPE_DECEDENT_ESTATE_REGULAR.equals(caseType)) {
+    		return caseDetailsKey(caseNumber);
     	}
-    	
-    	return fileName;
+    	return FILENAME_PREFIX_CASE_DETAILS + caseType + "_" + caseNumber;
     }
 
-    public static String createCaseDetailFile(String caseNumber, String makeCopySuffix) {
-    	String fileName = FILENAME_PREFIX_CASE_DETAILS + caseNumber + HTML_FILENAME_SUFFIX;
-    	if ((new File(DATA_DIR, fileName)).exists()) {
-    		fileName = FILENAME_PREFIX_CASE_DETAILS + caseNumber  + "_" + makeCopySuffix + HTML_FILENAME_SUFFIX;
+    /**
+     * @return the case type a details page was fetched for, from its key; a case type is letters only
+     *         where a case number always has digits
+     */
+    public static String caseTypeOfDetailsKey(String pageKey) {
+    	String rest = pageKey.startsWith(FILENAME_PREFIX_CASE_DETAILS) ? pageKey.substring(FILENAME_PREFIX_CASE_DETAILS.length()) : pageKey;
+    	int separator = rest.indexOf('_');
+    	if (separator > 0 && CASE_TYPE_CODE.matcher(rest.substring(0, separator)).matches()) {
+    		return rest.substring(0, separator);
     	}
-    	
-    	return fileName;
+    	return CASE_TYPE_DECEDENT_ESTATE_REGULAR;
+    }
+
+    /**
+     * @return the case type codes in a comma separated list, upper cased; DR when there are none
+     */
+    public static List<String> parseCaseTypes(String caseTypes) {
+    	Set<String> parsed = new LinkedHashSet<String>();
+    	for (String caseType : caseTypes.split(",")) {
+    		caseType = caseType.trim().toUpperCase();
+    		if (caseType.length() == 0) {
+    			continue;
+    		}
+    		if (!CASE_TYPE_CODE.matcher(caseType).matches()) {
+    	        LOG.warn("PageParserProbateList...Ignoring case type " + caseType + ", a case type is letters only");
+    			continue;
+    		}
+    		parsed.add(caseType);
+    	}
+    	if (parsed.isEmpty()) {
+    		parsed.add(CASE_TYPE_DECEDENT_ESTATE_REGULAR);
+    	}
+    	return new ArrayList<String>(parsed);
+    }
+
+    /**
+     * Opens the configured page store, one html file per page by default or the compressed 
+     * segment store with -Dprobate.store=segments.
+     *
+     * @param copySuffix
+     *            suffix the file store names a new copy of a page already on disk with
+     */
+    public static PageStore openPageStore(File dataDirectory, String copySuffix) throws IOException {
+    	if (STORE_SEGMENTS.equals(pageStoreType)) {
+    		return SegmentPageStore.open(new File(dataDirectory, SEGMENT_DIR), segmentBytes);
+    	}
+    	return new FilePageStore(dataDirectory, copySuffix);
+    }
+
+    /**
+     * Opens the configured page store to read the pages only, it may be shared with a collector
+     * still adding pages.
+     */
+    public static PageStore openPageStoreForReading(File dataDirectory) throws IOException {
+    	if (STORE_SEGMENTS.equals(pageStoreType)) {
+    		return SegmentPageStore.openReadOnly(new File(dataDirectory, SEGMENT_DIR));
+    	}
+    	return new FilePageStore(dataDirectory, null);
     }
 
     /**
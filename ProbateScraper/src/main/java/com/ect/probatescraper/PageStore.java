@@ -0,0 +1,42 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * Where fetched pages are kept between the collector and the parser.
+ *
+ */
+public interface PageStore extends Closeable {
+
+	/**
+	 * Takes ownership of a downloaded body, the part file is moved or copied into the store and
+	 * is gone when this returns.
+	 */
+	StoredPage store(String key, long fetchMillis, File partFile) throws IOException;
+
+	/**
+	 * @return the most recent copy of the page, or null when the store has none
+	 */
+	StoredPage latest(String key);
+
+	/**
+	 * @return every stored copy whose key starts with the prefix, ordered by key and then fetch time
+	 */
+	List<StoredPage> list(String keyPrefix);
+
+	/**
+	 * @return the page at a location previously handed out by this store, or null when it is gone
+	 */
+	StoredPage resolve(String location);
+
+	InputStream open(StoredPage page) throws IOException;
+
+	/**
+	 * @return a scratch file, in the same place the store keeps its pages, to download a body into
+	 */
+	File createPartFile(String key) throws IOException;
+}
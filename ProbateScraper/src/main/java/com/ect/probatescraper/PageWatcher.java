@@ -0,0 +1,117 @@
+package com.ect.probatescraper;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Notices the html pages the collector drops into a {@link FilePageStore} directory and hands each
+ * new one over as it arrives, so the parser can keep its csv files up to date while a crawl runs.
+ * The collector moves finished pages into place in one step, so a page is complete when its name
+ * shows up. Start watching before listing the pages already there, so nothing falls in between.
+ *
+ */
+public class PageWatcher implements Closeable {
+    private static final Logger LOG = Logger.getLogger(PageWatcher.class);
+    static final long POLL_MILLIS = 1000;
+
+    /**
+     * Receives the new pages, on the thread that called {@link PageWatcher#watch(PageHandler, Set)}.
+     */
+    public interface PageHandler {
+    	void page(StoredPage page) throws IOException;
+
+    	/**
+    	 * Called once the pages that arrived together have been handed over.
+    	 */
+    	void caughtUp() throws IOException;
+    }
+
+    private final File directory;
+    private final PageStore store;
+    private final String[] keyPrefixes;
+    private final WatchService watchService;
+
+    /**
+     * @param keyPrefixes
+     *            only pages whose key starts with one of these are handed over
+     */
+    public PageWatcher(File directory, PageStore store, String... keyPrefixes) throws IOException {
+    	this.directory = directory;
+    	this.store = store;
+    	this.keyPrefixes = keyPrefixes;
+    	this.watchService = FileSystems.getDefault().newWatchService();
+    	directory.toPath().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Hands over new pages until the thread is interrupted or the watcher is closed.
+     *
+     * @param alreadyParsed
+     *            locations of the pages parsed before watching started, they are not handed over again
+     */
+    public void watch(PageHandler handler, Set<String> alreadyParsed) throws IOException, InterruptedException {
+        LOG.info("PageWatcher...Watching " + directory.getAbsolutePath() + " for new pages");
+    	try {
+    		while (!Thread.currentThread().isInterrupted()) {
+    			WatchKey key = watchService.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+    			if (key == null) {
+    				continue;
+    			}
+
+    			//take everything that arrived together before handing it over
+    			Set<File> arrived = new LinkedHashSet<File>();
+    			while (key != null) {
+    				for (WatchEvent<?> event : key.pollEvents()) {
+    					if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+    						LOG.warn("PageWatcher...Missed events, some pages need a full parse to be picked up");
+    						continue;
+    					}
+    					arrived.add(new File(directory, ((Path) event.context()).toString()));
+    				}
+    				key.reset();
+    				key = watchService.poll();
+    			}
+
+    			for (File pageFile : arrived) {
+    				StoredPage page = accept(pageFile) ? store.resolve(pageFile.getAbsolutePath()) : null;
+    				if (page != null && alreadyParsed.add(page.getLocation())) {
+    					handler.page(page);
+    				}
+    			}
+    			handler.caughtUp();
+    		}
+    	} catch (ClosedWatchServiceException e) {
+    		//closed from another thread, done watching
+    	}
+    }
+
+    private boolean accept(File pageFile) {
+    	String name = pageFile.getName();
+    	if (!name.endsWith(PageParserProbateList.HTML_FILENAME_SUFFIX)) {
+    		return false;
+    	}
+    	for (String prefix : keyPrefixes) {
+    		if (name.startsWith(prefix)) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    public void close() throws IOException {
+    	watchService.close();
+    }
+}
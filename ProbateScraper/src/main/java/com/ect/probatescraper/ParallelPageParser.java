@@ -0,0 +1,150 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Spreads the parsing of html pages across a pool of threads while the calling thread, as the only
+ * writer, writes out what was parsed from each page in the order the pages were given. Results travel
+ * through a bounded queue, so no more than a handful of parsed pages are held in memory no matter
+ * how big the corpus is.
+ *
+ */
+public class ParallelPageParser {
+    private static final Logger LOG = Logger.getLogger(ParallelPageParser.class);
+
+    /**
+     * Turns a single page into its records, called on the parse threads.
+     */
+    public interface PageParser<T> {
+    	/**
+    	 * @return what was parsed from the page, or null when the page could not be parsed
+    	 */
+    	T parse(StoredPage page);
+    }
+
+    /**
+     * Writes out the records of a page, only ever called on the thread that called 
+     * {@link ParallelPageParser#parse(List, PageParser, PageWriter)}, so writers need not be thread safe.
+     */
+    public interface PageWriter<T> {
+    	/**
+    	 * @param first
+    	 *            true for the first page of a run, which also writes any header
+    	 * @return number of rows written
+    	 */
+    	int write(T parsed, boolean first) throws IOException;
+    }
+
+    private static class ParsedPage {
+    	private final StoredPage page;
+    	private final Object parsed;
+
+    	ParsedPage(StoredPage page, Object parsed) {
+    		this.page = page;
+    		this.parsed = parsed;
+    	}
+    }
+
+    private static final Future<ParsedPage> END_OF_PAGES = new FutureTask<ParsedPage>(new Callable<ParsedPage>() {
+		public ParsedPage call() {
+			return null;
+		}
+	});
+
+    private final int threads;
+    private final int queueCapacity;
+
+    public ParallelPageParser(int threads, int queueCapacity) {
+    	this.threads = Math.max(1, threads);
+    	this.queueCapacity = Math.max(1, queueCapacity);
+    }
+
+    /**
+     * Parses every page and writes the results in page order.
+     *
+     * @return total rows written, or -1 when a page failed (output stops at the failed page)
+     */
+    public <T> int parse(final List<StoredPage> pages, final PageParser<T> parser, PageWriter<T> writer) {
+    	final ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+    		private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "parse-worker-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+    	final BlockingQueue<Future<ParsedPage>> results = new ArrayBlockingQueue<Future<ParsedPage>>(queueCapacity);
+
+    	//submit in page order, blocking whenever the writer falls queueCapacity pages behind
+    	Thread producer = new Thread(new Runnable() {
+			public void run() {
+				try {
+					for (int i = 0; i < pages.size(); i++) {
+						results.put(pool.submit(parseTask(pages.get(i), parser)));
+					}
+					results.put(END_OF_PAGES);
+				} catch (InterruptedException e) {
+					//writer gave up
+				}
+			}
+		}, "parse-producer");
+    	producer.setDaemon(true);
+    	producer.start();
+
+    	int total = 0;
+    	boolean first = true;
+    	try {
+    		while (true) {
+    			Future<ParsedPage> result = results.take();
+    			if (result == END_OF_PAGES) {
+    				break;
+    			}
+
+    			ParsedPage parsed = result.get();
+    			if (parsed.parsed == null) {
+    				LOG.error("ParallelPageParser...Stopping at page " + parsed.page);
+    				return -1;
+    			}
+    			@SuppressWarnings("unchecked")
+    			T records = (T) parsed.parsed;
+    			total += writer.write(records, first);
+    			first = false;
+    		}
+    	} catch (InterruptedException e) {
+    		Thread.currentThread().interrupt();
+    		return -1;
+    	} catch (ExecutionException e) {
+    		LOG.error("ParallelPageParser...Failed to parse page", e.getCause());
+    		return -1;
+    	} catch (IOException e) {
+    		LOG.error("ParallelPageParser...Failed to write page", e);
+    		return -1;
+    	} finally {
+    		producer.interrupt();
+    		pool.shutdownNow();
+    	}
+
+    	return total;
+    }
+
+    private static <T> Callable<ParsedPage> parseTask(final StoredPage page, final PageParser<T> parser) {
+    	return new Callable<ParsedPage>() {
+			public ParsedPage call() {
+				return new ParsedPage(page, parser.parse(page));
+			}
+		};
+    }
+}
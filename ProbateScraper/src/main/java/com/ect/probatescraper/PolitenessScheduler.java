@@ -0,0 +1,64 @@
+package com.ect.probatescraper;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hands out request slots per host so that no matter how many crawl workers are running,
+ * a single host never sees requests closer together than its {@link AdaptiveRateController}
+ * interval allows.
+ *
+ */
+public class PolitenessScheduler {
+    private static final Logger LOG = Logger.getLogger(PolitenessScheduler.class);
+
+    private final AdaptiveRateController controller;
+    private final Map<String, Long> nextSlotByHost = new HashMap<String, Long>();
+
+    public PolitenessScheduler(double requestsPerMinute) {
+    	this(AdaptiveRateController.fixed(requestsPerMinute));
+    }
+
+    public PolitenessScheduler(AdaptiveRateController controller) {
+    	this.controller = controller;
+    }
+
+    /**
+     * Blocks the calling thread until the host of the supplied link may be contacted again.
+     *
+     * @param link
+     *            url about to be requested
+     */
+    public void acquire(String link) throws InterruptedException {
+    	String host = hostOf(link);
+    	long waitNanos;
+    	synchronized (nextSlotByHost) {
+    		long now = System.nanoTime();
+    		Long nextSlot = nextSlotByHost.get(host);
+    		long slot = (nextSlot == null || nextSlot.longValue() < now) ? now : nextSlot.longValue();
+    		nextSlotByHost.put(host, Long.valueOf(slot + controller.getIntervalNanos(host)));
+    		waitNanos = slot - now;
+    	}
+
+    	if (waitNanos > 0) {
+    		LOG.debug(String.format("Next request to %s in %3.3f seconds...", host, (waitNanos / 1000000000.0)));
+    		Thread.sleep(waitNanos / 1000000, (int) (waitNanos % 1000000));
+    	}
+    }
+
+    public AdaptiveRateController getController() {
+    	return controller;
+    }
+
+    static final String hostOf(String link) {
+    	try {
+			return new URL(link).getHost().toLowerCase();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+    }
+}
@@ -0,0 +1,144 @@
+package com.ect.probatescraper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Append only log of fixed size binary records, each holding the whole state of one key, shared by
+ * the {@link KnownCaseIndex} and the {@link CaseHistory}. On open the log is replayed (the last record
+ * of a key wins) and compacted to one record per key when it has grown well past the number of keys,
+ * or ends in a record cut short by a crash.
+ * <p>
+ * The compacted copy is written next to the log and moved over it only once complete, so a crash
+ * leaves the old log or the new one, never neither.
+ *
+ */
+public class RecordLog implements Closeable {
+    private static final Logger LOG = Logger.getLogger(RecordLog.class);
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    /**
+     * Reads one record back.
+     */
+    public interface RecordReader {
+    	void read(DataInputStream in) throws IOException;
+    }
+
+    /**
+     * Writes records, one for an append or every live one for a compaction.
+     */
+    public interface RecordWriter {
+    	void write(DataOutputStream out) throws IOException;
+    }
+
+    private final File file;
+    private final int recordSize;
+    private int records;
+    private boolean torn;
+    private DataOutputStream out;
+
+    public RecordLog(File file, int recordSize) {
+    	this.file = file;
+    	this.recordSize = recordSize;
+    }
+
+    /**
+     * Reads back every complete record of the log, if it exists, in the order they were written.
+     */
+    public void replay(RecordReader reader) throws IOException {
+    	if (!file.exists()) {
+    		return;
+    	}
+    	DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+    	try {
+    		//a torn last record is never read, it is left for the compaction to drop
+    		long complete = file.length() / recordSize;
+    		for (long record = 0; record < complete; record++) {
+    			reader.read(in);
+    			records++;
+    		}
+    	} catch (EOFException e) {
+    		//shorter than it was a moment ago, whatever is left is dropped
+    	} finally {
+    		in.close();
+    	}
+
+    	if (file.length() != (long) records * recordSize) {
+    		LOG.warn("RecordLog...Dropping partial record at the end of " + file.getAbsolutePath());
+    		torn = true;
+    	}
+    }
+
+    /**
+     * @param keys
+     *            number of keys the log holds
+     * @param slack
+     *            records tolerated on top of twice the keys
+     * @return true when the log ends in a torn record or holds more than twice the keys, plus slack
+     */
+    public boolean needsCompaction(int keys, int slack) {
+    	return torn || records > 2 * keys + slack;
+    }
+
+    /**
+     * Replaces the log with the records written by everything, one per key.
+     */
+    public void compact(RecordWriter everything, int keys) throws IOException {
+    	File compacted = new File(file.getParentFile(), file.getName() + COMPACT_SUFFIX);
+    	DataOutputStream copy = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(compacted)));
+    	try {
+    		everything.write(copy);
+    	} finally {
+    		copy.close();
+    	}
+    	Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    	LOG.info("RecordLog...Compacted " + file.getName() + " from " + records + " records to " + keys);
+    	records = keys;
+    	torn = false;
+    }
+
+    /**
+     * Opens the log for {@link #append(RecordWriter)}, creating it when it does not exist.
+     */
+    public void openForAppend() throws IOException {
+    	out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    /**
+     * Appends a record and flushes it, nothing is written before the log is opened for appending.
+     */
+    public void append(RecordWriter record) throws IOException {
+    	if (out == null) {
+    		return;
+    	}
+    	record.write(out);
+    	out.flush();
+    	records++;
+    }
+
+    /**
+     * @return records in the log, including the ones superseded by a later record of their key
+     */
+    public int getRecords() {
+    	return records;
+    }
+
+    public void close() throws IOException {
+    	if (out != null) {
+    		out.close();
+    		out = null;
+    	}
+    }
+}
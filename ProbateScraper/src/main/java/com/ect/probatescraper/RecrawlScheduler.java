@@ -0,0 +1,162 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.GregorianCalendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Decides which case details a run fetches when it may only send so many details requests. The walk
+ * of the list pages offers every case it finds; once the walk is done the cases most likely to have
+ * changed since their last fetch are picked, up to the budget:
+ * <ul>
+ * <li>cases never fetched (or whose details could never be fetched) come first, nothing is known of them</li>
+ * <li>every other case is ranked by the days since its last fetch, times the share of its past re-fetches
+ * that found it changed (starting from one in two, so a case fetched once is neither favored nor
+ * written off), times a weight that is 2 for a case filed today and falls towards 1 as the case
+ * ages, halving its extra every filedHalfLifeDays</li>
+ * </ul>
+ * A case that keeps changing is fetched more often than one that has sat unchanged for years, and a
+ * case left out tonight ranks higher tomorrow, so nothing is starved for good.
+ *
+ */
+public class RecrawlScheduler {
+    private static final Logger LOG = Logger.getLogger(RecrawlScheduler.class);
+    static final double MILLIS_PER_DAY = 24.0 * 60 * 60 * 1000;
+
+    /**
+     * A case offered for fetching.
+     */
+    public static class Candidate {
+    	private final String caseType;
+    	private final String caseNumber;
+    	private final String link;
+    	private final double priority;
+    	private final long sequence;
+
+    	Candidate(String caseType, String caseNumber, String link, double priority, long sequence) {
+    		this.caseType = caseType;
+    		this.caseNumber = caseNumber;
+    		this.link = link;
+    		this.priority = priority;
+    		this.sequence = sequence;
+    	}
+
+		public String getCaseType() {
+			return caseType;
+		}
+
+		public String getCaseNumber() {
+			return caseNumber;
+		}
+
+		public String getLink() {
+			return link;
+		}
+
+		public double getPriority() {
+			return priority;
+		}
+
+		@Override
+		public String toString() {
+			return caseType + " " + caseNumber + " (" + priority + ")";
+		}
+    }
+
+    /**
+     * Highest priority first, cases offered earlier first among equals.
+     */
+    static final Comparator<Candidate> BY_PRIORITY = new Comparator<Candidate>() {
+		public int compare(Candidate a, Candidate b) {
+			int byPriority = Double.compare(b.priority, a.priority);
+			return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+		}
+	};
+
+    private final CaseHistory history;
+    private final int budget;
+    private final double filedHalfLifeDays;
+    private final long nowMillis;
+    private final Map<String, Candidate> candidates = new LinkedHashMap<String, Candidate>();
+
+    /**
+     * @param budget
+     *            case details requests the run may send
+     */
+    public RecrawlScheduler(CaseHistory history, int budget, double filedHalfLifeDays, long nowMillis) {
+    	this.history = history;
+    	this.budget = budget;
+    	this.filedHalfLifeDays = filedHalfLifeDays;
+    	this.nowMillis = nowMillis;
+    }
+
+    /**
+     * Offers a case found on a list page, a case offered again is ignored.
+     */
+    public synchronized void offer(String caseType, String caseNumber, String link) {
+    	String pageKey = PageParserProbateList.caseDetailsKey(caseType, caseNumber);
+    	if (!candidates.containsKey(pageKey)) {
+    		double priority = priority(history.get(caseNumber), nowMillis, filedHalfLifeDays);
+    		candidates.put(pageKey, new Candidate(caseType, caseNumber, link, priority, candidates.size()));
+    	}
+    }
+
+    public synchronized int size() {
+    	return candidates.size();
+    }
+
+    /**
+     * @return the cases to fetch, at most the budget of them, highest priority first
+     */
+    public synchronized List<Candidate> select() {
+    	//a heap of the best seen so far with the weakest on top, instead of sorting every case offered
+    	PriorityQueue<Candidate> best = new PriorityQueue<Candidate>(Math.max(1, Math.min(budget, candidates.size())),
+    			Collections.reverseOrder(BY_PRIORITY));
+    	int fresh = 0;
+    	for (Candidate candidate : candidates.values()) {
+    		if (candidate.priority == Double.POSITIVE_INFINITY) {
+    			fresh++;
+    		}
+    		if (best.size() < budget) {
+    			best.add(candidate);
+    		}
+    		else if (budget > 0 && BY_PRIORITY.compare(candidate, best.peek()) < 0) {
+    			best.poll();
+    			best.add(candidate);
+    		}
+    	}
+    	List<Candidate> selected = new ArrayList<Candidate>(best);
+    	Collections.sort(selected, BY_PRIORITY);
+    	LOG.info("RecrawlScheduler..." + selected.size() + " of " + candidates.size() + " cases selected (" + fresh
+    			+ " never fetched), budget " + budget);
+    	return selected;
+    }
+
+    /**
+     * @return how urgently the case should be fetched, infinite when it has never been fetched
+     */
+    static double priority(CaseHistory.Entry entry, long nowMillis, double filedHalfLifeDays) {
+    	if (entry == null) {
+    		return Double.POSITIVE_INFINITY;
+    	}
+    	double daysSinceFetch = Math.max(0, nowMillis - entry.getFetchedMillis()) / MILLIS_PER_DAY;
+    	double changeRate = (entry.getChanges() + 1.0) / (entry.getFetches() + 1.0);
+    	double filedWeight = 1;
+    	if (entry.getDateFiled() > 0 && filedHalfLifeDays > 0) {
+    		double daysSinceFiled = Math.max(0, nowMillis - toMillis(entry.getDateFiled())) / MILLIS_PER_DAY;
+    		filedWeight += Math.pow(0.5, daysSinceFiled / filedHalfLifeDays);
+    	}
+    	return daysSinceFetch * changeRate * filedWeight;
+    }
+
+    private static long toMillis(int yyyymmdd) {
+    	return new GregorianCalendar(yyyymmdd / 10000, (yyyymmdd / 100) % 100 - 1, yyyymmdd % 100).getTimeInMillis();
+    }
+}
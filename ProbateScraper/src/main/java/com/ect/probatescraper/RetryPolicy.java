@@ -0,0 +1,46 @@
+package com.ect.probatescraper;
+
+import java.util.Random;
+
+/**
+ * How often and how far apart a failed request is tried again: exponential backoff with full
+ * jitter, every delay is drawn at random between zero and base * 2^retry (capped), so workers that
+ * failed together do not come back together.
+ *
+ */
+public class RetryPolicy {
+
+	private final int maxAttempts;
+	private final long baseDelayMillis;
+	private final long maxDelayMillis;
+	private final Random random = new Random();
+
+	/**
+	 * @param maxAttempts
+	 *            attempts in total, the first one included
+	 */
+	public RetryPolicy(int maxAttempts, long baseDelayMillis, long maxDelayMillis) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+		this.baseDelayMillis = Math.max(1, baseDelayMillis);
+		this.maxDelayMillis = Math.max(this.baseDelayMillis, maxDelayMillis);
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * @param retry
+	 *            0 for the first retry
+	 * @return milliseconds to wait before the retry
+	 */
+	public long delayMillis(int retry) {
+		long ceiling = maxDelayMillis;
+		if (retry < 62 && (baseDelayMillis << retry) >> retry == baseDelayMillis) {
+			ceiling = Math.min(maxDelayMillis, baseDelayMillis << retry);
+		}
+		synchronized (random) {
+			return (long) (random.nextDouble() * (ceiling + 1));
+		}
+	}
+}
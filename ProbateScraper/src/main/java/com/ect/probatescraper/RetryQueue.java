@@ -0,0 +1,193 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Requests that still failed after every retry, kept until they succeed. The collector drains the
+ * queue at the end of the run and whatever is still failing then is picked up by the next run.
+ * <p>
+ * Additions and removals are appended to a {@link TabSeparatedJournal} in the data directory, the last
+ * line for a url wins when the journal is read back. The journal is rewritten with only the pending
+ * requests when the queue is opened.
+ *
+ */
+public class RetryQueue {
+    private static final Logger LOG = Logger.getLogger(RetryQueue.class);
+    public static final String QUEUE_FILENAME = "RetryQueue.idx";
+    private static final String ADDED = "+";
+    private static final String REMOVED = "-";
+
+    /**
+     * What the failed request was after, which decides how it is retried.
+     */
+    public enum Kind {
+    	/** the first list page of a district, retrying walks the whole district */
+    	DISTRICT,
+    	/** a further list page, retrying fetches it and the cases on it */
+    	LIST,
+    	/** the details page of a single case */
+    	DETAILS
+    }
+
+    private final File journalFile;
+    private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+    private TabSeparatedJournal journal;
+
+    /**
+     * A single failed request.
+     */
+    public static class Entry {
+    	private final Kind kind;
+    	private final String link;
+    	private final String pageKey;
+    	private final String subject;
+    	private final int failures;
+    	private final long firstFailedMillis;
+
+    	/**
+    	 * @param subject
+    	 *            district of a list page, case number of a details page
+    	 */
+    	public Entry(Kind kind, String link, String pageKey, String subject, int failures, long firstFailedMillis) {
+    		this.kind = kind;
+    		this.link = link;
+    		this.pageKey = pageKey;
+    		this.subject = subject;
+    		this.failures = failures;
+    		this.firstFailedMillis = firstFailedMillis;
+    	}
+
+		public Kind getKind() {
+			return kind;
+		}
+
+		public String getLink() {
+			return link;
+		}
+
+		public String getPageKey() {
+			return pageKey;
+		}
+
+		public String getSubject() {
+			return subject;
+		}
+
+		/**
+		 * @return how many times the request has been given up on, retries included
+		 */
+		public int getFailures() {
+			return failures;
+		}
+
+		public long getFirstFailedMillis() {
+			return firstFailedMillis;
+		}
+    }
+
+    private RetryQueue(File journalFile) {
+    	this.journalFile = journalFile;
+    }
+
+    /**
+     * Reads back an existing journal (if any), compacts it and opens it for appending.
+     */
+    public static RetryQueue open(File journalFile) throws IOException {
+    	RetryQueue queue = new RetryQueue(journalFile);
+    	queue.load();
+    	TabSeparatedJournal compacted = TabSeparatedJournal.rewrite(journalFile);
+    	try {
+    		for (Entry entry : queue.entries.values()) {
+    			append(compacted, entry);
+    		}
+    		compacted.commit();
+    	} finally {
+    		compacted.close();
+    	}
+    	queue.journal = TabSeparatedJournal.append(journalFile);
+    	LOG.info("RetryQueue..." + queue.entries.size() + " failed requests pending from " + journalFile.getAbsolutePath());
+    	return queue;
+    }
+
+    private void load() throws IOException {
+    	TabSeparatedJournal.read(journalFile, new TabSeparatedJournal.RecordHandler() {
+    		public void record(String[] fields, String line) {
+    			if (fields.length == 2 && fields[0].equals(REMOVED)) {
+    				entries.remove(fields[1]);
+    				return;
+    			}
+    			if (fields.length < 7 || !fields[0].equals(ADDED)) {
+    				LOG.warn("RetryQueue...Skipping damaged entry: " + line);
+    				return;
+    			}
+    			try {
+    				Entry entry = new Entry(Kind.valueOf(fields[1]), fields[2], fields[3], fields[4], Integer.parseInt(fields[5]),
+    						Long.parseLong(fields[6]));
+    				//re-adding moves the request to the back of the queue
+    				entries.remove(entry.getLink());
+    				entries.put(entry.getLink(), entry);
+    			} catch (IllegalArgumentException e) {
+    				LOG.warn("RetryQueue...Skipping damaged entry: " + line);
+    			}
+    		}
+    	});
+    }
+
+    /**
+     * Queues a failed request, or counts one more failure when the url is already queued.
+     */
+    public synchronized void add(Kind kind, String link, String pageKey, String subject) {
+    	Entry previous = entries.remove(link);
+    	Entry entry = new Entry(kind, link, pageKey, subject, (previous == null ? 1 : previous.getFailures() + 1),
+    			(previous == null ? System.currentTimeMillis() : previous.getFirstFailedMillis()));
+    	entries.put(link, entry);
+    	if (journal != null) {
+    		append(journal, entry);
+    		journal.flush();
+    	}
+    }
+
+    /**
+     * Takes a request off the queue once it went through.
+     */
+    public synchronized void remove(String link) {
+    	if (entries.remove(link) != null && journal != null) {
+    		journal.write(REMOVED, link);
+    		journal.flush();
+    	}
+    }
+
+    public synchronized boolean contains(String link) {
+    	return entries.containsKey(link);
+    }
+
+    /**
+     * @return the pending requests, oldest first
+     */
+    public synchronized List<Entry> pending() {
+    	return new ArrayList<Entry>(entries.values());
+    }
+
+    public synchronized int size() {
+    	return entries.size();
+    }
+
+    public synchronized void close() {
+    	if (journal != null) {
+    		journal.close();
+    		journal = null;
+    	}
+    }
+
+    private static void append(TabSeparatedJournal out, Entry entry) {
+    	out.write(ADDED, entry.getKind().name(), entry.getLink(), entry.getPageKey(), entry.getSubject(), 
+    			Integer.valueOf(entry.getFailures()), Long.valueOf(entry.getFirstFailedMillis()));
+    }
+}
@@ -0,0 +1,353 @@
+package com.ect.probatescraper;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Keeps pages gzip compressed inside a few large, append only segment files instead of one file
+ * per page. Every page is compressed on its own so it can be read back without touching its
+ * neighbours; an index file records key, fetch time, segment, offset and length for each copy
+ * and is read into memory when the store is opened.
+ * <p>
+ * The page bytes are always written and forced to disk before their index record, which is forced
+ * in turn before store returns, so a crash can at worst leave unreferenced bytes at the end of a
+ * segment, never an index record pointing at nothing. Only the collector writes; the parser opens
+ * the store read only and never touches the files, it may share them with a collector still running.
+ *
+ */
+public class SegmentPageStore implements PageStore {
+    private static final Logger LOG = Logger.getLogger(SegmentPageStore.class);
+    public static final String INDEX_FILENAME = "pages.idx";
+    static final String SEGMENT_FILENAME_PREFIX = "pages-";
+    static final String SEGMENT_FILENAME_SUFFIX = ".seg";
+    static final String LOCATION_SEPARATOR = ":";
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final NavigableMap<String, List<StoredPage>> pagesByKey = new TreeMap<String, List<StoredPage>>();
+    private final Map<String, Entry> entriesByLocation = new HashMap<String, Entry>();
+    private final Map<Integer, FileChannel> readChannels = new HashMap<Integer, FileChannel>();
+    private FileOutputStream indexOut;
+    private DataOutputStream index;
+    private int currentSegment;
+    private FileChannel writeChannel;
+
+    private static class Entry {
+    	private final int segment;
+    	private final long offset;
+    	private final int length;
+
+    	Entry(int segment, long offset, int length) {
+    		this.segment = segment;
+    		this.offset = offset;
+    		this.length = length;
+    	}
+    }
+
+    private SegmentPageStore(File directory, long maxSegmentBytes) {
+    	this.directory = directory;
+    	this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    /**
+     * Reads the index of an existing store (or creates an empty one) in the directory, to add pages
+     * to it. A partial record left at the end of the index by a crash is cut off; there must be no
+     * other writer.
+     */
+    public static SegmentPageStore open(File directory, long maxSegmentBytes) throws IOException {
+    	if (!directory.isDirectory() && !directory.mkdirs()) {
+    		throw new IOException("Unable to create " + directory.getAbsolutePath());
+    	}
+    	SegmentPageStore store = new SegmentPageStore(directory, maxSegmentBytes);
+    	File indexFile = new File(directory, INDEX_FILENAME);
+    	if (indexFile.exists()) {
+    		long validBytes = store.loadIndex(indexFile);
+    		if (indexFile.length() != validBytes) {
+    			LOG.warn("SegmentPageStore...Dropping partial record at the end of " + indexFile.getAbsolutePath());
+    			RandomAccessFile raf = new RandomAccessFile(indexFile, "rw");
+    			try {
+    				raf.setLength(validBytes);
+    			} finally {
+    				raf.close();
+    			}
+    		}
+    	}
+    	store.indexOut = new FileOutputStream(indexFile, true);
+    	store.index = new DataOutputStream(new BufferedOutputStream(store.indexOut));
+    	store.logOpened();
+    	return store;
+    }
+
+    /**
+     * Reads the index of the store in the directory to read its pages, nothing is ever written. A
+     * record the collector is still appending is left alone and simply not read.
+     */
+    public static SegmentPageStore openReadOnly(File directory) throws IOException {
+    	SegmentPageStore store = new SegmentPageStore(directory, Long.MAX_VALUE);
+    	File indexFile = new File(directory, INDEX_FILENAME);
+    	if (indexFile.exists()) {
+    		store.loadIndex(indexFile);
+    	}
+    	store.logOpened();
+    	return store;
+    }
+
+    private void logOpened() {
+    	LOG.info("SegmentPageStore..." + entriesByLocation.size() + " pages in " + (currentSegment + 1)
+    			+ " segments at " + directory.getAbsolutePath());
+    }
+
+    /**
+     * @return the length of the complete records read
+     */
+    private long loadIndex(File indexFile) throws IOException {
+    	DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+    	long validBytes = 0;
+    	try {
+    		while (true) {
+    			String key = in.readUTF();
+    			long fetchMillis = in.readLong();
+    			int segment = in.readInt();
+    			long offset = in.readLong();
+    			int length = in.readInt();
+    			add(key, fetchMillis, new Entry(segment, offset, length));
+    			currentSegment = Math.max(currentSegment, segment);
+    			validBytes += 2 + utfLength(key) + 8 + 4 + 8 + 4;
+    		}
+    	} catch (EOFException e) {
+    		//end of the index
+    	} finally {
+    		in.close();
+    	}
+    	return validBytes;
+    }
+
+    public StoredPage store(String key, long fetchMillis, File partFile) throws IOException {
+    	if (index == null) {
+    		throw new IOException("Store at " + directory.getAbsolutePath() + " is open read only");
+    	}
+    	//compressed before taking the lock, the crawl workers only queue up for the append itself
+    	ByteArrayOutputStream compressed = new ByteArrayOutputStream((int) Math.min(partFile.length() / 4 + 64, Integer.MAX_VALUE));
+    	GZIPOutputStream gzip = new GZIPOutputStream(compressed, 8 * 1024);
+    	InputStream in = new FileInputStream(partFile);
+    	try {
+    		copy(in, gzip);
+    	} finally {
+    		in.close();
+    	}
+    	gzip.close();
+
+    	StoredPage page = append(key, fetchMillis, ByteBuffer.wrap(compressed.toByteArray()));
+    	partFile.delete();
+    	return page;
+    }
+
+    private synchronized StoredPage append(String key, long fetchMillis, ByteBuffer compressed) throws IOException {
+    	FileChannel channel = writeChannel();
+    	long offset = channel.size();
+    	int length = compressed.remaining();
+    	try {
+    		while (compressed.hasRemaining()) {
+    			channel.write(compressed, offset + compressed.position());
+    		}
+    		channel.force(false);
+    	} catch (IOException e) {
+    		//leave no half written page behind
+    		channel.truncate(offset);
+    		throw e;
+    	}
+
+    	index.writeUTF(key);
+    	index.writeLong(fetchMillis);
+    	index.writeInt(currentSegment);
+    	index.writeLong(offset);
+    	index.writeInt(length);
+    	index.flush();
+    	indexOut.getChannel().force(false);
+
+    	return add(key, fetchMillis, new Entry(currentSegment, offset, length));
+    }
+
+    public synchronized StoredPage latest(String key) {
+    	List<StoredPage> copies = pagesByKey.get(key);
+    	return copies == null ? null : copies.get(copies.size() - 1);
+    }
+
+    public synchronized List<StoredPage> list(String keyPrefix) {
+    	List<StoredPage> pages = new ArrayList<StoredPage>();
+    	for (List<StoredPage> copies : pagesByKey.tailMap(keyPrefix, true).values()) {
+    		if (!copies.get(0).getKey().startsWith(keyPrefix)) {
+    			break;
+    		}
+    		pages.addAll(copies);
+    	}
+    	return pages;
+    }
+
+    public synchronized StoredPage resolve(String location) {
+    	if (!entriesByLocation.containsKey(location)) {
+    		return null;
+    	}
+    	String[] fields = location.split(LOCATION_SEPARATOR, 4);
+    	return new StoredPage(this, fields[3], Long.parseLong(fields[2]), location);
+    }
+
+    public InputStream open(StoredPage page) throws IOException {
+    	Entry entry;
+    	FileChannel channel;
+    	synchronized (this) {
+    		entry = entriesByLocation.get(page.getLocation());
+    		if (entry == null) {
+    			throw new IOException("No such page " + page);
+    		}
+    		channel = readChannel(entry.segment);
+    	}
+
+    	//positional reads, several threads may read the same segment at once
+    	ByteBuffer compressed = ByteBuffer.allocate(entry.length);
+    	long position = entry.offset;
+    	while (compressed.hasRemaining()) {
+    		if (channel.read(compressed, position + compressed.position()) < 0) {
+    			throw new EOFException("Segment " + entry.segment + " ends inside " + page);
+    		}
+    	}
+    	return new GZIPInputStream(new ByteArrayInputStream(compressed.array()), 8 * 1024);
+    }
+
+    public File createPartFile(String key) throws IOException {
+    	return File.createTempFile(key + "_", CaseLookupPageCollector.PART_FILENAME_SUFFIX, directory);
+    }
+
+    public synchronized void close() throws IOException {
+    	if (index != null) {
+    		index.close();
+    		index = null;
+    		indexOut = null;
+    	}
+    	if (writeChannel != null) {
+    		writeChannel.close();
+    		writeChannel = null;
+    	}
+    	for (FileChannel channel : readChannels.values()) {
+    		channel.close();
+    	}
+    	readChannels.clear();
+    }
+
+    private StoredPage add(String key, long fetchMillis, Entry entry) {
+    	String location = entry.segment + LOCATION_SEPARATOR + entry.offset + LOCATION_SEPARATOR + fetchMillis + LOCATION_SEPARATOR + key;
+    	StoredPage page = new StoredPage(this, key, fetchMillis, location);
+    	List<StoredPage> copies = pagesByKey.get(key);
+    	if (copies == null) {
+    		copies = new ArrayList<StoredPage>(2);
+    		pagesByKey.put(key, copies);
+    	}
+    	int position = copies.size();
+    	while (position > 0 && copies.get(position - 1).getFetchMillis() > fetchMillis) {
+    		position--;
+    	}
+    	copies.add(position, page);
+    	entriesByLocation.put(location, entry);
+    	return page;
+    }
+
+    private FileChannel writeChannel() throws IOException {
+    	if (writeChannel != null && writeChannel.size() >= maxSegmentBytes) {
+    		writeChannel.close();
+    		writeChannel = null;
+    		currentSegment++;
+    	}
+    	if (writeChannel == null) {
+    		File segmentFile = segmentFile(currentSegment);
+    		if (segmentFile.length() >= maxSegmentBytes) {
+    			currentSegment++;
+    			segmentFile = segmentFile(currentSegment);
+    		}
+    		writeChannel = new RandomAccessFile(segmentFile, "rw").getChannel();
+    	}
+    	return writeChannel;
+    }
+
+    private FileChannel readChannel(int segment) throws IOException {
+    	FileChannel channel = readChannels.get(Integer.valueOf(segment));
+    	if (channel == null) {
+    		channel = new RandomAccessFile(segmentFile(segment), "r").getChannel();
+    		readChannels.put(Integer.valueOf(segment), channel);
+    	}
+    	return channel;
+    }
+
+    private File segmentFile(int segment) {
+    	return new File(directory, String.format("%s%05d%s", SEGMENT_FILENAME_PREFIX, segment, SEGMENT_FILENAME_SUFFIX));
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+    	byte[] buffer = new byte[8 * 1024];
+    	int read;
+    	while ((read = in.read(buffer)) != -1) {
+    		out.write(buffer, 0, read);
+    	}
+    }
+
+    private static int utfLength(String value) {
+    	int length = 0;
+    	for (int i = 0; i < value.length(); i++) {
+    		char c = value.charAt(i);
+    		length += (c >= 0x0001 && c <= 0x007F) ? 1 : (c > 0x07FF ? 3 : 2);
+    	}
+    	return length;
+    }
+
+    /**
+     * Moves the html pages of a data directory into a segment store, e.g.
+     * "java com.ect.probatescraper.SegmentPageStore \Projects\ProbateScraperData". The html files
+     * are left in place, remove them once the store has been checked.
+     */
+    public static void main(String[] args) throws IOException {
+    	File dataDirectory = new File(args.length > 0 ? args[0] : PageParserProbateList.DATA_DIR);
+    	SegmentPageStore store = open(new File(dataDirectory, PageParserProbateList.SEGMENT_DIR), PageParserProbateList.segmentBytes);
+    	try {
+    		int count = 0;
+    		for (StoredPage page : new FilePageStore(dataDirectory, null).list("")) {
+    			File copy = store.createPartFile(page.getKey());
+    			InputStream in = page.open();
+    			OutputStream out = new FileOutputStream(copy);
+    			try {
+    				copy(in, out);
+    			} finally {
+    				in.close();
+    				out.close();
+    			}
+    			store.store(page.getKey(), page.getFetchMillis(), copy);
+    			count++;
+    		}
+    		LOG.info("SegmentPageStore..." + count + " pages imported");
+    	} finally {
+    		store.close();
+    	}
+    }
+}
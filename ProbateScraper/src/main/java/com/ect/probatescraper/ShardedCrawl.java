@@ -0,0 +1,175 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs this collector's share of a crawl split over several collectors, in place of the
+ * {@link CrawlEngine}. Every district starts out as a unit of its first list page; the worker that
+ * collects it adds a unit for every pagesPerUnit of the remaining list pages, with their links, for
+ * any collector to pick up. Each worker claims units from the {@link LeaseCoordinator} until every
+ * unit published is done, so adding collectors (each with its own address and request rate) adds
+ * throughput, and the units of a collector that dies go to the others once their leases run out.
+ *
+ */
+public class ShardedCrawl {
+    private static final Logger LOG = Logger.getLogger(ShardedCrawl.class);
+
+    private final LeaseCoordinator coordinator;
+    private final List<String> districts;
+    private final int workers;
+    private final PolitenessScheduler scheduler;
+    private final int pagesPerUnit;
+    private final long pollMillis;
+
+    public ShardedCrawl(LeaseCoordinator coordinator, Collection<String> districts, int workers, PolitenessScheduler scheduler,
+    		int pagesPerUnit, long pollMillis) {
+    	this.coordinator = coordinator;
+    	this.districts = new ArrayList<String>(districts);
+    	this.workers = Math.max(1, workers);
+    	this.scheduler = scheduler;
+    	this.pagesPerUnit = Math.max(1, pagesPerUnit);
+    	this.pollMillis = pollMillis;
+    }
+
+    /**
+     * Publishes the districts (every collector does, the first one wins) and works on units until
+     * all of them are done.
+     *
+     * @return true when every unit this collector worked on was collected without failure
+     */
+    public boolean run() {
+    	try {
+    		for (String district : districts) {
+    			Map<Integer, String> pageLinks = new TreeMap<Integer, String>();
+    			pageLinks.put(Integer.valueOf(1), String.format(CaseLookupPageCollector.settings.getLookupUrl(), district));
+    			coordinator.publish(new LeaseCoordinator.WorkUnit(district, 1, 1, pageLinks));
+    		}
+		} catch (IOException e) {
+			LOG.error("ShardedCrawl...Failed to publish the districts", e);
+			return false;
+		}
+        LOG.info("ShardedCrawl..." + coordinator.getWorkerId() + " crawling " + districts.size() + " districts on " + workers + " workers");
+        coordinator.startHeartbeat();
+
+    	ExecutorService pool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+    		private final AtomicInteger count = new AtomicInteger();
+			public Thread newThread(Runnable r) {
+				return new Thread(r, "shard-worker-" + count.incrementAndGet());
+			}
+		});
+    	List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+    	for (int worker = 0; worker < workers; worker++) {
+    		results.add(pool.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					return Boolean.valueOf(work());
+				}
+			}));
+    	}
+    	pool.shutdown();
+
+    	boolean success = true;
+    	try {
+    		for (Future<Boolean> result : results) {
+    			try {
+    				success &= result.get().booleanValue();
+    			} catch (ExecutionException e) {
+    				LOG.error("ShardedCrawl...Worker failed", e.getCause());
+    				success = false;
+    			}
+    		}
+    	} catch (InterruptedException e) {
+    		LOG.error("ShardedCrawl...Interrupted waiting for the workers");
+    		pool.shutdownNow();
+    		Thread.currentThread().interrupt();
+    		success = false;
+    	} finally {
+    		coordinator.close();
+    	}
+
+    	int[] progress = coordinator.progress();
+        LOG.info("ShardedCrawl...Complete, " + progress[1] + " of " + progress[0] + " units done, " + progress[2] + " given up");
+    	return success;
+    }
+
+    private boolean work() throws IOException, InterruptedException {
+    	boolean success = true;
+    	while (!Thread.currentThread().isInterrupted()) {
+    		LeaseCoordinator.WorkUnit unit = coordinator.claim();
+    		if (unit == null) {
+    			//the rest is leased to others, whatever they leave behind when they die comes back here
+    			if (coordinator.isFinished()) {
+    				break;
+    			}
+    			Thread.sleep(pollMillis);
+    			continue;
+    		}
+    		if (collect(unit)) {
+    			coordinator.complete(unit);
+    		}
+    		else {
+    			//handed back for another try, the failed pages are also in this collector's retry queue
+    			LOG.error("ShardedCrawl...Unit " + unit + " did not complete, failed pages queued for retry");
+    			success = false;
+    			coordinator.fail(unit);
+    		}
+    	}
+    	return success;
+    }
+
+    private boolean collect(LeaseCoordinator.WorkUnit unit) throws IOException, InterruptedException {
+    	String district = unit.getDistrict();
+    	if (!unit.isFirstPage()) {
+    		return CaseLookupPageCollector.collectListPages(district, unit.getPageLinks(), unit.getFromPage(), unit.getToPage(), scheduler);
+    	}
+
+    	Map<Integer, String> pageLinks = CaseLookupPageCollector.collectFirstListPage(district, scheduler);
+    	if (pageLinks == null) {
+    		return false;
+    	}
+    	//page 1 is this unit's, a range starting there would read as another district unit
+    	for (LeaseCoordinator.WorkUnit range : split(district, pageLinks, Math.max(2, CaseLookupPageCollector.settings.getStartAtPage()),
+    			Math.min(CaseLookupPageCollector.settings.getEndAtPage(), 999), pagesPerUnit)) {
+    		coordinator.publish(range);
+    	}
+    	return true;
+    }
+
+    /**
+     * Splits the list pages fromPage through toPage that have a link into units of pagesPerUnit pages.
+     */
+    static List<LeaseCoordinator.WorkUnit> split(String district, Map<Integer, String> pageLinks, int fromPage, int toPage, int pagesPerUnit) {
+    	List<LeaseCoordinator.WorkUnit> units = new ArrayList<LeaseCoordinator.WorkUnit>();
+    	Map<Integer, String> unitLinks = new TreeMap<Integer, String>();
+    	int unitFrom = fromPage;
+    	for (int pageNumber = fromPage; pageNumber <= toPage; pageNumber++) {
+    		String pageLink = pageLinks.get(Integer.valueOf(pageNumber));
+    		if (pageLink == null) {
+    			break;
+    		}
+    		unitLinks.put(Integer.valueOf(pageNumber), pageLink);
+    		if (unitLinks.size() == pagesPerUnit) {
+    			units.add(new LeaseCoordinator.WorkUnit(district, unitFrom, pageNumber, unitLinks));
+    			unitLinks.clear();
+    			unitFrom = pageNumber + 1;
+    		}
+    	}
+    	if (!unitLinks.isEmpty()) {
+    		units.add(new LeaseCoordinator.WorkUnit(district, unitFrom, unitFrom + unitLinks.size() - 1, unitLinks));
+    	}
+    	return units;
+    }
+}
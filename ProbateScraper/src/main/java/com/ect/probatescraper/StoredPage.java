@@ -0,0 +1,49 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A single fetched page held by a {@link PageStore}. The key names the page (for example
+ * ProbateCaseDetails_PD05-14-00123 or ProbateCaseList_PD05_01), the location is the store's own 
+ * opaque address for this copy and can be handed back to {@link PageStore#resolve(String)} later.
+ *
+ */
+public class StoredPage {
+
+	private final PageStore store;
+	private final String key;
+	private final long fetchMillis;
+	private final String location;
+
+	public StoredPage(PageStore store, String key, long fetchMillis, String location) {
+		this.store = store;
+		this.key = key;
+		this.fetchMillis = fetchMillis;
+		this.location = location;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public long getFetchMillis() {
+		return fetchMillis;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	/**
+	 * @return the page's bytes exactly as they were fetched
+	 */
+	public InputStream open() throws IOException {
+		return store.open(this);
+	}
+
+	@Override
+	public String toString() {
+		return key + " (" + location + ")";
+	}
+}
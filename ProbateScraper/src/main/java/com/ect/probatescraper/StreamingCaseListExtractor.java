@@ -0,0 +1,722 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.MalformedURLException;
+import java.net.URL;
+
+import org.jsoup.nodes.Entities;
+
+/**
+ * Pulls the case list rows, column headers and paging links out of a case list page by tokenizing
+ * the html as it is read, without building a document tree. Only the elements of the list layout are
+ * tracked on a small stack and only the text inside the interesting columns is kept.
+ * <p>
+ * It understands exactly what the jsoup selectors in {@link PageParserProbateList} look for:
+ * <ul>
+ * <li>section#search-results-container</li>
+ * <li>header &gt; span.column-header</li>
+ * <li>.data-row with its .column-case-number (and the first a inside it), .column-last-name,
+ * .column-first-name, .column-middle-initial, .column-casetype and .column-district</li>
+ * <li>footer &gt; span a.paging-link, skipping .current-page</li>
+ * </ul>
+ * The jsoup extraction stays the reference, "-Dprobate.parse.extractor=verify" runs both and reports
+ * any page on which they disagree. An instance is not thread safe, use one per thread.
+ *
+ */
+public class StreamingCaseListExtractor {
+
+	static final String[] COLUMN_CLASSES = {"column-case-number", "column-last-name", "column-first-name",
+		"column-middle-initial", "column-casetype", "column-district"};
+	private static final int COLUMN_CASE_NUMBER = 0;
+
+	//what an open element means to us
+	private static final int RESULTS = 0;
+	private static final int HEADER = 1;
+	private static final int FOOTER = 2;
+	private static final int FOOTER_SPAN = 3;
+	private static final int HEADER_CELL = 4;
+	private static final int DATA_ROW = 5;
+	private static final int PAGING_LINK = 6;
+	private static final int FIRST_COLUMN = 7;
+	private static final int ROLE_COUNT = FIRST_COLUMN + COLUMN_CLASSES.length;
+
+	//tokenizer states
+	private static final int DATA = 0;
+	private static final int TAG_OPEN = 1;
+	private static final int TAG_NAME = 2;
+	private static final int END_TAG_NAME = 3;
+	private static final int BEFORE_ATTR_NAME = 4;
+	private static final int ATTR_NAME = 5;
+	private static final int AFTER_ATTR_NAME = 6;
+	private static final int BEFORE_ATTR_VALUE = 7;
+	private static final int ATTR_VALUE_QUOTED = 8;
+	private static final int ATTR_VALUE_UNQUOTED = 9;
+	private static final int MARKUP_DECLARATION = 10;
+	private static final int COMMENT = 11;
+	private static final int BOGUS_COMMENT = 12;
+	private static final int RAW_TEXT = 13;
+	private static final int END_TAG_TRAILER = 14;
+
+	private static final String[] VOID_ELEMENTS = {"area", "base", "br", "col", "embed", "hr", "img", "input",
+		"keygen", "link", "meta", "param", "source", "track", "wbr"};
+
+	private static final String[] KNOWN_NAMES = {"span", "a", "div", "article", "br", "section", "header", "footer",
+		"p", "td", "tr", "li", "ul", "table", "tbody", "script", "style", "img", "input", "meta", "link"};
+
+	private final char[] buffer = new char[8 * 1024];
+	private final StringBuilder tagName = new StringBuilder(16);
+	private final StringBuilder attrName = new StringBuilder(16);
+	private final StringBuilder attrValue = new StringBuilder(128);
+	private final StringBuilder rawText = new StringBuilder(256);
+	private final StringBuilder[] columns = new StringBuilder[COLUMN_CLASSES.length];
+	private final StringBuilder headerText = new StringBuilder(32);
+	private final StringBuilder pagingText = new StringBuilder(8);
+
+	private String[] stackNames = new String[64];
+	private int[] stackRoles = new int[64];
+	private int depth;
+	private final int[] roleCounts = new int[ROLE_COUNT];
+
+	private int state;
+	private char quote;
+	private int dashes;
+	private int rawMatched;
+	private String rawEndTag;
+	private String idAttr;
+	private String classAttr;
+	private String hrefAttr;
+	private boolean selfClosing;
+
+	private URL base;
+	private CaseListPage page;
+	private boolean sawResults;
+	private String rowLink;
+	private boolean pagingCurrent;
+	private String pagingHref;
+
+	public StreamingCaseListExtractor() {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = new StringBuilder(32);
+		}
+	}
+
+	/**
+	 * @return the page, or null when it has no search results section
+	 */
+	public CaseListPage extract(File input, String baseUri) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(input), "UTF-8");
+		try {
+			return extract(reader, baseUri);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return the page, or null when it has no search results section
+	 */
+	public CaseListPage extract(Reader reader, String baseUri) throws IOException {
+		reset(baseUri);
+		int read;
+		while ((read = reader.read(buffer)) != -1) {
+			for (int i = 0; i < read; i++) {
+				consume(buffer[i]);
+			}
+		}
+		flushText();
+		while (depth > 0) {
+			pop();
+		}
+		return sawResults ? page : null;
+	}
+
+	private void reset(String baseUri) {
+		try {
+			this.base = new URL(baseUri);
+		} catch (MalformedURLException e) {
+			this.base = null;
+		}
+		page = new CaseListPage();
+		sawResults = false;
+		state = DATA;
+		depth = 0;
+		for (int i = 0; i < ROLE_COUNT; i++) {
+			roleCounts[i] = 0;
+		}
+		rawText.setLength(0);
+	}
+
+	private void consume(char c) {
+		switch (state) {
+		case DATA:
+			if (c == '<') {
+				state = TAG_OPEN;
+			}
+			else if (isCapturing()) {
+				rawText.append(c);
+			}
+			break;
+		case TAG_OPEN:
+			if (isAsciiLetter(c)) {
+				flushText();
+				startTag();
+				tagName.append(Character.toLowerCase(c));
+				state = TAG_NAME;
+			}
+			else if (c == '/') {
+				flushText();
+				tagName.setLength(0);
+				state = END_TAG_NAME;
+			}
+			else if (c == '!') {
+				flushText();
+				dashes = 0;
+				state = MARKUP_DECLARATION;
+			}
+			else if (c == '?') {
+				flushText();
+				state = BOGUS_COMMENT;
+			}
+			else {
+				//a lone '<' is just text
+				if (isCapturing()) {
+					rawText.append('<');
+				}
+				state = DATA;
+				consume(c);
+			}
+			break;
+		case TAG_NAME:
+			if (isWhitespace(c)) {
+				state = BEFORE_ATTR_NAME;
+			}
+			else if (c == '/') {
+				selfClosing = true;
+				state = BEFORE_ATTR_NAME;
+			}
+			else if (c == '>') {
+				emitStartTag();
+			}
+			else {
+				tagName.append(Character.toLowerCase(c));
+			}
+			break;
+		case BEFORE_ATTR_NAME:
+			if (c == '>') {
+				emitStartTag();
+			}
+			else if (c == '/') {
+				selfClosing = true;
+			}
+			else if (!isWhitespace(c)) {
+				selfClosing = false;
+				attrName.setLength(0);
+				attrValue.setLength(0);
+				attrName.append(Character.toLowerCase(c));
+				state = ATTR_NAME;
+			}
+			break;
+		case ATTR_NAME:
+			if (c == '=') {
+				state = BEFORE_ATTR_VALUE;
+			}
+			else if (isWhitespace(c)) {
+				state = AFTER_ATTR_NAME;
+			}
+			else if (c == '>') {
+				commitAttribute();
+				emitStartTag();
+			}
+			else if (c == '/') {
+				commitAttribute();
+				selfClosing = true;
+				state = BEFORE_ATTR_NAME;
+			}
+			else {
+				attrName.append(Character.toLowerCase(c));
+			}
+			break;
+		case AFTER_ATTR_NAME:
+			if (c == '=') {
+				state = BEFORE_ATTR_VALUE;
+			}
+			else if (c == '>') {
+				commitAttribute();
+				emitStartTag();
+			}
+			else if (!isWhitespace(c)) {
+				commitAttribute();
+				state = BEFORE_ATTR_NAME;
+				consume(c);
+			}
+			break;
+		case BEFORE_ATTR_VALUE:
+			if (c == '"' || c == '\'') {
+				quote = c;
+				state = ATTR_VALUE_QUOTED;
+			}
+			else if (c == '>') {
+				commitAttribute();
+				emitStartTag();
+			}
+			else if (!isWhitespace(c)) {
+				attrValue.append(c);
+				state = ATTR_VALUE_UNQUOTED;
+			}
+			break;
+		case ATTR_VALUE_QUOTED:
+			if (c == quote) {
+				commitAttribute();
+				state = BEFORE_ATTR_NAME;
+			}
+			else {
+				attrValue.append(c);
+			}
+			break;
+		case ATTR_VALUE_UNQUOTED:
+			if (isWhitespace(c)) {
+				commitAttribute();
+				state = BEFORE_ATTR_NAME;
+			}
+			else if (c == '>') {
+				commitAttribute();
+				emitStartTag();
+			}
+			else {
+				attrValue.append(c);
+			}
+			break;
+		case END_TAG_NAME:
+			if (c == '>') {
+				emitEndTag();
+			}
+			else if (isWhitespace(c) || c == '/') {
+				state = END_TAG_TRAILER;
+			}
+			else {
+				tagName.append(Character.toLowerCase(c));
+			}
+			break;
+		case END_TAG_TRAILER:
+			if (c == '>') {
+				emitEndTag();
+			}
+			break;
+		case MARKUP_DECLARATION:
+			if (c == '-') {
+				if (++dashes == 2) {
+					dashes = 0;
+					state = COMMENT;
+				}
+			}
+			else {
+				state = (c == '>') ? DATA : BOGUS_COMMENT;
+			}
+			break;
+		case COMMENT:
+			if (c == '-') {
+				dashes++;
+			}
+			else if (c == '>' && dashes >= 2) {
+				state = DATA;
+			}
+			else {
+				dashes = 0;
+			}
+			break;
+		case BOGUS_COMMENT:
+			if (c == '>') {
+				state = DATA;
+			}
+			break;
+		case RAW_TEXT:
+			//script and style content is never markup, wait for the matching end tag
+			if (rawMatched < rawEndTag.length()) {
+				if (Character.toLowerCase(c) == rawEndTag.charAt(rawMatched)) {
+					rawMatched++;
+				}
+				else {
+					rawMatched = (c == '<') ? 1 : 0;
+				}
+			}
+			else if (c == '>' || isWhitespace(c) || c == '/') {
+				tagName.setLength(0);
+				tagName.append(rawEndTag, 2, rawEndTag.length());
+				state = (c == '>') ? DATA : END_TAG_TRAILER;
+				if (c == '>') {
+					emitEndTag();
+				}
+			}
+			else {
+				rawMatched = 0;
+			}
+			break;
+		}
+	}
+
+	private void startTag() {
+		tagName.setLength(0);
+		idAttr = null;
+		classAttr = null;
+		hrefAttr = null;
+		selfClosing = false;
+	}
+
+	private void commitAttribute() {
+		if (attrName.length() == 2 && attrName.charAt(0) == 'i' && attrName.charAt(1) == 'd') {
+			idAttr = decode(attrValue);
+		}
+		else if (equals(attrName, "class")) {
+			classAttr = attrValue.toString();
+		}
+		else if (equals(attrName, "href")) {
+			hrefAttr = decode(attrValue);
+		}
+		attrName.setLength(0);
+		attrValue.setLength(0);
+	}
+
+	private void emitStartTag() {
+		state = DATA;
+		String name = internName(tagName);
+		if (name == "br") {
+			if (isCapturing()) {
+				appendToTargets(" ", 0, 1);
+			}
+			return;
+		}
+		if (name == "script" || name == "style" || name == "textarea" || name == "title") {
+			rawEndTag = "</" + name;
+			rawMatched = 0;
+			state = RAW_TEXT;
+		}
+		if (selfClosing || isVoid(name)) {
+			return;
+		}
+
+		int roles = 0;
+		boolean inResults = roleCounts[RESULTS] > 0;
+		if (name == "section" && "search-results-container".equals(idAttr)) {
+			roles |= 1 << RESULTS;
+			sawResults = true;
+			inResults = true;
+		}
+		if (inResults) {
+			int parentRoles = depth > 0 ? stackRoles[depth - 1] : 0;
+			if (name == "header") {
+				roles |= 1 << HEADER;
+			}
+			else if (name == "footer") {
+				roles |= 1 << FOOTER;
+			}
+			else if (name == "span" && (parentRoles & (1 << HEADER)) != 0 && hasClass(classAttr, "column-header")) {
+				roles |= 1 << HEADER_CELL;
+				if (roleCounts[HEADER_CELL] == 0) {
+					headerText.setLength(0);
+				}
+			}
+			if (name == "span" && (parentRoles & (1 << FOOTER)) != 0) {
+				roles |= 1 << FOOTER_SPAN;
+			}
+			if (name == "a" && roleCounts[FOOTER_SPAN] > 0 && hasClass(classAttr, "paging-link") && roleCounts[PAGING_LINK] == 0) {
+				roles |= 1 << PAGING_LINK;
+				pagingText.setLength(0);
+				pagingCurrent = hasClass(classAttr, "current-page");
+				pagingHref = hrefAttr;
+			}
+			if (roleCounts[DATA_ROW] > 0) {
+				for (int column = 0; column < COLUMN_CLASSES.length; column++) {
+					if (hasClass(classAttr, COLUMN_CLASSES[column])) {
+						roles |= 1 << (FIRST_COLUMN + column);
+						if (columns[column].length() > 0) {
+							columns[column].append(' ');
+						}
+					}
+				}
+				if (name == "a" && rowLink == null && hrefAttr != null && roleCounts[FIRST_COLUMN + COLUMN_CASE_NUMBER] > 0) {
+					String link = absUrl(hrefAttr);
+					if (link.length() > 0) {
+						rowLink = link;
+					}
+				}
+			}
+			else if (hasClass(classAttr, "data-row")) {
+				roles |= 1 << DATA_ROW;
+				for (StringBuilder column : columns) {
+					column.setLength(0);
+				}
+				rowLink = null;
+			}
+		}
+		push(name, roles);
+	}
+
+	private void emitEndTag() {
+		state = DATA;
+		String name = internName(tagName);
+		for (int i = depth - 1; i >= 0; i--) {
+			if (stackNames[i] == name) {
+				while (depth > i) {
+					pop();
+				}
+				return;
+			}
+		}
+		//stray end tag, nothing open by that name
+	}
+
+	private void push(String name, int roles) {
+		if (depth == stackNames.length) {
+			String[] names = new String[depth * 2];
+			int[] rolesCopy = new int[depth * 2];
+			System.arraycopy(stackNames, 0, names, 0, depth);
+			System.arraycopy(stackRoles, 0, rolesCopy, 0, depth);
+			stackNames = names;
+			stackRoles = rolesCopy;
+		}
+		stackNames[depth] = name;
+		stackRoles[depth] = roles;
+		depth++;
+		for (int role = 0; roles != 0; role++, roles >>>= 1) {
+			if ((roles & 1) != 0) {
+				roleCounts[role]++;
+			}
+		}
+	}
+
+	private void pop() {
+		depth--;
+		int roles = stackRoles[depth];
+		for (int role = 0; roles != 0; role++, roles >>>= 1) {
+			if ((roles & 1) != 0) {
+				roleCounts[role]--;
+			}
+		}
+
+		roles = stackRoles[depth];
+		if ((roles & (1 << HEADER_CELL)) != 0 && roleCounts[HEADER_CELL] == 0) {
+			page.getHeaders().add(normalize(headerText));
+		}
+		if ((roles & (1 << PAGING_LINK)) != 0 && !pagingCurrent) {
+			Integer pageNo = Integer.valueOf(Integer.parseInt(normalize(pagingText)));
+			page.getPageLinks().put(pageNo, pagingHref == null ? "" : absUrl(pagingHref));
+		}
+		if ((roles & (1 << DATA_ROW)) != 0 && roleCounts[DATA_ROW] == 0) {
+			page.getRecords().add(new CaseListRecord(normalize(columns[0]), normalize(columns[1]), normalize(columns[2]),
+					normalize(columns[3]), normalize(columns[4]), normalize(columns[5]), rowLink == null ? "" : rowLink));
+		}
+	}
+
+	private boolean isCapturing() {
+		if (roleCounts[HEADER_CELL] > 0 || roleCounts[PAGING_LINK] > 0) {
+			return true;
+		}
+		if (roleCounts[DATA_ROW] > 0) {
+			for (int column = 0; column < COLUMN_CLASSES.length; column++) {
+				if (roleCounts[FIRST_COLUMN + column] > 0) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Decodes the text gathered since the last tag into every open capture.
+	 */
+	private void flushText() {
+		if (rawText.length() == 0) {
+			return;
+		}
+		if (rawText.indexOf("&") >= 0) {
+			String decoded = decode(rawText);
+			appendToTargets(decoded, 0, decoded.length());
+		}
+		else {
+			appendToTargets(rawText, 0, rawText.length());
+		}
+		rawText.setLength(0);
+	}
+
+	private void appendToTargets(CharSequence text, int start, int end) {
+		if (roleCounts[HEADER_CELL] > 0) {
+			headerText.append(text, start, end);
+		}
+		if (roleCounts[PAGING_LINK] > 0) {
+			pagingText.append(text, start, end);
+		}
+		if (roleCounts[DATA_ROW] > 0) {
+			for (int column = 0; column < COLUMN_CLASSES.length; column++) {
+				if (roleCounts[FIRST_COLUMN + column] > 0) {
+					columns[column].append(text, start, end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Same as jsoup's abs: prefix, resolve against the base uri (query only links keep the base path).
+	 */
+	private String absUrl(String relUrl) {
+		try {
+			if (base == null) {
+				return new URL(relUrl).toExternalForm();
+			}
+			if (relUrl.startsWith("?")) {
+				relUrl = base.getPath() + relUrl;
+			}
+			return new URL(base, relUrl).toExternalForm();
+		} catch (MalformedURLException e) {
+			return "";
+		}
+	}
+
+	/**
+	 * Collapses runs of whitespace to a single space and trims, as jsoup's text() does.
+	 */
+	static final String normalize(StringBuilder text) {
+		int length = text.length();
+		int write = 0;
+		boolean lastWasWhite = true;
+		for (int read = 0; read < length; read++) {
+			char c = text.charAt(read);
+			if (isWhitespace(c)) {
+				if (!lastWasWhite) {
+					text.setCharAt(write++, ' ');
+					lastWasWhite = true;
+				}
+			}
+			else {
+				text.setCharAt(write++, c);
+				lastWasWhite = false;
+			}
+		}
+		text.setLength(write);
+		return text.toString().trim();
+	}
+
+	/**
+	 * Resolves character references, unknown names are left as they are.
+	 */
+	static final String decode(CharSequence text) {
+		int amp = indexOf(text, '&', 0);
+		if (amp < 0) {
+			return text.toString();
+		}
+		StringBuilder decoded = new StringBuilder(text.length());
+		decoded.append(text, 0, amp);
+		int i = amp;
+		int length = text.length();
+		while (i < length) {
+			char c = text.charAt(i);
+			if (c != '&') {
+				decoded.append(c);
+				i++;
+				continue;
+			}
+			int semi = indexOf(text, ';', i + 1);
+			if (semi < 0 || semi - i > 32) {
+				decoded.append(c);
+				i++;
+				continue;
+			}
+			String reference = text.subSequence(i + 1, semi).toString();
+			if (reference.startsWith("#")) {
+				try {
+					int codePoint = (reference.length() > 1 && (reference.charAt(1) == 'x' || reference.charAt(1) == 'X'))
+						? Integer.parseInt(reference.substring(2), 16) : Integer.parseInt(reference.substring(1));
+					decoded.appendCodePoint(codePoint);
+					i = semi + 1;
+					continue;
+				} catch (IllegalArgumentException e) {
+					//not a number, leave it alone
+				}
+			}
+			else if (Entities.isNamedEntity(reference)) {
+				decoded.append(Entities.getCharacterByName(reference).charValue());
+				i = semi + 1;
+				continue;
+			}
+			decoded.append(c);
+			i++;
+		}
+		return decoded.toString();
+	}
+
+	private static int indexOf(CharSequence text, char c, int from) {
+		for (int i = from; i < text.length(); i++) {
+			if (text.charAt(i) == c) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	static final boolean hasClass(String classAttr, String className) {
+		if (classAttr == null) {
+			return false;
+		}
+		int length = classAttr.length();
+		int wanted = className.length();
+		int start = 0;
+		while (start < length) {
+			while (start < length && isWhitespace(classAttr.charAt(start))) {
+				start++;
+			}
+			int end = start;
+			while (end < length && !isWhitespace(classAttr.charAt(end))) {
+				end++;
+			}
+			if (end - start == wanted && classAttr.regionMatches(true, start, className, 0, wanted)) {
+				return true;
+			}
+			start = end;
+		}
+		return false;
+	}
+
+	/**
+	 * Tag names are compared by identity, the common ones are resolved without allocating.
+	 */
+	private static String internName(StringBuilder name) {
+		for (String knownName : KNOWN_NAMES) {
+			if (equals(name, knownName)) {
+				return knownName;
+			}
+		}
+		return name.toString().intern();
+	}
+
+	private static boolean isVoid(String name) {
+		for (String voidElement : VOID_ELEMENTS) {
+			if (voidElement == name) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean equals(StringBuilder builder, String value) {
+		if (builder.length() != value.length()) {
+			return false;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			if (builder.charAt(i) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isAsciiLetter(char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\f' || c == '\r';
+	}
+}
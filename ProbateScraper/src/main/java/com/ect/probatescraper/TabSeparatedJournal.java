@@ -0,0 +1,156 @@
+package com.ect.probatescraper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A UTF-8 text file of one record per line, fields separated by tabs, shared by the
+ * {@link HttpCache}, the {@link RetryQueue} and the {@link CrawlFrontier}. Tabs and line breaks in
+ * a field are written as spaces so a record always stays on its line.
+ * <p>
+ * A journal is either appended to, or rewritten whole: then it is written to a temporary file first
+ * and moved over the old one only once complete, so a crash leaves the old journal or the new one,
+ * never half of either. A last line without its line break was cut short by a crash and is dropped
+ * when the journal is read back.
+ *
+ */
+public class TabSeparatedJournal implements Closeable {
+    private static final Logger LOG = Logger.getLogger(TabSeparatedJournal.class);
+    public static final String FIELD_SEPARATOR = "\t";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Receives the records read back, in file order.
+     */
+    public interface RecordHandler {
+    	/**
+    	 * @param fields
+    	 *            the fields of the record, empty ones included
+    	 * @param line
+    	 *            the whole line, for logging a damaged record
+    	 */
+    	void record(String[] fields, String line);
+    }
+
+    private final File file;
+    private final File target;
+    private final PrintWriter out;
+
+    private TabSeparatedJournal(File file, File target, boolean append) throws IOException {
+    	this.file = file;
+    	this.target = target;
+    	this.out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, append), "UTF-8"));
+    }
+
+    /**
+     * Opens the journal for appending, creating it when it does not exist.
+     */
+    public static TabSeparatedJournal append(File file) throws IOException {
+    	return new TabSeparatedJournal(file, null, true);
+    }
+
+    /**
+     * Starts a new copy of the journal, which replaces the old one on {@link #commit()}.
+     */
+    public static TabSeparatedJournal rewrite(File file) throws IOException {
+    	return new TabSeparatedJournal(new File(file.getPath() + TEMP_SUFFIX), file, false);
+    }
+
+    /**
+     * Reads back every complete record of the journal, if it exists.
+     *
+     * @return the number of records read
+     */
+    public static int read(File file, RecordHandler handler) throws IOException {
+    	if (!file.exists()) {
+    		return 0;
+    	}
+    	int records = 0;
+    	boolean torn = !endsWithNewline(file);
+    	BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    	try {
+    		String line = reader.readLine();
+    		while (line != null) {
+    			String next = reader.readLine();
+    			if (next == null && torn) {
+    				//cut short by a crash, even when it happens to parse
+    				LOG.warn("TabSeparatedJournal...Dropping unterminated record in " + file.getName() + ": " + line);
+    				break;
+    			}
+    			records++;
+    			handler.record(line.split(FIELD_SEPARATOR, -1), line);
+    			line = next;
+    		}
+    	} finally {
+    		reader.close();
+    	}
+    	return records;
+    }
+
+    /**
+     * Writes one record, null fields are written empty.
+     */
+    public void write(Object... fields) {
+    	for (int i = 0; i < fields.length; i++) {
+    		if (i > 0) {
+    			out.print(FIELD_SEPARATOR);
+    		}
+    		out.print(clean(fields[i] == null ? null : fields[i].toString()));
+    	}
+    	out.println();
+    }
+
+    public void flush() {
+    	out.flush();
+    }
+
+    /**
+     * Closes the new copy and moves it over the journal.
+     */
+    public void commit() throws IOException {
+    	out.close();
+    	if (out.checkError()) {
+    		throw new IOException("Failed to write " + file.getAbsolutePath());
+    	}
+    	Files.move(file.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Closes the journal; a new copy that was not committed is thrown away.
+     */
+    public void close() {
+    	out.close();
+    	if (target != null) {
+    		file.delete();
+    	}
+    }
+
+    static String clean(String value) {
+    	return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+    	RandomAccessFile in = new RandomAccessFile(file, "r");
+    	try {
+    		if (in.length() == 0) {
+    			return true;
+    		}
+    		in.seek(in.length() - 1);
+    		return in.read() == '\n';
+    	} finally {
+    		in.close();
+    	}
+    }
+}
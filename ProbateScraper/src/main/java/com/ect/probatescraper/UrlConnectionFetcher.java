@@ -0,0 +1,53 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@link PageFetcher} on the JDK's URLConnection, HTTP/1.1 only. Connections are kept alive by the
+ * JDK's own pool as long as every body is read or closed. Also serves file: links, which the tests
+ * use.
+ *
+ */
+public class UrlConnectionFetcher implements PageFetcher {
+
+	private final int connectTimeoutMillis;
+	private final int readTimeoutMillis;
+
+	public UrlConnectionFetcher(int connectTimeoutMillis, int readTimeoutMillis) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+	}
+
+	public FetchResponse fetch(String link, Map<String, String> requestHeaders) throws IOException {
+		long sendRequest = System.nanoTime();
+		URLConnection connection = new URL(link).openConnection();
+		connection.setConnectTimeout(connectTimeoutMillis);
+		connection.setReadTimeout(readTimeoutMillis);
+		connection.setRequestProperty("Accept-Encoding", FetchResponse.ACCEPT_ENCODING);
+		for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+		connection.connect();
+		Metrics.METRICS.connect.recordSince(sendRequest);
+
+		if (!(connection instanceof HttpURLConnection)) {
+			return new FetchResponse(HttpURLConnection.HTTP_OK, Collections.<String, List<String>>emptyMap(), connection.getInputStream());
+		}
+		HttpURLConnection http = (HttpURLConnection) connection;
+		int status = http.getResponseCode();
+		//reading or closing the error body too lets the connection go back to the pool
+		InputStream body = (status >= HttpURLConnection.HTTP_BAD_REQUEST ? http.getErrorStream() : http.getInputStream());
+		return new FetchResponse(status, http.getHeaderFields(), body);
+	}
+
+	public void close() {
+		//the JDK owns the keep-alive pool
+	}
+}
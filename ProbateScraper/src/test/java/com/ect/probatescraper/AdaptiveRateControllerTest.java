@@ -0,0 +1,46 @@
+package com.ect.probatescraper;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for adapting the request interval to the host's response times.
+ */
+public class AdaptiveRateControllerTest extends TestCase
+{
+    private static final String HOST = "apps.ctprobate.gov";
+    private static final long SECOND = 1000000000L;
+
+    public void testSpeedsUpWhileFastAndStopsAtTheLimit()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(6, 1, 30, 2000);
+        assertEquals(10 * SECOND, controller.getIntervalNanos(HOST));
+        controller.success(HOST, SECOND / 10);
+        assertEquals(9 * SECOND, controller.getIntervalNanos(HOST));
+        for (int i = 0; i < 100; i++) {
+            controller.success(HOST, SECOND / 10);
+        }
+        assertEquals(2 * SECOND, controller.getIntervalNanos(HOST));
+        assertEquals(10 * SECOND, controller.getIntervalNanos("localhost"));
+    }
+
+    public void testBacksOffWhenSlowOrFailing()
+    {
+        AdaptiveRateController controller = new AdaptiveRateController(6, 1, 30, 2000);
+        controller.success(HOST, 5 * SECOND);
+        assertEquals(15 * SECOND, controller.getIntervalNanos(HOST));
+        controller.failure(HOST);
+        assertEquals(30 * SECOND, controller.getIntervalNanos(HOST));
+        for (int i = 0; i < 10; i++) {
+            controller.failure(HOST);
+        }
+        assertEquals(60 * SECOND, controller.getIntervalNanos(HOST));
+    }
+
+    public void testFixedNeverAdapts()
+    {
+        AdaptiveRateController controller = AdaptiveRateController.fixed(6);
+        controller.failure(HOST);
+        controller.success(HOST, 1);
+        assertEquals(10 * SECOND, controller.getIntervalNanos(HOST));
+    }
+}
@@ -0,0 +1,77 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for writing case records in the binary format and reading them back.
+ */
+public class BinaryRecordTest extends TestCase
+{
+    public void testCaseListRoundTrip() throws IOException, URISyntaxException
+    {
+        List<CaseListRecord> records = new StreamingCaseListExtractor().extract(
+                StreamingCaseListExtractorTest.fixture("ProbateCaseList_PD05_02.html"), PageParserProbateList.BASE_URI).getRecords();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(bytes, CaseListRecord.RECORD_TYPE, CaseListRecord.DICTIONARY_COUNT);
+        for (CaseListRecord record : records) {
+            record.writeTo(writer);
+        }
+        writer.close();
+
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(CaseListRecord.RECORD_TYPE, reader.getRecordType());
+        List<CaseListRecord> read = new ArrayList<CaseListRecord>();
+        while (reader.next()) {
+            read.add(CaseListRecord.readFrom(reader));
+        }
+        reader.close();
+        assertEquals(records, read);
+    }
+
+    public void testCaseDetailsKeepCommasAndQuotes() throws IOException
+    {
+        Fiduciary fiduciary = new Fiduciary("SMITH, JOHN \"JACK\"");
+        fiduciary.setRepresentedBy("MILLER & ROSS, LLC");
+        fiduciary.setCityStateZip("HARTFORD, CT 06103");
+        List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>();
+        fiduciaries.add(fiduciary);
+        CaseDetailsRecord first = new CaseDetailsRecord("O'BRIEN, PATRICK", "PD05-14-00123", "DR", "01/02/2014", fiduciaries);
+        CaseDetailsRecord second = new CaseDetailsRecord("SMITH, ANN", "PD05-14-00124", "DR", null, fiduciaries);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(bytes, CaseDetailsRecord.RECORD_TYPE, CaseDetailsRecord.DICTIONARY_COUNT);
+        first.writeTo(writer);
+        second.writeTo(writer);
+        writer.close();
+
+        //the first record is skipped unread, its dictionary entries still reach the second
+        BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(reader.next());
+        assertTrue(reader.next());
+        CaseDetailsRecord read = CaseDetailsRecord.readFrom(reader);
+        assertFalse(reader.next());
+        reader.close();
+
+        assertEquals(second.toString(), read.toString());
+        assertNull(read.getDateFiled());
+        assertEquals("MILLER & ROSS, LLC", read.getFiduciaries().get(0).getRepresentedBy());
+    }
+
+    public void testRejectsOtherFiles()
+    {
+        try {
+            new BinaryRecordReader(new ByteArrayInputStream("Case Number,Last Name".getBytes()));
+            fail();
+        }
+        catch (IOException e) {
+            //expected
+        }
+    }
+}
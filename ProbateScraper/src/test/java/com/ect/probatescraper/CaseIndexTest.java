@@ -0,0 +1,141 @@
+package com.ect.probatescraper;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for querying parsed cases through the bitmap indexes and the http endpoint.
+ */
+public class CaseIndexTest extends TestCase
+{
+    private CaseIndex index;
+
+    protected void setUp()
+    {
+        index = new CaseIndex();
+        index.add(new CaseListRecord("14-0001", "DOE", "JANE", "", "DR", "Hartford", "link1"));
+        index.add(new CaseListRecord("14-0002", "ROE", "JOHN", "Q", "DR", "Hartford", "link2"));
+        index.add(new CaseListRecord("14-0003", "POE", "EDGAR", "A", "CN", "New Haven", "link3"));
+        index.add(details("14-0001", "01/15/2014", "Jane Doe represented by ATTY SUSAN MILLER", "HARTFORD, CT 06103"));
+        index.add(details("14-0002", "02/03/2014", "John Roe represented by Atty  Susan Miller", "BOSTON, MA 02108"));
+        index.add(details("14-0003", "01/20/2014", "Edgar Poe", "NEW HAVEN, CT 06510-1234"));
+    }
+
+    private static CaseDetailsRecord details(String caseNumber, String dateFiled, String fiduciaryName, String cityStateZip)
+    {
+        Fiduciary fiduciary = new Fiduciary();
+        fiduciary.setName(fiduciaryName);
+        fiduciary.setCityStateZip(cityStateZip);
+        return new CaseDetailsRecord("Decedent " + caseNumber, caseNumber, "Decedent Estate", dateFiled, 
+                new ArrayList<Fiduciary>(Arrays.asList(fiduciary)));
+    }
+
+    private List<String> caseNumbers(String queryString)
+    {
+        List<String> caseNumbers = new ArrayList<String>();
+        for (CaseIndex.IndexedCase found : index.query(CaseQuery.parse(queryString))) {
+            caseNumbers.add(found.getCaseNumber());
+        }
+        return caseNumbers;
+    }
+
+    public void testFilters()
+    {
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("14-0001", "14-0002", "14-0003"), caseNumbers(null));
+        assertEquals(Arrays.asList("14-0001", "14-0002"), caseNumbers("caseType=dr"));
+        assertEquals(Arrays.asList("14-0001", "14-0002", "14-0003"), caseNumbers("caseType=Decedent+Estate"));
+        assertEquals(Arrays.asList("14-0003"), caseNumbers("district=New%20Haven"));
+        assertEquals(Arrays.asList("14-0001", "14-0002"), caseNumbers("attorney=Susan+Miller"));
+        assertEquals(Arrays.asList("14-0001", "14-0003"), caseNumbers("zip=06xxx"));
+        assertEquals(Arrays.asList("14-0003"), caseNumbers("zip=06510"));
+        assertEquals(Arrays.asList("14-0001", "14-0003"), caseNumbers("filedFrom=2014-01-01&filedTo=01/31/2014"));
+        assertEquals(Arrays.asList("14-0002"), caseNumbers("filedFrom=2014-02-01"));
+        assertEquals(Arrays.asList("14-0001"), caseNumbers("caseType=DR&zip=06&filedTo=2014-01-31"));
+        assertEquals(Arrays.asList("14-0001"), caseNumbers("attorney=susan+miller&limit=1"));
+        assertTrue(caseNumbers("district=Hartford&caseType=CN").isEmpty());
+        assertTrue(caseNumbers("filedFrom=2014-03-01&filedTo=2014-01-01").isEmpty());
+    }
+
+    public void testReplacedCaseIsReindexed()
+    {
+        index.add(new CaseListRecord("14-0003", "POE", "EDGAR", "A", "CN", "Hartford", "link3"));
+        index.add(details("14-0003", "03/01/2014", "Edgar Poe", "BOSTON, MA 02108"));
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("14-0001", "14-0002", "14-0003"), caseNumbers("district=Hartford"));
+        assertTrue(caseNumbers("district=New+Haven").isEmpty());
+        assertEquals(Arrays.asList("14-0001"), caseNumbers("zip=06"));
+        assertEquals(Arrays.asList("14-0003"), caseNumbers("filedFrom=2014-03-01"));
+    }
+
+    public void testCaseTypeCodesAndNamesKeptApart()
+    {
+        //a listing that happens to name its type like the details page does
+        index.add(new CaseListRecord("14-0004", "LOE", "ANN", "", "Decedent Estate", "Hartford", "link4"));
+        index.add(details("14-0004", "03/01/2014", "Ann Loe", "HARTFORD, CT 06103"));
+        index.add(new CaseListRecord("14-0004", "LOE", "ANN", "", "DR", "Hartford", "link4"));
+        assertEquals(Arrays.asList("14-0001", "14-0002", "14-0003", "14-0004"), caseNumbers("caseType=Decedent+Estate"));
+        assertEquals(Arrays.asList("14-0001", "14-0002", "14-0004"), caseNumbers("caseType=DR"));
+    }
+
+    public void testBadQuery()
+    {
+        try {
+            CaseQuery.parse("filedFrom=yesterday");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+        try {
+            CaseQuery.parse("county=Hartford");
+            fail();
+        } catch (IllegalArgumentException e) {
+            //expected
+        }
+    }
+
+    public void testServer() throws Exception
+    {
+        CaseQueryServer server = CaseQueryServer.start(0, index);
+        try {
+            URL url = new URL("http://localhost:" + server.getPort() + CaseQueryServer.PATH + "?attorney=Susan+Miller&zip=06");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertEquals("1", connection.getHeaderField("X-Result-Count"));
+            BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+            assertTrue(reader.readLine().startsWith("Case Number,Decedent,"));
+            assertEquals("14-0001,Decedent 14-0001,DOE,JANE,,DR,Hartford,01/15/2014,SUSAN MILLER,06103,link1", reader.readLine());
+            assertNull(reader.readLine());
+            reader.close();
+
+            url = new URL("http://localhost:" + server.getPort() + CaseQueryServer.PATH + "?filedFrom=someday");
+            connection = (HttpURLConnection) url.openConnection();
+            assertEquals(400, connection.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    public void testServerError() throws Exception
+    {
+        CaseQueryServer server = CaseQueryServer.start(0, new CaseIndex() {
+            public List<CaseIndex.IndexedCase> query(CaseQuery query) {
+                throw new IllegalStateException("broken index");
+            }
+        });
+        try {
+            URL url = new URL("http://localhost:" + server.getPort() + CaseQueryServer.PATH + "?caseType=DR");
+            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+            assertEquals(500, connection.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+}
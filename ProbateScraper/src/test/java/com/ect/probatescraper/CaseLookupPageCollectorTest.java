@@ -0,0 +1,95 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the collector helpers that do not need the live site.
+ */
+public class CaseLookupPageCollectorTest extends TestCase
+{
+    public void testParseDistricts()
+    {
+        assertEquals(Arrays.asList("PD05"), CaseLookupPageCollector.parseDistricts(new String[0]));
+        assertEquals(Arrays.asList("PD05", "PD12"), CaseLookupPageCollector.parseDistricts(new String[] {"pd05,PD12", "PD05"}));
+        List<String> all = CaseLookupPageCollector.parseDistricts(new String[] {"ALL"});
+        assertEquals(CaseLookupPageCollector.DISTRICT_COUNT, all.size());
+        assertEquals("PD01", all.get(0));
+        assertEquals("PD54", all.get(all.size() - 1));
+    }
+
+    public void testCaseTypes()
+    {
+        assertEquals(Arrays.asList("DR"), PageParserProbateList.parseCaseTypes(""));
+        assertEquals(Arrays.asList("DR", "TR"), PageParserProbateList.parseCaseTypes("dr, TR,,DR,T1"));
+        assertEquals("ProbateCaseDetails_PD05-14-00123", PageParserProbateList.caseDetailsKey("DR", "PD05-14-00123"));
+        assertEquals("ProbateCaseDetails_TR_PD05-14-00123", PageParserProbateList.caseDetailsKey("TR", "PD05-14-00123"));
+        assertEquals("TR", PageParserProbateList.caseTypeOfDetailsKey("ProbateCaseDetails_TR_PD05-14-00123"));
+        assertEquals("TR", PageParserProbateList.caseTypeOfDetailsKey("ProbateCaseDetails_TR_PD05-14-00123_14001123"));
+        assertEquals("DR", PageParserProbateList.caseTypeOfDetailsKey("ProbateCaseDetails_PD05-14-00123"));
+        //a second copy of a page has the run's suffix after the case number
+        assertEquals("DR", PageParserProbateList.caseTypeOfDetailsKey("ProbateCaseDetails_PD05-14-00123_14001123"));
+    }
+
+    public void testDownloadKeepsBytes() throws IOException
+    {
+        //non ASCII and more than one transfer chunk worth of data
+        byte[] page = new byte[(int) CaseLookupPageCollector.TRANSFER_CHUNK * 2 + 17];
+        for (int i = 0; i < page.length; i++) {
+            page[i] = (byte) (i % 251);
+        }
+        File source = File.createTempFile("probate", ".html");
+        File target = new File(source.getParentFile(), source.getName() + "_target.html");
+        CaseLookupPageCollector.pageStore = new FilePageStore(source.getParentFile(), null);
+        try {
+            FileOutputStream fos = new FileOutputStream(source);
+            fos.write(page);
+            fos.close();
+
+            String key = source.getName() + "_target";
+            assertEquals(target.getAbsolutePath(), CaseLookupPageCollector.downloadPage(source.toURI().toString(), key).getLocation());
+            assertTrue(Arrays.equals(page, Files.readAllBytes(target.toPath())));
+        }
+        finally {
+            CaseLookupPageCollector.pageStore = null;
+            source.delete();
+            target.delete();
+        }
+    }
+
+    public void testFailedOpenClosesEverything() throws IOException
+    {
+        File dir = TempDirectory.create("probatecollect");
+        boolean archivePages = CaseLookupPageCollector.archivePages;
+        boolean pipelined = CaseLookupPageCollector.pipelined;
+        String pageStoreType = PageParserProbateList.pageStoreType;
+        try {
+            //the page store cannot make its directory
+            PageParserProbateList.pageStoreType = PageParserProbateList.STORE_SEGMENTS;
+            assertTrue(new File(dir, PageParserProbateList.SEGMENT_DIR).createNewFile());
+            CaseLookupPageCollector.archivePages = false;
+            CaseLookupPageCollector.pipelined = false;
+
+            assertFalse(CaseLookupPageCollector.collect(Arrays.asList("PD05"), dir, new CrawlSettings()));
+            assertNull(CaseLookupPageCollector.httpCache);
+            assertNull(CaseLookupPageCollector.knownCases);
+            assertNull(CaseLookupPageCollector.retryQueue);
+            assertNull(CaseLookupPageCollector.pageStore);
+            assertNull(CaseLookupPageCollector.settings);
+            //archiving was only forced for that crawl
+            assertFalse(CaseLookupPageCollector.archivePages);
+        }
+        finally {
+            CaseLookupPageCollector.archivePages = archivePages;
+            CaseLookupPageCollector.pipelined = pipelined;
+            PageParserProbateList.pageStoreType = pageStoreType;
+            TempDirectory.delete(dir);
+        }
+    }
+}
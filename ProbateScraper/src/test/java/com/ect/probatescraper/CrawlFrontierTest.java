@@ -0,0 +1,87 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for resuming a crawl from its journal and checkpoint.
+ */
+public class CrawlFrontierTest extends TestCase
+{
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probatefrontier");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        TempDirectory.delete(dir);
+    }
+
+    public void testResumesWhereItStopped() throws IOException
+    {
+        CrawlFrontier frontier = CrawlFrontier.open(dir, 1000);
+        assertFalse(frontier.isResumed());
+        frontier.completed("ProbateCaseList_PD05_1");
+        frontier.completed("ProbateCaseDetails_1");
+        //completed again, still only once
+        frontier.completed("ProbateCaseDetails_1");
+        //the process dies, nothing is closed
+        appendTornLine();
+
+        frontier = CrawlFrontier.open(dir, 1000);
+        assertTrue(frontier.isResumed());
+        assertTrue(frontier.isCompleted("ProbateCaseList_PD05_1"));
+        assertFalse(frontier.isCompleted("ProbateCaseList_PD05_2"));
+        assertEquals(2, frontier.getCompletedCount());
+
+        //a finished crawl leaves nothing behind
+        frontier.finish();
+        assertEquals(0, dir.listFiles().length);
+        assertFalse(CrawlFrontier.open(dir, 1000).isResumed());
+    }
+
+    public void testTornLineWithoutResumeIsDropped() throws IOException
+    {
+        //only a torn line made it to the journal before the crash
+        appendTornLine();
+        CrawlFrontier frontier = CrawlFrontier.open(dir, 1000);
+        assertFalse(frontier.isResumed());
+        frontier.completed("ProbateCaseList_PD05_1");
+        frontier.close();
+
+        frontier = CrawlFrontier.open(dir, 1000);
+        assertTrue(frontier.isCompleted("ProbateCaseList_PD05_1"));
+        assertEquals(1, frontier.getCompletedCount());
+        frontier.close();
+    }
+
+    public void testCheckpointStartsTheJournalOver() throws IOException
+    {
+        CrawlFrontier frontier = CrawlFrontier.open(dir, 10);
+        for (int i = 0; i < 25; i++) {
+            frontier.completed("ProbateCaseDetails_" + i);
+        }
+        frontier.close();
+
+        assertTrue(new File(dir, CrawlFrontier.CHECKPOINT_FILENAME).exists());
+        assertTrue(new File(dir, CrawlFrontier.JOURNAL_FILENAME).length() < 200);
+
+        frontier = CrawlFrontier.open(dir, 10);
+        assertEquals(25, frontier.getCompletedCount());
+        assertTrue(frontier.isCompleted("ProbateCaseDetails_24"));
+        frontier.close();
+    }
+
+    private void appendTornLine() throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(new File(dir, CrawlFrontier.JOURNAL_FILENAME), true);
+        fos.write("C\tProbateCaseDet".getBytes("UTF-8"));
+        fos.close();
+    }
+}
@@ -0,0 +1,174 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * End to end test of a crawl against the mock probate server, failing requests included.
+ */
+public class CrawlLoadHarnessTest extends TestCase
+{
+    private File dir;
+    private MockProbateServer server;
+    private RetryPolicy retryPolicy;
+    private CircuitBreaker circuitBreaker;
+    private List<String> caseTypes;
+    private boolean pipelined;
+    private boolean asyncDetails;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probateload");
+        retryPolicy = CaseLookupPageCollector.retryPolicy;
+        circuitBreaker = CaseLookupPageCollector.circuitBreaker;
+        caseTypes = CaseLookupPageCollector.caseTypes;
+        pipelined = CaseLookupPageCollector.pipelined;
+        asyncDetails = CaseLookupPageCollector.asyncDetails;
+        CaseLookupPageCollector.retryPolicy = new RetryPolicy(10, 1, 5);
+        CaseLookupPageCollector.circuitBreaker = new CircuitBreaker(1000, 1000);
+    }
+
+    protected void tearDown() throws Exception
+    {
+        CaseLookupPageCollector.retryPolicy = retryPolicy;
+        CaseLookupPageCollector.circuitBreaker = circuitBreaker;
+        CaseLookupPageCollector.caseTypes = caseTypes;
+        CaseLookupPageCollector.pipelined = pipelined;
+        CaseLookupPageCollector.asyncDetails = asyncDetails;
+        if (server != null) {
+            server.stop();
+        }
+        TempDirectory.delete(dir);
+    }
+
+    public void testCrawlMockServer() throws Exception
+    {
+        server = new MockProbateServer(0, 3, 10, 0, 2, 0.1, 4);
+        server.start();
+        List<String> districts = Arrays.asList("PD01", "PD02");
+        Metrics before = Metrics.METRICS.snapshot();
+        assertTrue(CrawlLoadHarness.crawl(server, districts, 600000, dir));
+        assertNull(CaseLookupPageCollector.settings);
+        Metrics crawled = Metrics.METRICS.since(before);
+
+        assertEquals(6, server.getListPagesServed());
+        assertEquals(2 * server.getCasesPerDistrict(Arrays.asList("DR")), server.getDetailsPagesServed());
+
+        //the stored pages are what the parser expects
+        PageStore store = new FilePageStore(dir, null);
+        assertEquals(6, store.list(PageParserProbateList.FILENAME_PREFIX_CASE_LIST).size());
+        List<StoredPage> detailsPages = store.list(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS);
+        assertEquals(2 * server.getCasesPerDistrict(Arrays.asList("DR")), detailsPages.size());
+        CaseListPage listPage = PageParserProbateList.readCaseListPage(store.latest(PageParserProbateList.caseListKey("PD02", 3)));
+        assertEquals(10, listPage.getRecords().size());
+        assertEquals("PD02-14-00021", listPage.getRecords().get(0).getCaseNumber());
+        assertEquals(3, listPage.getPageLinks().size() + 1);
+        CaseDetailsRecord details = PageParserProbateList.CASE_DETAILS_PARSER.parse(detailsPages.get(0));
+        assertEquals("Decedent Estate", details.getCaseType());
+        assertFalse(details.getFiduciaries().isEmpty());
+        assertFalse(CaseIndex.zips(details).isEmpty());
+        store.close();
+
+        //only this crawl's pages, whatever ran before it in the same jvm
+        assertEquals(6 + 2 * server.getCasesPerDistrict(Arrays.asList("DR")), crawled.pagesFetched.get());
+        String report = CrawlLoadHarness.report(server, districts, 1.0, true, crawled);
+        assertTrue(report, report.contains("pages/s"));
+        assertTrue(report, report.contains("cases/s"));
+    }
+
+    public void testCaseTypesInOnePass() throws Exception
+    {
+        server = new MockProbateServer(0, 2, 10, 0, 0, 0, 4);
+        server.start();
+        CaseLookupPageCollector.caseTypes = Arrays.asList("DR", "TR", "CO");
+        CaseLookupPageCollector.pipelined = true;
+        CaseLookupPageCollector.asyncDetails = true;
+        assertTrue(CrawlLoadHarness.crawl(server, Arrays.asList("PD01"), 600000, dir));
+
+        //each list page fetched once, the details of both types fetched
+        assertEquals(2, server.getListPagesServed());
+        int decedent = server.getCasesPerDistrict(Arrays.asList("DR"));
+        int trusts = server.getCasesPerDistrict(Arrays.asList("TR"));
+        int conservatorships = server.getCasesPerDistrict(Arrays.asList("CO"));
+        assertTrue(trusts > 0);
+        assertTrue(conservatorships > 0);
+        assertEquals(decedent + trusts + conservatorships, server.getDetailsPagesServed());
+        PageStore store = new FilePageStore(dir, null);
+        assertEquals(trusts, store.list(PageParserProbateList.caseDetailsKey("TR", "")).size());
+        store.close();
+
+        //and written to their own files
+        assertEquals(decedent + 1, lines(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS).size());
+        List<String> trustDetails = lines(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS + "TR_");
+        assertEquals(trusts + 1, trustDetails.size());
+        assertTrue(trustDetails.get(0), trustDetails.get(0).startsWith("Trust,"));
+        assertTrue(trustDetails.get(1), trustDetails.get(1).contains("Testamentary Trust"));
+        //the trustees are found under their own label
+        List<String> trustees = lines(PageParserProbateList.FILENAME_PREFIX_CASE_FEDUCIARY + "TR_");
+        assertTrue(trustees.get(0), trustees.get(0).startsWith("Case Number,Trustee,"));
+        assertTrue(trustees.size() > trusts);
+        List<String> conservatorDetails = lines(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS + "CO_");
+        assertEquals(conservatorships + 1, conservatorDetails.size());
+        assertTrue(conservatorDetails.get(0), conservatorDetails.get(0).startsWith("Conserved Person,"));
+        List<String> conservators = lines(PageParserProbateList.FILENAME_PREFIX_CASE_FEDUCIARY + "CO_");
+        assertTrue(conservators.get(0), conservators.get(0).startsWith("Case Number,Conservator,"));
+        assertTrue(conservators.size() > conservatorships);
+    }
+
+    /**
+     * A crawl stopped after storing a list page next to the copy of an earlier run picks up the page
+     * it stored, not the earlier one.
+     */
+    public void testResumeReadsTheNewestCopy() throws Exception
+    {
+        server = new MockProbateServer(0, 2, 10, 0, 0, 0, 4);
+        server.start();
+        List<String> districts = Arrays.asList("PD01");
+        assertTrue(CrawlLoadHarness.crawl(server, districts, 600000, dir));
+        String listKey = PageParserProbateList.caseListKey("PD01", 2);
+        assertTrue(new File(dir, listKey + PageParserProbateList.HTML_FILENAME_SUFFIX).isFile());
+
+        //the stopped run stored page 2 again, it has other cases on it by now
+        InputStream in = new URL(String.format(server.getLookupUrl(), "PD02") + "&Page=2").openStream();
+        try {
+            Files.copy(in, new File(dir, listKey + "_" + PageParserProbateList.getJulianWithMillis()
+                    + PageParserProbateList.HTML_FILENAME_SUFFIX).toPath());
+        } finally {
+            in.close();
+        }
+        CrawlFrontier stopped = CrawlFrontier.open(dir, 1000);
+        stopped.completed(listKey);
+        stopped.close();
+
+        long listPages = server.getListPagesServed();
+        assertTrue(CrawlLoadHarness.crawl(server, districts, 600000, dir));
+        //only page 1 fetched again, page 2 read from the newest copy
+        assertEquals(listPages + 1, server.getListPagesServed());
+        PageStore store = new FilePageStore(dir, null);
+        assertFalse(store.list(PageParserProbateList.caseDetailsKey("PD02-14-")).isEmpty());
+        store.close();
+    }
+
+    /**
+     * @param prefix
+     *            of the file name, up to the run's date stamp
+     */
+    private List<String> lines(String prefix) throws Exception
+    {
+        for (File file : dir.listFiles()) {
+            String name = file.getName();
+            if (name.startsWith(prefix) && Character.isDigit(name.charAt(prefix.length()))
+                    && name.endsWith(PageParserProbateList.CSV_FILENAME_SUFFIX)) {
+                return Files.readAllLines(file.toPath(), BinaryRecordWriter.UTF8);
+            }
+        }
+        fail("No " + prefix + " file");
+        return null;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for writing the csv files from pages held in memory while the crawl runs.
+ */
+public class CrawlPipelineTest extends TestCase
+{
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probatepipeline");
+        CaseLookupPageCollector.memoryStore = new MemoryPageStore();
+        CaseLookupPageCollector.pageStore = CaseLookupPageCollector.memoryStore;
+    }
+
+    protected void tearDown() throws Exception
+    {
+        CaseLookupPageCollector.memoryStore = null;
+        CaseLookupPageCollector.pageStore = null;
+        TempDirectory.delete(dir);
+    }
+
+    public void testRowsWrittenFromMemory() throws IOException, URISyntaxException, InterruptedException
+    {
+        StoredPage listPage = CaseLookupPageCollector.downloadPage(link("ProbateCaseList_PD05_01.html"), "ProbateCaseList_PD05_01");
+        StoredPage detailsPage = CaseLookupPageCollector.downloadPage(link("ProbateCaseDetails_PD05-14-00123.html"), 
+                "ProbateCaseDetails_PD05-14-00123");
+        assertTrue(listPage.getLocation().startsWith(MemoryPageStore.LOCATION_PREFIX));
+        //nothing was archived
+        assertEquals(0, dir.listFiles().length);
+
+        CrawlPipeline pipeline = CrawlPipeline.open(dir, 2);
+        pipeline.caseList(PageParserProbateList.readCaseListPage(listPage));
+        assertTrue(pipeline.caseDetails(detailsPage));
+        assertTrue(pipeline.close());
+
+        List<String> caseList = lines(PageParserProbateList.FILENAME_PREFIX_CASE_LIST);
+        assertEquals(6, caseList.size());
+        assertEquals("Case Number,Last Name,First Name,MI,Case Type,District,Case Link", caseList.get(0));
+        assertTrue(caseList.get(1).startsWith("PD05-14-00123,"));
+        List<String> caseDetails = lines(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS);
+        assertEquals(2, caseDetails.size());
+        assertTrue(caseDetails.get(1).contains("PD05-14-00123"));
+        assertTrue(lines(PageParserProbateList.FILENAME_PREFIX_CASE_FEDUCIARY).size() > 1);
+    }
+
+    public void testUnparsedDetailsFailThePipeline() throws IOException, InterruptedException
+    {
+        CrawlPipeline pipeline = CrawlPipeline.open(dir, 2);
+        //a page the store cannot open
+        StoredPage lost = new StoredPage(CaseLookupPageCollector.memoryStore, "ProbateCaseDetails_PD05-14-00999", 0, 
+                MemoryPageStore.LOCATION_PREFIX + "ProbateCaseDetails_PD05-14-00999");
+        assertFalse(pipeline.caseDetails(lost));
+        assertFalse(pipeline.close());
+    }
+
+    public void testWriterErrorDoesNotBlockTheCrawl() throws IOException, InterruptedException
+    {
+        CrawlPipeline pipeline = CrawlPipeline.open(dir, 1);
+        CaseListPage broken = new CaseListPage();
+        broken.getRecords().add(null);
+        pipeline.caseList(broken);
+        //more pages than the queue holds still go in, and close returns
+        for (int page = 0; page < 5; page++) {
+            pipeline.caseList(new CaseListPage());
+        }
+        assertFalse(pipeline.close());
+    }
+
+    private static String link(String fixture) throws URISyntaxException
+    {
+        return StreamingCaseListExtractorTest.fixture(fixture).toURI().toString();
+    }
+
+    private List<String> lines(String prefix) throws IOException
+    {
+        for (File file : dir.listFiles()) {
+            if (file.getName().startsWith(prefix) && file.getName().endsWith(PageParserProbateList.CSV_FILENAME_SUFFIX)) {
+                return Files.readAllLines(file.toPath(), BinaryRecordWriter.UTF8);
+            }
+        }
+        fail("No csv starting with " + prefix);
+        return null;
+    }
+}
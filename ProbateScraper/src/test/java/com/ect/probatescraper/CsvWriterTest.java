@@ -0,0 +1,56 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the quoting and fixed schema of the csv writer.
+ */
+public class CsvWriterTest extends TestCase
+{
+    public void testQuotesOnlyWhenNeeded() throws IOException
+    {
+        StringWriter text = new StringWriter();
+        CsvWriter csv = new CsvWriter(text);
+        csv.field("O'BRIEN").field("SMITH, JR.").field("JOHN \"JACK\"").field(null).field("LINE\r\nBREAK");
+        csv.endRow();
+        csv.close();
+        assertEquals("O'BRIEN,\"SMITH, JR.\",\"JOHN \"\"JACK\"\"\",,\"LINE\r\nBREAK\"\r\n", text.toString());
+    }
+
+    public void testSchemaPadsRows() throws IOException
+    {
+        StringWriter text = new StringWriter();
+        CsvWriter csv = new CsvWriter(text);
+        csv.writeHeader(CsvSchema.of("Case Number", "Fiduciary1 Name", "Fiduciary1 Phone", "Fiduciary2 Name", "Fiduciary2 Phone"));
+        csv.field("PD05-14-00123").field("JANE DOE").field("860-555-0100");
+        csv.endRow();
+        try {
+            csv.field("PD05-14-00124").field("A").field("B").field("C").field("D").field("E");
+            fail();
+        }
+        catch (IllegalStateException e) {
+            //expected, more fiduciaries than the schema has room for
+        }
+        csv.close();
+        assertEquals(1, csv.getRowCount());
+        assertTrue(text.toString().startsWith("Case Number,Fiduciary1 Name,Fiduciary1 Phone,Fiduciary2 Name,Fiduciary2 Phone\r\n"
+                + "PD05-14-00123,JANE DOE,860-555-0100,,\r\n"));
+    }
+
+    public void testFieldsLargerThanTheBuffer() throws IOException
+    {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < CsvWriter.BUFFER_SIZE; i++) {
+            large.append(i % 10 == 0 ? '"' : 'x');
+        }
+        StringWriter text = new StringWriter();
+        CsvWriter csv = new CsvWriter(text);
+        csv.field("first").field(large.toString());
+        csv.endRow();
+        csv.close();
+        assertEquals("first,\"" + large.toString().replace("\"", "\"\"") + "\"\r\n", text.toString());
+    }
+}
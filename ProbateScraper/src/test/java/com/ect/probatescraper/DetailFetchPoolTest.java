@@ -0,0 +1,47 @@
+package com.ect.probatescraper;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for running detail fetches in the background with a cap on how many are in flight.
+ */
+public class DetailFetchPoolTest extends TestCase
+{
+    public void testInFlightStaysUnderLimit() throws InterruptedException
+    {
+        final DetailFetchPool pool = new DetailFetchPool(4);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < 40; i++) {
+            pool.submit(new DetailFetchPool.FetchTask() {
+                public void fetch() throws InterruptedException {
+                    int now = running.incrementAndGet();
+                    synchronized (maxRunning) {
+                        maxRunning.set(Math.max(maxRunning.get(), now));
+                    }
+                    Thread.sleep(5);
+                    running.decrementAndGet();
+                    done.incrementAndGet();
+                }
+            });
+            assertTrue(pool.getInFlight() <= 4);
+        }
+        pool.awaitIdle();
+        assertEquals(40, done.get());
+        assertEquals(0, pool.getInFlight());
+        assertTrue(maxRunning.get() <= 4);
+        assertTrue(maxRunning.get() > 1);
+
+        //a failing fetch gives its slot back
+        pool.submit(new DetailFetchPool.FetchTask() {
+            public void fetch() {
+                throw new IllegalStateException("broken page");
+            }
+        });
+        pool.close();
+        assertEquals(0, pool.getInFlight());
+    }
+}
@@ -0,0 +1,108 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for writing repeated attorneys and addresses of the fiduciaries as integer ids.
+ */
+public class EntityDictionaryTest extends TestCase
+{
+    private File dir;
+    private boolean entityIds;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probateentities");
+        entityIds = PageParserProbateList.entityIds;
+    }
+
+    protected void tearDown() throws Exception
+    {
+        PageParserProbateList.closeOutputFiles();
+        PageParserProbateList.entityIds = entityIds;
+        TempDirectory.delete(dir);
+    }
+
+    public void testIds()
+    {
+        EntityDictionary entities = new EntityDictionary();
+        assertEquals(EntityDictionary.EMPTY_ID, entities.id(""));
+        assertEquals(EntityDictionary.NULL_ID, entities.id(null));
+        int firm = entities.id("Smith & Jones LLC");
+        assertEquals(1, firm);
+        assertEquals(firm, entities.id(new String("Smith & Jones LLC")));
+        assertEquals(2, entities.id("Hartford, CT 06103"));
+        assertEquals(3, entities.size());
+    }
+
+    public void testIdsNeverHandedOutTwice()
+    {
+        EntityDictionary entities = new EntityDictionary();
+        for (int value = 0; value < 1000; value++) {
+            assertEquals(value + 1, entities.id("value " + value));
+        }
+        //seen long ago, still the same id and no new row
+        assertEquals(1, entities.id("value 0"));
+        assertEquals(1001, entities.size());
+    }
+
+    public void testRepeatedValuesKeptOnce()
+    {
+        Fiduciary first = new Fiduciary(Arrays.asList("JANE DOE represented by Smith & Jones LLC", "1 MAIN ST", "Hartford, CT 06103"));
+        Fiduciary second = new Fiduciary();
+        second.setName(new String("JOHN DOE represented by Smith & Jones LLC"));
+        second.setCityStateZip(new String("Hartford, CT 06103"));
+        assertSame(first.getRepresentedBy(), second.getRepresentedBy());
+        assertSame(first.getCityStateZip(), second.getCityStateZip());
+        assertEquals(" Smith & Jones LLC", second.getRepresentedBy());
+    }
+
+    public void testIdsWrittenWithTheRows() throws Exception
+    {
+        PageParserProbateList.entityIds = true;
+        assertTrue(PageParserProbateList.openOutputFiles(dir));
+        PageParserProbateList.DetailsOutput output = PageParserProbateList.detailsWriter(PageParserProbateList.CASE_TYPE_DECEDENT_ESTATE_REGULAR);
+        output.write(details("PD05-14-00001", fiduciary("JANE DOE represented by Smith & Jones LLC", "Hartford, CT 06103")), true);
+        output.write(details("PD05-14-00002", fiduciary("JOHN DOE represented by Smith & Jones LLC", "Avon, CT 06001")), false);
+        PageParserProbateList.closeOutputFiles();
+
+        assertEquals(Arrays.asList("Id,Value", "0,", "1, Smith & Jones LLC", "2,\"Hartford, CT 06103\"", "3,\"Avon, CT 06001\""),
+                lines(PageParserProbateList.FILENAME_PREFIX_ENTITY));
+        List<String> fiduciaries = lines(PageParserProbateList.FILENAME_PREFIX_CASE_FEDUCIARY);
+        assertEquals(3, fiduciaries.size());
+        assertEquals("PD05-14-00001,1,JANE DOE ,1,,,2,,", fiduciaries.get(1));
+        assertEquals("PD05-14-00002,1,JOHN DOE ,1,,,3,,", fiduciaries.get(2));
+    }
+
+    private static Fiduciary fiduciary(String name, String cityStateZip)
+    {
+        Fiduciary fiduciary = new Fiduciary();
+        fiduciary.setName(name);
+        fiduciary.setCityStateZip(cityStateZip);
+        return fiduciary;
+    }
+
+    private static CaseDetailsRecord details(String caseNumber, Fiduciary fiduciary)
+    {
+        List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>();
+        fiduciaries.add(fiduciary);
+        return new CaseDetailsRecord("DOE", caseNumber, "Decedent Estate", "01/15/2014", fiduciaries);
+    }
+
+    private List<String> lines(String prefix) throws Exception
+    {
+        for (File file : dir.listFiles()) {
+            if (file.getName().startsWith(prefix) && file.getName().endsWith(PageParserProbateList.CSV_FILENAME_SUFFIX)) {
+                return Files.readAllLines(file.toPath(), BinaryRecordWriter.UTF8);
+            }
+        }
+        fail("No csv starting with " + prefix);
+        return null;
+    }
+}
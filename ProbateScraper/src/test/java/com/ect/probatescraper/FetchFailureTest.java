@@ -0,0 +1,93 @@
+package com.ect.probatescraper;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the backoff of the retry policy and the per host circuit breaker.
+ */
+public class FetchFailureTest extends TestCase
+{
+    private static final String HOST = "apps.ctprobate.gov";
+
+    private static class ManualClockBreaker extends CircuitBreaker
+    {
+        private long now = 1000000;
+
+        ManualClockBreaker(int failureThreshold, long openMillis)
+        {
+            super(failureThreshold, openMillis);
+        }
+
+        long now()
+        {
+            return now;
+        }
+    }
+
+    public void testBackoffStaysUnderExponentialCeiling()
+    {
+        RetryPolicy policy = new RetryPolicy(4, 100, 1000);
+        for (int i = 0; i < 200; i++) {
+            assertTrue(policy.delayMillis(0) <= 100);
+            assertTrue(policy.delayMillis(2) <= 400);
+            assertTrue(policy.delayMillis(10) <= 1000);
+            assertTrue(policy.delayMillis(100) <= 1000);
+            assertTrue(policy.delayMillis(3) >= 0);
+        }
+        assertEquals(4, policy.getMaxAttempts());
+    }
+
+    public void testCircuitOpensAfterConsecutiveFailures()
+    {
+        ManualClockBreaker breaker = new ManualClockBreaker(3, 60000);
+        breaker.failure(HOST);
+        breaker.failure(HOST);
+        breaker.success(HOST);
+        breaker.failure(HOST);
+        breaker.failure(HOST);
+        assertTrue(breaker.allowRequest(HOST));
+        breaker.failure(HOST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        assertEquals(60000, breaker.retryAfterMillis(HOST));
+        //other hosts are not affected
+        assertTrue(breaker.allowRequest("example.com"));
+    }
+
+    public void testHalfOpenTrialClosesOrReopens()
+    {
+        ManualClockBreaker breaker = new ManualClockBreaker(1, 60000);
+        breaker.failure(HOST);
+        breaker.now += 60000;
+        assertEquals(0, breaker.retryAfterMillis(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        //only the one trial request
+        assertFalse(breaker.allowRequest(HOST));
+        breaker.failure(HOST);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+
+        breaker.now += 60000;
+        assertTrue(breaker.allowRequest(HOST));
+        breaker.success(HOST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+    }
+
+    public void testUnsentTrialIsReleased()
+    {
+        ManualClockBreaker breaker = new ManualClockBreaker(1, 60000);
+        breaker.failure(HOST);
+        breaker.now += 60000;
+        assertTrue(breaker.allowRequest(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        //the trial was never sent, the next request becomes the trial
+        breaker.release(HOST);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState(HOST));
+        assertTrue(breaker.allowRequest(HOST));
+        assertFalse(breaker.allowRequest(HOST));
+        breaker.success(HOST);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState(HOST));
+    }
+}
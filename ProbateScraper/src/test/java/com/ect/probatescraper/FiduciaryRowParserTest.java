@@ -0,0 +1,97 @@
+package com.ect.probatescraper;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.select.Elements;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for grouping fiduciary rows and writing them to their own csv.
+ */
+public class FiduciaryRowParserTest extends TestCase
+{
+    private static List<Fiduciary> parse(String... rows)
+    {
+        final List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>();
+        FiduciaryRowParser parser = new FiduciaryRowParser(new FiduciaryRowParser.FiduciaryHandler() {
+            public void fiduciary(Fiduciary fiduciary) {
+                fiduciaries.add(fiduciary);
+            }
+        });
+        for (String row : rows) {
+            parser.row(row);
+        }
+        parser.finish();
+        return fiduciaries;
+    }
+
+    public void testGroups()
+    {
+        List<Fiduciary> fiduciaries = parse("Phone:(860) 555-0000", "", "JANE DOE represented by ATTY JOHN ROE", "1 MAIN ST", 
+                "SUITE 2", "HARTFORD, CT 06103", "", "", "Phone:(860) 555-1212", "Fax:(860) 555-1313", "", "JOHN DOE", 
+                "2 ELM RD", "WEST HARTFORD, CT 06107");
+        assertEquals(2, fiduciaries.size());
+        assertEquals("[JANE DOE | ATTY JOHN ROE|1 MAIN ST|SUITE 2|HARTFORD, CT 06103|(860) 555-1212|(860) 555-1313]", 
+                fiduciaries.get(0).toString());
+        assertEquals("[JOHN DOE||2 ELM RD||WEST HARTFORD, CT 06107||]", fiduciaries.get(1).toString());
+
+        //every line between address line 1 and the last goes to address line 2
+        fiduciaries = parse("JANE DOE", "ACME TRUST CO", "1 MAIN ST", "FLOOR 3", "SUITE 2", "HARTFORD, CT 06103");
+        assertEquals("[JANE DOE||ACME TRUST CO|1 MAIN ST, FLOOR 3, SUITE 2|HARTFORD, CT 06103||]", fiduciaries.get(0).toString());
+    }
+
+    public void testDetailsPage() throws IOException, URISyntaxException
+    {
+        Elements caseTable = caseTable("ProbateCaseDetails_PD05-14-00123.html");
+        StringWriter details = new StringWriter();
+        StringWriter fiduciaries = new StringWriter();
+        CsvWriter detailsOutput = new CsvWriter(details);
+        CsvWriter fiduciaryOutput = new CsvWriter(fiduciaries);
+        PageParserProbateList.extractCaseDetails(caseTable, detailsOutput, fiduciaryOutput);
+        detailsOutput.close();
+        fiduciaryOutput.close();
+
+        assertEquals("MARY K O'BRIEN,PD05-14-00123,Decedent Estate,01/15/2014\r\n", details.toString());
+        assertEquals(Arrays.asList(
+                "PD05-14-00123,1,PATRICK O'BRIEN , ATTY SUSAN MILLER,\"MILLER & ROSS, LLC\",\"100 MAIN STREET, SUITE 400\",\"HARTFORD, CT 06103\",(860) 555-1212,(860) 555-1313",
+                "PD05-14-00123,2,KATHLEEN O'BRIEN WALSH,,22 ELM ROAD,,\"WEST HARTFORD, CT 06107\",(860) 555-7788,"), 
+                Arrays.asList(fiduciaries.toString().split("\r\n")));
+    }
+
+    private static Elements caseTable(String fixture) throws IOException, URISyntaxException
+    {
+        return Jsoup.parse(StreamingCaseListExtractorTest.fixture(fixture), "UTF-8", PageParserProbateList.BASE_URI).select("body div table");
+    }
+
+    public void testTrustAndConservatorshipPages() throws IOException, URISyntaxException
+    {
+        CaseDetailsRecord trust = PageParserProbateList.readCaseDetails(caseTable("ProbateCaseDetails_TR_PD05-14-00131.html"), 
+                PageParserProbateList.detailsLayout("TR"));
+        assertEquals("LUIS GARCIA TESTAMENTARY TRUST", trust.getDecedent());
+        assertEquals("PD05-14-00131", trust.getCaseNumber());
+        assertEquals("Testamentary Trust", trust.getCaseType());
+        assertEquals(2, trust.getFiduciaries().size());
+        assertEquals("[FIRST HARTFORD BANK & TRUST CO | ATTY ROBERT CHEN|TRUST DEPARTMENT|1 STATE HOUSE SQUARE|HARTFORD, CT 06103|(860) 555-4400|]", 
+                trust.getFiduciaries().get(0).toString());
+        assertEquals("[MARIA GARCIA||9 OAK STREET||NEW HAVEN, CT 06510||]", trust.getFiduciaries().get(1).toString());
+
+        //a single conservator is labelled in the singular
+        CaseDetailsRecord conservatorship = PageParserProbateList.readCaseDetails(caseTable("ProbateCaseDetails_CO_PD05-14-00132.html"), 
+                PageParserProbateList.detailsLayout("CO"));
+        assertEquals("STANLEY KOWALSKI", conservatorship.getDecedent());
+        assertEquals("Conservatorship", conservatorship.getCaseType());
+        assertEquals(1, conservatorship.getFiduciaries().size());
+        assertEquals("[SUSAN KOWALSKI | ATTY ANNE DUBOIS|45 PARK ROAD||WEST HARTFORD, CT 06107|(860) 555-9090|(860) 555-9191]", 
+                conservatorship.getFiduciaries().get(0).toString());
+
+        //read as a decedent estate the trustees are not found
+        assertTrue(PageParserProbateList.readCaseDetails(caseTable("ProbateCaseDetails_TR_PD05-14-00131.html")).getFiduciaries().isEmpty());
+    }
+}
@@ -0,0 +1,60 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for reusing unchanged pages through the http cache.
+ */
+public class HttpCacheTest extends TestCase
+{
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probatecache");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        CaseLookupPageCollector.httpCache = null;
+        CaseLookupPageCollector.pageStore = null;
+        TempDirectory.delete(dir);
+    }
+
+    public void testUnchangedPageIsNotWrittenAgain() throws IOException
+    {
+        File source = new File(dir, "source.html");
+        write(source, "<html>case 1</html>");
+        String link = source.toURI().toString();
+        File journal = new File(dir, HttpCache.CACHE_FILENAME);
+
+        CaseLookupPageCollector.pageStore = new FilePageStore(dir, "2");
+        CaseLookupPageCollector.httpCache = HttpCache.open(journal);
+        File first = new File(dir, "ProbateCaseDetails_1.html");
+        assertEquals(first.getAbsolutePath(), CaseLookupPageCollector.downloadPage(link, "ProbateCaseDetails_1").getLocation());
+
+        File second = new File(dir, "ProbateCaseDetails_1_2.html");
+        assertEquals(first.getAbsolutePath(), CaseLookupPageCollector.downloadPage(link, "ProbateCaseDetails_1").getLocation());
+        assertFalse(second.exists());
+        CaseLookupPageCollector.httpCache.close();
+
+        //the journal survives a restart, a changed body gets its own copy
+        CaseLookupPageCollector.httpCache = HttpCache.open(journal);
+        assertEquals(1, CaseLookupPageCollector.httpCache.size());
+        write(source, "<html>case 1 changed</html>");
+        assertEquals(second.getAbsolutePath(), CaseLookupPageCollector.downloadPage(link, "ProbateCaseDetails_1").getLocation());
+        assertEquals(second.getAbsolutePath(), CaseLookupPageCollector.httpCache.lookup(link).getLocation());
+        CaseLookupPageCollector.httpCache.close();
+    }
+
+    private static void write(File file, String text) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(text.getBytes("UTF-8"));
+        fos.close();
+    }
+}
@@ -0,0 +1,96 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the persistent known case index.
+ */
+public class KnownCaseIndexTest extends TestCase
+{
+    private File logFile;
+
+    protected void setUp() throws Exception
+    {
+        logFile = File.createTempFile("knowncases", ".idx");
+        logFile.delete();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        logFile.delete();
+    }
+
+    public void testEncode()
+    {
+        assertEquals(KnownCaseIndex.encode("14-0123"), KnownCaseIndex.encode(" 14-0123 "));
+        assertTrue(KnownCaseIndex.encode("14-0123") > 0);
+        assertTrue(KnownCaseIndex.encode("14-0123") != KnownCaseIndex.encode("14-01230"));
+        //probate case numbers are packed field by field, exactly
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123") > 0);
+        assertEquals(KnownCaseIndex.encode("PD05-14-00123"), KnownCaseIndex.encode("pd05-14-00123"));
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123") != KnownCaseIndex.encode("PD05-14-00124"));
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123") != KnownCaseIndex.encode("PD15-04-00123"));
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123") != KnownCaseIndex.encode("PE05-14-00123"));
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123") != KnownCaseIndex.encode("PD05-14-00123X"));
+        assertTrue(KnownCaseIndex.encode("ZZ99-99-99999") > KnownCaseIndex.encode("AA00-00-00000"));
+        assertTrue(KnownCaseIndex.encode("AA00-00-00000") > KnownCaseIndex.encode("ZZZZZZZZZZZ"));
+        assertTrue(KnownCaseIndex.encode("PD05-14-00123X") < 0);
+        assertTrue(KnownCaseIndex.encode("") != 0);
+    }
+
+    public void testProbateCaseNumbersDoNotCollide() throws IOException
+    {
+        KnownCaseIndex index = KnownCaseIndex.open(logFile);
+        Set<Long> keys = new HashSet<Long>();
+        for (int district = 1; district <= 54; district++) {
+            for (int serial = 0; serial < 2000; serial++) {
+                String caseNumber = String.format("PD%02d-14-%05d", district, serial);
+                assertTrue(keys.add(Long.valueOf(KnownCaseIndex.encode(caseNumber))));
+                if (serial % 100 == 0) {
+                    index.record(caseNumber, KnownCaseIndex.STATUS_FETCHED, serial);
+                }
+            }
+        }
+        assertEquals(54 * 20, index.size());
+        assertEquals(1900, index.getFetchedMillis("PD54-14-01900"));
+        assertFalse(index.contains("PD54-14-01901"));
+        index.close();
+    }
+
+    public void testFreshStaleAndFailed() throws IOException
+    {
+        KnownCaseIndex index = KnownCaseIndex.open(logFile);
+        long now = System.currentTimeMillis();
+        assertTrue(index.needsFetch("14-0001", now, 1000));
+        index.record("14-0001", KnownCaseIndex.STATUS_FETCHED, now);
+        index.record("14-0002", KnownCaseIndex.STATUS_FAILED, now);
+        assertFalse(index.needsFetch("14-0001", now, 1000));
+        assertTrue(index.needsFetch("14-0001", now + 2000, 1000));
+        assertTrue(index.needsFetch("14-0002", now, 1000));
+        index.close();
+    }
+
+    public void testSurvivesReopenAndGrowth() throws IOException
+    {
+        KnownCaseIndex index = KnownCaseIndex.open(logFile);
+        for (int i = 0; i < 5000; i++) {
+            index.record("14-" + i, KnownCaseIndex.STATUS_FETCHED, i);
+        }
+        //updates are appended, the last one wins
+        index.record("14-7", KnownCaseIndex.STATUS_FAILED, 99);
+        index.close();
+
+        index = KnownCaseIndex.open(logFile);
+        assertEquals(5000, index.size());
+        assertEquals(4999, index.getFetchedMillis("14-4999"));
+        assertEquals(KnownCaseIndex.STATUS_FAILED, index.getStatus("14-7"));
+        assertEquals(99, index.getFetchedMillis("14-7"));
+        assertFalse(index.contains("14-5000"));
+        index.close();
+    }
+}
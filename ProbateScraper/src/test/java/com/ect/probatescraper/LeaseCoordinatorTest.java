@@ -0,0 +1,265 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+/**
+ * Claiming, expiring and taking over leases, and a crawl shared by two collector JVMs.
+ */
+public class LeaseCoordinatorTest extends TestCase
+{
+    private File dir;
+    private MockProbateServer server;
+
+    /**
+     * Coordinator on a clock the test moves.
+     */
+    private static class ManualClockCoordinator extends LeaseCoordinator
+    {
+        private long now = 1000000;
+
+        ManualClockCoordinator(File directory, String workerId) throws Exception
+        {
+            super(directory, workerId, 60000);
+        }
+
+        long now()
+        {
+            return now;
+        }
+    }
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probateshard");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        if (server != null) {
+            server.stop();
+        }
+        TempDirectory.delete(dir);
+    }
+
+    private static LeaseCoordinator.WorkUnit unit(String district, int fromPage, int toPage)
+    {
+        Map<Integer, String> pageLinks = new TreeMap<Integer, String>();
+        for (int pageNumber = fromPage; pageNumber <= toPage; pageNumber++) {
+            pageLinks.put(Integer.valueOf(pageNumber), "http://localhost/caselookup?District=" + district + "&Page=" + pageNumber);
+        }
+        return new LeaseCoordinator.WorkUnit(district, fromPage, toPage, pageLinks);
+    }
+
+    public void testClaimAndComplete() throws Exception
+    {
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a");
+        ManualClockCoordinator b = new ManualClockCoordinator(dir, "b");
+        assertNull(a.claim());
+        assertFalse(a.isFinished());
+
+        a.publish(unit("PD01", 1, 1));
+        a.publish(unit("PD01", 2, 4));
+        b.publish(unit("PD01", 1, 1));
+
+        LeaseCoordinator.WorkUnit first = a.claim();
+        assertEquals("PD01", first.getId());
+        assertTrue(first.isFirstPage());
+        LeaseCoordinator.WorkUnit second = b.claim();
+        assertEquals("PD01_002-004", second.getId());
+        assertEquals(2, second.getFromPage());
+        assertEquals(4, second.getToPage());
+        assertEquals(unit("PD01", 2, 4).getPageLinks(), second.getPageLinks());
+        assertNull(a.claim());
+        assertNull(b.claim());
+
+        a.complete(first);
+        assertFalse(a.isFinished());
+        assertTrue(Arrays.equals(new int[] {2, 1, 0}, a.progress()));
+        assertNull(a.claim());
+        b.complete(second);
+        assertTrue(a.isFinished());
+        assertTrue(b.isFinished());
+        assertNull(b.claim());
+    }
+
+    public void testExpiredLeaseTakenOver() throws Exception
+    {
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a");
+        ManualClockCoordinator b = new ManualClockCoordinator(dir, "b");
+        a.publish(unit("PD02", 1, 1));
+
+        LeaseCoordinator.WorkUnit unit = a.claim();
+        assertNotNull(unit);
+        b.now += 59000;
+        assertNull(b.claim());
+
+        //renewed in time, a keeps it
+        a.now += 59000;
+        assertTrue(a.renew(unit));
+        b.now += 59000;
+        assertNull(b.claim());
+
+        //a stops renewing (died), b takes the unit over
+        b.now += 2000;
+        LeaseCoordinator.WorkUnit takenOver = b.claim();
+        assertNotNull(takenOver);
+        assertEquals(unit.getId(), takenOver.getId());
+        assertFalse(a.renew(unit));
+        assertTrue(b.renew(takenOver));
+
+        //a finishing late does no harm
+        a.complete(unit);
+        b.complete(takenOver);
+        assertTrue(b.isFinished());
+        assertEquals(0, new File(dir, LeaseCoordinator.LEASES_DIR).list().length);
+    }
+
+    /**
+     * B claims the unit in the moment A has its lease renamed away to renew it. B gets it and A's
+     * renewal loses instead of writing over B's lease.
+     */
+    public void testRenewRacingClaim() throws Exception
+    {
+        final ManualClockCoordinator b = new ManualClockCoordinator(dir, "b");
+        final List<LeaseCoordinator.WorkUnit> claimedByB = new ArrayList<LeaseCoordinator.WorkUnit>();
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a") {
+            void renewing(String unitId)
+            {
+                try {
+                    claimedByB.add(b.claim());
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        a.publish(unit("PD06", 1, 1));
+        LeaseCoordinator.WorkUnit unit = a.claim();
+        assertNotNull(unit);
+
+        assertFalse(a.renew(unit));
+        assertNotNull(claimedByB.get(0));
+        File lease = new File(new File(dir, LeaseCoordinator.LEASES_DIR), "PD06" + LeaseCoordinator.LEASE_SUFFIX);
+        assertTrue(new String(Files.readAllBytes(lease.toPath()), BinaryRecordWriter.UTF8).startsWith("b\t"));
+        assertTrue(b.renew(claimedByB.get(0)));
+        //a finishing late leaves b's lease alone
+        a.complete(unit);
+        assertTrue(lease.exists());
+        b.complete(claimedByB.get(0));
+        assertEquals(0, new File(dir, LeaseCoordinator.LEASES_DIR).list().length);
+    }
+
+    public void testFailedUnitIsRetriedThenGivenUp() throws Exception
+    {
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a");
+        ManualClockCoordinator b = new ManualClockCoordinator(dir, "b");
+        a.publish(unit("PD07", 1, 1));
+        LeaseCoordinator.WorkUnit unit = a.claim();
+        a.fail(unit);
+        assertFalse(a.isFinished());
+        //handed back, not done
+        unit = b.claim();
+        assertNotNull(unit);
+        b.fail(unit);
+        unit = a.claim();
+        assertNotNull(unit);
+        a.fail(unit);
+        assertNull(a.claim());
+        assertNull(b.claim());
+        assertTrue(a.isFinished());
+        assertTrue(Arrays.equals(new int[] {1, 0, 1}, a.progress()));
+        assertEquals(0, new File(dir, LeaseCoordinator.LEASES_DIR).list().length);
+    }
+
+    public void testCloseReleasesLeases() throws Exception
+    {
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a");
+        ManualClockCoordinator b = new ManualClockCoordinator(dir, "b");
+        a.publish(unit("PD03", 1, 1));
+        assertNotNull(a.claim());
+        assertNull(b.claim());
+        a.close();
+        assertNotNull(b.claim());
+    }
+
+    public void testDamagedLeaseExpires() throws Exception
+    {
+        ManualClockCoordinator a = new ManualClockCoordinator(dir, "a");
+        a.publish(unit("PD04", 1, 1));
+        //left half written by a collector that died
+        File lease = new File(new File(dir, LeaseCoordinator.LEASES_DIR), "PD04" + LeaseCoordinator.LEASE_SUFFIX);
+        Files.write(lease.toPath(), "b\t".getBytes(BinaryRecordWriter.UTF8));
+        assertNotNull(a.claim());
+    }
+
+    public void testSplit() throws Exception
+    {
+        Map<Integer, String> pageLinks = unit("PD05", 2, 8).getPageLinks();
+        List<String> ids = new ArrayList<String>();
+        for (LeaseCoordinator.WorkUnit range : ShardedCrawl.split("PD05", pageLinks, 2, 27, 3)) {
+            ids.add(range.getId());
+            assertEquals(range.getToPage() - range.getFromPage() + 1, range.getPageLinks().size());
+        }
+        assertEquals(Arrays.asList("PD05_002-004", "PD05_005-007", "PD05_008-008"), ids);
+        assertEquals(1, ShardedCrawl.split("PD05", pageLinks, 2, 3, 5).size());
+        assertTrue(ShardedCrawl.split("PD05", pageLinks, 9, 27, 5).isEmpty());
+    }
+
+    /**
+     * Two collector JVMs share three districts through the shard directory, every page is fetched
+     * once between them.
+     */
+    public void testCrawlSharedByTwoJvms() throws Exception
+    {
+        server = new MockProbateServer(0, 4, 5, 20, 0, 0, 8);
+        server.start();
+        File shardDir = new File(dir, "shard");
+        List<Process> workers = new ArrayList<Process>();
+        for (String workerId : Arrays.asList("w1", "w2")) {
+            File dataDir = new File(dir, workerId);
+            dataDir.mkdir();
+            List<String> command = new ArrayList<String>(Arrays.asList(
+                    new File(new File(System.getProperty("java.home"), "bin"), "java").getPath(),
+                    "-cp", System.getProperty("java.class.path"),
+                    "-Dprobate.dataDir=" + dataDir.getPath(),
+                    "-Dprobate.shard.dir=" + shardDir.getPath(),
+                    "-Dprobate.shard.workerId=" + workerId,
+                    "-Dprobate.shard.pagesPerUnit=1",
+                    "-Dprobate.crawl.lookupUrl=" + server.getLookupUrl(),
+                    "-Dprobate.crawl.workers=2",
+                    "-Dprobate.crawl.requestsPerMinute=600000",
+                    "-Dprobate.crawl.minRequestsPerMinute=600000",
+                    "-Dprobate.crawl.maxRequestsPerMinute=600000",
+                    "com.ect.probatescraper.CaseLookupPageCollector", "PD01,PD02,PD03"));
+            ProcessBuilder builder = new ProcessBuilder(command);
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(dir, workerId + ".log"));
+            workers.add(builder.start());
+        }
+        for (Process worker : workers) {
+            assertTrue(worker.waitFor(120, TimeUnit.SECONDS));
+            assertEquals(0, worker.exitValue());
+        }
+
+        LeaseCoordinator coordinator = LeaseCoordinator.open(shardDir, "test", 60000);
+        assertTrue(coordinator.isFinished());
+        //a unit for page 1 of each district and one for each of pages 2 - 4
+        assertTrue(Arrays.equals(new int[] {12, 12, 0}, coordinator.progress()));
+        assertEquals(12, server.getListPagesServed());
+        assertEquals(3 * server.getCasesPerDistrict(Arrays.asList("DR")), server.getDetailsPagesServed());
+
+        int listPages = 0;
+        for (String workerId : Arrays.asList("w1", "w2")) {
+            listPages += new FilePageStore(new File(dir, workerId), null).list(PageParserProbateList.FILENAME_PREFIX_CASE_LIST).size();
+        }
+        assertEquals(12, listPages);
+    }
+}
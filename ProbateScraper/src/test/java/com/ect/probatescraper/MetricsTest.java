@@ -0,0 +1,81 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the latency histograms and the Prometheus endpoint.
+ */
+public class MetricsTest extends TestCase
+{
+    public void testHistogram()
+    {
+        LatencyHistogram histogram = new LatencyHistogram("probate_test_seconds", "Test.");
+        for (int i = 0; i < 90; i++) {
+            histogram.record(3 * 1000000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(2000 * 1000000L);
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(5, histogram.getPercentileMillis(0.5));
+        assertEquals(2500, histogram.getPercentileMillis(0.95));
+        assertEquals(202.7, histogram.getMeanMillis(), 0.001);
+
+        StringBuilder text = new StringBuilder();
+        histogram.writePrometheus(text);
+        assertTrue(text.toString().contains("# TYPE probate_test_seconds histogram\n"));
+        assertTrue(text.toString().contains("probate_test_seconds_bucket{le=\"0.005\"} 90\n"));
+        assertTrue(text.toString().contains("probate_test_seconds_bucket{le=\"1.0\"} 90\n"));
+        assertTrue(text.toString().contains("probate_test_seconds_bucket{le=\"2.5\"} 100\n"));
+        assertTrue(text.toString().contains("probate_test_seconds_count 100\n"));
+    }
+
+    public void testSince()
+    {
+        Metrics metrics = new Metrics();
+        metrics.download.record(3 * 1000000L);
+        metrics.pagesFetched.incrementAndGet();
+        Metrics before = metrics.snapshot();
+        metrics.download.record(2000 * 1000000L);
+        metrics.pagesFetched.addAndGet(2);
+
+        Metrics since = metrics.since(before);
+        assertEquals(2, since.pagesFetched.get());
+        assertEquals(1, since.download.getCount());
+        assertEquals(2500, since.download.getPercentileMillis(0.5));
+        assertEquals(2000.0, since.download.getMeanMillis(), 0.001);
+        //the snapshot stays as it was
+        assertEquals(1, before.pagesFetched.get());
+        assertEquals(1, before.download.getCount());
+    }
+
+    public void testEndpoint() throws IOException
+    {
+        Metrics metrics = new Metrics();
+        metrics.bytesFetched.addAndGet(1234);
+        MetricsServer server = MetricsServer.start(0, metrics);
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + MetricsServer.PATH).openConnection();
+            assertEquals(200, connection.getResponseCode());
+            assertTrue(connection.getContentType().startsWith("text/plain"));
+            InputStream in = connection.getInputStream();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+            }
+            in.close();
+            assertTrue(body.toString("UTF-8").contains("probate_fetch_bytes_total 1234\n"));
+        }
+        finally {
+            server.stop();
+        }
+    }
+}
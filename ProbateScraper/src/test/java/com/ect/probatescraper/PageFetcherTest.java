@@ -0,0 +1,140 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for compressed and conditional requests through both fetchers.
+ */
+public class PageFetcherTest extends TestCase
+{
+    private static final String PAGE = "<html>case 1</html>";
+    private static final String ETAG = "\"v1\"";
+
+    private HttpServer server;
+    private String link;
+    private volatile int bodyBytesSent;
+
+    protected void setUp() throws Exception
+    {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/caselookup", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.getResponseHeaders().set("ETag", ETAG);
+                if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+                    exchange.sendResponseHeaders(304, -1);
+                    exchange.close();
+                    return;
+                }
+                String accept = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                if (accept != null && accept.contains("gzip")) {
+                    exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+                    GZIPOutputStream gzip = new GZIPOutputStream(body);
+                    gzip.write(PAGE.getBytes("UTF-8"));
+                    gzip.close();
+                }
+                else {
+                    body.write(PAGE.getBytes("UTF-8"));
+                }
+                bodyBytesSent = body.size();
+                exchange.sendResponseHeaders(200, body.size());
+                OutputStream out = exchange.getResponseBody();
+                body.writeTo(out);
+                out.close();
+            }
+        });
+        server.createContext("/stalled", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                exchange.sendResponseHeaders(200, 1000);
+                OutputStream out = exchange.getResponseBody();
+                out.write(new byte[10]);
+                out.flush();
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    //the server is stopping
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+        link = "http://localhost:" + server.getAddress().getPort() + "/caselookup?District=PD05";
+    }
+
+    protected void tearDown() throws Exception
+    {
+        server.stop(0);
+    }
+
+    public void testHttpClientFetcher() throws IOException
+    {
+        assertFetches(new HttpClientFetcher(5000, 5000, true));
+    }
+
+    public void testUrlConnectionFetcher() throws IOException
+    {
+        assertFetches(new UrlConnectionFetcher(5000, 5000));
+    }
+
+    public void testHttpClientFetcherBodyDeadline() throws IOException
+    {
+        HttpClientFetcher fetcher = new HttpClientFetcher(5000, 500, false);
+        FetchResponse response = fetcher.fetch(link.replace("/caselookup", "/stalled"), Collections.<String, String>emptyMap());
+        assertEquals(200, response.getStatus());
+        long startNanos = System.nanoTime();
+        try {
+            read(response.getBody());
+            fail("a stalled body must time out");
+        } catch (IOException e) {
+            assertTrue((System.nanoTime() - startNanos) / 1000000 < 4000);
+        } finally {
+            response.close();
+            fetcher.close();
+        }
+    }
+
+    private void assertFetches(PageFetcher fetcher) throws IOException
+    {
+        FetchResponse response = fetcher.fetch(link, Collections.<String, String>emptyMap());
+        assertEquals(200, response.getStatus());
+        assertEquals("gzip", response.getHeader("content-encoding"));
+        assertEquals(ETAG, response.getHeader("ETag"));
+        assertEquals(PAGE, read(response.getBody()));
+        //counted as sent, compressed
+        assertEquals(bodyBytesSent, response.getWireBytes());
+        response.close();
+
+        Map<String, String> conditional = new HashMap<String, String>();
+        conditional.put("If-None-Match", ETAG);
+        response = fetcher.fetch(link, conditional);
+        assertEquals(304, response.getStatus());
+        response.close();
+        fetcher.close();
+    }
+
+    private static String read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int count;
+        while ((count = in.read(buffer)) > 0) {
+            out.write(buffer, 0, count);
+        }
+        return new String(out.toByteArray(), "UTF-8");
+    }
+}
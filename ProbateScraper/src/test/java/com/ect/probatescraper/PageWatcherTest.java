@@ -0,0 +1,85 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for picking up pages dropped into the data directory.
+ */
+public class PageWatcherTest extends TestCase
+{
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probatewatch");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        TempDirectory.delete(dir);
+    }
+
+    public void testNewPagesAreHandedOver() throws Exception
+    {
+        FilePageStore store = new FilePageStore(dir, "2");
+        final PageWatcher watcher = new PageWatcher(dir, store, PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS);
+        final List<String> keys = new ArrayList<String>();
+        final Set<String> parsed = new HashSet<String>();
+        parsed.add(new File(dir, "ProbateCaseDetails_old.html").getAbsolutePath());
+
+        Thread watching = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    watcher.watch(new PageWatcher.PageHandler() {
+                        public void page(StoredPage page) {
+                            synchronized (keys) {
+                                keys.add(page.getKey());
+                                keys.notifyAll();
+                            }
+                        }
+
+                        public void caughtUp() {
+                        }
+                    }, parsed);
+                } catch (Exception e) {
+                    fail(e.toString());
+                }
+            }
+        });
+        watching.start();
+
+        write(new File(dir, "ProbateCaseDetails_old.html"));
+        write(new File(dir, "ProbateCaseList_PD05_01.html"));
+        write(new File(dir, "notes.txt"));
+        //the way the collector stores a page
+        File partFile = store.createPartFile("ProbateCaseDetails_1");
+        write(partFile);
+        store.store("ProbateCaseDetails_1", System.currentTimeMillis(), partFile);
+
+        synchronized (keys) {
+            long giveUp = System.currentTimeMillis() + 30000;
+            while (keys.isEmpty() && System.currentTimeMillis() < giveUp) {
+                keys.wait(1000);
+            }
+        }
+        watcher.close();
+        watching.join(10000);
+        assertFalse(watching.isAlive());
+        assertEquals("[ProbateCaseDetails_1]", keys.toString());
+    }
+
+    private static void write(File file) throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write("<html></html>".getBytes("UTF-8"));
+        fos.close();
+    }
+}
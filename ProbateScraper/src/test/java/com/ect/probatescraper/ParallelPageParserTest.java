@@ -0,0 +1,70 @@
+package com.ect.probatescraper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the ordering guarantees of the parallel parser.
+ */
+public class ParallelPageParserTest extends TestCase
+{
+    private static final ParallelPageParser.PageParser<String> SLOW_PARSER = new ParallelPageParser.PageParser<String>() {
+        private final Random random = new Random();
+
+        public String parse(StoredPage page) {
+            try {
+                Thread.sleep(random.nextInt(5));
+            } catch (InterruptedException e) {
+                return null;
+            }
+            if (page.getKey().equals("bad")) {
+                return null;
+            }
+            return page.getKey();
+        }
+    };
+
+    private static class CollectingWriter implements ParallelPageParser.PageWriter<String> {
+        private final List<String> written = new ArrayList<String>();
+
+        public int write(String parsed, boolean first) {
+            if (first) {
+                written.add("header");
+            }
+            written.add(parsed);
+            return 1;
+        }
+    }
+
+    private static StoredPage page(String key)
+    {
+        return new StoredPage(null, key, 0, key);
+    }
+
+    public void testOutputKeepsPageOrder()
+    {
+        List<StoredPage> pages = new ArrayList<StoredPage>();
+        List<String> expected = new ArrayList<String>();
+        expected.add("header");
+        for (int i = 0; i < 200; i++) {
+            pages.add(page("page" + i));
+            expected.add("page" + i);
+        }
+
+        CollectingWriter writer = new CollectingWriter();
+        assertEquals(pages.size(), new ParallelPageParser(8, 4).parse(pages, SLOW_PARSER, writer));
+        assertEquals(expected, writer.written);
+    }
+
+    public void testStopsAtFailedPage()
+    {
+        List<StoredPage> pages = Arrays.asList(page("page0"), page("bad"), page("page2"));
+        CollectingWriter writer = new CollectingWriter();
+        assertEquals(-1, new ParallelPageParser(2, 1).parse(pages, SLOW_PARSER, writer));
+        assertEquals(Arrays.asList("header", "page0"), writer.written);
+    }
+}
@@ -0,0 +1,30 @@
+package com.ect.probatescraper;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for the per host request spacing.
+ */
+public class PolitenessSchedulerTest extends TestCase
+{
+    public void testSameHostIsSpacedOut() throws InterruptedException
+    {
+        PolitenessScheduler scheduler = new PolitenessScheduler(600);
+        long start = System.nanoTime();
+        scheduler.acquire("http://apps.ctprobate.gov/caselookup?District=PD01");
+        scheduler.acquire("http://apps.ctprobate.gov/caselookup?District=PD02");
+        scheduler.acquire("http://apps.ctprobate.gov/caselookup?District=PD03");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis >= 190);
+    }
+
+    public void testHostsAreIndependent() throws InterruptedException
+    {
+        PolitenessScheduler scheduler = new PolitenessScheduler(6);
+        long start = System.nanoTime();
+        scheduler.acquire("http://apps.ctprobate.gov/caselookup");
+        scheduler.acquire("http://localhost/caselookup");
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue("elapsed " + elapsedMillis, elapsedMillis < 1000);
+    }
+}
@@ -0,0 +1,210 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Ranking cases for a recrawl under a request budget, and the case history behind it.
+ */
+public class RecrawlSchedulerTest extends TestCase
+{
+    private static final long DAY = (long) RecrawlScheduler.MILLIS_PER_DAY;
+    private File dir;
+    private MockProbateServer server;
+    private RetryPolicy retryPolicy;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probaterecrawl");
+        retryPolicy = CaseLookupPageCollector.retryPolicy;
+    }
+
+    protected void tearDown() throws Exception
+    {
+        CaseLookupPageCollector.recrawlBudget = 0;
+        CaseLookupPageCollector.retryPolicy = retryPolicy;
+        if (server != null) {
+            server.stop();
+        }
+        TempDirectory.delete(dir);
+    }
+
+    private static CaseDetailsRecord details(String caseNumber, String dateFiled, String decedent)
+    {
+        return new CaseDetailsRecord(decedent, caseNumber, "Decedent Estate", dateFiled, new ArrayList<Fiduciary>());
+    }
+
+    public void testHistoryCountsChanges() throws Exception
+    {
+        File file = new File(dir, CaseHistory.HISTORY_FILENAME);
+        CaseHistory history = CaseHistory.open(file);
+        assertNull(history.get("PD05-14-00001"));
+        assertFalse(history.fetched("PD05-14-00001", details("PD05-14-00001", "01/15/2014", "SMITH"), 1000));
+        assertFalse(history.fetched("PD05-14-00001", details("PD05-14-00001", "01/15/2014", "SMITH"), 2000));
+        assertTrue(history.fetched("PD05-14-00001", details("PD05-14-00001", "01/15/2014", "SMITH, JOHN"), 3000));
+        //nothing extracted is not a change, and keeps what was known
+        assertFalse(history.fetched("PD05-14-00001", null, 4000));
+        history.close();
+
+        history = CaseHistory.open(file);
+        CaseHistory.Entry entry = history.get("PD05-14-00001");
+        assertEquals(4, entry.getFetches());
+        assertEquals(1, entry.getChanges());
+        assertEquals(4000, entry.getFetchedMillis());
+        assertEquals(20140115, entry.getDateFiled());
+        assertEquals(CaseHistory.contentHash(details("PD05-14-00001", "01/15/2014", "SMITH, JOHN")), entry.getContentHash());
+        assertEquals(1, history.size());
+        history.close();
+    }
+
+    public void testContentHashCoversTheCsvFields() throws Exception
+    {
+        assertEquals(CaseHistory.contentHash(details("PD05-14-00001", "01/15/2014", "SMITH")),
+                CaseHistory.contentHash(details("PD05-14-00001", "01/15/2014", "SMITH")));
+        //text moving from one field to the next is a change
+        assertFalse(CaseHistory.contentHash(new CaseDetailsRecord("SMITH", "PD05-14-00001", "Decedent Estate", "", null))
+                == CaseHistory.contentHash(new CaseDetailsRecord("SMITH PD05-14-00001", "", "Decedent Estate", "", null)));
+        List<Fiduciary> fiduciaries = new ArrayList<Fiduciary>();
+        Fiduciary fiduciary = new Fiduciary();
+        fiduciary.setName("JANE SMITH");
+        fiduciaries.add(fiduciary);
+        CaseDetailsRecord withFiduciary = new CaseDetailsRecord("SMITH", "PD05-14-00001", "Decedent Estate", "01/15/2014", fiduciaries);
+        long hash = CaseHistory.contentHash(withFiduciary);
+        assertFalse(hash == CaseHistory.contentHash(details("PD05-14-00001", "01/15/2014", "SMITH")));
+        fiduciary.setPhone("(860) 555-0100");
+        assertFalse(hash == CaseHistory.contentHash(withFiduciary));
+    }
+
+    public void testTornRecordDropped() throws Exception
+    {
+        File file = new File(dir, CaseHistory.HISTORY_FILENAME);
+        CaseHistory history = CaseHistory.open(file);
+        history.fetched("PD05-14-00001", details("PD05-14-00001", "01/15/2014", "SMITH"), 1000);
+        history.fetched("PD05-14-00002", details("PD05-14-00002", "01/16/2014", "JONES"), 1000);
+        history.close();
+        long length = file.length();
+        //cut short by a crash
+        RandomAccessFile torn = new RandomAccessFile(file, "rw");
+        torn.setLength(length - 3);
+        torn.close();
+
+        history = CaseHistory.open(file);
+        assertEquals(1, history.size());
+        assertNotNull(history.get("PD05-14-00001"));
+        history.close();
+        //compacted to the complete records, nothing left beside the log
+        assertEquals(length / 2, file.length());
+        assertEquals(1, dir.list().length);
+    }
+
+    public void testPriority() throws Exception
+    {
+        long now = 1400000000000L;
+        assertEquals(Double.POSITIVE_INFINITY, RecrawlScheduler.priority(null, now, 30));
+
+        //fetched once 10 days ago, filed long ago: 10 days * 1/2
+        CaseHistory.Entry old = new CaseHistory.Entry(1, now - 10 * DAY, 19990101, 1, 0);
+        assertEquals(5.0, RecrawlScheduler.priority(old, now, 30), 0.001);
+        //changed on every re-fetch, 3 of 3 counts as 4 of 5
+        CaseHistory.Entry busy = new CaseHistory.Entry(1, now - 10 * DAY, 19990101, 4, 3);
+        assertEquals(8.0, RecrawlScheduler.priority(busy, now, 30), 0.001);
+        //never changed over many fetches
+        CaseHistory.Entry quiet = new CaseHistory.Entry(1, now - 10 * DAY, 19990101, 9, 0);
+        assertEquals(1.0, RecrawlScheduler.priority(quiet, now, 30), 0.001);
+        //recently filed cases weigh up to twice as much
+        CaseHistory.Entry young = new CaseHistory.Entry(1, now - 10 * DAY, 20140513, 1, 0);
+        double youngPriority = RecrawlScheduler.priority(young, now, 30);
+        assertTrue(youngPriority > 9.0 && youngPriority <= 10.0);
+        //just fetched
+        assertEquals(0.0, RecrawlScheduler.priority(new CaseHistory.Entry(1, now, 20140513, 1, 0), now, 30), 0.001);
+    }
+
+    public void testSelectWithinBudget() throws Exception
+    {
+        long now = 1400000000000L;
+        CaseHistory history = CaseHistory.open(new File(dir, CaseHistory.HISTORY_FILENAME));
+        history.fetched("QUIET", details("QUIET", "01/01/2000", "A"), now - 30 * DAY);
+        history.fetched("RECENT", details("RECENT", "01/01/2000", "B"), now - DAY);
+        history.fetched("STALE", details("STALE", "01/01/2000", "C"), now - 60 * DAY);
+
+        RecrawlScheduler scheduler = new RecrawlScheduler(history, 3, 30, now);
+        for (String caseNumber : Arrays.asList("QUIET", "RECENT", "NEW1", "STALE", "NEW2")) {
+            scheduler.offer("DR", caseNumber, "http://localhost/" + caseNumber);
+        }
+        scheduler.offer("DR", "NEW1", "http://localhost/again");
+        assertEquals(5, scheduler.size());
+
+        List<String> selected = new ArrayList<String>();
+        for (RecrawlScheduler.Candidate candidate : scheduler.select()) {
+            selected.add(candidate.getCaseNumber());
+        }
+        assertEquals(Arrays.asList("NEW1", "NEW2", "STALE"), selected);
+        RecrawlScheduler nothing = new RecrawlScheduler(history, 0, 30, now);
+        nothing.offer("DR", "NEW1", "http://localhost/NEW1");
+        assertTrue(nothing.select().isEmpty());
+        history.close();
+    }
+
+    /**
+     * Two runs against the mock server on a budget smaller than the district: the first fetches as
+     * many cases as it may, the second the ones left out first.
+     */
+    public void testBudgetedCrawl() throws Exception
+    {
+        server = new MockProbateServer(0, 2, 10, 0, 0, 0, 4);
+        server.start();
+        List<String> districts = Arrays.asList("PD01");
+        int cases = server.getCasesPerDistrict(Arrays.asList("DR"));
+        CaseLookupPageCollector.recrawlBudget = cases - 2;
+
+        assertTrue(CrawlLoadHarness.crawl(server, districts, 600000, dir));
+        assertEquals(cases - 2, server.getDetailsPagesServed());
+        assertEquals(2, server.getListPagesServed());
+
+        assertTrue(CrawlLoadHarness.crawl(server, districts, 600000, dir));
+        assertEquals(2 * (cases - 2), server.getDetailsPagesServed());
+        assertEquals(4, server.getListPagesServed());
+
+        CaseHistory history = CaseHistory.open(new File(dir, CaseHistory.HISTORY_FILENAME));
+        assertEquals(cases, history.size());
+        int refetched = 0;
+        for (int caseNo = 1; caseNo <= 20; caseNo++) {
+            CaseHistory.Entry entry = history.get(String.format("PD01-14-%05d", caseNo));
+            if (entry != null && entry.getFetches() == 2) {
+                refetched++;
+                assertEquals(0, entry.getChanges());
+            }
+        }
+        assertEquals(cases - 4, refetched);
+        history.close();
+    }
+
+    /**
+     * A list page given up on during the walk is only read once the budget has been spent, when its
+     * cases are retried on top of the budget instead of being offered for a selection already made.
+     */
+    public void testListPageRecoveredAfterSelection() throws Exception
+    {
+        server = new MockProbateServer(0, 2, 10, 0, 0, 0, 4);
+        server.start();
+        server.failOnce("PD01", 2);
+        CaseLookupPageCollector.retryPolicy = new RetryPolicy(1, 1, 5);
+        List<String> districts = Arrays.asList("PD01");
+        int cases = server.getCasesPerDistrict(Arrays.asList("DR"));
+        CaseLookupPageCollector.recrawlBudget = cases;
+
+        //reported as incomplete, the walk lost a page even though the drain got it back
+        CrawlLoadHarness.crawl(server, districts, 600000, dir);
+        assertEquals(1, server.getErrorsServed());
+        assertEquals(2, server.getListPagesServed());
+        assertEquals(cases, server.getDetailsPagesServed());
+        CaseHistory history = CaseHistory.open(new File(dir, CaseHistory.HISTORY_FILENAME));
+        assertEquals(cases, history.size());
+        history.close();
+    }
+}
@@ -0,0 +1,69 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for keeping failed requests across runs.
+ */
+public class RetryQueueTest extends TestCase
+{
+    private File journal;
+
+    protected void setUp() throws Exception
+    {
+        journal = File.createTempFile("RetryQueue", ".idx");
+        journal.delete();
+    }
+
+    protected void tearDown() throws Exception
+    {
+        journal.delete();
+        new File(journal.getPath() + ".tmp").delete();
+    }
+
+    public void testPendingRequestsSurviveARestart() throws IOException
+    {
+        RetryQueue queue = RetryQueue.open(journal);
+        queue.add(RetryQueue.Kind.DISTRICT, "http://host/list?District=PD05", "ProbateCaseList_PD05_1", "PD05");
+        queue.add(RetryQueue.Kind.DETAILS, "http://host/case?1", "ProbateCaseDetails_1", "1");
+        queue.add(RetryQueue.Kind.DETAILS, "http://host/case?2", "ProbateCaseDetails_2", "2");
+        queue.remove("http://host/case?1");
+        queue.add(RetryQueue.Kind.DISTRICT, "http://host/list?District=PD05", "ProbateCaseList_PD05_1", "PD05");
+        queue.close();
+
+        queue = RetryQueue.open(journal);
+        List<RetryQueue.Entry> pending = queue.pending();
+        assertEquals(2, pending.size());
+        assertEquals("http://host/case?2", pending.get(0).getLink());
+        assertEquals(RetryQueue.Kind.DETAILS, pending.get(0).getKind());
+        assertEquals("ProbateCaseDetails_2", pending.get(0).getPageKey());
+        assertEquals("2", pending.get(0).getSubject());
+        assertEquals(1, pending.get(0).getFailures());
+        assertEquals(RetryQueue.Kind.DISTRICT, pending.get(1).getKind());
+        assertEquals(2, pending.get(1).getFailures());
+
+        queue.remove("http://host/case?2");
+        queue.remove("http://host/list?District=PD05");
+        queue.close();
+        assertEquals(0, RetryQueue.open(journal).size());
+        //compacted through a temporary copy that is moved over the journal
+        assertFalse(new File(journal.getPath() + ".tmp").exists());
+    }
+
+    public void testDamagedLinesAreSkipped() throws IOException
+    {
+        FileOutputStream fos = new FileOutputStream(journal);
+        fos.write("+\tDETAILS\thttp://host/case?1\tProbateCaseDetails_1\t1\t1\t1\ngarbage\n+\tNOPE\tx\tx\tx\t1\t1\n".getBytes("UTF-8"));
+        fos.close();
+
+        RetryQueue queue = RetryQueue.open(journal);
+        assertEquals(1, queue.size());
+        assertTrue(queue.contains("http://host/case?1"));
+        queue.close();
+    }
+}
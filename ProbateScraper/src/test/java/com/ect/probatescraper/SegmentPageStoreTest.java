@@ -0,0 +1,154 @@
+package com.ect.probatescraper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test for storing and reading back pages in the segment store.
+ */
+public class SegmentPageStoreTest extends TestCase
+{
+    private File dir;
+
+    protected void setUp() throws Exception
+    {
+        dir = TempDirectory.create("probatesegments");
+    }
+
+    protected void tearDown() throws Exception
+    {
+        TempDirectory.delete(dir);
+    }
+
+    public void testPagesSurviveReopen() throws IOException
+    {
+        SegmentPageStore store = SegmentPageStore.open(dir, 200);
+        store.store("ProbateCaseList_PD05_01", 1000, part(store, "ProbateCaseList_PD05_01", "<html>list 1</html>"));
+        store.store("ProbateCaseDetails_PD05-14-00123", 2000, part(store, "ProbateCaseDetails_PD05-14-00123", "<html>case 123</html>"));
+        StoredPage changed = store.store("ProbateCaseDetails_PD05-14-00123", 3000, part(store, "ProbateCaseDetails_PD05-14-00123", "<html>case 123 changed</html>"));
+        //small segments, every page past the first ones rolls over to a new segment
+        store.store("ProbateCaseDetails_PD05-14-00124", 4000, part(store, "ProbateCaseDetails_PD05-14-00124", longPage()));
+        store.close();
+
+        store = SegmentPageStore.open(dir, 200);
+        try {
+            assertEquals("<html>list 1</html>", read(store.latest("ProbateCaseList_PD05_01")));
+            assertEquals("<html>case 123 changed</html>", read(store.latest("ProbateCaseDetails_PD05-14-00123")));
+            assertEquals(longPage(), read(store.latest("ProbateCaseDetails_PD05-14-00124")));
+            assertNull(store.latest("ProbateCaseDetails_PD05-14-00125"));
+
+            List<StoredPage> details = store.list(PageParserProbateList.FILENAME_PREFIX_CASE_DETAILS);
+            assertEquals(3, details.size());
+            assertEquals(2000, details.get(0).getFetchMillis());
+            assertEquals(3000, details.get(1).getFetchMillis());
+            assertEquals(1, store.list(PageParserProbateList.FILENAME_PREFIX_CASE_LIST).size());
+
+            StoredPage resolved = store.resolve(changed.getLocation());
+            assertEquals("ProbateCaseDetails_PD05-14-00123", resolved.getKey());
+            assertEquals("<html>case 123 changed</html>", read(resolved));
+            assertNull(store.resolve("9:0:0:ProbateCaseDetails_PD05-14-00123"));
+        }
+        finally {
+            store.close();
+        }
+    }
+
+    public void testTornIndexRecordIsDropped() throws IOException
+    {
+        SegmentPageStore store = SegmentPageStore.open(dir, 1024 * 1024);
+        store.store("ProbateCaseList_PD05_01", 1000, part(store, "ProbateCaseList_PD05_01", "<html>list 1</html>"));
+        store.close();
+
+        RandomAccessFile index = new RandomAccessFile(new File(dir, SegmentPageStore.INDEX_FILENAME), "rw");
+        index.seek(index.length());
+        index.write(new byte[] {0, 30, 'P', 'r'});
+        index.close();
+
+        store = SegmentPageStore.open(dir, 1024 * 1024);
+        try {
+            assertEquals(1, store.list("").size());
+            store.store("ProbateCaseList_PD05_02", 2000, part(store, "ProbateCaseList_PD05_02", "<html>list 2</html>"));
+            assertEquals("<html>list 2</html>", read(store.latest("ProbateCaseList_PD05_02")));
+        }
+        finally {
+            store.close();
+        }
+    }
+
+    public void testReadOnlyOpenLeavesTheWriterAlone() throws IOException
+    {
+        SegmentPageStore writer = SegmentPageStore.open(dir, 1024 * 1024);
+        try {
+            writer.store("ProbateCaseList_PD05_01", 1000, part(writer, "ProbateCaseList_PD05_01", "<html>list 1</html>"));
+            //a record the writer is half way through
+            File indexFile = new File(dir, SegmentPageStore.INDEX_FILENAME);
+            RandomAccessFile index = new RandomAccessFile(indexFile, "rw");
+            index.seek(index.length());
+            index.write(new byte[] {0, 30, 'P', 'r'});
+            index.close();
+            long length = indexFile.length();
+
+            SegmentPageStore reader = SegmentPageStore.openReadOnly(dir);
+            try {
+                assertEquals(1, reader.list("").size());
+                assertEquals("<html>list 1</html>", read(reader.latest("ProbateCaseList_PD05_01")));
+                assertEquals(length, indexFile.length());
+                try {
+                    reader.store("ProbateCaseList_PD05_02", 2000, part(reader, "ProbateCaseList_PD05_02", "<html>list 2</html>"));
+                    fail("read only store took a page");
+                }
+                catch (IOException e) {
+                    //expected
+                }
+            }
+            finally {
+                reader.close();
+            }
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+        private static String longPage()
+    {
+        StringBuilder page = new StringBuilder("<html>");
+        for (int i = 0; i < 500; i++) {
+            page.append("<tr><td>").append(i).append("</td></tr>");
+        }
+        return page.append("</html>").toString();
+    }
+
+    private static File part(PageStore store, String key, String text) throws IOException
+    {
+        File part = store.createPartFile(key);
+        FileOutputStream fos = new FileOutputStream(part);
+        fos.write(text.getBytes("UTF-8"));
+        fos.close();
+        return part;
+    }
+
+    private static String read(StoredPage page) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        InputStream in = page.open();
+        try {
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+        }
+        finally {
+            in.close();
+        }
+        return bytes.toString("UTF-8");
+    }
+}
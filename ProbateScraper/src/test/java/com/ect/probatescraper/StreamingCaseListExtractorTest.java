@@ -0,0 +1,51 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit test holding the streaming case list extractor to the jsoup reference.
+ */
+public class StreamingCaseListExtractorTest extends TestCase
+{
+    static File fixture(String name) throws URISyntaxException
+    {
+        return new File(StreamingCaseListExtractorTest.class.getResource("/pages/" + name).toURI());
+    }
+
+    public void testMatchesJsoup() throws IOException, URISyntaxException
+    {
+        File page = fixture("ProbateCaseList_PD05_01.html");
+        CaseListPage reference = PageParserProbateList.readCaseListPageJsoup(new FilePageStore(page.getParentFile(), null).resolve(page.getPath()));
+        CaseListPage streamed = new StreamingCaseListExtractor().extract(page, PageParserProbateList.BASE_URI);
+
+        assertEquals(5, reference.getRecords().size());
+        assertEquals(reference.toString(), streamed.toString());
+        assertEquals(reference, streamed);
+    }
+
+    public void testFields() throws IOException, URISyntaxException
+    {
+        CaseListPage page = new StreamingCaseListExtractor().extract(fixture("ProbateCaseList_PD05_01.html"), PageParserProbateList.BASE_URI);
+        List<CaseListRecord> records = page.getRecords();
+        assertEquals("PD05-14-00123", records.get(0).getCaseNumber());
+        assertEquals("O'BRIEN", records.get(0).getLastName());
+        assertEquals("http://apps.ctprobate.gov/caselookup/casedetails?CaseNumber=PD05-14-00123&District=PD05", records.get(0).getLink());
+        assertEquals("JOHN \"JACK\"", records.get(1).getFirstName());
+        assertEquals("THI ANH", records.get(3).getFirstName());
+        assertEquals(6, page.getHeaders().size());
+        assertEquals(2, page.getPageLinks().size());
+        assertEquals("http://apps.ctprobate.gov/?CaseType=0&District=PD05&CaseStatusOption=Open&Page=3", page.getPageLinks().get(Integer.valueOf(3)));
+        assertEquals(3, page.getDetailsLinks(PageParserProbateList.CASE_TYPE_DECEDENT_ESTATE_REGULAR).size());
+    }
+
+    public void testNoResults() throws IOException
+    {
+        assertNull(new StreamingCaseListExtractor().extract(new StringReader("<html><body><p>No cases</p></body></html>"), PageParserProbateList.BASE_URI));
+    }
+}
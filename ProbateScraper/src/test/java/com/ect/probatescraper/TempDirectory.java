@@ -0,0 +1,37 @@
+package com.ect.probatescraper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * Scratch directories for the tests that need a data directory of their own.
+ */
+final class TempDirectory
+{
+    private TempDirectory()
+    {
+    }
+
+    /**
+     * @return a new empty directory under the system temp directory
+     */
+    static File create(String prefix) throws IOException
+    {
+        return Files.createTempDirectory(prefix).toFile();
+    }
+
+    /**
+     * Deletes the file, or the directory with everything below it.
+     */
+    static void delete(File file)
+    {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}